@@ -0,0 +1,421 @@
+package org.silnith.parser.html5;
+
+import java.util.Arrays;
+
+import org.silnith.parser.html5.Parser.FormattingElement;
+import org.silnith.parser.html5.grammar.element.ElementKind;
+import org.silnith.parser.html5.lexical.token.FrozenStartTagToken;
+import org.silnith.parser.html5.lexical.token.StartTagToken;
+import org.w3c.dom.Element;
+
+
+/**
+ * The list of active formatting elements.
+ * <p>
+ * Initially, the list of active formatting elements is empty. It is used to handle mis-nested formatting element tags.
+ * <p>
+ * The list contains elements in the formatting category, and markers. The markers are inserted when entering applet, object, marquee, template, td, th, and caption elements, and are used to prevent formatting from "leaking" into applet, object, marquee, template, td, th, and caption elements.
+ * <p>
+ * In addition, each element in the list of active formatting elements is associated with the token for which it was created, so that further elements can be created for that token if necessary.
+ * <p>
+ * Markers are represented by {@code null} entries. Alongside each entry the
+ * list keeps the {@link ElementKind} of the element and the fingerprint of its
+ * (frozen) token, and it tracks the index of the last marker, so that the
+ * common queries only examine the entries after the last marker and only
+ * compare attributes for entries whose fingerprints match.
+ *
+ * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#the-list-of-active-formatting-elements">8.2.3.3 The list of active formatting elements</a>
+ * @author <a href="mailto:silnith@gmail.com">Kent Rosenkoetter</a>
+ */
+public final class ActiveFormattingElements {
+    
+    private FormattingElement[] entries;
+    
+    private int[] kinds;
+    
+    private int[] fingerprints;
+    
+    private int size;
+    
+    /**
+     * The index of the last marker in the list, or {@code -1} if there is no
+     * marker.
+     */
+    private int lastMarkerIndex;
+    
+    public ActiveFormattingElements() {
+        super();
+        this.entries = new FormattingElement[16];
+        this.kinds = new int[16];
+        this.fingerprints = new int[16];
+        this.size = 0;
+        this.lastMarkerIndex = -1;
+    }
+    
+    /**
+     * Returns the number of entries in the list, including markers.
+     * 
+     * @return the number of entries
+     */
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Returns whether the list is empty.
+     * 
+     * @return {@code true} if there are no entries
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+    
+    /**
+     * Returns the entry at the given index. Markers are returned as
+     * {@code null}.
+     * 
+     * @param index the index of the entry
+     * @return the entry, or {@code null} for a marker
+     */
+    public FormattingElement get(final int index) {
+        checkIndex(index);
+        return entries[index];
+    }
+    
+    /**
+     * Returns whether the entry at the given index is a marker.
+     * 
+     * @param index the index of the entry
+     * @return {@code true} if the entry is a marker
+     */
+    public boolean isMarker(final int index) {
+        checkIndex(index);
+        return entries[index] == null;
+    }
+    
+    /**
+     * Returns the {@link ElementKind} of the element at the given index.
+     * 
+     * @param index the index of the entry
+     * @return the element kind, or {@link ElementKind#OTHER} for a marker
+     */
+    public int getKind(final int index) {
+        checkIndex(index);
+        return kinds[index];
+    }
+    
+    /**
+     * Returns the element at the given index.
+     * 
+     * @param index the index of the entry
+     * @return the element, or {@code null} for a marker
+     */
+    public Element getElement(final int index) {
+        final FormattingElement entry = get(index);
+        if (entry == null) {
+            return null;
+        }
+        return entry.getValue();
+    }
+    
+    /**
+     * Returns the index of the last marker in the list.
+     * 
+     * @return the index of the last marker, or {@code -1} if there is none
+     */
+    public int getLastMarkerIndex() {
+        return lastMarkerIndex;
+    }
+    
+    /**
+     * Inserts a marker at the end of the list.
+     */
+    public void addMarker() {
+        ensureCapacity(size + 1);
+        entries[size] = null;
+        kinds[size] = ElementKind.OTHER;
+        fingerprints[size] = 0;
+        lastMarkerIndex = size;
+        size++ ;
+    }
+    
+    /**
+     * Pushes an element onto the list of active formatting elements.
+     * <p>
+     * If there are already three elements in the list of active formatting elements after the last list marker, if any, or anywhere in the list if there are no list markers, that have the same tag name, namespace, and attributes as <var>element</var>, then remove the earliest such element from the list of active formatting elements. For these purposes, the attributes must be compared as they were when the elements were created by the parser; two elements have the same attributes if all their parsed attributes can be paired such that the two attributes in each pair have identical names, namespaces, and values (the order of the attributes does not matter).
+     * <p>
+     * Add <var>element</var> to the list of active formatting elements.
+     * 
+     * @param startTagToken the start tag for the new element
+     * @param element the new element
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#push-onto-the-list-of-active-formatting-elements">push onto the list of active formatting elements</a>
+     */
+    public void push(final StartTagToken startTagToken, final Element element) {
+        final FrozenStartTagToken frozen = startTagToken.freeze();
+        final int fingerprint = frozen.getFingerprint();
+        final String namespace = element.getNamespaceURI();
+        int count = 0;
+        int earliest = -1;
+        for (int index = size - 1; index > lastMarkerIndex; index-- ) {
+            if (fingerprints[index] == fingerprint && isSame(entries[index], frozen, namespace)) {
+                count++ ;
+                earliest = index;
+            }
+        }
+        if (count >= 3) {
+            remove(earliest);
+        }
+        add(size, new FormattingElement(frozen, element));
+    }
+    
+    private boolean isSame(final FormattingElement entry, final FrozenStartTagToken token, final String namespace) {
+        final FrozenStartTagToken other = (FrozenStartTagToken) entry.getKey();
+        final String otherNamespace = entry.getValue().getNamespaceURI();
+        if (namespace == null ? otherNamespace != null : !namespace.equals(otherNamespace)) {
+            return false;
+        }
+        return token.hasSameTagNameAndAttributes(other);
+    }
+    
+    /**
+     * Inserts an entry for the given token and element at the given index,
+     * shifting later entries along.
+     * 
+     * @param index the index for the new entry
+     * @param startTagToken the start tag for the element
+     * @param element the element
+     */
+    public void insert(final int index, final StartTagToken startTagToken, final Element element) {
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        add(index, new FormattingElement(startTagToken.freeze(), element));
+    }
+    
+    private void add(final int index, final FormattingElement entry) {
+        ensureCapacity(size + 1);
+        System.arraycopy(entries, index, entries, index + 1, size - index);
+        System.arraycopy(kinds, index, kinds, index + 1, size - index);
+        System.arraycopy(fingerprints, index, fingerprints, index + 1, size - index);
+        final FrozenStartTagToken token = (FrozenStartTagToken) entry.getKey();
+        entries[index] = entry;
+        kinds[index] = ElementKind.of(entry.getValue());
+        fingerprints[index] = token.getFingerprint();
+        if (index <= lastMarkerIndex) {
+            lastMarkerIndex++ ;
+        }
+        size++ ;
+    }
+    
+    /**
+     * Replaces the element at the given index with a new element created for
+     * the same token.
+     * 
+     * @param index the index of the entry to replace
+     * @param element the new element
+     */
+    public void replaceElement(final int index, final Element element) {
+        final FormattingElement entry = get(index);
+        if (entry == null) {
+            throw new IllegalArgumentException("Cannot replace a marker.");
+        }
+        entries[index] = new FormattingElement(entry.getKey(), element);
+    }
+    
+    /**
+     * Removes the entry at the given index.
+     * 
+     * @param index the index of the entry to remove
+     * @return the removed entry
+     */
+    public FormattingElement remove(final int index) {
+        checkIndex(index);
+        final FormattingElement entry = entries[index];
+        size-- ;
+        System.arraycopy(entries, index + 1, entries, index, size - index);
+        System.arraycopy(kinds, index + 1, kinds, index, size - index);
+        System.arraycopy(fingerprints, index + 1, fingerprints, index, size - index);
+        entries[size] = null;
+        if (index == lastMarkerIndex) {
+            lastMarkerIndex = findLastMarker(index - 1);
+        } else if (index < lastMarkerIndex) {
+            lastMarkerIndex-- ;
+        }
+        return entry;
+    }
+    
+    /**
+     * Removes the given element from the list, if it is present.
+     * 
+     * @param element the element to remove
+     * @return {@code true} if the element was in the list
+     */
+    public boolean remove(final Element element) {
+        final int index = indexOf(element);
+        if (index == -1) {
+            return false;
+        }
+        remove(index);
+        return true;
+    }
+    
+    /**
+     * Replaces all the entries from the given index to the end of the list
+     * with the given entries, in a single step. The replacement entries must
+     * not be markers.
+     * 
+     * @param from the index of the first entry to replace
+     * @param replacement the new entries
+     * @param count the number of new entries to use from {@code replacement}
+     */
+    public void replaceFrom(final int from, final FormattingElement[] replacement, final int count) {
+        if (from < 0 || from > size) {
+            throw new IndexOutOfBoundsException("Index: " + from + ", Size: " + size);
+        }
+        ensureCapacity(from + count);
+        if (from + count < size) {
+            Arrays.fill(entries, from + count, size, null);
+        }
+        for (int i = 0; i < count; i++ ) {
+            final FormattingElement entry = replacement[i];
+            final FrozenStartTagToken token = entry.getKey().freeze();
+            entries[from + i] = new FormattingElement(token, entry.getValue());
+            kinds[from + i] = ElementKind.of(entry.getValue());
+            fingerprints[from + i] = token.getFingerprint();
+        }
+        size = from + count;
+        if (lastMarkerIndex >= from) {
+            lastMarkerIndex = findLastMarker(from - 1);
+        }
+    }
+    
+    private int findLastMarker(final int from) {
+        for (int index = from; index >= 0; index-- ) {
+            if (entries[index] == null) {
+                return index;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Returns the index of the entry for the given element.
+     * 
+     * @param element the element to find
+     * @return the index of the element, or {@code -1} if it is not in the list
+     */
+    public int indexOf(final Element element) {
+        for (int index = size - 1; index >= 0; index-- ) {
+            final FormattingElement entry = entries[index];
+            if (entry != null && entry.getValue() == element) {
+                return index;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Returns the index of the entry for the given element, only considering
+     * the entries at or after the given index.
+     * 
+     * @param element the element to find
+     * @param from the index of the first entry to consider
+     * @return the index of the element, or {@code -1} if it is not in that
+     *         part of the list
+     */
+    public int indexOf(final Element element, final int from) {
+        for (int index = size - 1; index >= from; index-- ) {
+            final FormattingElement entry = entries[index];
+            if (entry != null && entry.getValue() == element) {
+                return index;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Returns whether the given element is in the list.
+     * 
+     * @param element the element to find
+     * @return {@code true} if the element is in the list
+     */
+    public boolean contains(final Element element) {
+        return indexOf(element) != -1;
+    }
+    
+    /**
+     * Returns the index of the last element of the given kind that is after
+     * the last marker in the list, or anywhere in the list if there is no
+     * marker.
+     * 
+     * @param kind the {@link ElementKind} to find
+     * @return the index of the element, or {@code -1} if there is none
+     */
+    public int lastIndexOfKindAfterLastMarker(final int kind) {
+        for (int index = size - 1; index > lastMarkerIndex; index-- ) {
+            if (kinds[index] == kind) {
+                return index;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Returns the index of the last element with the given tag name that is
+     * after the last marker in the list, or anywhere in the list if there is
+     * no marker.
+     * 
+     * @param tagName the tag name to find
+     * @return the index of the element, or {@code -1} if there is none
+     */
+    public int lastIndexOfTagNameAfterLastMarker(final String tagName) {
+        final int kind = ElementKind.htmlKindOf(tagName);
+        if (ElementKind.isKnown(kind)) {
+            return lastIndexOfKindAfterLastMarker(kind);
+        }
+        for (int index = size - 1; index > lastMarkerIndex; index-- ) {
+            if (kinds[index] == kind && tagName.equals(entries[index].getKey().getTagName())) {
+                return index;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Removes entries from the end of the list up to and including the last
+     * marker, or all entries if there is no marker.
+     * 
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#clear-the-list-of-active-formatting-elements-up-to-the-last-marker">clear the list of active formatting elements up to the last marker</a>
+     */
+    public void clearToLastMarker() {
+        final int newSize = Math.max(lastMarkerIndex, 0);
+        Arrays.fill(entries, newSize, size, null);
+        size = newSize;
+        lastMarkerIndex = findLastMarker(size - 1);
+    }
+    
+    /**
+     * Removes all entries from the list, keeping its capacity.
+     */
+    public void clear() {
+        Arrays.fill(entries, 0, size, null);
+        size = 0;
+        lastMarkerIndex = -1;
+    }
+    
+    private void checkIndex(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+    
+    private void ensureCapacity(final int capacity) {
+        if (capacity > entries.length) {
+            final int newLength = Math.max(capacity, entries.length * 2);
+            entries = Arrays.copyOf(entries, newLength);
+            kinds = Arrays.copyOf(kinds, newLength);
+            fingerprints = Arrays.copyOf(fingerprints, newLength);
+        }
+    }
+    
+}
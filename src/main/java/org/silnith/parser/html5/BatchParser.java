@@ -0,0 +1,344 @@
+package org.silnith.parser.html5;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.silnith.parser.html5.ParserFactory.PooledParser;
+import org.w3c.dom.Document;
+
+
+/**
+ * Parses batches of independent documents in parallel.
+ * <p>
+ * Each document is parsed by a task submitted to the executor given at
+ * construction, so the threading policy is up to the caller. A
+ * {@link java.util.concurrent.ForkJoinPool} spreads the tasks across its
+ * workers with work stealing, and on newer runtimes an executor that starts a
+ * virtual thread per task works as well. Tasks acquire their parser from the
+ * {@link ParserFactory}, so each worker thread reuses one parser for all the
+ * documents it parses. Executors that start a new thread for every task get
+ * no reuse from this, but lose nothing either.
+ * <p>
+ * Only a bounded number of documents are in flight at once, so the sources of
+ * a batch can be produced lazily and the batch can be arbitrarily large.
+ * Results are handed to the {@link ResultHandler} on the thread that called
+ * {@link #parseAll(Iterable, ResultHandler)}, so the handler does not need to
+ * be thread-safe. A failure to read or parse one document is reported in its
+ * result and does not affect the rest of the batch.
+ * <p>
+ * Each source is read through a buffer sized from the average length of the
+ * documents parsed so far, so that small documents do not each allocate a
+ * large buffer and large documents are not read in small pieces.
+ * <p>
+ * A batch parser is thread-safe, and several batches may be parsed at the
+ * same time.
+ *
+ * @see ParserFactory
+ * @author <a href="mailto:silnith@gmail.com">Kent Rosenkoetter</a>
+ */
+public final class BatchParser {
+    
+    private static final int MIN_BUFFER_SIZE = 1024;
+    
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+    
+    private static final int MAX_BUFFER_SIZE = 65536;
+    
+    /**
+     * A document to parse.
+     * 
+     * @author <a href="mailto:silnith@gmail.com">Kent Rosenkoetter</a>
+     */
+    public interface Source {
+        
+        /**
+         * Opens the document for reading. This is called on the thread that
+         * parses the document, which closes the reader when it is done.
+         * 
+         * @return the characters of the document
+         * @throws IOException if the document cannot be opened
+         */
+        Reader open() throws IOException;
+        
+    }
+    
+    /**
+     * Receives the results of a batch.
+     * 
+     * @author <a href="mailto:silnith@gmail.com">Kent Rosenkoetter</a>
+     */
+    public interface ResultHandler {
+        
+        /**
+         * Handles the result of parsing one document.
+         * 
+         * @param result the result
+         */
+        void handle(Result result);
+        
+    }
+    
+    /**
+     * The outcome of parsing one document of a batch.
+     * 
+     * @author <a href="mailto:silnith@gmail.com">Kent Rosenkoetter</a>
+     */
+    public static final class Result {
+        
+        private final int index;
+        
+        private final Source source;
+        
+        private final Document document;
+        
+        private final int length;
+        
+        private final Throwable failure;
+        
+        private final long parseTime;
+        
+        private Result(final int index, final Source source, final Document document, final int length,
+                final Throwable failure, final long parseTime) {
+            super();
+            this.index = index;
+            this.source = source;
+            this.document = document;
+            this.length = length;
+            this.failure = failure;
+            this.parseTime = parseTime;
+        }
+        
+        /**
+         * Returns the position of the source in the batch, starting from
+         * {@code 0}.
+         * 
+         * @return the index of the source
+         */
+        public int getIndex() {
+            return index;
+        }
+        
+        /**
+         * Returns the source that was parsed.
+         * 
+         * @return the source
+         */
+        public Source getSource() {
+            return source;
+        }
+        
+        /**
+         * Returns the parsed document.
+         * 
+         * @return the document, or {@code null} if the document could not be
+         *         parsed
+         */
+        public Document getDocument() {
+            return document;
+        }
+        
+        /**
+         * Returns the number of characters parsed, after preprocessing.
+         * 
+         * @return the length of the document
+         */
+        public int getLength() {
+            return length;
+        }
+        
+        /**
+         * Returns how long it took to open, read, and parse the document, on
+         * the thread that parsed it. This does not include the time the
+         * document waited to be parsed.
+         * 
+         * @return the elapsed time, in nanoseconds
+         */
+        public long getParseTime() {
+            return parseTime;
+        }
+        
+        /**
+         * Returns why the document could not be parsed.
+         * 
+         * @return the exception or error thrown while opening, reading, or
+         *         parsing the document, or {@code null} if it was parsed
+         */
+        public Throwable getFailure() {
+            return failure;
+        }
+        
+        /**
+         * Returns whether the document was parsed.
+         * 
+         * @return {@code true} if the document was parsed
+         */
+        public boolean isSuccess() {
+            return failure == null;
+        }
+        
+    }
+    
+    private final class ParseTask implements Runnable {
+        
+        private final int index;
+        
+        private final Source source;
+        
+        private final BlockingQueue<Result> completed;
+        
+        private ParseTask(final int index, final Source source, final BlockingQueue<Result> completed) {
+            super();
+            this.index = index;
+            this.source = source;
+            this.completed = completed;
+        }
+        
+        @Override
+        public void run() {
+            final long start = System.nanoTime();
+            Document document = null;
+            int length = 0;
+            Throwable failure = null;
+            try {
+                final Reader reader = source.open();
+                if (reader == null) {
+                    throw new NullPointerException("Source opened a null reader.");
+                }
+                try (final BufferedReader in = new BufferedReader(reader, getBufferSize());
+                        final PooledParser pooled = factory.acquire(in)) {
+                    document = pooled.parseChecked();
+                    length = pooled.getParser().getTokenizer().getPosition();
+                }
+            } catch (final Throwable e) {
+                failure = e;
+            }
+            if (failure == null) {
+                documentsParsed.incrementAndGet();
+                charactersParsed.addAndGet(length);
+            } else {
+                document = null;
+            }
+            completed.add(new Result(index, source, document, length, failure, System.nanoTime() - start));
+        }
+        
+    }
+    
+    private final ParserFactory factory;
+    
+    private final Executor executor;
+    
+    private final int maxInFlight;
+    
+    private final AtomicLong documentsParsed;
+    
+    private final AtomicLong charactersParsed;
+    
+    /**
+     * Constructs a new batch parser.
+     * 
+     * @param factory the factory that provides the parsers
+     * @param executor the executor that runs the parsing tasks
+     * @param parallelism the number of documents expected to be parsed at
+     *            once, usually the number of threads of the executor
+     * @throws IllegalArgumentException if the parallelism is not positive
+     */
+    public BatchParser(final ParserFactory factory, final Executor executor, final int parallelism) {
+        super();
+        if (factory == null || executor == null) {
+            throw new NullPointerException();
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        }
+        this.factory = factory;
+        this.executor = executor;
+        this.maxInFlight = parallelism * 2;
+        this.documentsParsed = new AtomicLong();
+        this.charactersParsed = new AtomicLong();
+    }
+    
+    private int getBufferSize() {
+        final long documents = documentsParsed.get();
+        if (documents == 0) {
+            return DEFAULT_BUFFER_SIZE;
+        }
+        final long average = charactersParsed.get() / documents;
+        return (int) Math.max(MIN_BUFFER_SIZE, Math.min(MAX_BUFFER_SIZE, average));
+    }
+    
+    /**
+     * Parses every source in the batch, handing each result to the handler as
+     * soon as it is available. Results are delivered in the order the
+     * documents finish parsing. This returns once every result has been
+     * handled.
+     * 
+     * @param sources the documents to parse
+     * @param handler the handler for the results
+     * @throws InterruptedException if the calling thread is interrupted while
+     *             waiting for a result
+     */
+    public void parseAll(final Iterable<? extends Source> sources, final ResultHandler handler)
+            throws InterruptedException {
+        parseAll(sources, handler, false);
+    }
+    
+    /**
+     * Parses every source in the batch, handing the results to the handler in
+     * the order of the sources. A document that takes long to parse holds
+     * back the results of the documents after it, which limits how many
+     * documents can be parsed at once. This returns once every result has
+     * been handled.
+     * 
+     * @param sources the documents to parse
+     * @param handler the handler for the results
+     * @throws InterruptedException if the calling thread is interrupted while
+     *             waiting for a result
+     */
+    public void parseAllOrdered(final Iterable<? extends Source> sources, final ResultHandler handler)
+            throws InterruptedException {
+        parseAll(sources, handler, true);
+    }
+    
+    private void parseAll(final Iterable<? extends Source> sources, final ResultHandler handler,
+            final boolean ordered) throws InterruptedException {
+        if (handler == null) {
+            throw new NullPointerException();
+        }
+        final Iterator<? extends Source> iterator = sources.iterator();
+        final BlockingQueue<Result> completed = new LinkedBlockingQueue<>();
+        final Map<Integer, Result> pending = new HashMap<>();
+        int submitted = 0;
+        int delivered = 0;
+        while (true) {
+            while (submitted - delivered < maxInFlight && iterator.hasNext()) {
+                executor.execute(new ParseTask(submitted, iterator.next(), completed));
+                submitted++ ;
+            }
+            if (delivered == submitted) {
+                break;
+            }
+            final Result result = completed.take();
+            if (ordered) {
+                pending.put(result.getIndex(), result);
+                Result next = pending.remove(delivered);
+                while (next != null) {
+                    delivered++ ;
+                    handler.handle(next);
+                    next = pending.remove(delivered);
+                }
+            } else {
+                delivered++ ;
+                handler.handle(result);
+            }
+        }
+    }
+    
+}
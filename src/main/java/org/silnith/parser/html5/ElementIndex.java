@@ -0,0 +1,241 @@
+package org.silnith.parser.html5;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.silnith.parser.html5.grammar.element.ElementKind;
+import org.w3c.dom.Element;
+
+
+/**
+ * An index of the elements created while parsing a document, by ID, by class
+ * name, and by element type.
+ * <p>
+ * Finding elements in a W3C DOM tree means walking the entire tree. When a
+ * {@link Parser} is configured to index elements, it records each element it
+ * creates here, so that the common lookups are a single table access once
+ * parsing is finished. Element types the parser recognizes are indexed by
+ * their {@link ElementKind}, other element types by their local name.
+ * <p>
+ * Elements are listed in the order the parser created them. This is document
+ * order, except where error recovery moved nodes around, such as foster
+ * parenting and the adoption agency algorithm. Elements in the
+ * {@link TemplateContents template contents} of a {@code template} element
+ * are not part of the document, and are not indexed. The index is not updated
+ * if the document is modified after parsing.
+ *
+ * @see Parser#setIndexElements(boolean)
+ * @author <a href="mailto:silnith@gmail.com">Kent Rosenkoetter</a>
+ */
+public final class ElementIndex {
+    
+    /**
+     * The indexed elements of one kind.
+     */
+    private static final class KindEntry {
+        
+        /**
+         * The elements of a kind that identifies a single element type.
+         */
+        private final List<Element> elements;
+        
+        /**
+         * The elements of a kind that does not identify a single element
+         * type, such as {@link ElementKind#HTML_UNKNOWN}, keyed by local name.
+         */
+        private final Map<String, List<Element>> elementsByLocalName;
+        
+        private KindEntry(final boolean known) {
+            super();
+            if (known) {
+                this.elements = new ArrayList<>();
+                this.elementsByLocalName = null;
+            } else {
+                this.elements = null;
+                this.elementsByLocalName = new HashMap<>();
+            }
+        }
+        
+    }
+    
+    private final Map<String, Element> elementsById;
+    
+    private final Map<String, List<Element>> elementsByClassName;
+    
+    /**
+     * The elements of each kind, indexed by kind. Entries are created when
+     * the first element of a kind is indexed.
+     */
+    private final KindEntry[] elementsByKind;
+    
+    public ElementIndex() {
+        super();
+        this.elementsById = new HashMap<>();
+        this.elementsByClassName = new HashMap<>();
+        this.elementsByKind = new KindEntry[ElementKind.NUM_KINDS];
+    }
+    
+    /**
+     * Adds an element to the index, along with its {@code id} and
+     * {@code class} attributes.
+     * 
+     * @param element the element to add
+     * @param kind the kind of the element, as defined by {@link ElementKind}
+     */
+    public void add(final Element element, final int kind) {
+        final boolean known = ElementKind.isKnown(kind);
+        KindEntry entry = elementsByKind[kind];
+        if (entry == null) {
+            entry = new KindEntry(known);
+            elementsByKind[kind] = entry;
+        }
+        if (known) {
+            entry.elements.add(element);
+        } else {
+            addTo(entry.elementsByLocalName, element.getLocalName(), element);
+        }
+        if (element.hasAttributes()) {
+            addAttribute(element, "id", element.getAttribute("id"));
+            addAttribute(element, "class", element.getAttribute("class"));
+        }
+    }
+    
+    /**
+     * Records an attribute that was added to an element after the element was
+     * indexed. This happens when the attributes of a duplicate {@code html}
+     * or {@code body} start tag are added to the existing element. Attributes
+     * other than {@code id} and {@code class} are ignored.
+     * 
+     * @param element the indexed element
+     * @param name the attribute name
+     * @param value the attribute value
+     */
+    public void addAttribute(final Element element, final String name, final String value) {
+        switch (name) {
+        case "id": {
+            if ( !value.isEmpty() && !elementsById.containsKey(value)) {
+                elementsById.put(value, element);
+            }
+        } break;
+        case "class": {
+            final int length = value.length();
+            int start = 0;
+            while (start < length) {
+                while (start < length && isSpaceCharacter(value.charAt(start))) {
+                    start++ ;
+                }
+                int end = start;
+                while (end < length && !isSpaceCharacter(value.charAt(end))) {
+                    end++ ;
+                }
+                if (end > start) {
+                    final String className = value.substring(start, end);
+                    final List<Element> elements = elementsByClassName.get(className);
+                    if (elements == null || elements.get(elements.size() - 1) != element) {
+                        addTo(elementsByClassName, className, element);
+                    }
+                }
+                start = end;
+            }
+        } break;
+        default: {
+            // not indexed
+        } break;
+        }
+    }
+    
+    private static boolean isSpaceCharacter(final char character) {
+        switch (character) {
+        case '\t': // fall through
+        case '\n': // fall through
+        case '\f': // fall through
+        case '\r': // fall through
+        case ' ': {
+            return true;
+        } // break;
+        default: {
+            return false;
+        } // break;
+        }
+    }
+    
+    private static void addTo(final Map<String, List<Element>> map, final String key, final Element element) {
+        List<Element> elements = map.get(key);
+        if (elements == null) {
+            elements = new ArrayList<>();
+            map.put(key, elements);
+        }
+        elements.add(element);
+    }
+    
+    private static List<Element> unmodifiable(final List<Element> elements) {
+        if (elements == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(elements);
+    }
+    
+    /**
+     * Returns the first element with the given ID.
+     * 
+     * @param id the ID
+     * @return the element, or {@code null} if there is none
+     */
+    public Element getElementById(final String id) {
+        return elementsById.get(id);
+    }
+    
+    /**
+     * Returns the elements that have the given class name among the
+     * space-separated tokens of their {@code class} attribute.
+     * 
+     * @param className a single class name
+     * @return the elements, possibly empty
+     */
+    public List<Element> getElementsByClassName(final String className) {
+        return unmodifiable(elementsByClassName.get(className));
+    }
+    
+    /**
+     * Returns the elements of the given kind. The kind must identify a single
+     * element type, see {@link ElementKind#isKnown(int)}.
+     * 
+     * @param kind the kind of the elements, as defined by {@link ElementKind}
+     * @return the elements, possibly empty
+     * @throws IllegalArgumentException if the kind does not identify a single
+     *             element type
+     */
+    public List<Element> getElementsByKind(final int kind) {
+        if ( !ElementKind.isKnown(kind)) {
+            throw new IllegalArgumentException("Not a specific element kind: " + kind);
+        }
+        final KindEntry entry = elementsByKind[kind];
+        if (entry == null) {
+            return Collections.emptyList();
+        }
+        return unmodifiable(entry.elements);
+    }
+    
+    /**
+     * Returns the elements with the given namespace and local name.
+     * 
+     * @param namespace the namespace URI
+     * @param localName the local name
+     * @return the elements, possibly empty
+     */
+    public List<Element> getElementsByTagNameNS(final String namespace, final String localName) {
+        final int kind = ElementKind.kindOf(namespace, localName);
+        final KindEntry entry = elementsByKind[kind];
+        if (entry == null) {
+            return Collections.emptyList();
+        }
+        if (ElementKind.isKnown(kind)) {
+            return unmodifiable(entry.elements);
+        }
+        return unmodifiable(entry.elementsByLocalName.get(localName));
+    }
+    
+}
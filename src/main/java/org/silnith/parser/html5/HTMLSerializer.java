@@ -0,0 +1,396 @@
+package org.silnith.parser.html5;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+import org.silnith.parser.html5.grammar.element.ElementKind;
+import org.w3c.dom.Attr;
+import org.w3c.dom.DocumentType;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.ProcessingInstruction;
+
+
+/**
+ * Serializes DOM nodes as HTML.
+ * <p>
+ * This implements the HTML fragment serialization algorithm, writing directly
+ * to an {@link Appendable} in a single pass over the tree. Text and attribute
+ * values are escaped using tables indexed by character, and runs of
+ * characters that need no escaping are copied in bulk. The tree is walked
+ * without recursion, so deeply nested documents do not exhaust the stack.
+ * <p>
+ * Void elements, raw text elements, and elements that drop a leading newline
+ * are recognized by their {@link ElementKind} category flags, the same way the
+ * parser recognizes them. The template contents of {@code template} elements
+ * are serialized in place of their children, if they have been created.
+ * <p>
+ * Serializing a document and parsing the result again produces an equivalent
+ * document, unless the document contains something the parser could not have
+ * produced, such as a {@code p} element inside another {@code p} element.
+ *
+ * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#serializing-html-fragments">8.3 Serializing HTML fragments</a>
+ * @author <a href="mailto:silnith@gmail.com">Kent Rosenkoetter</a>
+ */
+public class HTMLSerializer {
+    
+    private static final String XLINK_NAMESPACE = "http://www.w3.org/1999/xlink";
+    
+    private static final String XML_NAMESPACE = "http://www.w3.org/XML/1998/namespace";
+    
+    private static final String XMLNS_NAMESPACE = "http://www.w3.org/2000/xmlns/";
+    
+    private static final char NO_BREAK_SPACE = '\u00A0';
+    
+    /**
+     * The replacement for each character that must be escaped in text,
+     * indexed by character. Characters past the end of the table are never
+     * escaped.
+     */
+    private static final String[] TEXT_ESCAPES = new String[NO_BREAK_SPACE + 1];
+    
+    /**
+     * The replacement for each character that must be escaped in attribute
+     * values, indexed by character.
+     */
+    private static final String[] ATTRIBUTE_ESCAPES = new String[NO_BREAK_SPACE + 1];
+    
+    static {
+        TEXT_ESCAPES['&'] = "&amp;";
+        TEXT_ESCAPES[NO_BREAK_SPACE] = "&nbsp;";
+        TEXT_ESCAPES['<'] = "&lt;";
+        TEXT_ESCAPES['>'] = "&gt;";
+        
+        ATTRIBUTE_ESCAPES['&'] = "&amp;";
+        ATTRIBUTE_ESCAPES[NO_BREAK_SPACE] = "&nbsp;";
+        ATTRIBUTE_ESCAPES['"'] = "&quot;";
+    }
+    
+    private boolean scriptingEnabled;
+    
+    /**
+     * The elements whose end tags have not been written yet, while a
+     * serialization is in progress.
+     */
+    private Element[] openElements;
+    
+    /**
+     * The {@link ElementKind} category flags of {@link #openElements}.
+     */
+    private int[] openElementFlags;
+    
+    private int numOpenElements;
+    
+    /**
+     * Constructs a new serializer for documents parsed with scripting
+     * disabled.
+     */
+    public HTMLSerializer() {
+        super();
+        this.scriptingEnabled = false;
+        this.openElements = new Element[32];
+        this.openElementFlags = new int[32];
+        this.numOpenElements = 0;
+    }
+    
+    /**
+     * Sets whether scripting was enabled when the document was parsed. If it
+     * was, the content of {@code noscript} elements is raw text and is not
+     * escaped.
+     * 
+     * @param scriptingEnabled whether scripting is enabled
+     * @see Parser#isScriptingEnabled()
+     */
+    public void setScriptingEnabled(final boolean scriptingEnabled) {
+        this.scriptingEnabled = scriptingEnabled;
+    }
+    
+    /**
+     * Whether scripting is enabled.
+     * 
+     * @return whether the content of {@code noscript} elements is raw text
+     * @see #setScriptingEnabled(boolean)
+     */
+    public boolean isScriptingEnabled() {
+        return scriptingEnabled;
+    }
+    
+    /**
+     * Serializes a node, including the node itself. For an element this is
+     * its outer HTML. For a document or document fragment this is the same
+     * as {@link #serializeChildren(Node, Appendable)}.
+     * 
+     * @param node the node to serialize
+     * @param out the destination
+     * @throws IOException if an I/O error occurs
+     */
+    public void serialize(final Node node, final Appendable out) throws IOException {
+        switch (node.getNodeType()) {
+        case Node.DOCUMENT_NODE: // fall through
+        case Node.DOCUMENT_FRAGMENT_NODE: {
+            serializeChildren(node, out);
+        } break;
+        case Node.ELEMENT_NODE: {
+            final Element element = (Element) node;
+            final int flags = ElementKind.getFlags(ElementKind.of(element));
+            writeStartTag(element, flags, out);
+            if ((flags & ElementKind.VOID) == 0) {
+                serializeChildren(element, out);
+                writeEndTag(element, out);
+            }
+        } break;
+        default: {
+            final Node parent = node.getParentNode();
+            writeLeaf(node, parent != null && isRawText(parent), out);
+        } break;
+        }
+    }
+    
+    /**
+     * Serializes the children of a node, using the HTML fragment
+     * serialization algorithm. For an element this is its inner HTML. The
+     * children of a void element are not serialized.
+     * 
+     * @param node the node whose children to serialize
+     * @param out the destination
+     * @throws IOException if an I/O error occurs
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#html-fragment-serialization-algorithm">HTML fragment serialization algorithm</a>
+     */
+    public void serializeChildren(final Node node, final Appendable out) throws IOException {
+        final boolean rawTextRoot;
+        if (node.getNodeType() == Node.ELEMENT_NODE) {
+            final int flags = ElementKind.getFlags(ElementKind.of((Element) node));
+            if ((flags & ElementKind.VOID) != 0) {
+                return;
+            }
+            rawTextRoot = isRawText((Element) node, flags);
+        } else {
+            rawTextRoot = false;
+        }
+        Node current = getFirstChild(node);
+        numOpenElements = 0;
+        try {
+            while (current != null) {
+                if (current.getNodeType() == Node.ELEMENT_NODE) {
+                    final Element element = (Element) current;
+                    final int flags = ElementKind.getFlags(ElementKind.of(element));
+                    writeStartTag(element, flags, out);
+                    if ((flags & ElementKind.VOID) == 0) {
+                        final Node firstChild = getFirstChild(element);
+                        if (firstChild != null) {
+                            pushOpenElement(element, flags);
+                            current = firstChild;
+                            continue;
+                        }
+                        writeEndTag(element, out);
+                    }
+                } else {
+                    final boolean rawText;
+                    if (numOpenElements == 0) {
+                        rawText = rawTextRoot;
+                    } else {
+                        rawText = isRawText(openElements[numOpenElements - 1], openElementFlags[numOpenElements - 1]);
+                    }
+                    writeLeaf(current, rawText, out);
+                }
+                Node next = current.getNextSibling();
+                while (next == null && numOpenElements > 0) {
+                    numOpenElements-- ;
+                    final Element element = openElements[numOpenElements];
+                    openElements[numOpenElements] = null;
+                    writeEndTag(element, out);
+                    next = element.getNextSibling();
+                }
+                current = next;
+            }
+        } finally {
+            Arrays.fill(openElements, 0, numOpenElements, null);
+            numOpenElements = 0;
+        }
+    }
+    
+    private void pushOpenElement(final Element element, final int flags) {
+        if (numOpenElements == openElements.length) {
+            openElements = Arrays.copyOf(openElements, numOpenElements * 2);
+            openElementFlags = Arrays.copyOf(openElementFlags, numOpenElements * 2);
+        }
+        openElements[numOpenElements] = element;
+        openElementFlags[numOpenElements] = flags;
+        numOpenElements++ ;
+    }
+    
+    /**
+     * Returns the first node to serialize as a child of the given node. For a
+     * {@code template} element whose template contents exist, this is the
+     * first child of the template contents.
+     */
+    private Node getFirstChild(final Node node) {
+        if (node.getNodeType() == Node.ELEMENT_NODE) {
+            final Element element = (Element) node;
+            if (TemplateContents.isTemplateContentsCreated(element)
+                    || TemplateContents.isTemplateContentsDeferred(element)) {
+                return TemplateContents.getTemplateContents(element).getFirstChild();
+            }
+        }
+        return node.getFirstChild();
+    }
+    
+    private boolean isRawText(final Node parent) {
+        if (parent.getNodeType() != Node.ELEMENT_NODE) {
+            return false;
+        }
+        final Element element = (Element) parent;
+        return isRawText(element, ElementKind.getFlags(ElementKind.of(element)));
+    }
+    
+    private boolean isRawText(final Element element, final int flags) {
+        if ((flags & ElementKind.RAW_TEXT) != 0) {
+            return true;
+        }
+        return scriptingEnabled && ElementKind.of(element) == ElementKind.NOSCRIPT;
+    }
+    
+    private void writeStartTag(final Element element, final int flags, final Appendable out) throws IOException {
+        out.append('<');
+        out.append(getTagName(element, flags));
+        if (element.hasAttributes()) {
+            final NamedNodeMap attributes = element.getAttributes();
+            final int length = attributes.getLength();
+            for (int i = 0; i < length; i++ ) {
+                final Attr attribute = (Attr) attributes.item(i);
+                out.append(' ');
+                out.append(getAttributeName(attribute));
+                out.append("=\"");
+                escape(attribute.getValue(), ATTRIBUTE_ESCAPES, out);
+                out.append('"');
+            }
+        }
+        out.append('>');
+        if ((flags & ElementKind.LEADING_NEWLINE) != 0) {
+            final Node firstChild = element.getFirstChild();
+            if (firstChild != null && firstChild.getNodeType() == Node.TEXT_NODE) {
+                final String data = firstChild.getNodeValue();
+                if ( !data.isEmpty() && data.charAt(0) == '\n') {
+                    out.append('\n');
+                }
+            }
+        }
+    }
+    
+    private void writeEndTag(final Element element, final Appendable out) throws IOException {
+        out.append("</");
+        out.append(getTagName(element, ElementKind.getFlags(ElementKind.of(element))));
+        out.append('>');
+    }
+    
+    private void writeLeaf(final Node node, final boolean rawText, final Appendable out) throws IOException {
+        switch (node.getNodeType()) {
+        case Node.TEXT_NODE: // fall through
+        case Node.CDATA_SECTION_NODE: {
+            if (rawText) {
+                out.append(node.getNodeValue());
+            } else {
+                escape(node.getNodeValue(), TEXT_ESCAPES, out);
+            }
+        } break;
+        case Node.COMMENT_NODE: {
+            out.append("<!--");
+            out.append(node.getNodeValue());
+            out.append("-->");
+        } break;
+        case Node.PROCESSING_INSTRUCTION_NODE: {
+            final ProcessingInstruction processingInstruction = (ProcessingInstruction) node;
+            out.append("<?");
+            out.append(processingInstruction.getTarget());
+            out.append(' ');
+            out.append(processingInstruction.getData());
+            out.append('>');
+        } break;
+        case Node.DOCUMENT_TYPE_NODE: {
+            out.append("<!DOCTYPE ");
+            out.append(((DocumentType) node).getName());
+            out.append('>');
+        } break;
+        default: {
+            // nothing is serialized for other node types
+        } break;
+        }
+    }
+    
+    /**
+     * Returns the tag name to serialize for an element. Elements in the HTML,
+     * MathML, and SVG namespaces use their local name, other elements their
+     * qualified name.
+     */
+    private String getTagName(final Element element, final int flags) {
+        final String localName = element.getLocalName();
+        if (localName != null
+                && (flags & (ElementKind.NAMESPACE_HTML | ElementKind.NAMESPACE_MATHML | ElementKind.NAMESPACE_SVG)) != 0) {
+            return localName;
+        }
+        return element.getTagName();
+    }
+    
+    /**
+     * Returns the attribute name to serialize for an attribute.
+     * 
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#attribute's-serialized-name">attribute's serialized name</a>
+     */
+    private String getAttributeName(final Attr attribute) {
+        final String namespace = attribute.getNamespaceURI();
+        final String localName = attribute.getLocalName();
+        if (namespace == null || localName == null) {
+            return attribute.getName();
+        } else if (XML_NAMESPACE.equals(namespace)) {
+            return "xml:" + localName;
+        } else if (XMLNS_NAMESPACE.equals(namespace)) {
+            if ("xmlns".equals(localName)) {
+                return localName;
+            }
+            return "xmlns:" + localName;
+        } else if (XLINK_NAMESPACE.equals(namespace)) {
+            return "xlink:" + localName;
+        } else {
+            return attribute.getName();
+        }
+    }
+    
+    /**
+     * Writes a string, replacing each character that has an entry in the
+     * given table. Runs of characters without an entry are written in a
+     * single call.
+     */
+    private static void escape(final String value, final String[] escapes, final Appendable out) throws IOException {
+        final int length = value.length();
+        int start = 0;
+        for (int i = 0; i < length; i++ ) {
+            final char character = value.charAt(i);
+            if (character < escapes.length && escapes[character] != null) {
+                write(value, start, i, out);
+                out.append(escapes[character]);
+                start = i + 1;
+            }
+        }
+        write(value, start, length, out);
+    }
+    
+    /**
+     * Writes part of a string. A {@link Writer} is given the string directly,
+     * since {@link Writer#append(CharSequence, int, int)} would first copy the
+     * characters into a new string.
+     */
+    private static void write(final String value, final int start, final int end, final Appendable out)
+            throws IOException {
+        if (start == end) {
+            return;
+        }
+        if (out instanceof Writer) {
+            ((Writer) out).write(value, start, end - start);
+        } else {
+            out.append(value, start, end);
+        }
+    }
+    
+}
@@ -85,5 +85,10 @@ public enum ParseErrors {
     /**
      * There is an unexpected element in foreign content.
      */
-    UNEXPECTED_ELEMENT_IN_FOREIGN_CONTENT;
+    UNEXPECTED_ELEMENT_IN_FOREIGN_CONTENT,
+    /**
+     * There is an end tag in foreign content that does not match the current
+     * node.
+     */
+    MISMATCHED_END_TAG_IN_FOREIGN_CONTENT;
 }
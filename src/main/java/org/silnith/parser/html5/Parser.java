@@ -1,14 +1,22 @@
 package org.silnith.parser.html5;
 
+import static org.silnith.parser.util.UnicodeCodePoints.CARRIAGE_RETURN;
+import static org.silnith.parser.util.UnicodeCodePoints.CHARACTER_TABULATION;
+import static org.silnith.parser.util.UnicodeCodePoints.FORM_FEED;
+import static org.silnith.parser.util.UnicodeCodePoints.LINE_FEED;
+import static org.silnith.parser.util.UnicodeCodePoints.SPACE;
+
 import java.io.IOException;
+import java.io.Reader;
 import java.util.ArrayList;
-import java.util.EnumMap;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.ListIterator;
 import java.util.Map;
 
 import org.silnith.parser.ParseErrorException;
+import org.silnith.parser.html5.grammar.dom.ElementFactory;
+import org.silnith.parser.html5.grammar.element.ElementKind;
 import org.silnith.parser.html5.grammar.mode.AfterAfterBodyInsertionMode;
 import org.silnith.parser.html5.grammar.mode.AfterAfterFramesetInsertionMode;
 import org.silnith.parser.html5.grammar.mode.AfterBodyInsertionMode;
@@ -34,19 +42,26 @@ import org.silnith.parser.html5.grammar.mode.InTemplateInsertionMode;
 import org.silnith.parser.html5.grammar.mode.InitialInsertionMode;
 import org.silnith.parser.html5.grammar.mode.InsertionMode;
 import org.silnith.parser.html5.grammar.mode.TextInsertionMode;
+import org.silnith.parser.html5.grammar.mode.WellFormedFastPath;
+import org.silnith.parser.html5.lexical.PipelinedTokenizer;
 import org.silnith.parser.html5.lexical.Tokenizer;
+import org.silnith.parser.html5.lexical.token.CharacterToken;
+import org.silnith.parser.html5.lexical.token.DocumentMode;
+import org.silnith.parser.html5.lexical.token.EndTagToken;
 import org.silnith.parser.html5.lexical.token.StartTagToken;
-import org.silnith.parser.html5.lexical.token.TagToken;
 import org.silnith.parser.html5.lexical.token.Token;
 import org.w3c.dom.DOMImplementation;
 import org.w3c.dom.Document;
+import org.w3c.dom.DocumentFragment;
 import org.w3c.dom.Element;
+import org.w3c.dom.Node;
 
 
 /**
- * An HTML5 parser. This object is not thread-safe, nor re-entrant. It is only
- * suitable for using to parse one token stream into a document. Each token
- * stream to be parsed should instantiate a new parser.
+ * An HTML5 parser. This object is not thread-safe, nor re-entrant. It parses
+ * one token stream into a document at a time. To parse another input, either
+ * instantiate a new parser or call {@link #reset(Reader)}, which reuses the
+ * internal structures of this parser and its tokenizer.
  *
  * @author <a href="mailto:silnith@gmail.com">Kent Rosenkoetter</a>
  * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#tree-construction">8.2.5 Tree construction</a>
@@ -191,19 +206,66 @@ public class Parser {
     
     private final Tokenizer tokenizer;
     
-    private final Map<Mode, InsertionMode> insertionModeMap;
+    /**
+     * The handler for each insertion mode, indexed by {@link Mode#ordinal()}.
+     */
+    private final InsertionMode[] insertionModeTable;
     
     private final InsertionMode foreignContentMode;
     
+    /**
+     * The speculative handler for tokens in the "in body" insertion mode.
+     * 
+     * @see #setWellFormedFastPath(boolean)
+     */
+    private final InsertionMode wellFormedFastPathMode;
+    
+    /**
+     * Whether tokens in the "in body" insertion mode are first offered to the
+     * {@link #wellFormedFastPathMode}.
+     */
+    private boolean wellFormedFastPath;
+    
     private final boolean allowParseErrors;
     
     private final boolean scriptingEnabled;
     
     private boolean fosterParenting;
     
+    /**
+     * Whether the contents of {@code template} elements are parsed only when
+     * they are first requested.
+     */
+    private boolean deferTemplateContents;
+    
+    /**
+     * A {@code template} element whose contents should be deferred once the
+     * current token has been processed.
+     */
+    private Element pendingDeferredTemplate;
+    
+    /**
+     * Whether this parser parses the deferred contents of its context
+     * element, a {@code template} element.
+     */
+    private boolean parsingTemplateContents;
+    
+    /**
+     * The pending table character tokens, kept as the characters alone.
+     * 
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#concept-pending-table-char-tokens">pending table character tokens</a>
+     */
+    private final StringBuilder pendingTableCharacters;
+    
+    /**
+     * Whether any of the {@link #pendingTableCharacters} is not a space
+     * character.
+     */
+    private boolean pendingTableCharactersContainNonSpace;
+    
     private boolean framesetOK;
     
-    private boolean quirksMode;
+    private DocumentMode documentMode;
     
     private Mode insertionMode;
     
@@ -211,18 +273,112 @@ public class Parser {
     
     private boolean stop;
     
-    private final Document document;
+    private final DOMImplementation domImplementation;
+    
+    private Document document;
+    
+    /**
+     * Creates the elements of {@link #document}, caching one prototype for
+     * each element type.
+     */
+    private final ElementFactory elementFactory;
+    
+    /**
+     * The index of the elements created while parsing, or {@code null} if
+     * elements are not indexed.
+     */
+    private ElementIndex elementIndex;
+    
+    /**
+     * The source ranges of the elements created while parsing, or
+     * {@code null} if source ranges are not recorded.
+     */
+    private SourceRanges sourceRanges;
+    
+    /**
+     * The number of tokens between snapshots, or {@code 0} if snapshots are
+     * not taken.
+     */
+    private int snapshotInterval;
+    
+    /**
+     * The builder of the snapshots, or {@code null} if snapshots are not
+     * taken.
+     */
+    private SnapshotBuilder snapshotBuilder;
+    
+    /**
+     * The number of tokens processed since the last snapshot.
+     */
+    private int tokensSinceSnapshot;
+    
+    /**
+     * The latest snapshot, read by other threads.
+     */
+    private volatile TreeSnapshot snapshot;
+    
+    /**
+     * The token currently being processed by the tree construction stage.
+     */
+    private Token currentToken;
+    
+    /**
+     * Whether the next token is dropped if it is a line feed character.
+     */
+    private boolean ignoreNextLineFeed;
     
     private Element headElementPointer;
     
     private Element formElementPointer;
     
-    private final List<Element> stackOfOpenElements;
+    /**
+     * The elements on the stack of open elements, with the {@code html}
+     * element at index {@code 0}. Only the first {@link #numOpenElements}
+     * entries are in use.
+     */
+    private Element[] stackOfOpenElements;
+    
+    /**
+     * The {@link ElementKind} of each element in {@link #stackOfOpenElements}.
+     */
+    private int[] openElementKinds;
+    
+    /**
+     * The {@link ElementKind} category flags of each element in
+     * {@link #stackOfOpenElements}. These also record whether an
+     * {@code annotation-xml} element is an HTML integration point, which
+     * depends on its {@code encoding} attribute.
+     */
+    private int[] openElementFlags;
+    
+    private int numOpenElements;
+    
+    /**
+     * The index of the last {@code table} element in the stack of open
+     * elements, or {@code -1} if there is none.
+     */
+    private int lastOpenTableIndex;
+    
+    /**
+     * The index of the last {@code template} element in the stack of open
+     * elements, or {@code -1} if there is none.
+     */
+    private int lastOpenTemplateIndex;
     
-    public final List<FormattingElement> listOfActiveFormattingElements;
+    private final ActiveFormattingElements listOfActiveFormattingElements;
     
     private final List<Mode> stackOfTemplateInsertionModes;
     
+    /**
+     * The context element for the HTML fragment parsing algorithm, or
+     * {@code null} if this parser is parsing a full document.
+     */
+    private final Element contextElement;
+    
+    private final int contextElementKind;
+    
+    private final int contextElementFlags;
+    
     /**
      * Constructs a new parser that will read from the given tokenizer and
      * construct a document using the given DOM implementation. The DOM
@@ -232,6 +388,47 @@ public class Parser {
      * @param domImplementation the DOM implementation
      */
     public Parser(final Tokenizer tokenizer, final DOMImplementation domImplementation) {
+        this(tokenizer, domImplementation, null);
+    }
+    
+    /**
+     * Constructs a new parser that will read from the given tokenizer and
+     * parse an HTML fragment in the context of the given element. The DOM
+     * implementation must support feature "Core 2.0" or greater. If the
+     * context element is {@code null}, the parser will parse a full document.
+     * 
+     * @param tokenizer the tokenizer
+     * @param domImplementation the DOM implementation
+     * @param contextElement the context element for the fragment, or
+     *            {@code null}
+     * @see #parseFragment()
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#parsing-html-fragments">8.4 Parsing HTML fragments</a>
+     */
+    public Parser(final Tokenizer tokenizer, final DOMImplementation domImplementation, final Element contextElement) {
+        this(tokenizer, domImplementation, contextElement, ParserConfiguration.DEFAULT);
+    }
+    
+    /**
+     * Constructs a new parser that will read from the given tokenizer and
+     * parse an HTML fragment in the context of the given element, using the
+     * given configuration. The DOM implementation must support feature
+     * "Core 2.0" or greater. If the context element is {@code null}, the
+     * parser will parse a full document.
+     * <p>
+     * The configuration determines whether parse errors are allowed and
+     * whether scripting is enabled, which cannot be changed afterwards, and
+     * the initial settings of the optional features. The tokenizer is not
+     * modified, except to retain its input if source ranges are recorded.
+     * 
+     * @param tokenizer the tokenizer
+     * @param domImplementation the DOM implementation
+     * @param contextElement the context element for the fragment, or
+     *            {@code null}
+     * @param configuration the parser configuration
+     * @see ParserFactory
+     */
+    public Parser(final Tokenizer tokenizer, final DOMImplementation domImplementation, final Element contextElement,
+            final ParserConfiguration configuration) {
         super();
         
         if ( !domImplementation.hasFeature("Core", "2.0")) {
@@ -239,46 +436,218 @@ public class Parser {
         }
         
         this.tokenizer = tokenizer;
-        this.insertionModeMap = new EnumMap<>(Mode.class);
+        this.insertionModeTable = new InsertionMode[Mode.values().length];
         this.foreignContentMode = new ForeignContentMode(this);
-        this.allowParseErrors = true;
-        this.scriptingEnabled = false;
+        this.wellFormedFastPathMode = new WellFormedFastPath(this);
+        this.wellFormedFastPath = configuration.isWellFormedFastPath();
+        this.allowParseErrors = configuration.isAllowParseErrors();
+        this.scriptingEnabled = configuration.isScriptingEnabled();
         this.fosterParenting = false;
+        this.deferTemplateContents = configuration.isDeferTemplateContents();
+        this.pendingDeferredTemplate = null;
+        this.parsingTemplateContents = false;
+        this.pendingTableCharacters = new StringBuilder();
+        this.pendingTableCharactersContainNonSpace = false;
         this.framesetOK = true;
-        this.quirksMode = false;
+        this.documentMode = DocumentMode.NO_QUIRKS;
         this.insertionMode = Mode.INITIAL;
         this.originalInsertionMode = null;
         this.stop = false;
+        this.domImplementation = domImplementation;
         this.document = domImplementation.createDocument(InsertionMode.HTML_NAMESPACE, "html", null);
+        this.elementFactory = new ElementFactory(document);
+        if (configuration.isIndexElements()) {
+            this.elementIndex = new ElementIndex();
+        } else {
+            this.elementIndex = null;
+        }
+        if (configuration.isRecordSourceRanges()) {
+            tokenizer.setRetainInput(true);
+            this.sourceRanges = new SourceRanges(tokenizer.getRetainedInput());
+        } else {
+            this.sourceRanges = null;
+        }
+        this.snapshotInterval = 0;
+        this.snapshotBuilder = null;
+        this.tokensSinceSnapshot = 0;
+        this.snapshot = null;
+        setSnapshotInterval(configuration.getSnapshotInterval());
+        this.currentToken = null;
+        this.ignoreNextLineFeed = false;
         this.headElementPointer = null;
         this.formElementPointer = null;
-        this.stackOfOpenElements = new ArrayList<>();
-        this.listOfActiveFormattingElements = new ArrayList<>();
+        this.stackOfOpenElements = new Element[32];
+        this.openElementKinds = new int[32];
+        this.openElementFlags = new int[32];
+        this.numOpenElements = 0;
+        this.lastOpenTableIndex = -1;
+        this.lastOpenTemplateIndex = -1;
+        this.listOfActiveFormattingElements = new ActiveFormattingElements();
         this.stackOfTemplateInsertionModes = new ArrayList<>();
+        this.contextElement = contextElement;
+        if (contextElement == null) {
+            this.contextElementKind = ElementKind.OTHER;
+            this.contextElementFlags = 0;
+        } else {
+            this.contextElementKind = ElementKind.of(contextElement);
+            this.contextElementFlags = computeOpenElementFlags(contextElement, contextElementKind);
+        }
         
-        this.insertionModeMap.put(Mode.INITIAL, new InitialInsertionMode(this));
-        this.insertionModeMap.put(Mode.BEFORE_HTML, new BeforeHtmlInsertionMode(this));
-        this.insertionModeMap.put(Mode.BEFORE_HEAD, new BeforeHeadInsertionMode(this));
-        this.insertionModeMap.put(Mode.IN_HEAD, new InHeadInsertionMode(this));
-        this.insertionModeMap.put(Mode.IN_HEAD_NOSCRIPT, new InHeadNoScriptInsertionMode(this));
-        this.insertionModeMap.put(Mode.AFTER_HEAD, new AfterHeadInsertionMode(this));
-        this.insertionModeMap.put(Mode.IN_BODY, new InBodyInsertionMode(this));
-        this.insertionModeMap.put(Mode.TEXT, new TextInsertionMode(this));
-        this.insertionModeMap.put(Mode.IN_TABLE, new InTableInsertionMode(this));
-        this.insertionModeMap.put(Mode.IN_TABLE_TEXT, new InTableTextInsertionMode(this));
-        this.insertionModeMap.put(Mode.IN_CAPTION, new InCaptionInsertionMode(this));
-        this.insertionModeMap.put(Mode.IN_COLUMN_GROUP, new InColumnGroupInsertionMode(this));
-        this.insertionModeMap.put(Mode.IN_TABLE_BODY, new InTableBodyInsertionMode(this));
-        this.insertionModeMap.put(Mode.IN_ROW, new InRowInsertionMode(this));
-        this.insertionModeMap.put(Mode.IN_CELL, new InCellInsertionMode(this));
-        this.insertionModeMap.put(Mode.IN_SELECT, new InSelectInsertionMode(this));
-        this.insertionModeMap.put(Mode.IN_SELECT_IN_TABLE, new InSelectInTableInsertionMode(this));
-        this.insertionModeMap.put(Mode.IN_TEMPLATE, new InTemplateInsertionMode(this));
-        this.insertionModeMap.put(Mode.AFTER_BODY, new AfterBodyInsertionMode(this));
-        this.insertionModeMap.put(Mode.IN_FRAMESET, new InFramesetInsertionMode(this));
-        this.insertionModeMap.put(Mode.AFTER_FRAMESET, new AfterFramesetInsertionMode(this));
-        this.insertionModeMap.put(Mode.AFTER_AFTER_BODY, new AfterAfterBodyInsertionMode(this));
-        this.insertionModeMap.put(Mode.AFTER_AFTER_FRAMESET, new AfterAfterFramesetInsertionMode(this));
+        this.insertionModeTable[Mode.INITIAL.ordinal()] = new InitialInsertionMode(this);
+        this.insertionModeTable[Mode.BEFORE_HTML.ordinal()] = new BeforeHtmlInsertionMode(this);
+        this.insertionModeTable[Mode.BEFORE_HEAD.ordinal()] = new BeforeHeadInsertionMode(this);
+        this.insertionModeTable[Mode.IN_HEAD.ordinal()] = new InHeadInsertionMode(this);
+        this.insertionModeTable[Mode.IN_HEAD_NOSCRIPT.ordinal()] = new InHeadNoScriptInsertionMode(this);
+        this.insertionModeTable[Mode.AFTER_HEAD.ordinal()] = new AfterHeadInsertionMode(this);
+        this.insertionModeTable[Mode.IN_BODY.ordinal()] = new InBodyInsertionMode(this);
+        this.insertionModeTable[Mode.TEXT.ordinal()] = new TextInsertionMode(this);
+        this.insertionModeTable[Mode.IN_TABLE.ordinal()] = new InTableInsertionMode(this);
+        this.insertionModeTable[Mode.IN_TABLE_TEXT.ordinal()] = new InTableTextInsertionMode(this);
+        this.insertionModeTable[Mode.IN_CAPTION.ordinal()] = new InCaptionInsertionMode(this);
+        this.insertionModeTable[Mode.IN_COLUMN_GROUP.ordinal()] = new InColumnGroupInsertionMode(this);
+        this.insertionModeTable[Mode.IN_TABLE_BODY.ordinal()] = new InTableBodyInsertionMode(this);
+        this.insertionModeTable[Mode.IN_ROW.ordinal()] = new InRowInsertionMode(this);
+        this.insertionModeTable[Mode.IN_CELL.ordinal()] = new InCellInsertionMode(this);
+        this.insertionModeTable[Mode.IN_SELECT.ordinal()] = new InSelectInsertionMode(this);
+        this.insertionModeTable[Mode.IN_SELECT_IN_TABLE.ordinal()] = new InSelectInTableInsertionMode(this);
+        this.insertionModeTable[Mode.IN_TEMPLATE.ordinal()] = new InTemplateInsertionMode(this);
+        this.insertionModeTable[Mode.AFTER_BODY.ordinal()] = new AfterBodyInsertionMode(this);
+        this.insertionModeTable[Mode.IN_FRAMESET.ordinal()] = new InFramesetInsertionMode(this);
+        this.insertionModeTable[Mode.AFTER_FRAMESET.ordinal()] = new AfterFramesetInsertionMode(this);
+        this.insertionModeTable[Mode.AFTER_AFTER_BODY.ordinal()] = new AfterAfterBodyInsertionMode(this);
+        this.insertionModeTable[Mode.AFTER_AFTER_FRAMESET.ordinal()] = new AfterAfterFramesetInsertionMode(this);
+    }
+    
+    /**
+     * Prepares this parser to parse a new input, discarding all state from the
+     * previous parse. The tokenizer is reset to read from the given input, and
+     * a new document is created from the same DOM implementation. The stack of
+     * open elements, the list of active formatting elements, the stack of
+     * template insertion modes, the pending table characters, and the element
+     * pointers are emptied, and every flag returns to its initial value.
+     * <p>
+     * The arrays and objects backing these structures, the insertion mode
+     * handlers, and the tokenizer states are all kept, so a parser that is
+     * reset and reused does not pay for constructing them again. The options
+     * set on this parser, such as {@link #setDeferTemplateContents(boolean)}
+     * and {@link #setRecordSourceRanges(boolean)}, and the context element
+     * for fragment parsing remain in effect. A new {@link ElementIndex} and
+     * {@link SourceRanges} are started if those are enabled, so the ones
+     * returned for the previous document are not modified.
+     * 
+     * @param in the new input
+     * @see Tokenizer#reset(Reader)
+     */
+    public void reset(final Reader in) {
+        tokenizer.reset(in);
+        this.fosterParenting = false;
+        this.pendingDeferredTemplate = null;
+        this.pendingTableCharacters.setLength(0);
+        this.pendingTableCharactersContainNonSpace = false;
+        this.framesetOK = true;
+        this.documentMode = DocumentMode.NO_QUIRKS;
+        this.insertionMode = Mode.INITIAL;
+        this.originalInsertionMode = null;
+        this.stop = false;
+        this.document = domImplementation.createDocument(InsertionMode.HTML_NAMESPACE, "html", null);
+        this.elementFactory.reset(document);
+        if (elementIndex != null) {
+            this.elementIndex = new ElementIndex();
+        }
+        if (sourceRanges != null) {
+            this.sourceRanges = new SourceRanges(tokenizer.getRetainedInput());
+        }
+        if (snapshotBuilder != null) {
+            this.snapshotBuilder = new SnapshotBuilder();
+        }
+        this.tokensSinceSnapshot = 0;
+        this.snapshot = null;
+        this.currentToken = null;
+        this.ignoreNextLineFeed = false;
+        this.headElementPointer = null;
+        this.formElementPointer = null;
+        Arrays.fill(stackOfOpenElements, 0, numOpenElements, null);
+        this.numOpenElements = 0;
+        this.lastOpenTableIndex = -1;
+        this.lastOpenTemplateIndex = -1;
+        this.listOfActiveFormattingElements.clear();
+        this.stackOfTemplateInsertionModes.clear();
+    }
+    
+    /**
+     * Prepares this parser to continue parsing from a state captured by
+     * {@link #parsePrefix()}, on the rest of a document. The input must start
+     * right after the end of the prefix. All state from the previous parse is
+     * discarded, as with {@link #reset(Reader)}, and replaced with a copy of
+     * the given state, including a copy of the document built for the prefix.
+     * The state itself is not modified, so it may be restored again.
+     * <p>
+     * If this parser indexes elements, the elements copied from the prefix
+     * are indexed in document order.
+     * 
+     * @param state the state to continue from
+     * @param in the rest of the input
+     * @throws IllegalStateException if this parser is parsing a fragment or
+     *             recording source ranges
+     * @throws IllegalArgumentException if the state was captured with a
+     *             different scripting flag
+     * @see Tokenizer#restore(Tokenizer.Checkpoint, Reader)
+     */
+    public void restoreState(final ParserState state, final Reader in) {
+        if (isHTMLFragmentParsingAlgorithm()) {
+            throw new IllegalStateException("Cannot restore the state of a document into a fragment parser.");
+        }
+        if (sourceRanges != null) {
+            throw new IllegalStateException("Cannot restore a state while recording source ranges.");
+        }
+        if (state.isScriptingFlag() != scriptingEnabled) {
+            throw new IllegalArgumentException("The state was captured with a different scripting flag.");
+        }
+        reset(in);
+        tokenizer.restore(state.checkpoint, in);
+        final Map<Node, Node> copies = new IdentityHashMap<>();
+        this.document = state.copyDocument(domImplementation, copies);
+        this.elementFactory.reset(document);
+        if (elementIndex != null) {
+            indexElements(document.getDocumentElement());
+        }
+        this.pendingTableCharacters.append(state.pendingTableCharacters);
+        this.pendingTableCharactersContainNonSpace = state.pendingTableCharactersContainNonSpace;
+        this.framesetOK = state.isFramesetOKFlag();
+        this.documentMode = state.getDocumentMode();
+        this.insertionMode = state.getInsertionMode();
+        this.originalInsertionMode = state.getOriginalInsertionMode();
+        this.ignoreNextLineFeed = state.ignoreNextLineFeed;
+        this.headElementPointer = (Element) copies.get(state.getHeadElementPointer());
+        this.formElementPointer = (Element) copies.get(state.getFormElementPointer());
+        final int count = state.openElements.length;
+        ensureOpenElementsCapacity(count);
+        for (int i = 0; i < count; i++ ) {
+            stackOfOpenElements[i] = (Element) copies.get(state.openElements[i]);
+        }
+        System.arraycopy(state.openElementKinds, 0, openElementKinds, 0, count);
+        System.arraycopy(state.openElementFlags, 0, openElementFlags, 0, count);
+        this.numOpenElements = count;
+        this.lastOpenTableIndex = findLastOpenElementOfKind(ElementKind.TABLE, count - 1);
+        this.lastOpenTemplateIndex = findLastOpenElementOfKind(ElementKind.TEMPLATE, count - 1);
+        for (final FormattingElement entry : state.activeFormattingElements) {
+            if (entry == null) {
+                listOfActiveFormattingElements.addMarker();
+            } else {
+                listOfActiveFormattingElements.insert(listOfActiveFormattingElements.size(), entry.getKey(),
+                        (Element) copies.get(entry.getValue()));
+            }
+        }
+        this.stackOfTemplateInsertionModes.addAll(state.getTemplateInsertionModes());
+    }
+    
+    private void indexElements(final Element element) {
+        elementIndex.add(element, ElementKind.of(element));
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE) {
+                indexElements((Element) child);
+            }
+        }
     }
     
     /**
@@ -291,6 +660,119 @@ public class Parser {
         return allowParseErrors;
     }
     
+    /**
+     * Sets whether the contents of {@code template} elements are parsed only
+     * when they are first requested using
+     * {@link TemplateContents#getTemplateContents(Element)}. By default they
+     * are parsed along with the rest of the document.
+     * <p>
+     * When enabled, the parser records the source of each {@code template}
+     * element's contents and skips ahead to the matching end tag without
+     * constructing any nodes. This saves the work of building contents that
+     * are never inspected.
+     * <p>
+     * Deferred contents are parsed the same way as contents that are not
+     * deferred, but the end of the contents is found from the tag names
+     * alone. It may differ from where parsing would end them when a
+     * {@code template}, raw text, or {@code plaintext} start tag appears
+     * inside {@code svg} or {@code math} content, where it does not start an
+     * HTML element, or a {@code plaintext} start tag appears inside a
+     * {@code select} element. Formatting elements left open inside a table
+     * cell in the contents are not reconstructed after the {@code template}
+     * element, as they are when the contents are not deferred.
+     * 
+     * @param deferTemplateContents whether to defer parsing template contents
+     * @see TemplateContents
+     */
+    public void setDeferTemplateContents(final boolean deferTemplateContents) {
+        this.deferTemplateContents = deferTemplateContents;
+    }
+    
+    /**
+     * Whether the contents of {@code template} elements are parsed only when
+     * they are first requested.
+     * 
+     * @return whether template contents are deferred
+     * @see #setDeferTemplateContents(boolean)
+     */
+    public boolean isDeferTemplateContents() {
+        return deferTemplateContents;
+    }
+    
+    /**
+     * Sets whether the parser speculates that the markup in the document body
+     * is properly nested. By default it does not.
+     * <p>
+     * When enabled, each token in the "in body" insertion mode is first
+     * offered to a fast path that handles start tags that are inserted
+     * unchanged and end tags that close the current node, without any of the
+     * error recovery machinery. The first token it cannot handle that way is
+     * processed by the full insertion mode, which shares the same stack of
+     * open elements and list of active formatting elements. The resulting
+     * document is identical either way.
+     * 
+     * @param wellFormedFastPath whether to use the fast path
+     * @see WellFormedFastPath
+     */
+    public void setWellFormedFastPath(final boolean wellFormedFastPath) {
+        this.wellFormedFastPath = wellFormedFastPath;
+    }
+    
+    /**
+     * Whether the parser speculates that the markup in the document body is
+     * properly nested.
+     * 
+     * @return whether the fast path is used
+     * @see #setWellFormedFastPath(boolean)
+     */
+    public boolean isWellFormedFastPath() {
+        return wellFormedFastPath;
+    }
+    
+    /**
+     * Defers the contents of the given {@code template} element, which must
+     * be the current node. Once the current token has been processed, the
+     * source up to the matching end tag is consumed from the tokenizer and
+     * recorded on the element, and the element is popped off the stack of
+     * open elements.
+     * 
+     * @param template the {@code template} element that was just inserted
+     * @see #setDeferTemplateContents(boolean)
+     */
+    public void deferTemplateContents(final Element template) {
+        if (getCurrentOpenElement() != template) {
+            throw new IllegalStateException("The template element must be the current node.");
+        }
+        pendingDeferredTemplate = template;
+    }
+    
+    /**
+     * Returns whether this parser parses the deferred contents of a
+     * {@code template} element. The contents are parsed as a fragment with
+     * the {@code template} element as the context element, but they must
+     * come out the same as if they had been parsed along with the document,
+     * so the steps that only apply to the fragment case when the
+     * {@code template} element would have been on the stack of open elements
+     * are skipped.
+     * 
+     * @return {@code true} if this parser parses deferred template contents
+     * @see TemplateContents
+     */
+    public boolean isParsingTemplateContents() {
+        return parsingTemplateContents;
+    }
+    
+    /**
+     * Marks this parser as parsing the deferred contents of its context
+     * element.
+     */
+    /* package */void setParsingTemplateContents() {
+        if (contextElementKind != ElementKind.TEMPLATE) {
+            throw new IllegalStateException("The context element must be a template element.");
+        }
+        this.parsingTemplateContents = true;
+    }
+    
     /**
      * Returns whether this parser is parsing an HTML fragment as opposed to a
      * full document.
@@ -300,7 +782,31 @@ public class Parser {
      * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#fragment-case">fragment case</a>
      */
     public boolean isHTMLFragmentParsingAlgorithm() {
-        return false;
+        return contextElement != null;
+    }
+    
+    /**
+     * Returns the context element of the HTML fragment parsing algorithm.
+     * 
+     * @return the context element, or {@code null} if this parser is parsing
+     *         a full document
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#concept-frag-parse-context">context</a>
+     */
+    public Element getContextElement() {
+        return contextElement;
+    }
+    
+    /**
+     * Returns the kind of the context element of the HTML fragment parsing
+     * algorithm.
+     * 
+     * @return the kind of the context element, as defined by
+     *         {@link ElementKind}, or {@link ElementKind#OTHER} if this parser
+     *         is parsing a full document
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#concept-frag-parse-context">context</a>
+     */
+    public int getContextElementKind() {
+        return contextElementKind;
     }
     
     /**
@@ -329,6 +835,60 @@ public class Parser {
         this.fosterParenting = enabled;
     }
     
+    /**
+     * Empties the pending table character tokens.
+     * 
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#concept-pending-table-char-tokens">pending table character tokens</a>
+     */
+    public void clearPendingTableCharacters() {
+        pendingTableCharacters.setLength(0);
+        pendingTableCharactersContainNonSpace = false;
+    }
+    
+    /**
+     * Appends a character to the pending table character tokens.
+     * 
+     * @param character the character to append
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#concept-pending-table-char-tokens">pending table character tokens</a>
+     */
+    public void appendToPendingTableCharacters(final char character) {
+        pendingTableCharacters.append(character);
+        switch (character) {
+        case CHARACTER_TABULATION: // fall through
+        case LINE_FEED: // fall through
+        case FORM_FEED: // fall through
+        case CARRIAGE_RETURN: // fall through
+        case SPACE: {
+        } break;
+        default: {
+            pendingTableCharactersContainNonSpace = true;
+        } break;
+        }
+    }
+    
+    /**
+     * Returns the pending table character tokens as a string.
+     * 
+     * @return the pending table characters
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#concept-pending-table-char-tokens">pending table character tokens</a>
+     */
+    public String getPendingTableCharacters() {
+        return pendingTableCharacters.toString();
+    }
+    
+    /**
+     * Returns whether any of the pending table character tokens is not a
+     * space character.
+     * 
+     * @return {@code true} if there is a pending character that is not a space
+     *         character
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#concept-pending-table-char-tokens">pending table character tokens</a>
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/infrastructure.html#space-character">space characters</a>
+     */
+    public boolean isPendingTableCharactersContainNonSpace() {
+        return pendingTableCharactersContainNonSpace;
+    }
+    
     /**
      * @return {@code true} if frameset is OK
      * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#frameset-ok-flag">frameset-ok flag</a>
@@ -350,7 +910,7 @@ public class Parser {
      * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/infrastructure.html#quirks-mode">quirks mode</a>
      */
     public boolean isQuirksMode() {
-        return quirksMode;
+        return documentMode == DocumentMode.QUIRKS;
     }
     
     /**
@@ -358,7 +918,30 @@ public class Parser {
      * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/infrastructure.html#quirks-mode">quirks mode</a>
      */
     public void setQuirksMode(final boolean quirksMode) {
-        this.quirksMode = quirksMode;
+        if (quirksMode) {
+            this.documentMode = DocumentMode.QUIRKS;
+        } else {
+            this.documentMode = DocumentMode.NO_QUIRKS;
+        }
+    }
+    
+    /**
+     * @return the mode of the document being constructed
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/infrastructure.html#no-quirks-mode">no-quirks mode</a>
+     */
+    public DocumentMode getDocumentMode() {
+        return documentMode;
+    }
+    
+    /**
+     * @param documentMode the mode of the document being constructed
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/infrastructure.html#no-quirks-mode">no-quirks mode</a>
+     */
+    public void setDocumentMode(final DocumentMode documentMode) {
+        if (documentMode == null) {
+            throw new IllegalArgumentException("Document mode cannot be null.");
+        }
+        this.documentMode = documentMode;
     }
     
     /**
@@ -414,76 +997,353 @@ public class Parser {
         stop = true;
     }
     
+    /**
+     * Returns the tokenizer this parser reads from.
+     * 
+     * @return the tokenizer
+     */
+    public Tokenizer getTokenizer() {
+        return tokenizer;
+    }
+    
     public Document getDocument() {
         return document;
     }
     
     /**
-     * @return the {@code head} element, if any
-     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#head-element-pointer"><code>head</code> element pointer</a>
+     * Returns the factory that creates the elements of the document.
+     * 
+     * @return the element factory
      */
-    public Element getHeadElementPointer() {
-        return headElementPointer;
+    public ElementFactory getElementFactory() {
+        return elementFactory;
     }
     
     /**
-     * @param element the {@code head} element
-     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#head-element-pointer"><code>head</code> element pointer</a>
+     * Sets whether the parser indexes the elements it creates by ID, class
+     * name, and element type. By default it does not. This must be set before
+     * parsing begins.
+     * 
+     * @param indexElements whether to index elements
+     * @see #getElementIndex()
      */
-    public void setHeadElementPointer(final Element element) {
-        this.headElementPointer = element;
+    public void setIndexElements(final boolean indexElements) {
+        if (indexElements) {
+            if (elementIndex == null) {
+                elementIndex = new ElementIndex();
+            }
+        } else {
+            elementIndex = null;
+        }
     }
     
     /**
-     * @return the current {@code form} element, if any
-     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#form-element-pointer"><code>form</code> element pointer</a>
+     * Whether the parser indexes the elements it creates.
+     * 
+     * @return whether elements are indexed
+     * @see #setIndexElements(boolean)
      */
-    public Element getFormElementPointer() {
-        return formElementPointer;
+    public boolean isIndexElements() {
+        return elementIndex != null;
     }
     
     /**
-     * @param formElement the current {@code form} element
-     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#form-element-pointer"><code>form</code> element pointer</a>
+     * Returns the index of the elements created while parsing.
+     * 
+     * @return the element index, or {@code null} if elements are not indexed
+     * @see #setIndexElements(boolean)
      */
-    public void setFormElementPointer(final Element formElement) {
-        this.formElementPointer = formElement;
+    public ElementIndex getElementIndex() {
+        return elementIndex;
     }
     
     /**
-     * Returns the number of elements on the stack of open elements.
+     * Sets whether the parser records the range of the input that produced
+     * each element it creates. By default it does not. Recording source ranges
+     * makes the tokenizer retain the input it consumes. This must be set
+     * before parsing begins.
      * 
-     * @return the number of elements on the stack of open elements
-     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#stack-of-open-elements">stack of open elements</a>
+     * @param recordSourceRanges whether to record source ranges
+     * @throws IllegalStateException if parsing has already begun
+     * @see #getSourceRanges()
      */
-    public int getNumOpenElements() {
-        return stackOfOpenElements.size();
+    public void setRecordSourceRanges(final boolean recordSourceRanges) {
+        if (recordSourceRanges) {
+            if (sourceRanges == null) {
+                tokenizer.setRetainInput(true);
+                sourceRanges = new SourceRanges(tokenizer.getRetainedInput());
+            }
+        } else if (sourceRanges != null) {
+            tokenizer.setRetainInput(false);
+            sourceRanges = null;
+        }
     }
     
     /**
-     * Returns an {@link Iterable} over the stack of open elements. The
-     * direction of iteration is not guaranteed.
+     * Whether the parser records the source ranges of the elements it creates.
      * 
-     * @return an {@link Iterable} over the stack of open elements
-     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#stack-of-open-elements">stack of open elements</a>
+     * @return whether source ranges are recorded
+     * @see #setRecordSourceRanges(boolean)
      */
-    public Iterable<Element> getOpenElementsIterable() {
-        return stackOfOpenElements;
+    public boolean isRecordSourceRanges() {
+        return sourceRanges != null;
     }
     
     /**
-     * Adds the given element to the stack of open elements. This will be the
-     * new current open element.
+     * Returns the source ranges of the elements created while parsing.
      * 
-     * @param element the element to add to the stack of open elements
-     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#current-node">current node</a>
-     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#stack-of-open-elements">stack of open elements</a>
+     * @return the source ranges, or {@code null} if source ranges are not
+     *         recorded
+     * @see #setRecordSourceRanges(boolean)
+     */
+    public SourceRanges getSourceRanges() {
+        return sourceRanges;
+    }
+    
+    /**
+     * Sets how often the parser publishes a {@link TreeSnapshot} of the
+     * document while parsing it with {@link #parse()}. A snapshot is taken
+     * after every {@code snapshotInterval} tokens, and once more when parsing
+     * is done. By default no snapshots are taken. This must be set before
+     * parsing begins.
+     * 
+     * @param snapshotInterval the number of tokens between snapshots, or
+     *            {@code 0} to take no snapshots
+     * @throws IllegalArgumentException if the interval is negative
+     * @see #getSnapshot()
+     */
+    public void setSnapshotInterval(final int snapshotInterval) {
+        if (snapshotInterval < 0) {
+            throw new IllegalArgumentException("Snapshot interval cannot be negative: " + snapshotInterval);
+        }
+        this.snapshotInterval = snapshotInterval;
+        if (snapshotInterval == 0) {
+            snapshotBuilder = null;
+        } else if (snapshotBuilder == null) {
+            snapshotBuilder = new SnapshotBuilder();
+        }
+    }
+    
+    /**
+     * Returns the number of tokens between snapshots.
+     * 
+     * @return the snapshot interval, or {@code 0} if no snapshots are taken
+     * @see #setSnapshotInterval(int)
+     */
+    public int getSnapshotInterval() {
+        return snapshotInterval;
+    }
+    
+    /**
+     * Returns the latest snapshot of the document. Unlike the rest of this
+     * parser, this may be called from any thread while the document is being
+     * parsed.
+     * 
+     * @return the latest snapshot, or {@code null} if none has been taken
+     * @see #setSnapshotInterval(int)
+     */
+    public TreeSnapshot getSnapshot() {
+        return snapshot;
+    }
+    
+    /**
+     * Publishes a snapshot of the document. This must only be called between
+     * tokens.
+     * 
+     * @param complete whether parsing is done
+     */
+    private void takeSnapshot(final boolean complete) {
+        tokensSinceSnapshot = 0;
+        final Element reopenable;
+        switch (insertionMode) {
+        case INITIAL: // fall through
+        case BEFORE_HTML: {
+            /*
+             * The root element is created along with the document, but it is
+             * not on the stack of open elements until the html start tag.
+             */
+            reopenable = document.getDocumentElement();
+        } break;
+        case AFTER_HEAD: {
+            /*
+             * The head element is pushed back onto the stack of open
+             * elements for any head content that comes after it.
+             */
+            reopenable = headElementPointer;
+        } break;
+        default: {
+            reopenable = null;
+        } break;
+        }
+        snapshot = snapshotBuilder.snapshot(document, stackOfOpenElements, numOpenElements, reopenable,
+                tokenizer.getPosition(), complete);
+    }
+    
+    /**
+     * Records the start of the source range of a newly created element, if
+     * the parser records source ranges. If the element was created for the
+     * token currently being processed, its start tag is that token. Otherwise
+     * the parser created the element on its own, and it has an empty start
+     * tag at the start of the current token.
+     * 
+     * @param element the new element
+     * @param token the token the element was created for
+     * @see #setRecordSourceRanges(boolean)
+     */
+    public void startSourceRange(final Element element, final Token token) {
+        if (sourceRanges != null) {
+            final int tokenStart = tokenizer.getTokenStart();
+            if (token == currentToken) {
+                sourceRanges.setStartTag(element, tokenStart, tokenizer.getTokenEnd());
+            } else {
+                sourceRanges.setStartTag(element, tokenStart, tokenStart);
+            }
+        }
+    }
+    
+    /**
+     * Records the end of the source range of an element that is being closed,
+     * if the parser records source ranges. If the token currently being
+     * processed is an end tag with the same tag name, that is the end tag of
+     * the element. If it is the start tag of the element, the element has no
+     * content. Otherwise the element was closed implicitly, and it has an
+     * empty end tag at the start of the current token.
+     * 
+     * @param element the element being closed
+     * @see #setRecordSourceRanges(boolean)
+     */
+    public void endSourceRange(final Element element) {
+        if (sourceRanges == null || currentToken == null) {
+            return;
+        }
+        final int tokenStart = tokenizer.getTokenStart();
+        final int tokenEnd = tokenizer.getTokenEnd();
+        if (currentToken.getType() == Token.Type.END_TAG
+                && ((EndTagToken) currentToken).getTagName().equalsIgnoreCase(element.getLocalName())) {
+            sourceRanges.setEndTag(element, tokenStart, tokenEnd);
+        } else if (sourceRanges.getStartTagStart(element) == tokenStart
+                && sourceRanges.getStartTagEnd(element) == tokenEnd && tokenEnd > tokenStart) {
+            sourceRanges.setEndTag(element, tokenEnd, tokenEnd);
+        } else {
+            sourceRanges.setEndTag(element, tokenStart, tokenStart);
+        }
+    }
+    
+    /**
+     * Forgets the end of the source range of an element, because the parser
+     * went back to inserting content into it. This happens when content
+     * follows the {@code body} or {@code html} end tag.
+     * 
+     * @param element the element that is open again
+     * @see #setRecordSourceRanges(boolean)
+     */
+    public void reopenSourceRange(final Element element) {
+        if (sourceRanges != null) {
+            sourceRanges.clearEndTag(element);
+        }
+    }
+    
+    /**
+     * @return the {@code head} element, if any
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#head-element-pointer"><code>head</code> element pointer</a>
+     */
+    public Element getHeadElementPointer() {
+        return headElementPointer;
+    }
+    
+    /**
+     * @param element the {@code head} element
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#head-element-pointer"><code>head</code> element pointer</a>
+     */
+    public void setHeadElementPointer(final Element element) {
+        this.headElementPointer = element;
+    }
+    
+    /**
+     * @return the current {@code form} element, if any
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#form-element-pointer"><code>form</code> element pointer</a>
+     */
+    public Element getFormElementPointer() {
+        return formElementPointer;
+    }
+    
+    /**
+     * @param formElement the current {@code form} element
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#form-element-pointer"><code>form</code> element pointer</a>
+     */
+    public void setFormElementPointer(final Element formElement) {
+        this.formElementPointer = formElement;
+    }
+    
+    /**
+     * Returns the number of elements on the stack of open elements.
+     * 
+     * @return the number of elements on the stack of open elements
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#stack-of-open-elements">stack of open elements</a>
+     */
+    public int getNumOpenElements() {
+        return numOpenElements;
+    }
+    
+    /**
+     * Returns an {@link Iterable} over the stack of open elements. The
+     * direction of iteration is not guaranteed.
+     * 
+     * @return an {@link Iterable} over the stack of open elements
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#stack-of-open-elements">stack of open elements</a>
+     */
+    public Iterable<Element> getOpenElementsIterable() {
+        return Arrays.asList(stackOfOpenElements).subList(0, numOpenElements);
+    }
+    
+    private void ensureOpenElementsCapacity(final int capacity) {
+        if (capacity > stackOfOpenElements.length) {
+            final int newLength = Math.max(capacity, stackOfOpenElements.length * 2);
+            stackOfOpenElements = Arrays.copyOf(stackOfOpenElements, newLength);
+            openElementKinds = Arrays.copyOf(openElementKinds, newLength);
+            openElementFlags = Arrays.copyOf(openElementFlags, newLength);
+        }
+    }
+    
+    /**
+     * Adds the given element to the stack of open elements. This will be the
+     * new current open element.
+     * 
+     * @param element the element to add to the stack of open elements
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#current-node">current node</a>
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#stack-of-open-elements">stack of open elements</a>
      */
     public void pushOpenElement(final Element element) {
         if (element == null) {
             throw new IllegalArgumentException("Element cannot be null.");
         }
-        stackOfOpenElements.add(element);
+        pushOpenElement(element, ElementKind.of(element));
+    }
+    
+    /**
+     * Adds the given element to the stack of open elements. This will be the
+     * new current open element. The caller supplies the kind of the element so
+     * that it does not need to be looked up.
+     * 
+     * @param element the element to add to the stack of open elements
+     * @param kind the kind of the element, as defined by {@link ElementKind}
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#current-node">current node</a>
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#stack-of-open-elements">stack of open elements</a>
+     */
+    public void pushOpenElement(final Element element, final int kind) {
+        if (element == null) {
+            throw new IllegalArgumentException("Element cannot be null.");
+        }
+        ensureOpenElementsCapacity(numOpenElements + 1);
+        stackOfOpenElements[numOpenElements] = element;
+        openElementKinds[numOpenElements] = kind;
+        openElementFlags[numOpenElements] = computeOpenElementFlags(element, kind);
+        if (kind == ElementKind.TABLE) {
+            lastOpenTableIndex = numOpenElements;
+        } else if (kind == ElementKind.TEMPLATE) {
+            lastOpenTemplateIndex = numOpenElements;
+        }
+        numOpenElements++ ;
     }
     
     /**
@@ -495,7 +1355,19 @@ public class Parser {
      * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#stack-of-open-elements">stack of open elements</a>
      */
     public Element popOpenElement() {
-        return stackOfOpenElements.remove(getNumOpenElements() - 1);
+        if (numOpenElements == 0) {
+            throw new IndexOutOfBoundsException("The stack of open elements is empty.");
+        }
+        numOpenElements-- ;
+        final Element element = stackOfOpenElements[numOpenElements];
+        stackOfOpenElements[numOpenElements] = null;
+        endSourceRange(element);
+        if (lastOpenTableIndex == numOpenElements) {
+            lastOpenTableIndex = findLastOpenElementOfKind(ElementKind.TABLE, numOpenElements - 1);
+        } else if (lastOpenTemplateIndex == numOpenElements) {
+            lastOpenTemplateIndex = findLastOpenElementOfKind(ElementKind.TEMPLATE, numOpenElements - 1);
+        }
+        return element;
     }
     
     /**
@@ -505,7 +1377,24 @@ public class Parser {
      * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#current-node">current node</a>
      */
     public Element getCurrentOpenElement() {
-        return getOpenElement(getNumOpenElements() - 1);
+        return getOpenElement(numOpenElements - 1);
+    }
+    
+    /**
+     * Returns the kind of the current open element.
+     * 
+     * @return the kind of the current open element, as defined by
+     *         {@link ElementKind}
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#current-node">current node</a>
+     */
+    public int getCurrentOpenElementKind() {
+        return getOpenElementKind(numOpenElements - 1);
+    }
+    
+    private void checkOpenElementIndex(final int index) {
+        if (index < 0 || index >= numOpenElements) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + numOpenElements);
+        }
     }
     
     /**
@@ -518,19 +1407,184 @@ public class Parser {
      * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#stack-of-open-elements">stack of open elements</a>
      */
     public Element getOpenElement(final int index) {
-        return stackOfOpenElements.get(index);
+        checkOpenElementIndex(index);
+        return stackOfOpenElements[index];
+    }
+    
+    /**
+     * Returns the kind of the open element at the given index.
+     * 
+     * @param index the index of the open element
+     * @return the kind of the open element, as defined by {@link ElementKind}
+     * @see #getOpenElement(int)
+     */
+    public int getOpenElementKind(final int index) {
+        checkOpenElementIndex(index);
+        return openElementKinds[index];
+    }
+    
+    /**
+     * Returns the {@link ElementKind} category flags of the open element at
+     * the given index. Unlike {@link ElementKind#getFlags(int)}, these include
+     * {@link ElementKind#HTML_INTEGRATION_POINT} for a MathML
+     * {@code annotation-xml} element whose {@code encoding} attribute makes it
+     * an HTML integration point.
+     * 
+     * @param index the index of the open element
+     * @return the category flags of the open element
+     * @see #getOpenElement(int)
+     */
+    public int getOpenElementFlags(final int index) {
+        checkOpenElementIndex(index);
+        return openElementFlags[index];
+    }
+    
+    /**
+     * Returns the {@link ElementKind} category flags of the current open
+     * element.
+     * 
+     * @return the category flags of the current open element
+     * @see #getOpenElementFlags(int)
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#current-node">current node</a>
+     */
+    public int getCurrentOpenElementFlags() {
+        return getOpenElementFlags(numOpenElements - 1);
+    }
+    
+    /**
+     * Computes the category flags that are stored alongside an element on the
+     * stack of open elements. This is done once when the element is added to
+     * the stack so that the tree construction dispatcher does not need to
+     * examine the element for every token.
+     * 
+     * @param element the element
+     * @param kind the kind of the element
+     * @return the category flags for the element
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#html-integration-point">HTML integration point</a>
+     */
+    private static int computeOpenElementFlags(final Element element, final int kind) {
+        final int flags = ElementKind.getFlags(kind);
+        if (kind == ElementKind.MATHML_ANNOTATION_XML) {
+            final String encodingAttribute = element.getAttribute("encoding");
+            if ("text/html".equalsIgnoreCase(encodingAttribute)
+                    || "application/xhtml+xml".equalsIgnoreCase(encodingAttribute)) {
+                return flags | ElementKind.HTML_INTEGRATION_POINT;
+            }
+        }
+        return flags;
     }
     
     public Element setOpenElement(final int index, final Element element) {
-        return stackOfOpenElements.set(index, element);
+        return setOpenElement(index, element, ElementKind.of(element));
+    }
+    
+    public Element setOpenElement(final int index, final Element element, final int kind) {
+        checkOpenElementIndex(index);
+        final Element previous = stackOfOpenElements[index];
+        final int previousKind = openElementKinds[index];
+        if (previous != element) {
+            endSourceRange(previous);
+        }
+        stackOfOpenElements[index] = element;
+        openElementKinds[index] = kind;
+        openElementFlags[index] = computeOpenElementFlags(element, kind);
+        if (previousKind == ElementKind.TABLE || kind == ElementKind.TABLE) {
+            lastOpenTableIndex = findLastOpenElementOfKind(ElementKind.TABLE, numOpenElements - 1);
+        }
+        if (previousKind == ElementKind.TEMPLATE || kind == ElementKind.TEMPLATE) {
+            lastOpenTemplateIndex = findLastOpenElementOfKind(ElementKind.TEMPLATE, numOpenElements - 1);
+        }
+        return previous;
     }
     
     public void insertOpenElement(final int index, final Element element) {
-        stackOfOpenElements.add(index, element);
+        insertOpenElement(index, element, ElementKind.of(element));
+    }
+    
+    public void insertOpenElement(final int index, final Element element, final int kind) {
+        if (index < 0 || index > numOpenElements) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + numOpenElements);
+        }
+        ensureOpenElementsCapacity(numOpenElements + 1);
+        System.arraycopy(stackOfOpenElements, index, stackOfOpenElements, index + 1, numOpenElements - index);
+        System.arraycopy(openElementKinds, index, openElementKinds, index + 1, numOpenElements - index);
+        System.arraycopy(openElementFlags, index, openElementFlags, index + 1, numOpenElements - index);
+        stackOfOpenElements[index] = element;
+        openElementKinds[index] = kind;
+        openElementFlags[index] = computeOpenElementFlags(element, kind);
+        numOpenElements++ ;
+        if (lastOpenTableIndex >= index) {
+            lastOpenTableIndex++ ;
+        } else if (kind == ElementKind.TABLE) {
+            lastOpenTableIndex = index;
+        }
+        if (lastOpenTemplateIndex >= index) {
+            lastOpenTemplateIndex++ ;
+        } else if (kind == ElementKind.TEMPLATE) {
+            lastOpenTemplateIndex = index;
+        }
+    }
+    
+    /**
+     * Replaces the open elements from index {@code from} (inclusive) to index
+     * {@code to} (exclusive) with the given elements, in a single step. This
+     * is used to splice the stack of open elements without removing and
+     * inserting elements one at a time.
+     * 
+     * @param from the index of the first element to replace
+     * @param to the index after the last element to replace
+     * @param elements the new elements
+     * @param count the number of new elements to use from {@code elements}
+     */
+    public void replaceOpenElements(final int from, final int to, final Element[] elements, final int count) {
+        if (from < 0 || to > numOpenElements || from > to) {
+            throw new IndexOutOfBoundsException("From: " + from + ", To: " + to + ", Size: " + numOpenElements);
+        }
+        if (sourceRanges != null) {
+            for (int i = from; i < to; i++ ) {
+                boolean kept = false;
+                for (int j = 0; j < count && !kept; j++ ) {
+                    kept = elements[j] == stackOfOpenElements[i];
+                }
+                if ( !kept) {
+                    endSourceRange(stackOfOpenElements[i]);
+                }
+            }
+        }
+        final int newSize = numOpenElements - (to - from) + count;
+        ensureOpenElementsCapacity(newSize);
+        final int tail = numOpenElements - to;
+        System.arraycopy(stackOfOpenElements, to, stackOfOpenElements, from + count, tail);
+        System.arraycopy(openElementKinds, to, openElementKinds, from + count, tail);
+        System.arraycopy(openElementFlags, to, openElementFlags, from + count, tail);
+        boolean tableOrTemplate = false;
+        for (int i = 0; i < count; i++ ) {
+            final Element element = elements[i];
+            final int kind = ElementKind.of(element);
+            stackOfOpenElements[from + i] = element;
+            openElementKinds[from + i] = kind;
+            openElementFlags[from + i] = computeOpenElementFlags(element, kind);
+            tableOrTemplate |= kind == ElementKind.TABLE || kind == ElementKind.TEMPLATE;
+        }
+        if (newSize < numOpenElements) {
+            Arrays.fill(stackOfOpenElements, newSize, numOpenElements, null);
+        }
+        numOpenElements = newSize;
+        final int shift = count - (to - from);
+        if (tableOrTemplate || (lastOpenTableIndex >= from && lastOpenTableIndex < to)) {
+            lastOpenTableIndex = findLastOpenElementOfKind(ElementKind.TABLE, numOpenElements - 1);
+        } else if (lastOpenTableIndex >= to) {
+            lastOpenTableIndex += shift;
+        }
+        if (tableOrTemplate || (lastOpenTemplateIndex >= from && lastOpenTemplateIndex < to)) {
+            lastOpenTemplateIndex = findLastOpenElementOfKind(ElementKind.TEMPLATE, numOpenElements - 1);
+        } else if (lastOpenTemplateIndex >= to) {
+            lastOpenTemplateIndex += shift;
+        }
     }
     
     public Element replaceOpenElement(final Element oldElement, final Element newElement) {
-        return stackOfOpenElements.set(stackOfOpenElements.indexOf(oldElement), newElement);
+        return setOpenElement(getIndexOfOpenElement(oldElement), newElement);
     }
     
     /**
@@ -541,17 +1595,84 @@ public class Parser {
      * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#stack-of-open-elements">stack of open elements</a>
      */
     public boolean containsOpenElement(final Element element) {
-        if (element == null) {
-            throw new IllegalArgumentException("Element cannot be null.");
-        }
-        return stackOfOpenElements.contains(element);
+        return getIndexOfOpenElement(element) != -1;
     }
     
     public int getIndexOfOpenElement(final Element element) {
         if (element == null) {
             throw new IllegalArgumentException("Element cannot be null.");
         }
-        return stackOfOpenElements.indexOf(element);
+        for (int index = numOpenElements - 1; index >= 0; index-- ) {
+            if (stackOfOpenElements[index] == element) {
+                return index;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Removes the open element at the given index from the stack of open
+     * elements.
+     * 
+     * @param index the index of the element to remove
+     * @return the removed element
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#stack-of-open-elements">stack of open elements</a>
+     */
+    public Element removeOpenElement(final int index) {
+        checkOpenElementIndex(index);
+        final Element element = stackOfOpenElements[index];
+        endSourceRange(element);
+        numOpenElements-- ;
+        System.arraycopy(stackOfOpenElements, index + 1, stackOfOpenElements, index, numOpenElements - index);
+        System.arraycopy(openElementKinds, index + 1, openElementKinds, index, numOpenElements - index);
+        System.arraycopy(openElementFlags, index + 1, openElementFlags, index, numOpenElements - index);
+        stackOfOpenElements[numOpenElements] = null;
+        if (lastOpenTableIndex > index) {
+            lastOpenTableIndex-- ;
+        } else if (lastOpenTableIndex == index) {
+            lastOpenTableIndex = findLastOpenElementOfKind(ElementKind.TABLE, index - 1);
+        }
+        if (lastOpenTemplateIndex > index) {
+            lastOpenTemplateIndex-- ;
+        } else if (lastOpenTemplateIndex == index) {
+            lastOpenTemplateIndex = findLastOpenElementOfKind(ElementKind.TEMPLATE, index - 1);
+        }
+        return element;
+    }
+    
+    private int findLastOpenElementOfKind(final int kind, final int from) {
+        for (int index = from; index >= 0; index-- ) {
+            if (openElementKinds[index] == kind) {
+                return index;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Returns the index of the last {@code table} element in the stack of
+     * open elements. This is kept up to date as the stack changes, so it does
+     * not require a search.
+     * 
+     * @return the index of the last {@code table} element, or {@code -1} if
+     *         there is none
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#appropriate-place-for-inserting-a-node">appropriate place for inserting a node</a>
+     */
+    public int getIndexOfLastOpenTable() {
+        return lastOpenTableIndex;
+    }
+    
+    /**
+     * Returns the index of the last {@code template} element in the stack of
+     * open elements. This is kept up to date as the stack changes, so it does
+     * not require a search.
+     * 
+     * @return the index of the last {@code template} element, or {@code -1}
+     *         if there is none
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#appropriate-place-for-inserting-a-node">appropriate place for inserting a node</a>
+     */
+    public int getIndexOfLastOpenTemplate() {
+        return lastOpenTemplateIndex;
     }
     
     /**
@@ -561,10 +1682,10 @@ public class Parser {
      * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#stack-of-open-elements">stack of open elements</a>
      */
     public void removeOpenElement(final Element element) {
-        if (element == null) {
-            throw new IllegalArgumentException("Element cannot be null.");
+        final int index = getIndexOfOpenElement(element);
+        if (index != -1) {
+            removeOpenElement(index);
         }
-        stackOfOpenElements.remove(element);
     }
     
     /**
@@ -573,60 +1694,59 @@ public class Parser {
      */
     public Element getAdjustedCurrentNode() {
         if (getNumOpenElements() == 1 && isHTMLFragmentParsingAlgorithm()) {
-            throw new UnsupportedOperationException();
+            return contextElement;
         } else {
             return getCurrentOpenElement();
         }
     }
     
-    public boolean isActiveFormattingElementsContains(final Element element) {
-        for (final FormattingElement formattingElement : listOfActiveFormattingElements) {
-            if ( !isMarker(formattingElement)) {
-                if (formattingElement.getValue() == element) {
-                    return true;
-                }
-            }
+    /**
+     * Returns the kind of the adjusted current node.
+     * 
+     * @return the kind of the adjusted current node, as defined by
+     *         {@link ElementKind}
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#adjusted-current-node">adjusted current node</a>
+     */
+    public int getAdjustedCurrentNodeKind() {
+        if (getNumOpenElements() == 1 && isHTMLFragmentParsingAlgorithm()) {
+            return contextElementKind;
+        } else {
+            return getCurrentOpenElementKind();
         }
-        return false;
     }
     
-    private static class StartTokenComparable {
-        
-        private final String tagName;
-        
-        private final String namespace;
-        
-        private final Map<String, String> attributes;
-        
-        public StartTokenComparable(final StartTagToken startTagToken, final Element element) {
-            super();
-            this.tagName = element.getTagName();
-            this.namespace = element.getNamespaceURI();
-            this.attributes = new HashMap<>();
-            for (final TagToken.Attribute attr : startTagToken.getAttributes()) {
-                this.attributes.put(attr.getName(), attr.getValue());
-            }
-        }
-        
-        @Override
-        public boolean equals(final Object object) {
-            if (object instanceof StartTokenComparable) {
-                final StartTokenComparable other = (StartTokenComparable) object;
-                return tagName.equals(other.tagName) && namespace.equals(other.namespace)
-                        && attributes.equals(other.attributes);
-            }
-            return false;
-        }
-        
-        @Override
-        public int hashCode() {
-            return tagName.hashCode() ^ namespace.hashCode() ^ attributes.hashCode();
+    /**
+     * Returns the {@link ElementKind} category flags of the adjusted current
+     * node.
+     * 
+     * @return the category flags of the adjusted current node
+     * @see #getOpenElementFlags(int)
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#adjusted-current-node">adjusted current node</a>
+     */
+    public int getAdjustedCurrentNodeFlags() {
+        if (getNumOpenElements() == 1 && isHTMLFragmentParsingAlgorithm()) {
+            return contextElementFlags;
+        } else {
+            return getCurrentOpenElementFlags();
         }
-        
+    }
+    
+    /**
+     * Returns the list of active formatting elements.
+     * 
+     * @return the list of active formatting elements
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#the-list-of-active-formatting-elements">8.2.3.3 The list of active formatting elements</a>
+     */
+    public ActiveFormattingElements getListOfActiveFormattingElements() {
+        return listOfActiveFormattingElements;
+    }
+    
+    public boolean isActiveFormattingElementsContains(final Element element) {
+        return listOfActiveFormattingElements.contains(element);
     }
     
     public void addMarkerToListOfActiveFormattingElements() {
-        listOfActiveFormattingElements.add(getMarker());
+        listOfActiveFormattingElements.addMarker();
     }
     
     /**
@@ -654,35 +1774,7 @@ public class Parser {
      * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#push-onto-the-list-of-active-formatting-elements">push onto the list of active formatting elements</a>
      */
     public void pushOntoListOfActiveFormattingElements(final StartTagToken startTagToken, final Element element) {
-        final StartTokenComparable expected = new StartTokenComparable(startTagToken, element);
-        int count = 0;
-        final ListIterator<FormattingElement> iter =
-                listOfActiveFormattingElements.listIterator(listOfActiveFormattingElements.size());
-        while (iter.hasPrevious()) {
-            final FormattingElement previous = iter.previous();
-            if (isMarker(previous)) {
-                iter.next();
-                break;
-            }
-            final StartTokenComparable actual = new StartTokenComparable(previous.getKey(), previous.getValue());
-            if (expected.equals(actual)) {
-                count++ ;
-            }
-        }
-        if (count >= 3) {
-            while (iter.hasNext()) {
-                final FormattingElement next = iter.next();
-                if (isMarker(next)) {
-                    continue;
-                }
-                final StartTokenComparable actual = new StartTokenComparable(next.getKey(), next.getValue());
-                if (expected.equals(actual)) {
-                    iter.remove();
-                    break;
-                }
-            }
-        }
-        listOfActiveFormattingElements.add(new FormattingElement(startTagToken, element));
+        listOfActiveFormattingElements.push(startTagToken, element);
     }
     
     /**
@@ -696,18 +1788,114 @@ public class Parser {
         return element == null;
     }
     
-    private FormattingElement getMarker() {
-        return null;
-    }
-    
     /**
      * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#clear-the-list-of-active-formatting-elements-up-to-the-last-marker">clear the list of active formatting elements up to the last marker</a>
      */
     public void clearActiveFormattingElements() {
-        FormattingElement popped;
-        do {
-            popped = listOfActiveFormattingElements.remove(listOfActiveFormattingElements.size() - 1);
-        } while ( !isMarker(popped) && !listOfActiveFormattingElements.isEmpty());
+        listOfActiveFormattingElements.clearToLastMarker();
+    }
+    
+    /**
+     * Resets the insertion mode appropriately based on the stack of open
+     * elements. In the fragment case, the context element takes the place of
+     * the first element in the stack of open elements.
+     * 
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#reset-the-insertion-mode-appropriately">reset the insertion mode appropriately</a>
+     */
+    public void resetInsertionModeAppropriately() {
+        for (int index = getNumOpenElements() - 1; index >= 0; index-- ) {
+            final boolean last = (index == 0);
+            final int kind;
+            if (last && isHTMLFragmentParsingAlgorithm()) {
+                kind = contextElementKind;
+            } else {
+                kind = getOpenElementKind(index);
+            }
+            switch (kind) {
+            case ElementKind.SELECT: {
+                if (last) {
+                    setInsertionMode(Mode.IN_SELECT);
+                    return;
+                }
+                for (int ancestorIndex = index; ancestorIndex >= 0; ancestorIndex-- ) {
+                    final int ancestorKind = getOpenElementKind(ancestorIndex);
+                    if (ancestorKind == ElementKind.TEMPLATE) {
+                        break;
+                    }
+                    if (ancestorKind == ElementKind.TABLE) {
+                        setInsertionMode(Mode.IN_SELECT_IN_TABLE);
+                        return;
+                    }
+                }
+                setInsertionMode(Mode.IN_SELECT);
+                return;
+            } // break;
+            case ElementKind.TD: // fall through
+            case ElementKind.TH: {
+                if ( !last) {
+                    setInsertionMode(Mode.IN_CELL);
+                    return;
+                }
+            } break;
+            case ElementKind.TR: {
+                setInsertionMode(Mode.IN_ROW);
+                return;
+            } // break;
+            case ElementKind.TBODY: // fall through
+            case ElementKind.THEAD: // fall through
+            case ElementKind.TFOOT: {
+                setInsertionMode(Mode.IN_TABLE_BODY);
+                return;
+            } // break;
+            case ElementKind.CAPTION: {
+                setInsertionMode(Mode.IN_CAPTION);
+                return;
+            } // break;
+            case ElementKind.COLGROUP: {
+                setInsertionMode(Mode.IN_COLUMN_GROUP);
+                return;
+            } // break;
+            case ElementKind.TABLE: {
+                setInsertionMode(Mode.IN_TABLE);
+                return;
+            } // break;
+            case ElementKind.TEMPLATE: {
+                setInsertionMode(getCurrentTemplateInsertionMode());
+                return;
+            } // break;
+            case ElementKind.HEAD: {
+                if ( !last) {
+                    setInsertionMode(Mode.IN_HEAD);
+                    return;
+                }
+            } break;
+            case ElementKind.BODY: {
+                setInsertionMode(Mode.IN_BODY);
+                return;
+            } // break;
+            case ElementKind.FRAMESET: {
+                setInsertionMode(Mode.IN_FRAMESET);
+                return;
+            } // break;
+            case ElementKind.HTML: {
+                if (getHeadElementPointer() == null) {
+                    setInsertionMode(Mode.BEFORE_HEAD);
+                    return;
+                } else {
+                    setInsertionMode(Mode.AFTER_HEAD);
+                    return;
+                }
+            } // break;
+            default: {
+            } break;
+            }
+            if (last) {
+                setInsertionMode(Mode.IN_BODY);
+                return;
+            }
+        }
+        assert false;
+        throw new IllegalStateException("Should have exited loop in the last check of the loop above.");
     }
     
     public void pushTemplateInsertionMode(final Mode mode) {
@@ -749,26 +1937,7 @@ public class Parser {
         if (element == null) {
             throw new IllegalArgumentException("Element cannot be null");
         }
-        final String namespace = element.getNamespaceURI();
-        final String tagName = element.getTagName();
-        if (InsertionMode.MATHML_NAMESPACE.equals(namespace)) {
-            if ("mi".equals(tagName)) {
-                return true;
-            }
-            if ("mo".equals(tagName)) {
-                return true;
-            }
-            if ("mn".equals(tagName)) {
-                return true;
-            }
-            if ("ms".equals(tagName)) {
-                return true;
-            }
-            if ("mtext".equals(tagName)) {
-                return true;
-            }
-        }
-        return false;
+        return ElementKind.isA(ElementKind.of(element), ElementKind.MATHML_TEXT_INTEGRATION_POINT);
     }
     
     /**
@@ -780,84 +1949,60 @@ public class Parser {
         if (element == null) {
             throw new IllegalArgumentException("Element cannot be null");
         }
-        final String namespace = element.getNamespaceURI();
-        final String tagName = element.getTagName();
-        final String encodingAttribute = element.getAttribute("encoding");
-        
-        if (InsertionMode.MATHML_NAMESPACE.equals(namespace) && "annotation-xml".equals(tagName)
-                && "text/html".equalsIgnoreCase(encodingAttribute)) {
-            return true;
-        }
-        if (InsertionMode.MATHML_NAMESPACE.equals(namespace) && "annotation-xml".equals(tagName)
-                && "application/xhtml+xml".equalsIgnoreCase(encodingAttribute)) {
-            return true;
-        }
-        if (InsertionMode.SVG_NAMESPACE.equals(namespace) && "foreignObject".equals(tagName)) {
-            return true;
-        }
-        if (InsertionMode.SVG_NAMESPACE.equals(namespace) && "desc".equals(tagName)) {
-            return true;
-        }
-        if (InsertionMode.SVG_NAMESPACE.equals(namespace) && "title".equals(tagName)) {
-            return true;
-        }
-        return false;
+        return (computeOpenElementFlags(element, ElementKind.of(element)) & ElementKind.HTML_INTEGRATION_POINT) != 0;
     }
     
     /**
-     * Dispatch the next token to the current mode. This is prototype code and
-     * not used.
+     * Dispatch the next token to the current mode or to the rules for parsing
+     * tokens in foreign content. The decision only uses the category flags
+     * cached on the stack of open elements, so no string comparisons are made.
      * 
      * @param token the token to dispatch
+     * @return whether the token was handled. {@code false} means the token
+     *         needs to be reprocessed.
      * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#tree-construction-dispatcher">tree construction dispatcher</a>
      */
     protected boolean treeConstructionDispatcher(final Token token) {
         if (token == null) {
-            throw new IllegalArgumentException("Element cannot be null");
+            throw new IllegalArgumentException("Token cannot be null");
         }
-        final Element adjustedCurrentNode = getAdjustedCurrentNode();
-        
-        if (adjustedCurrentNode == null) {
+        if (getNumOpenElements() == 0) {
             return processUsingRulesFor(insertionMode, token);
         }
         
-        final String namespace = adjustedCurrentNode.getNamespaceURI();
-        
-        if (InsertionMode.HTML_NAMESPACE.equals(namespace)) {
-            return processUsingRulesFor(insertionMode, token);
-        }
+        final int flags = getAdjustedCurrentNodeFlags();
         
-        if (isMathMLTextIntegrationPoint(adjustedCurrentNode) && token.getType() == Token.Type.START_TAG) {
-            final StartTagToken startTagToken = (StartTagToken) token;
-            final String tagName = startTagToken.getTagName();
-            if ( !"mglyph".equals(tagName) && !"malignmark".equals(tagName)) {
-                return processUsingRulesFor(insertionMode, token);
+        if ((flags & ElementKind.NAMESPACE_HTML) != 0) {
+            if (wellFormedFastPath && insertionMode == Mode.IN_BODY && wellFormedFastPathMode.insert(token)) {
+                return true;
             }
-        }
-        
-        if (isMathMLTextIntegrationPoint(adjustedCurrentNode) && token.getType() == Token.Type.CHARACTER) {
             return processUsingRulesFor(insertionMode, token);
         }
         
-        if (InsertionMode.MATHML_NAMESPACE.equals(namespace)
-                && "annotation-xml".equals(adjustedCurrentNode.getTagName())
-                && token.getType() == Token.Type.START_TAG) {
-            final StartTagToken startTagToken = (StartTagToken) token;
-            final String tagName = startTagToken.getTagName();
-            if ("svg".equals(tagName)) {
+        final Token.Type type = token.getType();
+        
+        if ((flags & ElementKind.MATHML_TEXT_INTEGRATION_POINT) != 0) {
+            if (type == Token.Type.START_TAG) {
+                final String tagName = ((StartTagToken) token).getTagName();
+                if ( !"mglyph".equals(tagName) && !"malignmark".equals(tagName)) {
+                    return processUsingRulesFor(insertionMode, token);
+                }
+            } else if (type == Token.Type.CHARACTER) {
                 return processUsingRulesFor(insertionMode, token);
             }
         }
         
-        if (isHTMLIntegrationPoint(adjustedCurrentNode) && token.getType() == Token.Type.START_TAG) {
+        if (type == Token.Type.START_TAG && getAdjustedCurrentNodeKind() == ElementKind.MATHML_ANNOTATION_XML
+                && "svg".equals(((StartTagToken) token).getTagName())) {
             return processUsingRulesFor(insertionMode, token);
         }
         
-        if (isHTMLIntegrationPoint(adjustedCurrentNode) && token.getType() == Token.Type.CHARACTER) {
+        if ((flags & ElementKind.HTML_INTEGRATION_POINT) != 0
+                && (type == Token.Type.START_TAG || type == Token.Type.CHARACTER)) {
             return processUsingRulesFor(insertionMode, token);
         }
         
-        if (token.getType() == Token.Type.EOF) {
+        if (type == Token.Type.EOF) {
             return processUsingRulesFor(insertionMode, token);
         }
         
@@ -882,18 +2027,50 @@ public class Parser {
         tokenizer.acknowledgeSelfClosingFlag();
     }
     
+    /**
+     * Causes the next token to be ignored if it is a "LF" (U+000A) character
+     * token. This is used after the start tags of {@code pre},
+     * {@code listing}, and {@code textarea} elements, since newlines at the
+     * start of those elements are ignored as an authoring convenience.
+     */
+    public void ignoreNextLineFeed() {
+        ignoreNextLineFeed = true;
+    }
+    
     public void emitToken() throws IOException {
-        final Token token = getNextToken();
+        emitToken(getNextToken());
+    }
+    
+    private void emitToken(final Token token) throws IOException {
+        currentToken = token;
+        if (ignoreNextLineFeed) {
+            ignoreNextLineFeed = false;
+            if (token.getType() == Token.Type.CHARACTER && ((CharacterToken) token).getCharacter() == LINE_FEED) {
+                return;
+            }
+        }
         int count = 0;
         boolean accepted;
         do {
-//            accepted = treeConstructionDispatcher(token);
-            accepted = processUsingRulesFor(insertionMode, token);
+            accepted = treeConstructionDispatcher(token);
             if (count++ > 1024) {
                 System.out.println(count + " : " + token);
                 throw new ParseErrorException("Too many stack frames emitting token in parser.");
             }
         } while ( !accepted);
+        if (pendingDeferredTemplate != null) {
+            final Element template = pendingDeferredTemplate;
+            pendingDeferredTemplate = null;
+            final String source = tokenizer.consumeTemplateContents();
+            TemplateContents.deferTemplateContents(template, source, tokenizer.isAllowParseErrors(), scriptingEnabled,
+                    documentMode);
+            if (sourceRanges != null) {
+                final int contentEnd = sourceRanges.getStartTagEnd(template) + source.length();
+                sourceRanges.setEndTag(template, contentEnd, tokenizer.getTokenEnd());
+            }
+            final Element popped = popOpenElement();
+            assert popped == template;
+        }
 //        if (count > 1) {
 //            System.out.println(count + " : " + token);
 //        } else {
@@ -918,19 +2095,217 @@ public class Parser {
         if (token == null) {
             throw new IllegalArgumentException("Token cannot be null");
         }
-        final InsertionMode modeHandler = insertionModeMap.get(mode);
+        final InsertionMode modeHandler = insertionModeTable[mode.ordinal()];
         return modeHandler.insert(token);
     }
     
+    /**
+     * Parses the input as a full document. A failure to read the input is
+     * printed, and the document parsed up to that point is returned.
+     * 
+     * @return the parsed document
+     * @see #parseChecked()
+     */
     public Document parse() {
         try {
-            while ( !stop) {
-                emitToken();
-            }
+            emitAllTokens();
         } catch (final IOException e) {
             e.printStackTrace();
         }
+        finishParsing();
+        return document;
+    }
+    
+    /**
+     * Parses the input as a full document. This is the same as
+     * {@link #parse()}, except that a failure to read the input is thrown to
+     * the caller.
+     * 
+     * @return the parsed document
+     * @throws IOException if the input cannot be read
+     */
+    public Document parseChecked() throws IOException {
+        emitAllTokens();
+        finishParsing();
         return document;
     }
     
+    private void emitAllTokens() throws IOException {
+        try {
+            while ( !stop) {
+                emitToken();
+                if (snapshotBuilder != null && ++tokensSinceSnapshot >= snapshotInterval) {
+                    takeSnapshot(false);
+                }
+            }
+        } finally {
+            stopTokenizing();
+        }
+    }
+    
+    /**
+     * Stops a tokenizer that tokenizes ahead on another thread, so that it
+     * does not outlive parsing when tree construction fails.
+     */
+    private void stopTokenizing() {
+        if (tokenizer instanceof PipelinedTokenizer) {
+            ((PipelinedTokenizer) tokenizer).close();
+        }
+    }
+    
+    private void finishParsing() {
+        if (sourceRanges != null) {
+            sourceRanges.closeAll(tokenizer.getPosition());
+        }
+        if (snapshotBuilder != null) {
+            takeSnapshot(true);
+        }
+    }
+    
+    /**
+     * Parses the input as a prefix shared by many documents, such as the
+     * markup at the start of every page generated from the same site
+     * template, and returns the state of this parser at the end of it. Each
+     * document can then be parsed from that state using
+     * {@link #restoreState(ParserState, Reader)}, without parsing the prefix
+     * again.
+     * <p>
+     * Parsing stops when the tokenizer reaches the end of the input, before
+     * the end-of-file token is processed, so the elements that are still open
+     * are left open. The prefix must end between two tokens, such as right
+     * after the {@code >} of a tag, since the end of the prefix is otherwise
+     * tokenized as the end of the input, and it must not end with a carriage
+     * return.
+     * 
+     * @return the state of this parser at the end of the prefix
+     * @throws IOException if the input cannot be read
+     * @throws IllegalStateException if this parser is parsing a fragment or
+     *             recording source ranges, or the prefix does not end between
+     *             two tokens
+     * @see ParserState
+     */
+    public ParserState parsePrefix() throws IOException {
+        if (isHTMLFragmentParsingAlgorithm()) {
+            throw new IllegalStateException("Cannot parse a prefix of a fragment.");
+        }
+        if (sourceRanges != null) {
+            throw new IllegalStateException("Cannot parse a prefix while recording source ranges.");
+        }
+        try {
+            Token token = getNextToken();
+            while (token.getType() != Token.Type.EOF) {
+                emitToken(token);
+                if (snapshotBuilder != null && ++tokensSinceSnapshot >= snapshotInterval) {
+                    takeSnapshot(false);
+                }
+                token = getNextToken();
+            }
+        } finally {
+            stopTokenizing();
+        }
+        return captureState();
+    }
+    
+    /**
+     * Captures the state of this parser between two tokens. The document is
+     * copied, so the state is not affected by anything this parser does
+     * afterwards.
+     * 
+     * @return the current state
+     */
+    private ParserState captureState() {
+        final Tokenizer.Checkpoint checkpoint = tokenizer.checkpoint();
+        final Map<Node, Node> copies = new IdentityHashMap<>();
+        final Document copy = ParserState.copyDocument(document, domImplementation, copies);
+        final Element[] openElements = new Element[numOpenElements];
+        for (int i = 0; i < numOpenElements; i++ ) {
+            openElements[i] = ParserState.copyOf(stackOfOpenElements[i], copy, copies);
+        }
+        final FormattingElement[] activeFormattingElements =
+                new FormattingElement[listOfActiveFormattingElements.size()];
+        for (int i = 0; i < activeFormattingElements.length; i++ ) {
+            final FormattingElement entry = listOfActiveFormattingElements.get(i);
+            if (entry != null) {
+                activeFormattingElements[i] =
+                        new FormattingElement(entry.getKey(), ParserState.copyOf(entry.getValue(), copy, copies));
+            }
+        }
+        return new ParserState(copy, checkpoint, insertionMode, originalInsertionMode, openElements,
+                Arrays.copyOf(openElementKinds, numOpenElements), Arrays.copyOf(openElementFlags, numOpenElements),
+                activeFormattingElements, stackOfTemplateInsertionModes,
+                ParserState.copyOf(headElementPointer, copy, copies),
+                ParserState.copyOf(formElementPointer, copy, copies), scriptingEnabled, framesetOK, documentMode,
+                pendingTableCharacters.toString(), pendingTableCharactersContainNonSpace, ignoreNextLineFeed);
+    }
+    
+    /**
+     * Parses the input as an HTML fragment in the context of the context
+     * element this parser was constructed with. No {@code head} or
+     * {@code body} elements are created for the fragment. The parsed nodes are
+     * returned in a {@link DocumentFragment} owned by {@link #getDocument()}.
+     * 
+     * @return the parsed nodes
+     * @throws IllegalStateException if this parser has no context element
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#parsing-html-fragments">8.4 Parsing HTML fragments</a>
+     */
+    public DocumentFragment parseFragment() {
+        if ( !isHTMLFragmentParsingAlgorithm()) {
+            throw new IllegalStateException("A context element is required to parse an HTML fragment.");
+        }
+        
+        switch (contextElementKind) {
+        case ElementKind.TITLE: // fall through
+        case ElementKind.TEXTAREA: {
+            setTokenizerState(Tokenizer.State.RCDATA);
+        } break;
+        case ElementKind.STYLE: // fall through
+        case ElementKind.XMP: // fall through
+        case ElementKind.IFRAME: // fall through
+        case ElementKind.NOEMBED: // fall through
+        case ElementKind.NOFRAMES: {
+            setTokenizerState(Tokenizer.State.RAWTEXT);
+        } break;
+        case ElementKind.SCRIPT: {
+            setTokenizerState(Tokenizer.State.SCRIPT_DATA);
+        } break;
+        case ElementKind.NOSCRIPT: {
+            if (isScriptingEnabled()) {
+                setTokenizerState(Tokenizer.State.RAWTEXT);
+            } else {
+                setTokenizerState(Tokenizer.State.DATA);
+            }
+        } break;
+        case ElementKind.PLAINTEXT: {
+            setTokenizerState(Tokenizer.State.PLAINTEXT);
+        } break;
+        default: {
+            setTokenizerState(Tokenizer.State.DATA);
+        } break;
+        }
+        
+        final Element root = document.getDocumentElement();
+        pushOpenElement(root, ElementKind.HTML);
+        
+        if (contextElementKind == ElementKind.TEMPLATE) {
+            pushTemplateInsertionMode(Mode.IN_TEMPLATE);
+        }
+        
+        resetInsertionModeAppropriately();
+        
+        for (Node node = contextElement; node != null; node = node.getParentNode()) {
+            if (node.getNodeType() == Node.ELEMENT_NODE && ElementKind.of((Element) node) == ElementKind.FORM) {
+                setFormElementPointer((Element) node);
+                break;
+            }
+        }
+        
+        parse();
+        
+        final DocumentFragment fragment = document.createDocumentFragment();
+        while (root.hasChildNodes()) {
+            fragment.appendChild(root.getFirstChild());
+        }
+        return fragment;
+    }
+    
 }
@@ -0,0 +1,262 @@
+package org.silnith.parser.html5;
+
+/**
+ * The options for parsing HTML documents. Instances are immutable, so a
+ * single configuration can be shared by any number of threads. New
+ * configurations are created using a {@link Builder}.
+ * <p>
+ * By default parse errors are allowed and handled as the specification
+ * describes, scripting is disabled, and none of the optional features of the
+ * {@link Parser} are enabled. These are the settings a parser is constructed
+ * with when no configuration is given.
+ *
+ * @see ParserFactory
+ * @author <a href="mailto:silnith@gmail.com">Kent Rosenkoetter</a>
+ */
+public final class ParserConfiguration {
+    
+    /**
+     * The default configuration.
+     */
+    public static final ParserConfiguration DEFAULT = new Builder().build();
+    
+    /**
+     * Creates {@link ParserConfiguration} instances. A builder is not
+     * thread-safe, but the configurations it builds are.
+     */
+    public static final class Builder {
+        
+        private boolean allowParseErrors;
+        
+        private boolean scriptingEnabled;
+        
+        private boolean wellFormedFastPath;
+        
+        private boolean deferTemplateContents;
+        
+        private boolean indexElements;
+        
+        private boolean recordSourceRanges;
+        
+        private int snapshotInterval;
+        
+        /**
+         * Constructs a builder with the default settings.
+         */
+        public Builder() {
+            super();
+            this.allowParseErrors = true;
+            this.scriptingEnabled = false;
+            this.wellFormedFastPath = false;
+            this.deferTemplateContents = false;
+            this.indexElements = false;
+            this.recordSourceRanges = false;
+            this.snapshotInterval = 0;
+        }
+        
+        /**
+         * Constructs a builder with the settings of an existing
+         * configuration.
+         * 
+         * @param configuration the configuration to copy
+         */
+        public Builder(final ParserConfiguration configuration) {
+            super();
+            this.allowParseErrors = configuration.allowParseErrors;
+            this.scriptingEnabled = configuration.scriptingEnabled;
+            this.wellFormedFastPath = configuration.wellFormedFastPath;
+            this.deferTemplateContents = configuration.deferTemplateContents;
+            this.indexElements = configuration.indexElements;
+            this.recordSourceRanges = configuration.recordSourceRanges;
+            this.snapshotInterval = configuration.snapshotInterval;
+        }
+        
+        /**
+         * @param allowParseErrors whether to allow parse errors and use
+         *            error-handling behavior
+         * @return this builder
+         * @see Parser#isAllowParseErrors()
+         */
+        public Builder setAllowParseErrors(final boolean allowParseErrors) {
+            this.allowParseErrors = allowParseErrors;
+            return this;
+        }
+        
+        /**
+         * @param scriptingEnabled whether scripting is enabled
+         * @return this builder
+         * @see Parser#isScriptingEnabled()
+         */
+        public Builder setScriptingEnabled(final boolean scriptingEnabled) {
+            this.scriptingEnabled = scriptingEnabled;
+            return this;
+        }
+        
+        /**
+         * @param wellFormedFastPath whether to speculate that the markup in
+         *            the document body is properly nested
+         * @return this builder
+         * @see Parser#setWellFormedFastPath(boolean)
+         */
+        public Builder setWellFormedFastPath(final boolean wellFormedFastPath) {
+            this.wellFormedFastPath = wellFormedFastPath;
+            return this;
+        }
+        
+        /**
+         * @param deferTemplateContents whether to defer parsing template
+         *            contents
+         * @return this builder
+         * @see Parser#setDeferTemplateContents(boolean)
+         */
+        public Builder setDeferTemplateContents(final boolean deferTemplateContents) {
+            this.deferTemplateContents = deferTemplateContents;
+            return this;
+        }
+        
+        /**
+         * @param indexElements whether to index the elements created
+         * @return this builder
+         * @see Parser#setIndexElements(boolean)
+         */
+        public Builder setIndexElements(final boolean indexElements) {
+            this.indexElements = indexElements;
+            return this;
+        }
+        
+        /**
+         * @param recordSourceRanges whether to record the source ranges of the
+         *            elements created
+         * @return this builder
+         * @see Parser#setRecordSourceRanges(boolean)
+         */
+        public Builder setRecordSourceRanges(final boolean recordSourceRanges) {
+            this.recordSourceRanges = recordSourceRanges;
+            return this;
+        }
+        
+        /**
+         * @param snapshotInterval the number of tokens between snapshots of
+         *            the document, or {@code 0} to take no snapshots
+         * @return this builder
+         * @throws IllegalArgumentException if the interval is negative
+         * @see Parser#setSnapshotInterval(int)
+         */
+        public Builder setSnapshotInterval(final int snapshotInterval) {
+            if (snapshotInterval < 0) {
+                throw new IllegalArgumentException("Snapshot interval cannot be negative: " + snapshotInterval);
+            }
+            this.snapshotInterval = snapshotInterval;
+            return this;
+        }
+        
+        /**
+         * Creates a configuration with the current settings of this builder.
+         * 
+         * @return a new configuration
+         */
+        public ParserConfiguration build() {
+            return new ParserConfiguration(this);
+        }
+        
+    }
+    
+    private final boolean allowParseErrors;
+    
+    private final boolean scriptingEnabled;
+    
+    private final boolean wellFormedFastPath;
+    
+    private final boolean deferTemplateContents;
+    
+    private final boolean indexElements;
+    
+    private final boolean recordSourceRanges;
+    
+    private final int snapshotInterval;
+    
+    private ParserConfiguration(final Builder builder) {
+        super();
+        this.allowParseErrors = builder.allowParseErrors;
+        this.scriptingEnabled = builder.scriptingEnabled;
+        this.wellFormedFastPath = builder.wellFormedFastPath;
+        this.deferTemplateContents = builder.deferTemplateContents;
+        this.indexElements = builder.indexElements;
+        this.recordSourceRanges = builder.recordSourceRanges;
+        this.snapshotInterval = builder.snapshotInterval;
+    }
+    
+    /**
+     * Whether to allow parse errors and use error-handling behavior. This
+     * applies to both the tokenizer and the tree construction stage.
+     * 
+     * @return whether parse errors are allowed
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#parse-error">parse errors</a>
+     */
+    public boolean isAllowParseErrors() {
+        return allowParseErrors;
+    }
+    
+    /**
+     * Whether scripting is enabled.
+     * 
+     * @return whether scripting is enabled
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#scripting-flag">scripting flag</a>
+     */
+    public boolean isScriptingEnabled() {
+        return scriptingEnabled;
+    }
+    
+    /**
+     * Whether the parser speculates that the markup in the document body is
+     * properly nested.
+     * 
+     * @return whether the fast path is used
+     * @see Parser#setWellFormedFastPath(boolean)
+     */
+    public boolean isWellFormedFastPath() {
+        return wellFormedFastPath;
+    }
+    
+    /**
+     * Whether the contents of {@code template} elements are parsed only when
+     * they are first requested.
+     * 
+     * @return whether template contents are deferred
+     * @see Parser#setDeferTemplateContents(boolean)
+     */
+    public boolean isDeferTemplateContents() {
+        return deferTemplateContents;
+    }
+    
+    /**
+     * Whether the parser indexes the elements it creates.
+     * 
+     * @return whether elements are indexed
+     * @see Parser#setIndexElements(boolean)
+     */
+    public boolean isIndexElements() {
+        return indexElements;
+    }
+    
+    /**
+     * Whether the parser records the source ranges of the elements it creates.
+     * 
+     * @return whether source ranges are recorded
+     * @see Parser#setRecordSourceRanges(boolean)
+     */
+    public boolean isRecordSourceRanges() {
+        return recordSourceRanges;
+    }
+    
+    /**
+     * The number of tokens between snapshots of the document.
+     * 
+     * @return the snapshot interval, or {@code 0} if no snapshots are taken
+     * @see Parser#setSnapshotInterval(int)
+     */
+    public int getSnapshotInterval() {
+        return snapshotInterval;
+    }
+    
+}
@@ -0,0 +1,258 @@
+package org.silnith.parser.html5;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+import org.silnith.parser.html5.lexical.Tokenizer;
+import org.w3c.dom.DOMImplementation;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+
+/**
+ * Creates parsers that share a single {@link ParserConfiguration} and DOM
+ * implementation. A factory is immutable and thread-safe, so one instance can
+ * serve every thread in an application.
+ * <p>
+ * Each thread that calls {@link #acquire(Reader)} is given the same
+ * {@link Parser} and {@link Tokenizer} pair every time, {@link Parser#reset(Reader)
+ * reset} for the new input. The pair is kept in a thread-local slot, so
+ * acquiring a parser never contends with other threads, and after the first
+ * document a thread parses, the internal structures of the parser are already
+ * allocated. The pair is returned to the slot when the {@link PooledParser} is
+ * closed. If a thread acquires a second parser before closing the first, the
+ * second is a new pair that is not pooled.
+ * <p>
+ * The lookup tables used by the tokenizer and the tree construction stage,
+ * such as the named character references, are static and immutable once
+ * built, so they are shared by every parser. The factory builds them when it
+ * is constructed, so that the first document parsed does not pay for them.
+ * <p>
+ * A pooled parser keeps references to the last document it parsed until it is
+ * reused.
+ *
+ * @see ParserConfiguration
+ * @author <a href="mailto:silnith@gmail.com">Kent Rosenkoetter</a>
+ */
+public final class ParserFactory {
+    
+    /**
+     * A document that exercises the static tables of the tokenizer and the
+     * tree construction stage.
+     */
+    private static final String WARM_UP_DOCUMENT = "<!DOCTYPE html PUBLIC \"-//W3C//DTD HTML 4.01//EN\">"
+            + "<title>&amp;&#x41;</title><p>&notin; &not<svg viewBox=\"0 0 1 1\"><foreignObject/></svg>"
+            + "<math><mi>x</mi></math><table><tr><td>y</table>";
+    
+    /**
+     * A {@link Parser} and {@link Tokenizer} pair that belongs to a
+     * {@link ParserFactory}. Closing it returns the pair to the factory so it
+     * can be reused. The parser must not be used after it is closed.
+     * 
+     * @author <a href="mailto:silnith@gmail.com">Kent Rosenkoetter</a>
+     */
+    public static final class PooledParser implements Closeable {
+        
+        private final Parser parser;
+        
+        private boolean inUse;
+        
+        private PooledParser(final Parser parser) {
+            super();
+            this.parser = parser;
+            this.inUse = false;
+        }
+        
+        /**
+         * Returns the parser.
+         * 
+         * @return the parser
+         * @throws IllegalStateException if this has been closed
+         */
+        public Parser getParser() {
+            if ( !inUse) {
+                throw new IllegalStateException("The parser has been returned to its factory.");
+            }
+            return parser;
+        }
+        
+        /**
+         * Parses the input as a full document.
+         * 
+         * @return the parsed document
+         * @throws IllegalStateException if this has been closed
+         * @see Parser#parse()
+         */
+        public Document parse() {
+            return getParser().parse();
+        }
+        
+        /**
+         * Parses the input as a full document, throwing a failure to read the
+         * input to the caller.
+         * 
+         * @return the parsed document
+         * @throws IOException if the input cannot be read
+         * @throws IllegalStateException if this has been closed
+         * @see Parser#parseChecked()
+         */
+        public Document parseChecked() throws IOException {
+            return getParser().parseChecked();
+        }
+        
+        /**
+         * Returns the parser to its factory.
+         */
+        @Override
+        public void close() {
+            inUse = false;
+        }
+        
+    }
+    
+    private final DOMImplementation domImplementation;
+    
+    private final ParserConfiguration configuration;
+    
+    private final ThreadLocal<PooledParser> pool;
+    
+    /**
+     * Constructs a new parser factory. The DOM implementation must support
+     * feature "Core 2.0" or greater, and must be safe to use from multiple
+     * threads.
+     * 
+     * @param domImplementation the DOM implementation
+     * @param configuration the configuration of the parsers
+     * @throws IllegalArgumentException if the DOM implementation does not
+     *             support "Core 2.0"
+     */
+    public ParserFactory(final DOMImplementation domImplementation, final ParserConfiguration configuration) {
+        super();
+        if (domImplementation == null || configuration == null) {
+            throw new NullPointerException();
+        }
+        if ( !domImplementation.hasFeature("Core", "2.0")) {
+            throw new IllegalArgumentException("DOM implementation must support Core 2.0 or higher.");
+        }
+        this.domImplementation = domImplementation;
+        this.configuration = configuration;
+        this.pool = new ThreadLocal<>();
+        
+        final Tokenizer tokenizer = new Tokenizer(new StringReader(WARM_UP_DOCUMENT));
+        tokenizer.setAllowParseErrors(true);
+        new Parser(tokenizer, domImplementation).parse();
+    }
+    
+    /**
+     * Returns the DOM implementation used to create documents.
+     * 
+     * @return the DOM implementation
+     */
+    public DOMImplementation getDOMImplementation() {
+        return domImplementation;
+    }
+    
+    /**
+     * Returns the configuration of the parsers this factory creates.
+     * 
+     * @return the parser configuration
+     */
+    public ParserConfiguration getConfiguration() {
+        return configuration;
+    }
+    
+    private Tokenizer newTokenizer(final Reader in) {
+        final Tokenizer tokenizer = new Tokenizer(in);
+        tokenizer.setAllowParseErrors(configuration.isAllowParseErrors());
+        return tokenizer;
+    }
+    
+    /**
+     * Creates a new parser for a full document. The parser is not pooled.
+     * 
+     * @param in the input
+     * @return a new parser
+     */
+    public Parser newParser(final Reader in) {
+        return new Parser(newTokenizer(in), domImplementation, null, configuration);
+    }
+    
+    /**
+     * Creates a new parser that continues from a state captured by
+     * {@link Parser#parsePrefix()}, on the rest of a document. The parser is
+     * not pooled.
+     * 
+     * @param state the state at the end of the shared prefix
+     * @param in the rest of the input, after the prefix
+     * @return a new parser
+     * @see Parser#restoreState(ParserState, Reader)
+     */
+    public Parser newParser(final ParserState state, final Reader in) {
+        final Parser parser = newParser(in);
+        parser.restoreState(state, in);
+        return parser;
+    }
+    
+    /**
+     * Creates a new parser for an HTML fragment. The parser is not pooled.
+     * 
+     * @param in the input
+     * @param contextElement the context element for the fragment
+     * @return a new parser
+     * @see Parser#parseFragment()
+     */
+    public Parser newFragmentParser(final Reader in, final Element contextElement) {
+        if (contextElement == null) {
+            throw new NullPointerException();
+        }
+        return new Parser(newTokenizer(in), domImplementation, contextElement, configuration);
+    }
+    
+    /**
+     * Acquires the parser of the current thread, reset to parse a full
+     * document from the given input. The parser must be closed once the
+     * caller is done with it, which is most easily done using a
+     * try-with-resources statement.
+     * <p>
+     * Options changed on the parser while it was acquired are restored from
+     * the configuration the next time it is acquired.
+     * 
+     * @param in the input
+     * @return the parser of the current thread
+     */
+    public PooledParser acquire(final Reader in) {
+        PooledParser pooled = pool.get();
+        if (pooled == null) {
+            pooled = new PooledParser(newParser(in));
+            pool.set(pooled);
+        } else if (pooled.inUse) {
+            pooled = new PooledParser(newParser(in));
+        } else {
+            final Parser parser = pooled.parser;
+            parser.reset(in);
+            parser.setWellFormedFastPath(configuration.isWellFormedFastPath());
+            parser.setDeferTemplateContents(configuration.isDeferTemplateContents());
+            parser.setIndexElements(configuration.isIndexElements());
+            parser.setRecordSourceRanges(configuration.isRecordSourceRanges());
+            parser.setSnapshotInterval(configuration.getSnapshotInterval());
+        }
+        pooled.inUse = true;
+        return pooled;
+    }
+    
+    /**
+     * Parses a full document using the parser of the current thread.
+     * 
+     * @param in the input
+     * @return the parsed document
+     * @see #acquire(Reader)
+     */
+    public Document parse(final Reader in) {
+        try (final PooledParser pooled = acquire(in)) {
+            return pooled.parse();
+        }
+    }
+    
+}
@@ -1,54 +1,124 @@
 package org.silnith.parser.html5;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import org.silnith.parser.html5.Parser.FormattingElement;
+import org.silnith.parser.html5.grammar.element.ElementKind;
+import org.silnith.parser.html5.grammar.mode.InsertionMode;
+import org.silnith.parser.html5.lexical.Tokenizer;
+import org.silnith.parser.html5.lexical.token.DocumentMode;
+import org.w3c.dom.Attr;
+import org.w3c.dom.DOMImplementation;
+import org.w3c.dom.Document;
+import org.w3c.dom.DocumentFragment;
+import org.w3c.dom.DocumentType;
 import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
 
 /**
- * Contains all of the state associated with a specific parser instance.
- * 
+ * Contains all of the state of a parser between two tokens, captured so that
+ * parsing can continue from the same point on many different inputs.
+ * <p>
+ * Documents generated from the same site template often begin with the same
+ * markup. Parsing that shared prefix once using {@link Parser#parsePrefix()}
+ * captures the document built so far along with the insertion mode, the stack
+ * of open elements, the list of active formatting elements, the element
+ * pointers, the stack of template insertion modes, the other flags, and the
+ * state of the tokenizer. {@link Parser#restoreState(ParserState, java.io.Reader)}
+ * then continues from that point on the rest of each document, without
+ * tokenizing or constructing the prefix again.
+ * <p>
+ * The state holds its own copy of the document, which is never modified, so
+ * it may be restored any number of times. Nodes cannot be shared between
+ * documents in the W3C DOM, so every restore copies the tree that was built
+ * for the prefix into the new document, which is much cheaper than parsing the
+ * prefix again. Copies are made one at a time, so a state may be restored by
+ * parsers on different threads.
+ * <p>
+ * The elements returned by the methods of this class belong to the private
+ * copy of the document, and must not be modified.
+ *
  * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#parse-state">8.2.3 Parse state</a>
  * @author <a href="mailto:silnith@gmail.com">Kent Rosenkoetter</a>
  */
-public class ParserState {
+public final class ParserState {
     
-    private Parser.Mode insertionMode;
+    /* package */final Document document;
     
-    private final List<Element> stackOfOpenElements;
+    /* package */final Tokenizer.Checkpoint checkpoint;
     
-    private final List<FormattingElement> listOfActiveFormattingElements;
+    private final Parser.Mode insertionMode;
     
-    private Element headElementPointer;
+    private final Parser.Mode originalInsertionMode;
     
-    private Element formElementPointer;
+    /* package */final Element[] openElements;
     
-    private boolean scriptingFlag;
+    /* package */final int[] openElementKinds;
     
-    private boolean framesetOKFlag;
+    /* package */final int[] openElementFlags;
     
-    public ParserState() {
+    /**
+     * The entries of the list of active formatting elements, with markers
+     * represented by {@code null}.
+     */
+    /* package */final FormattingElement[] activeFormattingElements;
+    
+    private final List<Parser.Mode> templateInsertionModes;
+    
+    private final Element headElementPointer;
+    
+    private final Element formElementPointer;
+    
+    private final boolean scriptingFlag;
+    
+    private final boolean framesetOKFlag;
+    
+    private final DocumentMode documentMode;
+    
+    /* package */final String pendingTableCharacters;
+    
+    /* package */final boolean pendingTableCharactersContainNonSpace;
+    
+    /* package */final boolean ignoreNextLineFeed;
+    
+    /* package */ParserState(final Document document, final Tokenizer.Checkpoint checkpoint,
+            final Parser.Mode insertionMode, final Parser.Mode originalInsertionMode, final Element[] openElements,
+            final int[] openElementKinds, final int[] openElementFlags,
+            final FormattingElement[] activeFormattingElements, final List<Parser.Mode> templateInsertionModes,
+            final Element headElementPointer, final Element formElementPointer, final boolean scriptingFlag,
+            final boolean framesetOKFlag, final DocumentMode documentMode, final String pendingTableCharacters,
+            final boolean pendingTableCharactersContainNonSpace, final boolean ignoreNextLineFeed) {
         super();
-        this.insertionMode = Parser.Mode.INITIAL;
-        this.stackOfOpenElements = new ArrayList<>();
-        this.listOfActiveFormattingElements = new ArrayList<>();
-        this.headElementPointer = null;
-        this.formElementPointer = null;
-        this.scriptingFlag = false;
-        this.framesetOKFlag = false;
+        this.document = document;
+        this.checkpoint = checkpoint;
+        this.insertionMode = insertionMode;
+        this.originalInsertionMode = originalInsertionMode;
+        this.openElements = openElements;
+        this.openElementKinds = openElementKinds;
+        this.openElementFlags = openElementFlags;
+        this.activeFormattingElements = activeFormattingElements;
+        this.templateInsertionModes = Collections.unmodifiableList(new ArrayList<>(templateInsertionModes));
+        this.headElementPointer = headElementPointer;
+        this.formElementPointer = formElementPointer;
+        this.scriptingFlag = scriptingFlag;
+        this.framesetOKFlag = framesetOKFlag;
+        this.documentMode = documentMode;
+        this.pendingTableCharacters = pendingTableCharacters;
+        this.pendingTableCharactersContainNonSpace = pendingTableCharactersContainNonSpace;
+        this.ignoreNextLineFeed = ignoreNextLineFeed;
     }
     
     /**
-     * Gets the current insertion mode.
+     * Gets the insertion mode.
      * <p>
      * The insertion mode is a state variable that controls the primary operation of the tree construction stage.
-     * <p>
-     * Initially, the insertion mode is "initial". It can change to "before html", "before head", "in head", "in head noscript", "after head", "in body", "text", "in table", "in table text", "in caption", "in column group", "in table body", "in row", "in cell", "in select", "in select in table", "in template", "after body", "in frameset", "after frameset", "after after body", and "after after frameset" during the course of the parsing, as described in the tree construction stage. The insertion mode affects how tokens are processed and whether CDATA sections are supported.
-     * <p>
-     * Several of these modes, namely "in head", "in body", "in table", and "in select", are special, in that the other modes defer to them at various times. When the algorithm below says that the user agent is to do something "using the rules for the m insertion mode", where m is one of these modes, the user agent must use the rules described under the m insertion mode's section, but must leave the insertion mode unchanged unless the rules in m themselves switch the insertion mode to a new value.
      * 
-     * @return the current insertion mode
+     * @return the insertion mode
      * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#the-insertion-mode">8.2.3.1 The insertion mode</a>
      */
     public Parser.Mode getInsertionMode() {
@@ -56,97 +126,51 @@ public class ParserState {
     }
     
     /**
-     * Resets the insertion mode appropriately.
-     * <p>
-     * When the steps below require the UA to reset the insertion mode appropriately, it means the UA must follow these steps:
-     * <ol>
-     *   <li>Let <var>last</var> be false.
-     *   <li>Let <var>node</var> be the last node in the stack of open elements.
-     *   <li><dfn>Loop</dfn>: If <var>node</var> is the first node in the stack of open elements, then set <var>last</var> to true, and, if the parser was originally created as part of the HTML fragment parsing algorithm (fragment case) set <var>node</var> to the <var>context</var> element.
-     *   <li>
-     *     If <var>node</var> is a <code>select</code> element, run these substeps:
-     *     <ol>
-     *       <li>If <var>last</var> is true, jump to the step below labeled <var>done</var>.
-     *       <li>Let <var>ancestor</var> be <var>node</var>.
-     *       <li><dfn>Loop</dfn>: If <var>ancestor</var> is the first node in the stack of open elements, jump to the step below labeled <var>done</var>.
-     *       <li>Let <var>ancestor</var> be the node before <var>ancestor</var> in the stack of open elements.
-     *       <li>If <var>ancestor</var> is a <code>template</code> node, jump to the step below labeled <var>done</var>.
-     *       <li>If <var>ancestor</var> is a <code>table</code> node, switch the insertion mode to "{@linkplain org.silnith.parser.html5.Parser.Mode#IN_SELECT_IN_TABLE in select in table}" and abort these steps.
-     *       <li>Jump back to the step labeled <var>loop</var>.
-     *       <li><dfn>Done</dfn>: Switch the insertion mode to "{@linkplain org.silnith.parser.html5.Parser.Mode#IN_SELECT in select}" and abort these steps.
-     *     </ol>
-     *   </li>
-     *   <li>If <var>node</var> is a <code>td</code> or <code>th</code> element and <var>last</var> is false, then switch the insertion mode to "{@linkplain org.silnith.parser.html5.Parser.Mode#IN_CELL in cell}" and abort these steps.
-     *   <li>If <var>node</var> is a <code>tr</code> element, then switch the insertion mode to "{@linkplain org.silnith.parser.html5.Parser.Mode#IN_ROW in row}" and abort these steps.
-     *   <li>If <var>node</var> is a <code>tbody</code>, <code>thead</code>, or <code>tfoot</code> element, then switch the insertion mode to "{@linkplain org.silnith.parser.html5.Parser.Mode#IN_TABLE_BODY in table body}" and abort these steps.
-     *   <li>If <var>node</var> is a <code>caption</code> element, then switch the insertion mode to "{@linkplain org.silnith.parser.html5.Parser.Mode#IN_CAPTION in caption}" and abort these steps.
-     *   <li>If <var>node</var> is a <code>colgroup</code> element, then switch the insertion mode to "{@linkplain org.silnith.parser.html5.Parser.Mode#IN_COLUMN_GROUP in column group}" and abort these steps.
-     *   <li>If <var>node</var> is a <code>table</code> element, then switch the insertion mode to "{@linkplain org.silnith.parser.html5.Parser.Mode#IN_TABLE in table}" and abort these steps.
-     *   <li>If <var>node</var> is a <code>template</code> element, then switch the insertion mode to the current template insertion mode and abort these steps.
-     *   <li>If <var>node</var> is a <code>head</code> element and last is true, then switch the insertion mode to "{@linkplain org.silnith.parser.html5.Parser.Mode#IN_BODY in body}" ("{@linkplain org.silnith.parser.html5.Parser.Mode#IN_BODY in body}"! <em>not "{@linkplain org.silnith.parser.html5.Parser.Mode#IN_HEAD in head}"</em>!) and abort these steps. (fragment case)
-     *   <li>If <var>node</var> is a <code>head</code> element and last is false, then switch the insertion mode to "{@linkplain org.silnith.parser.html5.Parser.Mode#IN_HEAD in head}" and abort these steps.
-     *   <li>If <var>node</var> is a <code>body</code> element, then switch the insertion mode to "{@linkplain org.silnith.parser.html5.Parser.Mode#IN_BODY in body}" and abort these steps.
-     *   <li>If <var>node</var> is a <code>frameset</code> element, then switch the insertion mode to "{@linkplain org.silnith.parser.html5.Parser.Mode#IN_FRAMESET in frameset}" and abort these steps. (fragment case)
-     *   <li>
-     *     If <var>node</var> is an <code>html</code> element, run these substeps:
-     *     <ol>
-     *       <li>If the <code>head</code> element pointer is null, switch the insertion mode to "{@linkplain org.silnith.parser.html5.Parser.Mode#BEFORE_HEAD before head}" and abort these steps. (fragment case)
-     *       <li>Otherwise, the <code>head</code> element pointer is not null, switch the insertion mode to "{@linkplain org.silnith.parser.html5.Parser.Mode#AFTER_HEAD after head}" and abort these steps.
-     *     </ol>
-     *   </li>
-     *   <li>If last is true, then switch the insertion mode to "{@linkplain org.silnith.parser.html5.Parser.Mode#IN_BODY in body}" and abort these steps. (fragment case)
-     *   <li>Let <var>node</var> now be the node before <var>node</var> in the stack of open elements.
-     *   <li>Return to the step labeled <var>loop</var>.
-     * </ol>
+     * Gets the original insertion mode, which the "text" and "in table text"
+     * insertion modes return to.
      * 
-     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#reset-the-insertion-mode-appropriately">reset the insertion mode appropriately</a>
-     */
-    public void resetInsertionModeAppropriately() {
-        throw new UnsupportedOperationException();
-    }
-    
-    /**
-     * Gets the stack of open elements.
-     * <p>Initially, the stack of open elements is empty. The stack grows downwards; the topmost node on the stack is the first one added to the stack, and the bottommost node of the stack is the most recently added node in the stack (notwithstanding when the stack is manipulated in a random access fashion as part of the handling for misnested tags).
-     * <p>The html node, however it is created, is the topmost node of the stack. It only gets popped off the stack when the parser finishes.
-     * <p>The current node is the bottommost node in this stack of open elements.
-     * <p>The adjusted current node is the context element if the stack of open elements has only one element in it and the parser was created by the HTML fragment parsing algorithm; otherwise, the adjusted current node is the current node.
-     * <p>Elements in the stack of open elements fall into the following categories:
-     * <dl>
-     *   <dt>Special
-     *   <dd>The following elements have varying levels of special parsing rules: HTML's address, applet, area, article, aside, base, basefont, bgsound, blockquote, body, br, button, caption, center, col, colgroup, dd, details, dir, div, dl, dt, embed, fieldset, figcaption, figure, footer, form, frame, frameset, h1, h2, h3, h4, h5, h6, head, header, hgroup, hr, html, iframe, img, input, isindex, li, link, listing, main, marquee, meta, nav, noembed, noframes, noscript, object, ol, p, param, plaintext, pre, script, section, select, source, style, summary, table, tbody, td, template, textarea, tfoot, th, thead, title, tr, track, ul, wbr, and xmp; MathML's mi, mo, mn, ms, mtext, and annotation-xml; and SVG's foreignObject, desc, and title.
-     *   <dt>Formatting
-     *   <dd>The following HTML elements are those that end up in the list of active formatting elements: a, b, big, code, em, font, i, nobr, s, small, strike, strong, tt, and u.
-     *   <dt>Ordinary
-     *   <dd>All other elements found while parsing an HTML document.
-     * </dl>
+     * @return the original insertion mode, or {@code null}
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#original-insertion-mode">original insertion mode</a>
+     */
+    public Parser.Mode getOriginalInsertionMode() {
+        return originalInsertionMode;
+    }
+    
+    /**
+     * Gets the stack of template insertion modes, from the bottom of the stack
+     * to the top.
+     * 
+     * @return the stack of template insertion modes
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#stack-of-template-insertion-modes">stack of template insertion modes</a>
+     */
+    public List<Parser.Mode> getTemplateInsertionModes() {
+        return templateInsertionModes;
+    }
+    
+    /**
+     * Gets the stack of open elements, from the bottom of the stack to the
+     * top.
      * 
      * @return the stack of open elements
      * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#the-stack-of-open-elements">8.2.3.2 The stack of open elements</a>
      */
     public List<Element> getStackOfOpenElements() {
-        return stackOfOpenElements;
+        return Collections.unmodifiableList(Arrays.asList(openElements));
     }
     
     /**
-     * Gets the list of active formatting elements.
-     * <p>Initially, the list of active formatting elements is empty. It is used to handle mis-nested formatting element tags.
-     * <p>The list contains elements in the formatting category, and scope markers. The scope markers are inserted when entering applet elements, buttons, object elements, marquees, table cells, and table captions, and are used to prevent formatting from "leaking" into applet elements, buttons, object elements, marquees, and tables.
-     * <p>In addition, each element in the list of active formatting elements is associated with the token for which it was created, so that further elements can be created for that token if necessary.
+     * Gets the list of active formatting elements. Markers are represented by
+     * {@code null}.
      * 
      * @return the list of active formatting elements
      * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#the-list-of-active-formatting-elements">8.2.3.3 The list of active formatting elements</a>
      */
     public List<FormattingElement> getListOfActiveFormattingElements() {
-        return listOfActiveFormattingElements;
+        return Collections.unmodifiableList(Arrays.asList(activeFormattingElements));
     }
     
     /**
-     * Gets the head element pointer.
-     * <p>
-     * Once a <code>head</code> element has been parsed (whether implicitly or explicitly) the <code>head</code> element pointer gets set to point to this node.
-     * 
-     * @return the head element pointer
+     * @return the head element pointer, or {@code null}
      * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#the-element-pointers">8.2.3.4 The element pointers</a>
      */
     public Element getHeadElementPointer() {
@@ -154,11 +178,7 @@ public class ParserState {
     }
     
     /**
-     * Gets the form element pointer.
-     * <p>
-     * The <code>form</code> element pointer points to the last <code>form</code> element that was opened and whose end tag has not yet been seen. It is used to make form controls associate with forms in the face of dramatically bad markup, for historical reasons. It is ignored inside <code>template</code> elements.
-     * 
-     * @return the form element pointer
+     * @return the form element pointer, or {@code null}
      * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#the-element-pointers">8.2.3.4 The element pointers</a>
      */
     public Element getFormElementPointer() {
@@ -166,10 +186,6 @@ public class ParserState {
     }
     
     /**
-     * Gets the scripting flag.
-     * <p>
-     * The scripting flag is set to "enabled" if scripting was enabled for the <code>Document</code> with which the parser is associated when the parser was created, and "disabled" otherwise.
-     * 
      * @return the scripting flag
      * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#other-parsing-state-flags">8.2.3.5 Other parsing state flags</a>
      */
@@ -178,10 +194,6 @@ public class ParserState {
     }
     
     /**
-     * Gets the frameset-ok flag.
-     * <p>
-     * The frameset-ok flag is set to "ok" when the parser is created. It is set to "not ok" after certain tokens are seen.
-     * 
      * @return the frameset-ok flag
      * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#other-parsing-state-flags">8.2.3.5 Other parsing state flags</a>
      */
@@ -189,4 +201,169 @@ public class ParserState {
         return framesetOKFlag;
     }
     
+    /**
+     * @return the document mode
+     */
+    public DocumentMode getDocumentMode() {
+        return documentMode;
+    }
+    
+    /**
+     * Returns the offset in the preprocessed input where the state was
+     * captured. The input given when restoring the state must start at this
+     * offset.
+     * 
+     * @return the input offset
+     */
+    public int getPosition() {
+        return checkpoint.getPosition();
+    }
+    
+    /**
+     * Copies the document of this state into a new document created by the
+     * given DOM implementation. The copy of every node, including the nodes
+     * in template contents and the open and active formatting elements that
+     * are not in the document, is recorded in the given map.
+     * 
+     * @param domImplementation the DOM implementation
+     * @param copies the map to record the copies in
+     * @return the new document
+     */
+    /* package */synchronized Document copyDocument(final DOMImplementation domImplementation,
+            final Map<Node, Node> copies) {
+        final Document copy = copyDocument(document, domImplementation, copies);
+        for (final Element element : openElements) {
+            copyOf(element, copy, copies);
+        }
+        for (final FormattingElement entry : activeFormattingElements) {
+            if (entry != null) {
+                copyOf(entry.getValue(), copy, copies);
+            }
+        }
+        copyOf(headElementPointer, copy, copies);
+        copyOf(formElementPointer, copy, copies);
+        return copy;
+    }
+    
+    /**
+     * Copies a document being parsed into a new document created by the given
+     * DOM implementation, in the same way as {@link Parser#reset(java.io.Reader)}
+     * creates it. The copy of every node is recorded in the given map.
+     * 
+     * @param document the document to copy
+     * @param domImplementation the DOM implementation
+     * @param copies the map to record the copies in
+     * @return the new document
+     */
+    /* package */static Document copyDocument(final Document document, final DOMImplementation domImplementation,
+            final Map<Node, Node> copies) {
+        final Document copy = domImplementation.createDocument(InsertionMode.HTML_NAMESPACE, "html", null);
+        final Element documentElement = document.getDocumentElement();
+        final Element documentElementCopy = copy.getDocumentElement();
+        copies.put(document, copy);
+        boolean beforeDocumentElement = true;
+        for (Node child = document.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child == documentElement) {
+                beforeDocumentElement = false;
+                copyAttributes(documentElement, documentElementCopy);
+                copyChildren(documentElement, documentElementCopy, copies);
+                copies.put(documentElement, documentElementCopy);
+                continue;
+            }
+            final Node childCopy;
+            if (child.getNodeType() == Node.DOCUMENT_TYPE_NODE) {
+                final DocumentType documentType = (DocumentType) child;
+                childCopy = domImplementation.createDocumentType(documentType.getName(), documentType.getPublicId(),
+                        documentType.getSystemId());
+            } else {
+                childCopy = copy.importNode(child, true);
+            }
+            if (beforeDocumentElement) {
+                copy.insertBefore(childCopy, documentElementCopy);
+            } else {
+                copy.appendChild(childCopy);
+            }
+            mapCopies(child, childCopy, copies);
+        }
+        return copy;
+    }
+    
+    /**
+     * Returns the copy of the given element made by
+     * {@link #copyDocument(Document, DOMImplementation, Map)}. An element that
+     * was not in the document, such as one that was removed from it while it
+     * was still open, is copied on its own.
+     * 
+     * @param element the element, or {@code null}
+     * @param copy the new document
+     * @param copies the copies made so far
+     * @return the copy of the element, or {@code null}
+     */
+    /* package */static Element copyOf(final Element element, final Document copy, final Map<Node, Node> copies) {
+        if (element == null) {
+            return null;
+        }
+        final Node existing = copies.get(element);
+        if (existing != null) {
+            return (Element) existing;
+        }
+        final Node elementCopy = copy.importNode(element, true);
+        mapCopies(element, elementCopy, copies);
+        return (Element) elementCopy;
+    }
+    
+    private static void copyAttributes(final Element element, final Element copy) {
+        final NamedNodeMap attributes = element.getAttributes();
+        final Document document = copy.getOwnerDocument();
+        for (int i = 0; i < attributes.getLength(); i++ ) {
+            final Attr attr = (Attr) document.importNode(attributes.item(i), true);
+            if (attr.getLocalName() == null) {
+                copy.setAttributeNode(attr);
+            } else {
+                copy.setAttributeNodeNS(attr);
+            }
+        }
+    }
+    
+    private static void copyChildren(final Node parent, final Node copy, final Map<Node, Node> copies) {
+        final Document document = copy.getOwnerDocument();
+        for (Node child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
+            final Node childCopy = document.importNode(child, true);
+            copy.appendChild(childCopy);
+            mapCopies(child, childCopy, copies);
+        }
+    }
+    
+    /**
+     * Records the copy of every node in a subtree, given the copy of the
+     * subtree made by {@link Document#importNode(Node, boolean)}. The template
+     * contents are not imported along with the nodes, so they are copied here.
+     */
+    private static void mapCopies(final Node node, final Node copy, final Map<Node, Node> copies) {
+        copies.put(node, copy);
+        if (node.getNodeType() == Node.ELEMENT_NODE) {
+            copyTemplateContents((Element) node, (Element) copy, copies);
+        }
+        Node childCopy = copy.getFirstChild();
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            mapCopies(child, childCopy, copies);
+            childCopy = childCopy.getNextSibling();
+        }
+    }
+    
+    private static void copyTemplateContents(final Element template, final Element copy, final Map<Node, Node> copies) {
+        if (ElementKind.of(template) != ElementKind.TEMPLATE) {
+            return;
+        }
+        final Object userData = template.getUserData(TemplateContents.USER_DATA_KEY);
+        if (userData instanceof DocumentFragment) {
+            final Node contentsCopy = copy.getOwnerDocument().importNode((DocumentFragment) userData, true);
+            mapCopies((DocumentFragment) userData, contentsCopy, copies);
+            copy.setUserData(TemplateContents.USER_DATA_KEY, contentsCopy, null);
+        } else if (userData != null) {
+            // Deferred template contents are immutable, and can be shared.
+            copy.setUserData(TemplateContents.USER_DATA_KEY, userData, null);
+        }
+    }
+    
 }
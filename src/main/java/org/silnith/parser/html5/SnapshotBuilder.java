@@ -0,0 +1,201 @@
+package org.silnith.parser.html5;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.silnith.parser.html5.TreeSnapshot.CharacterDataSnapshot;
+import org.silnith.parser.html5.TreeSnapshot.DocumentTypeSnapshot;
+import org.silnith.parser.html5.TreeSnapshot.ElementSnapshot;
+import org.silnith.parser.html5.TreeSnapshot.NodeSnapshot;
+import org.silnith.parser.html5.grammar.element.ElementKind;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.DocumentType;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+
+/**
+ * Takes {@link TreeSnapshot snapshots} of a document while it is parsed.
+ * <p>
+ * An element is complete when neither it nor any of its descendants is on
+ * the stack of open elements. Checking the element alone is not enough,
+ * because some error recovery steps remove an element from the stack while
+ * elements inside it stay open, such as an {@code a} start tag inside an
+ * {@code a} element that holds an open {@code table}. Nor is it enough to
+ * check the stack alone, because the parser may put an element on the stack
+ * that was not on it before: the root element, which exists before the
+ * {@code html} start tag puts it on the stack, and the {@code head} element,
+ * which is put back on the stack for head content that comes after it. The
+ * parser names such an element for every snapshot, and it is treated like
+ * an open element.
+ * <p>
+ * The copies of complete elements are kept between snapshots and shared.
+ * Only the copies of complete elements whose parents are not complete need
+ * to be kept, because the copy of any other complete element is part of the
+ * copy of a complete ancestor. An element that is not complete and its
+ * children that are not complete elements are copied again for every
+ * snapshot.
+ *
+ * @author <a href="mailto:silnith@gmail.com">Kent Rosenkoetter</a>
+ */
+/* package */final class SnapshotBuilder {
+    
+    private Map<Element, ElementSnapshot> completeElements;
+    
+    /**
+     * The open elements and their ancestors, for the snapshot being taken.
+     */
+    private final Map<Node, Boolean> unfinishedNodes;
+    
+    private long sequenceNumber;
+    
+    /* package */SnapshotBuilder() {
+        super();
+        this.completeElements = new IdentityHashMap<>();
+        this.unfinishedNodes = new IdentityHashMap<>();
+        this.sequenceNumber = 0;
+    }
+    
+    /**
+     * Takes a snapshot of the document. This must be called between tokens,
+     * on the thread that parses the document.
+     * 
+     * @param document the document
+     * @param stackOfOpenElements the stack of open elements
+     * @param numOpenElements the number of open elements
+     * @param reopenable an element that is not open but may be put on the
+     *            stack of open elements later, or {@code null}
+     * @param position the current input offset
+     * @param complete whether parsing has finished
+     * @return a new snapshot
+     */
+    /* package */TreeSnapshot snapshot(final Document document, final Element[] stackOfOpenElements,
+            final int numOpenElements, final Element reopenable, final int position, final boolean complete) {
+        for (int i = 0; i < numOpenElements; i++ ) {
+            markUnfinished(stackOfOpenElements[i]);
+        }
+        if (reopenable != null) {
+            markUnfinished(reopenable);
+        }
+        final Map<Element, ElementSnapshot> retained = new IdentityHashMap<>();
+        final List<NodeSnapshot> children = copyChildren(document, retained);
+        unfinishedNodes.clear();
+        completeElements = retained;
+        return new TreeSnapshot(sequenceNumber++ , position, children, complete);
+    }
+    
+    /**
+     * Marks an element and its element ancestors as not complete.
+     */
+    private void markUnfinished(final Element element) {
+        Node node = element;
+        while (node != null && node.getNodeType() == Node.ELEMENT_NODE && !unfinishedNodes.containsKey(node)) {
+            unfinishedNodes.put(node, Boolean.TRUE);
+            node = node.getParentNode();
+        }
+    }
+    
+    /**
+     * Copies the children of a node that is not complete. The copies of its
+     * complete child elements are retained for the next snapshot.
+     */
+    private List<NodeSnapshot> copyChildren(final Node parent, final Map<Element, ElementSnapshot> retained) {
+        final List<NodeSnapshot> children = new ArrayList<>();
+        for (Node child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE) {
+                final Element element = (Element) child;
+                if (unfinishedNodes.containsKey(element)) {
+                    children.add(copyUnfinishedElement(element, retained));
+                } else {
+                    ElementSnapshot copy = completeElements.get(element);
+                    if (copy == null) {
+                        copy = copyCompleteElement(element);
+                    }
+                    retained.put(element, copy);
+                    children.add(copy);
+                }
+            } else {
+                children.add(copy(child));
+            }
+        }
+        return children;
+    }
+    
+    private ElementSnapshot copyUnfinishedElement(final Element element,
+            final Map<Element, ElementSnapshot> retained) {
+        final List<NodeSnapshot> templateContents;
+        if (isTemplate(element)) {
+            templateContents = copyChildren(TemplateContents.getTemplateContents(element), retained);
+        } else {
+            templateContents = null;
+        }
+        return new ElementSnapshot(element.getNamespaceURI(), element.getTagName(), copyAttributes(element),
+                copyChildren(element, retained), templateContents, false);
+    }
+    
+    private ElementSnapshot copyCompleteElement(final Element element) {
+        final List<NodeSnapshot> templateContents;
+        if (isTemplate(element) && TemplateContents.isTemplateContentsCreated(element)) {
+            templateContents = copyCompleteChildren(TemplateContents.getTemplateContents(element));
+        } else {
+            templateContents = null;
+        }
+        return new ElementSnapshot(element.getNamespaceURI(), element.getTagName(), copyAttributes(element),
+                copyCompleteChildren(element), templateContents, true);
+    }
+    
+    private List<NodeSnapshot> copyCompleteChildren(final Node parent) {
+        final List<NodeSnapshot> children = new ArrayList<>();
+        for (Node child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE) {
+                final ElementSnapshot copy = completeElements.get(child);
+                if (copy == null) {
+                    children.add(copyCompleteElement((Element) child));
+                } else {
+                    children.add(copy);
+                }
+            } else {
+                children.add(copy(child));
+            }
+        }
+        return children;
+    }
+    
+    private static boolean isTemplate(final Element element) {
+        return ElementKind.of(element) == ElementKind.TEMPLATE;
+    }
+    
+    private static Map<String, String> copyAttributes(final Element element) {
+        final NamedNodeMap attributes = element.getAttributes();
+        final int length = attributes.getLength();
+        final Map<String, String> copy = new LinkedHashMap<>(length * 2);
+        for (int i = 0; i < length; i++ ) {
+            final Attr attr = (Attr) attributes.item(i);
+            copy.put(attr.getName(), attr.getValue());
+        }
+        return copy;
+    }
+    
+    private static NodeSnapshot copy(final Node node) {
+        switch (node.getNodeType()) {
+        case Node.TEXT_NODE: // fall through
+        case Node.COMMENT_NODE: {
+            return new CharacterDataSnapshot(node.getNodeType(), node.getNodeValue());
+        } // break;
+        case Node.DOCUMENT_TYPE_NODE: {
+            final DocumentType documentType = (DocumentType) node;
+            return new DocumentTypeSnapshot(documentType.getName(), documentType.getPublicId(),
+                    documentType.getSystemId());
+        } // break;
+        default: {
+            throw new IllegalArgumentException("Unexpected node type: " + node);
+        } // break;
+        }
+    }
+    
+}
@@ -0,0 +1,266 @@
+package org.silnith.parser.html5;
+
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+
+/**
+ * The ranges of the original input that produced each element of a parsed
+ * document.
+ * <p>
+ * For every element the parser creates, this records the offsets of its start
+ * tag and of its end tag in the input. The content of the element lies
+ * between the two. The outer source of an element, as would be returned by
+ * {@code outerHTML}, runs from the start of the start tag to the end of the
+ * end tag. Offsets are indices into the input after preprocessing, in which
+ * every carriage return and CR LF pair has been replaced by a single line
+ * feed. The source returned by {@link #getOuterSource(Node)} and
+ * {@link #getInnerSource(Node)} is a view over the retained input, so no
+ * characters are copied.
+ * <p>
+ * Not every element has tags in the input. Elements that the parser inserts
+ * on its own, such as an implied {@code tbody}, or that it recreates, such as
+ * reconstructed formatting elements, have an empty start tag at the offset of
+ * the token that caused them to be created. Elements that are closed without
+ * a matching end tag have an empty end tag at the offset of the token that
+ * closed them, or at the end of the input. Error recovery such as foster
+ * parenting and the adoption agency algorithm can move nodes, so the ranges
+ * describe where an element came from in the source, not necessarily what its
+ * subtree contains.
+ * <p>
+ * The ranges are not updated if the document is modified after parsing.
+ *
+ * @see Parser#setRecordSourceRanges(boolean)
+ * @author <a href="mailto:silnith@gmail.com">Kent Rosenkoetter</a>
+ */
+public final class SourceRanges {
+    
+    private static final int START_TAG_START = 0;
+    
+    private static final int START_TAG_END = 1;
+    
+    private static final int END_TAG_START = 2;
+    
+    private static final int END_TAG_END = 3;
+    
+    private static final int SLOT_SIZE = 4;
+    
+    private final CharSequence input;
+    
+    /**
+     * The slot of each recorded element in {@link #offsets}.
+     */
+    private final Map<Element, Integer> slots;
+    
+    /**
+     * Four offsets for each recorded element: the start and end of the start
+     * tag, and the start and end of the end tag. The end tag offsets are
+     * {@code -1} until the element is closed.
+     */
+    private int[] offsets;
+    
+    /**
+     * Constructs an empty table of source ranges over the given input.
+     * 
+     * @param input the preprocessed input, which may still be growing
+     */
+    public SourceRanges(final CharSequence input) {
+        super();
+        if (input == null) {
+            throw new NullPointerException();
+        }
+        this.input = input;
+        this.slots = new IdentityHashMap<>();
+        this.offsets = new int[16 * SLOT_SIZE];
+    }
+    
+    /**
+     * Records the range of the start tag of an element. Any range previously
+     * recorded for the element is discarded.
+     * 
+     * @param element the element
+     * @param start the offset of the start tag
+     * @param end the offset just past the start tag
+     */
+    public void setStartTag(final Element element, final int start, final int end) {
+        Integer slot = slots.get(element);
+        if (slot == null) {
+            slot = slots.size();
+            if ((slot + 1) * SLOT_SIZE > offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+            slots.put(element, slot);
+        }
+        final int base = slot * SLOT_SIZE;
+        offsets[base + START_TAG_START] = start;
+        offsets[base + START_TAG_END] = end;
+        offsets[base + END_TAG_START] = -1;
+        offsets[base + END_TAG_END] = -1;
+    }
+    
+    /**
+     * Records the range of the end tag of an element. This does nothing if
+     * the element has no recorded start tag, or if its end tag has already
+     * been recorded.
+     * 
+     * @param element the element
+     * @param start the offset of the end tag
+     * @param end the offset just past the end tag
+     */
+    public void setEndTag(final Element element, final int start, final int end) {
+        final int base = getBase(element);
+        if (base != -1 && offsets[base + END_TAG_START] == -1) {
+            offsets[base + END_TAG_START] = start;
+            offsets[base + END_TAG_END] = end;
+        }
+    }
+    
+    /**
+     * Forgets the end tag recorded for an element, because the parser went
+     * back to adding content to it.
+     * 
+     * @param element the element
+     */
+    public void clearEndTag(final Element element) {
+        final int base = getBase(element);
+        if (base != -1) {
+            offsets[base + END_TAG_START] = -1;
+            offsets[base + END_TAG_END] = -1;
+        }
+    }
+    
+    /**
+     * Gives every element that has not been closed an empty end tag at the
+     * given offset. This is done when the parser reaches the end of the
+     * input.
+     * 
+     * @param offset the offset of the end of the input
+     */
+    public void closeAll(final int offset) {
+        final int length = slots.size() * SLOT_SIZE;
+        for (int base = 0; base < length; base += SLOT_SIZE) {
+            if (offsets[base + END_TAG_START] == -1) {
+                offsets[base + END_TAG_START] = offset;
+                offsets[base + END_TAG_END] = offset;
+            }
+        }
+    }
+    
+    private int getBase(final Node node) {
+        final Integer slot = slots.get(node);
+        if (slot == null) {
+            return -1;
+        }
+        return slot * SLOT_SIZE;
+    }
+    
+    private int getOffset(final Node node, final int which) {
+        final int base = getBase(node);
+        if (base == -1) {
+            return -1;
+        }
+        return offsets[base + which];
+    }
+    
+    /**
+     * Returns the preprocessed input that the offsets refer to.
+     * 
+     * @return the input
+     */
+    public CharSequence getInput() {
+        return input;
+    }
+    
+    /**
+     * Returns whether a source range was recorded for the given node.
+     * 
+     * @param node the node
+     * @return {@code true} if the node is an element created by the parser
+     */
+    public boolean contains(final Node node) {
+        return slots.containsKey(node);
+    }
+    
+    /**
+     * Returns the offset of the start tag of an element. This is also the
+     * start of its outer source.
+     * 
+     * @param node the element
+     * @return the offset, or {@code -1} if no range was recorded for the node
+     */
+    public int getStartTagStart(final Node node) {
+        return getOffset(node, START_TAG_START);
+    }
+    
+    /**
+     * Returns the offset just past the start tag of an element. This is also
+     * the start of its inner source.
+     * 
+     * @param node the element
+     * @return the offset, or {@code -1} if no range was recorded for the node
+     */
+    public int getStartTagEnd(final Node node) {
+        return getOffset(node, START_TAG_END);
+    }
+    
+    /**
+     * Returns the offset of the end tag of an element. This is also the end
+     * of its inner source.
+     * 
+     * @param node the element
+     * @return the offset, or {@code -1} if no range was recorded for the node
+     *         or the element has not been closed yet
+     */
+    public int getEndTagStart(final Node node) {
+        return getOffset(node, END_TAG_START);
+    }
+    
+    /**
+     * Returns the offset just past the end tag of an element. This is also
+     * the end of its outer source.
+     * 
+     * @param node the element
+     * @return the offset, or {@code -1} if no range was recorded for the node
+     *         or the element has not been closed yet
+     */
+    public int getEndTagEnd(final Node node) {
+        return getOffset(node, END_TAG_END);
+    }
+    
+    /**
+     * Returns the source of an element, including its start and end tags.
+     * 
+     * @param node the element
+     * @return a read-only view of the input, or {@code null} if no complete
+     *         range was recorded for the node
+     */
+    public CharSequence getOuterSource(final Node node) {
+        return getSource(node, START_TAG_START, END_TAG_END);
+    }
+    
+    /**
+     * Returns the source of the content of an element, between its start and
+     * end tags.
+     * 
+     * @param node the element
+     * @return a read-only view of the input, or {@code null} if no complete
+     *         range was recorded for the node
+     */
+    public CharSequence getInnerSource(final Node node) {
+        return getSource(node, START_TAG_END, END_TAG_START);
+    }
+    
+    private CharSequence getSource(final Node node, final int from, final int to) {
+        final int base = getBase(node);
+        if (base == -1 || offsets[base + to] == -1) {
+            return null;
+        }
+        return CharBuffer.wrap(input, offsets[base + from], offsets[base + to]);
+    }
+    
+}
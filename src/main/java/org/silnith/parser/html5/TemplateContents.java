@@ -0,0 +1,180 @@
+package org.silnith.parser.html5;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.silnith.parser.html5.grammar.element.ElementKind;
+import org.silnith.parser.html5.lexical.Tokenizer;
+import org.silnith.parser.html5.lexical.token.DocumentMode;
+import org.w3c.dom.Document;
+import org.w3c.dom.DocumentFragment;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+
+/**
+ * The template contents of {@code template} elements.
+ * <p>
+ * A {@code template} element has template contents, a {@link DocumentFragment}
+ * that holds the children the parser creates for the element. The W3C DOM has
+ * no place for this, so the fragment is attached to the element as user data.
+ * <p>
+ * When a {@link Parser} is configured to defer template contents, the parser
+ * only records the source of the contents. The contents are then parsed the
+ * first time they are requested, using the HTML fragment parsing algorithm
+ * with the {@code template} element as the context element, in the document
+ * mode and with the scripting flag of the document. The steps of the
+ * fragment case that would not have applied with the {@code template}
+ * element on the stack of open elements are skipped, so the contents are the
+ * same as if they had not been deferred.
+ *
+ * @see Parser#setDeferTemplateContents(boolean)
+ * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/scripting-1.html#template-contents">template contents</a>
+ * @author <a href="mailto:silnith@gmail.com">Kent Rosenkoetter</a>
+ */
+public final class TemplateContents {
+    
+    /**
+     * The user data key under which the template contents are stored.
+     */
+    public static final String USER_DATA_KEY = "org.silnith.parser.html5.templateContents";
+    
+    /**
+     * The source of template contents that have not been parsed yet.
+     */
+    private static final class DeferredContents {
+        
+        private final String source;
+        
+        private final boolean allowParseErrors;
+        
+        private final boolean scriptingEnabled;
+        
+        private final DocumentMode documentMode;
+        
+        DeferredContents(final String source, final boolean allowParseErrors, final boolean scriptingEnabled,
+                final DocumentMode documentMode) {
+            super();
+            this.source = source;
+            this.allowParseErrors = allowParseErrors;
+            this.scriptingEnabled = scriptingEnabled;
+            this.documentMode = documentMode;
+        }
+        
+    }
+    
+    private TemplateContents() {
+        super();
+    }
+    
+    /**
+     * Returns the template contents of the given {@code template} element,
+     * creating them if necessary. If the contents were deferred, they are
+     * parsed now.
+     * 
+     * @param template a {@code template} element
+     * @return the template contents
+     * @throws IllegalArgumentException if the element is not an HTML
+     *             {@code template} element
+     */
+    public static DocumentFragment getTemplateContents(final Element template) {
+        if (ElementKind.of(template) != ElementKind.TEMPLATE) {
+            throw new IllegalArgumentException("Not a template element: " + template);
+        }
+        final Object userData = template.getUserData(USER_DATA_KEY);
+        if (userData instanceof DocumentFragment) {
+            return (DocumentFragment) userData;
+        }
+        final DocumentFragment contents;
+        if (userData instanceof DeferredContents) {
+            contents = parse(template, (DeferredContents) userData);
+        } else {
+            contents = template.getOwnerDocument().createDocumentFragment();
+        }
+        template.setUserData(USER_DATA_KEY, contents, null);
+        return contents;
+    }
+    
+    /**
+     * Returns whether the template contents of the given element have been
+     * created. This is {@code false} for contents that were deferred and have
+     * not been requested yet.
+     * 
+     * @param template a {@code template} element
+     * @return {@code true} if the template contents exist
+     */
+    public static boolean isTemplateContentsCreated(final Element template) {
+        return template.getUserData(USER_DATA_KEY) instanceof DocumentFragment;
+    }
+    
+    /**
+     * Returns whether the template contents of the given element were deferred
+     * and have not been parsed yet.
+     * 
+     * @param template a {@code template} element
+     * @return {@code true} if the template contents are still deferred
+     */
+    public static boolean isTemplateContentsDeferred(final Element template) {
+        return template.getUserData(USER_DATA_KEY) instanceof DeferredContents;
+    }
+    
+    /**
+     * Records the source of the template contents of the given element, to be
+     * parsed when the contents are first requested.
+     * 
+     * @param template a {@code template} element
+     * @param source the source of the template contents
+     * @param allowParseErrors whether parse errors are allowed in the contents
+     * @param scriptingEnabled the scripting flag of the document
+     * @param documentMode the mode of the document
+     */
+    static void deferTemplateContents(final Element template, final String source, final boolean allowParseErrors,
+            final boolean scriptingEnabled, final DocumentMode documentMode) {
+        template.setUserData(USER_DATA_KEY,
+                new DeferredContents(source, allowParseErrors, scriptingEnabled, documentMode), null);
+    }
+    
+    private static DocumentFragment parse(final Element template, final DeferredContents deferred) {
+        final Document ownerDocument = template.getOwnerDocument();
+        final Tokenizer tokenizer = new Tokenizer(new StringReader(deferred.source));
+        tokenizer.setAllowParseErrors(deferred.allowParseErrors);
+        final ParserConfiguration configuration = new ParserConfiguration.Builder()
+                .setScriptingEnabled(deferred.scriptingEnabled).setDeferTemplateContents(true).build();
+        final Parser parser = new Parser(tokenizer, ownerDocument.getImplementation(), template, configuration);
+        parser.setParsingTemplateContents();
+        parser.setDocumentMode(deferred.documentMode);
+        final DocumentFragment parsed = parser.parseFragment();
+        /*
+         * User data does not survive moving nodes between documents, so the
+         * contents of nested template elements are collected first and then
+         * attached again.
+         */
+        final List<Element> templates = new ArrayList<>();
+        final List<Object> templateContents = new ArrayList<>();
+        collectTemplateContents(parsed, templates, templateContents);
+        final Node adopted = ownerDocument.adoptNode(parsed);
+        if (adopted == null) {
+            throw new IllegalStateException("Unable to adopt the template contents into the owner document.");
+        }
+        for (int i = 0; i < templates.size(); i++ ) {
+            templates.get(i).setUserData(USER_DATA_KEY, templateContents.get(i), null);
+        }
+        return (DocumentFragment) adopted;
+    }
+    
+    private static void collectTemplateContents(final Node node, final List<Element> templates,
+            final List<Object> templateContents) {
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE) {
+                final Object userData = child.getUserData(USER_DATA_KEY);
+                if (userData != null) {
+                    templates.add((Element) child);
+                    templateContents.add(userData);
+                }
+                collectTemplateContents(child, templates, templateContents);
+            }
+        }
+    }
+    
+}
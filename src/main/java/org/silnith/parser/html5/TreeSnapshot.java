@@ -0,0 +1,382 @@
+package org.silnith.parser.html5;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.w3c.dom.Node;
+
+
+/**
+ * An immutable copy of the document tree as it was at one point while it was
+ * being parsed.
+ * <p>
+ * A {@link Parser} configured with a snapshot interval publishes a new
+ * snapshot every so many tokens, between tokens, and a final one when parsing
+ * is done. Any thread may get the latest snapshot with
+ * {@link Parser#getSnapshot()} and traverse it without locking while parsing
+ * continues, which is not safe to do with the {@link org.w3c.dom.Document}
+ * itself.
+ * <p>
+ * An element is {@linkplain ElementSnapshot#isComplete() complete} once
+ * neither it nor any of its descendants is on the stack of open elements:
+ * later tree construction steps may still move it, but never change its
+ * attributes or its descendants. An element that was removed from the stack
+ * while elements inside it stayed open is not complete until those are
+ * closed as well. Neither is the root element before the {@code html} start
+ * tag opens it, nor the {@code head} element before the {@code body} or
+ * {@code frameset} starts, since the parser may still put them on the stack.
+ * Snapshots share the copies of complete elements, so taking
+ * a snapshot costs time in proportion to the number of children of the
+ * elements that are not complete and the number of elements completed since
+ * the last snapshot, rather than the size of the document.
+ *
+ * @see Parser#setSnapshotInterval(int)
+ * @author <a href="mailto:silnith@gmail.com">Kent Rosenkoetter</a>
+ */
+public final class TreeSnapshot {
+    
+    /**
+     * An immutable copy of a node.
+     * 
+     * @author <a href="mailto:silnith@gmail.com">Kent Rosenkoetter</a>
+     */
+    public abstract static class NodeSnapshot {
+        
+        private NodeSnapshot() {
+            super();
+        }
+        
+        /**
+         * Returns the type of the node, one of the constants of {@link Node}.
+         * 
+         * @return the node type
+         * @see Node#getNodeType()
+         */
+        public abstract short getNodeType();
+        
+        /**
+         * Returns the text content of the node.
+         * 
+         * @return the text content
+         * @see Node#getTextContent()
+         */
+        public abstract String getTextContent();
+        
+        /* package */abstract void appendTextContent(StringBuilder text);
+        
+    }
+    
+    /**
+     * An immutable copy of an element.
+     * 
+     * @author <a href="mailto:silnith@gmail.com">Kent Rosenkoetter</a>
+     */
+    public static final class ElementSnapshot extends NodeSnapshot {
+        
+        private final String namespaceURI;
+        
+        private final String tagName;
+        
+        private final Map<String, String> attributes;
+        
+        private final List<NodeSnapshot> children;
+        
+        private final List<NodeSnapshot> templateContents;
+        
+        private final boolean complete;
+        
+        /* package */ElementSnapshot(final String namespaceURI, final String tagName,
+                final Map<String, String> attributes, final List<NodeSnapshot> children,
+                final List<NodeSnapshot> templateContents, final boolean complete) {
+            super();
+            this.namespaceURI = namespaceURI;
+            this.tagName = tagName;
+            this.attributes = Collections.unmodifiableMap(attributes);
+            this.children = Collections.unmodifiableList(children);
+            if (templateContents == null) {
+                this.templateContents = null;
+            } else {
+                this.templateContents = Collections.unmodifiableList(templateContents);
+            }
+            this.complete = complete;
+        }
+        
+        @Override
+        public short getNodeType() {
+            return Node.ELEMENT_NODE;
+        }
+        
+        /**
+         * Returns the namespace of the element.
+         * 
+         * @return the namespace URI
+         */
+        public String getNamespaceURI() {
+            return namespaceURI;
+        }
+        
+        /**
+         * Returns the tag name of the element.
+         * 
+         * @return the tag name
+         */
+        public String getTagName() {
+            return tagName;
+        }
+        
+        /**
+         * Returns the attributes of the element, by qualified name, in the
+         * order they appeared in the DOM.
+         * 
+         * @return the attributes
+         */
+        public Map<String, String> getAttributes() {
+            return attributes;
+        }
+        
+        /**
+         * Returns the value of an attribute.
+         * 
+         * @param name the qualified name of the attribute
+         * @return the value, or {@code null} if the element has no such
+         *         attribute
+         */
+        public String getAttribute(final String name) {
+            return attributes.get(name);
+        }
+        
+        /**
+         * Returns the children of the element.
+         * 
+         * @return the child nodes
+         */
+        public List<NodeSnapshot> getChildren() {
+            return children;
+        }
+        
+        /**
+         * Returns the template contents of a {@code template} element.
+         * 
+         * @return the template contents, or {@code null} if this is not a
+         *         {@code template} element or its contents were deferred and
+         *         have not been parsed yet
+         * @see TemplateContents
+         */
+        public List<NodeSnapshot> getTemplateContents() {
+            return templateContents;
+        }
+        
+        /**
+         * Returns whether neither the element nor any of its descendants was
+         * on the stack of open elements when the snapshot was taken, or could
+         * be put on it again, so that its attributes and descendants were
+         * final.
+         * 
+         * @return {@code true} if the element is complete
+         */
+        public boolean isComplete() {
+            return complete;
+        }
+        
+        @Override
+        public String getTextContent() {
+            final StringBuilder text = new StringBuilder();
+            appendTextContent(text);
+            return text.toString();
+        }
+        
+        @Override
+        /* package */void appendTextContent(final StringBuilder text) {
+            for (final NodeSnapshot child : children) {
+                if (child.getNodeType() != Node.COMMENT_NODE) {
+                    child.appendTextContent(text);
+                }
+            }
+        }
+        
+        @Override
+        public String toString() {
+            return "<" + tagName + ">";
+        }
+        
+    }
+    
+    /**
+     * An immutable copy of a text node or a comment.
+     * 
+     * @author <a href="mailto:silnith@gmail.com">Kent Rosenkoetter</a>
+     */
+    public static final class CharacterDataSnapshot extends NodeSnapshot {
+        
+        private final short nodeType;
+        
+        private final String data;
+        
+        /* package */CharacterDataSnapshot(final short nodeType, final String data) {
+            super();
+            this.nodeType = nodeType;
+            this.data = data;
+        }
+        
+        @Override
+        public short getNodeType() {
+            return nodeType;
+        }
+        
+        /**
+         * Returns the character data of the node.
+         * 
+         * @return the data
+         */
+        public String getData() {
+            return data;
+        }
+        
+        @Override
+        public String getTextContent() {
+            return data;
+        }
+        
+        @Override
+        /* package */void appendTextContent(final StringBuilder text) {
+            text.append(data);
+        }
+        
+        @Override
+        public String toString() {
+            return data;
+        }
+        
+    }
+    
+    /**
+     * An immutable copy of a document type node.
+     * 
+     * @author <a href="mailto:silnith@gmail.com">Kent Rosenkoetter</a>
+     */
+    public static final class DocumentTypeSnapshot extends NodeSnapshot {
+        
+        private final String name;
+        
+        private final String publicId;
+        
+        private final String systemId;
+        
+        /* package */DocumentTypeSnapshot(final String name, final String publicId, final String systemId) {
+            super();
+            this.name = name;
+            this.publicId = publicId;
+            this.systemId = systemId;
+        }
+        
+        @Override
+        public short getNodeType() {
+            return Node.DOCUMENT_TYPE_NODE;
+        }
+        
+        /**
+         * @return the name of the document type
+         */
+        public String getName() {
+            return name;
+        }
+        
+        /**
+         * @return the public identifier of the document type
+         */
+        public String getPublicId() {
+            return publicId;
+        }
+        
+        /**
+         * @return the system identifier of the document type
+         */
+        public String getSystemId() {
+            return systemId;
+        }
+        
+        @Override
+        public String getTextContent() {
+            return null;
+        }
+        
+        @Override
+        /* package */void appendTextContent(final StringBuilder text) {
+            // nothing
+        }
+        
+    }
+    
+    private final long sequenceNumber;
+    
+    private final int position;
+    
+    private final List<NodeSnapshot> children;
+    
+    private final boolean complete;
+    
+    /* package */TreeSnapshot(final long sequenceNumber, final int position, final List<NodeSnapshot> children,
+            final boolean complete) {
+        super();
+        this.sequenceNumber = sequenceNumber;
+        this.position = position;
+        this.children = Collections.unmodifiableList(children);
+        this.complete = complete;
+    }
+    
+    /**
+     * Returns the number of snapshots the parser published for the document
+     * before this one.
+     * 
+     * @return the sequence number of the snapshot
+     */
+    public long getSequenceNumber() {
+        return sequenceNumber;
+    }
+    
+    /**
+     * Returns the offset in the preprocessed input the tokenizer had reached
+     * when the snapshot was taken.
+     * 
+     * @return the input offset
+     * @see org.silnith.parser.html5.lexical.Tokenizer#getPosition()
+     */
+    public int getPosition() {
+        return position;
+    }
+    
+    /**
+     * Returns the children of the document.
+     * 
+     * @return the child nodes
+     */
+    public List<NodeSnapshot> getChildren() {
+        return children;
+    }
+    
+    /**
+     * Returns the root element of the document.
+     * 
+     * @return the document element, or {@code null} if it had not been
+     *         created when the snapshot was taken
+     */
+    public ElementSnapshot getDocumentElement() {
+        for (final NodeSnapshot child : children) {
+            if (child.getNodeType() == Node.ELEMENT_NODE) {
+                return (ElementSnapshot) child;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Returns whether the snapshot was taken after parsing finished.
+     * 
+     * @return {@code true} if this is the final snapshot of the document
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+    
+}
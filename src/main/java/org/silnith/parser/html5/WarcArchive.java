@@ -0,0 +1,1255 @@
+package org.silnith.parser.html5;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.silnith.parser.html5.BatchParser.ResultHandler;
+import org.silnith.parser.html5.lexical.DecodingReader;
+import org.silnith.parser.html5.lexical.DecodingReader.Compression;
+
+
+/**
+ * Reads the HTML documents archived in a WARC file, so that they can be
+ * parsed as a batch.
+ * <p>
+ * The file is memory-mapped and the record boundaries are found when the
+ * archive is opened, by reading the record headers and skipping over the
+ * content blocks. The records themselves are read only while iterating, and
+ * each {@link Record} is a {@link BatchParser.Source}, so the HTML payloads
+ * can be handed straight to a {@link BatchParser}. Every payload is decoded
+ * by the thread that parses it, straight out of the mapped file.
+ * <p>
+ * The HTML payloads are those of {@code response} records that hold an HTTP
+ * response with an HTML media type, and of {@code resource} records with an
+ * HTML media type. The HTTP headers are skipped, the content and transfer
+ * codings are undone, and the payload is decoded using its byte order mark
+ * if it is not encoded and has one, or else the {@code charset} parameter of
+ * the {@code Content-Type} header, or else {@code windows-1252}. Character
+ * encoding declarations inside the documents are not looked for.
+ * <p>
+ * The archive may be uncompressed, or compressed record by record as a
+ * {@code .warc.gz} file, where each record is a separate gzip member. The
+ * record boundaries of a compressed archive can only be found by inflating
+ * every member, which is done once when the archive is opened. After that,
+ * only the start of each record is inflated while iterating, to read its
+ * headers, and the rest is inflated by the thread that parses it.
+ * <p>
+ * An archive is thread-safe, and the records of an archive may be opened by
+ * any number of threads at once.
+ *
+ * @see BatchParser
+ * @see <a href="https://iipc.github.io/warc-specifications/specifications/warc-format/warc-1.1/">The WARC Format 1.1</a>
+ * @author <a href="mailto:silnith@gmail.com">Kent Rosenkoetter</a>
+ */
+public final class WarcArchive implements Closeable {
+    
+    /**
+     * The most bytes of the file mapped at once, unless a single record is
+     * larger.
+     */
+    private static final long WINDOW_SIZE = 1L << 28;
+    
+    /**
+     * The most bytes allowed in the headers of a record, or of the HTTP
+     * response in a record.
+     */
+    private static final int MAX_HEADER_LENGTH = 65536;
+    
+    /**
+     * The number of bytes at the start of a compressed record that are
+     * inflated to read its headers, unless the headers are longer.
+     */
+    private static final int HEAD_LENGTH = 16384;
+    
+    private static final Charset DEFAULT_CHARSET = Charset.forName("windows-1252");
+    
+    private static final byte CR = '\r';
+    
+    private static final byte LF = '\n';
+    
+    /**
+     * A record of the archive.
+     * 
+     * @author <a href="mailto:silnith@gmail.com">Kent Rosenkoetter</a>
+     */
+    public static final class Record implements BatchParser.Source {
+        
+        private final long offset;
+        
+        private final Map<String, String> headers;
+        
+        private final Map<String, String> httpHeaders;
+        
+        private final int statusCode;
+        
+        /**
+         * The content block, or {@code null} if it is still compressed.
+         */
+        private final ByteBuffer content;
+        
+        /**
+         * The gzip member that holds the record, or {@code null} if the
+         * content block is not compressed.
+         */
+        private final ByteBuffer member;
+        
+        /**
+         * The offset of the content block in the inflated member.
+         */
+        private final int contentStart;
+        
+        private final int contentLength;
+        
+        /**
+         * The offset of the payload in the content block, or {@code -1} if
+         * the record has no payload.
+         */
+        private final int payloadStart;
+        
+        /**
+         * Constructs a record.
+         * 
+         * @param offset the offset of the record in the file
+         * @param headers the record header fields
+         * @param head the content block, or as much of its start as has been
+         *            inflated
+         * @param contentLength the length of the content block
+         * @param member the gzip member holding the record, or {@code null}
+         *            if the head is the whole content block
+         * @param contentStart the offset of the content block in the
+         *            inflated member
+         */
+        private Record(final long offset, final Map<String, String> headers, final ByteBuffer head,
+                final int contentLength, final ByteBuffer member, final int contentStart) {
+            super();
+            this.offset = offset;
+            this.headers = Collections.unmodifiableMap(headers);
+            if (member == null) {
+                this.content = head;
+            } else {
+                this.content = null;
+            }
+            this.member = member;
+            this.contentStart = contentStart;
+            this.contentLength = contentLength;
+            final String type = headers.get("WARC-Type");
+            final String contentType = headers.get("Content-Type");
+            if ("response".equals(type) && contentType != null
+                    && parseMediaType(contentType).equals("application/http")) {
+                final int limit = Math.min(MAX_HEADER_LENGTH, head.limit());
+                final Map<String, String> http = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+                final int statusLineEnd = lineEnd(head, 0, limit);
+                final int headersEnd;
+                if (statusLineEnd == -1) {
+                    headersEnd = -1;
+                } else {
+                    headersEnd = parseHeaders(head, statusLineEnd + 1, limit, http);
+                }
+                if (headersEnd == -1) {
+                    this.httpHeaders = null;
+                    this.statusCode = -1;
+                    this.payloadStart = -1;
+                } else {
+                    this.httpHeaders = Collections.unmodifiableMap(http);
+                    this.statusCode = parseStatusCode(line(head, 0, statusLineEnd));
+                    this.payloadStart = headersEnd;
+                }
+            } else if ("resource".equals(type)) {
+                this.httpHeaders = null;
+                this.statusCode = -1;
+                this.payloadStart = 0;
+            } else {
+                this.httpHeaders = null;
+                this.statusCode = -1;
+                this.payloadStart = -1;
+            }
+        }
+        
+        /**
+         * Returns whether the HTTP headers of the record may not have been
+         * found only because too little of the record was inflated.
+         */
+        private boolean isHeadTooShort(final int headLength) {
+            return member != null && payloadStart == -1 && headLength < MAX_HEADER_LENGTH
+                    && headLength < contentLength && "response".equals(getType());
+        }
+        
+        /**
+         * Returns the offset of the record in the file.
+         * 
+         * @return the offset of the first byte of the record
+         */
+        public long getOffset() {
+            return offset;
+        }
+        
+        /**
+         * Returns the named fields of the record header.
+         * 
+         * @return the record header fields, by case-insensitive name
+         */
+        public Map<String, String> getHeaders() {
+            return headers;
+        }
+        
+        /**
+         * Returns a field of the record header.
+         * 
+         * @param name the field name, which is case-insensitive
+         * @return the field value, or {@code null} if there is no such field
+         */
+        public String getHeader(final String name) {
+            return headers.get(name);
+        }
+        
+        /**
+         * Returns the type of the record, such as {@code response} or
+         * {@code request}.
+         * 
+         * @return the {@code WARC-Type} of the record
+         */
+        public String getType() {
+            return headers.get("WARC-Type");
+        }
+        
+        /**
+         * Returns the identifier of the record.
+         * 
+         * @return the {@code WARC-Record-ID} of the record
+         */
+        public String getRecordId() {
+            return headers.get("WARC-Record-ID");
+        }
+        
+        /**
+         * Returns the URI the record was captured from.
+         * 
+         * @return the {@code WARC-Target-URI} of the record, or {@code null}
+         *         if it has none
+         */
+        public String getTargetURI() {
+            return headers.get("WARC-Target-URI");
+        }
+        
+        /**
+         * Returns the headers of the HTTP response held by a
+         * {@code response} record.
+         * 
+         * @return the HTTP header fields, by case-insensitive name, or
+         *         {@code null} if the record does not hold an HTTP response
+         */
+        public Map<String, String> getHttpHeaders() {
+            return httpHeaders;
+        }
+        
+        /**
+         * Returns the status code of the HTTP response held by a
+         * {@code response} record.
+         * 
+         * @return the status code, or {@code -1} if the record does not hold
+         *         an HTTP response
+         */
+        public int getStatusCode() {
+            return statusCode;
+        }
+        
+        /**
+         * Returns the media type of the payload, without parameters.
+         * 
+         * @return the media type in lower case, or {@code null} if the record
+         *         has no payload or the payload has no media type
+         */
+        public String getMediaType() {
+            final String contentType = getPayloadContentType();
+            if (contentType == null) {
+                return null;
+            }
+            return parseMediaType(contentType);
+        }
+        
+        /**
+         * Returns whether the payload of the record is an HTML document.
+         * 
+         * @return {@code true} if the payload has an HTML media type
+         */
+        public boolean isHTML() {
+            final String mediaType = getMediaType();
+            return "text/html".equals(mediaType) || "application/xhtml+xml".equals(mediaType);
+        }
+        
+        /**
+         * Returns the number of bytes of the payload, as archived, before the
+         * content and transfer codings are undone.
+         * 
+         * @return the length of the payload, or {@code -1} if the record has
+         *         no payload
+         */
+        public int getPayloadLength() {
+            if (payloadStart == -1) {
+                return -1;
+            }
+            return contentLength - payloadStart;
+        }
+        
+        /**
+         * Returns the character encoding the payload is decoded with if it
+         * has no byte order mark.
+         * 
+         * @return the character encoding of the payload
+         */
+        public Charset getCharset() {
+            final String contentType = getPayloadContentType();
+            if (contentType == null) {
+                return DEFAULT_CHARSET;
+            }
+            final String label = getParameter(contentType, "charset");
+            if (label == null) {
+                return DEFAULT_CHARSET;
+            }
+            return lookupCharset(label);
+        }
+        
+        private String getPayloadContentType() {
+            if (payloadStart == -1) {
+                return null;
+            } else if (httpHeaders == null) {
+                return headers.get("Content-Type");
+            } else {
+                return httpHeaders.get("Content-Type");
+            }
+        }
+        
+        /**
+         * Opens the payload of the record for reading. This may be called any
+         * number of times, from any thread.
+         * 
+         * @return the decoded characters of the payload
+         * @throws IOException if the record has no payload, or cannot be
+         *             inflated, or the payload has a content or transfer
+         *             coding that is not supported
+         */
+        @Override
+        public Reader open() throws IOException {
+            if (payloadStart == -1) {
+                throw new IOException("Record has no payload: " + getRecordId());
+            }
+            final ByteBuffer block;
+            if (member == null) {
+                block = content;
+            } else {
+                final byte[] inflated = new byte[contentStart + contentLength];
+                if (inflate(member.duplicate(), inflated, true).stored < inflated.length) {
+                    throw new IOException("Truncated record: " + getRecordId());
+                }
+                block = slice(ByteBuffer.wrap(inflated), contentStart, contentLength);
+            }
+            final ByteBuffer payload = slice(block, payloadStart, contentLength - payloadStart);
+            Compression compression = Compression.NONE;
+            InputStream in;
+            if (httpHeaders == null) {
+                in = new ByteBufferInputStream(payload.duplicate());
+            } else {
+                final String transferCoding = httpHeaders.get("Transfer-Encoding");
+                if (transferCoding == null || transferCoding.trim().equalsIgnoreCase("identity")) {
+                    in = new ByteBufferInputStream(payload.duplicate());
+                } else if (transferCoding.trim().equalsIgnoreCase("chunked")) {
+                    in = new ChunkedInputStream(payload.duplicate());
+                } else {
+                    throw new IOException("Unsupported transfer coding: " + transferCoding);
+                }
+                final String contentCoding = httpHeaders.get("Content-Encoding");
+                if (contentCoding == null) {
+                    compression = Compression.NONE;
+                } else {
+                    switch (contentCoding.trim().toLowerCase(Locale.ENGLISH)) {
+                    case "":
+                    case "identity": {
+                        compression = Compression.NONE;
+                    } break;
+                    case "gzip":
+                    case "x-gzip": {
+                        compression = Compression.GZIP;
+                    } break;
+                    case "deflate": {
+                        compression = Compression.DEFLATE;
+                    } break;
+                    default: {
+                        throw new IOException("Unsupported content coding: " + contentCoding);
+                    } // break;
+                    }
+                }
+            }
+            Charset charset = getCharset();
+            if (compression == Compression.NONE && in instanceof ByteBufferInputStream) {
+                /*
+                 * The byte order mark overrides the declared encoding, and is
+                 * skipped so that it does not become part of the text.
+                 */
+                if (startsWith(payload, 0xEF, 0xBB, 0xBF)) {
+                    charset = StandardCharsets.UTF_8;
+                    in.skip(3);
+                } else if (startsWith(payload, 0xFE, 0xFF)) {
+                    charset = StandardCharsets.UTF_16BE;
+                    in.skip(2);
+                } else if (startsWith(payload, 0xFF, 0xFE)) {
+                    charset = StandardCharsets.UTF_16LE;
+                    in.skip(2);
+                }
+            }
+            return new DecodingReader(in, charset, compression);
+        }
+        
+        @Override
+        public String toString() {
+            return getType() + " " + getTargetURI();
+        }
+        
+    }
+    
+    /**
+     * The outcome of inflating a gzip member.
+     */
+    private static final class GzipMember {
+        
+        /**
+         * Whether the whole member was inflated.
+         */
+        private final boolean finished;
+        
+        /**
+         * The number of bytes of the member, if it was inflated to the end.
+         */
+        private final int length;
+        
+        /**
+         * The number of bytes the member inflated to, if it was inflated to
+         * the end.
+         */
+        private final long inflatedLength;
+        
+        /**
+         * The number of inflated bytes stored in the output.
+         */
+        private final int stored;
+        
+        private GzipMember(final boolean finished, final int length, final long inflatedLength, final int stored) {
+            super();
+            this.finished = finished;
+            this.length = length;
+            this.inflatedLength = inflatedLength;
+            this.stored = stored;
+        }
+        
+    }
+    
+    /**
+     * Inflates the gzip member at the start of a buffer. The first inflated
+     * bytes are stored in the output, and the rest are discarded.
+     * 
+     * @param buffer the buffer, starting at the member
+     * @param out the output
+     * @param stopWhenFull whether to stop once the output is full, rather
+     *            than inflating the member to the end to find its length
+     * @return the outcome, or {@code null} if the member does not end within
+     *         the buffer
+     * @throws IOException if the buffer does not hold a valid gzip member
+     */
+    private static GzipMember inflate(final ByteBuffer buffer, final byte[] out, final boolean stopWhenFull)
+            throws IOException {
+        int position = gzipHeaderLength(buffer);
+        if (position == -1) {
+            return null;
+        }
+        final Inflater inflater = new Inflater(true);
+        final CRC32 crc = new CRC32();
+        try {
+            final byte[] input = new byte[8192];
+            final byte[] discard = new byte[8192];
+            final ByteBuffer source = buffer.duplicate();
+            int stored = 0;
+            while ( !inflater.finished()) {
+                if (stopWhenFull && stored == out.length) {
+                    return new GzipMember(false, -1, -1, stored);
+                }
+                if (inflater.needsInput()) {
+                    if (position == buffer.limit()) {
+                        return null;
+                    }
+                    final int count = Math.min(input.length, buffer.limit() - position);
+                    source.position(position);
+                    source.get(input, 0, count);
+                    inflater.setInput(input, 0, count);
+                    position += count;
+                }
+                if (stored < out.length) {
+                    final int count = inflater.inflate(out, stored, out.length - stored);
+                    crc.update(out, stored, count);
+                    stored += count;
+                } else {
+                    crc.update(discard, 0, inflater.inflate(discard));
+                }
+                if (inflater.needsDictionary()) {
+                    throw new IOException("Gzip member needs a preset dictionary.");
+                }
+            }
+            final int end = position - inflater.getRemaining();
+            if (end + 8 > buffer.limit()) {
+                return null;
+            }
+            if (readIntLE(buffer, end) != (int) crc.getValue()
+                    || readIntLE(buffer, end + 4) != (int) inflater.getBytesWritten()) {
+                throw new IOException("Gzip member fails its integrity check.");
+            }
+            return new GzipMember(true, end + 8, inflater.getBytesWritten(), stored);
+        } catch (final DataFormatException e) {
+            throw new IOException("Invalid deflate data in gzip member.", e);
+        } finally {
+            inflater.end();
+        }
+    }
+    
+    /**
+     * Returns the length of the header of the gzip member at the start of a
+     * buffer, or {@code -1} if the header does not end within the buffer.
+     * 
+     * @see <a href="https://tools.ietf.org/html/rfc1952#section-2.3">RFC 1952, section 2.3</a>
+     */
+    private static int gzipHeaderLength(final ByteBuffer buffer) throws IOException {
+        final int limit = buffer.limit();
+        if (limit < 10) {
+            return -1;
+        }
+        if ( !isGzip(buffer) || buffer.get(2) != 8) {
+            throw new IOException("Not a gzip member.");
+        }
+        final int flags = buffer.get(3) & 0xFF;
+        int position = 10;
+        if ((flags & 0x04) != 0) {
+            if (position + 2 > limit) {
+                return -1;
+            }
+            position += 2 + ((buffer.get(position) & 0xFF) | (buffer.get(position + 1) & 0xFF) << 8);
+        }
+        for (final int flag : new int[] { 0x08, 0x10 }) {
+            if ((flags & flag) != 0) {
+                while (position < limit && buffer.get(position) != 0) {
+                    position++ ;
+                }
+                position++ ;
+            }
+        }
+        if ((flags & 0x02) != 0) {
+            position += 2;
+        }
+        if (position > limit) {
+            return -1;
+        }
+        return position;
+    }
+    
+    private static boolean isGzip(final ByteBuffer buffer) {
+        return buffer.limit() >= 2 && buffer.get(0) == (byte) 0x1F && buffer.get(1) == (byte) 0x8B;
+    }
+    
+    private static int readIntLE(final ByteBuffer buffer, final int index) {
+        return (buffer.get(index) & 0xFF) | (buffer.get(index + 1) & 0xFF) << 8
+                | (buffer.get(index + 2) & 0xFF) << 16 | (buffer.get(index + 3) & 0xFF) << 24;
+    }
+    
+    /**
+     * Reads the remaining bytes of a buffer.
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+        
+        private final ByteBuffer buffer;
+        
+        private ByteBufferInputStream(final ByteBuffer buffer) {
+            super();
+            this.buffer = buffer;
+        }
+        
+        @Override
+        public int read() {
+            if ( !buffer.hasRemaining()) {
+                return -1;
+            }
+            return buffer.get() & 0xFF;
+        }
+        
+        @Override
+        public int read(final byte[] b, final int off, final int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if ( !buffer.hasRemaining()) {
+                return -1;
+            }
+            final int count = Math.min(len, buffer.remaining());
+            buffer.get(b, off, count);
+            return count;
+        }
+        
+        @Override
+        public long skip(final long n) {
+            final int count = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + count);
+            return count;
+        }
+        
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+        
+    }
+    
+    /**
+     * Reads the remaining bytes of a buffer that holds a message body with
+     * the {@code chunked} transfer coding, without the chunk framing.
+     * Trailer fields are ignored.
+     * 
+     * @see <a href="https://tools.ietf.org/html/rfc7230#section-4.1">RFC 7230, section 4.1</a>
+     */
+    private static final class ChunkedInputStream extends InputStream {
+        
+        private final ByteBuffer buffer;
+        
+        /**
+         * The bytes left in the current chunk, or {@code -1} after the last
+         * chunk.
+         */
+        private int chunkRemaining;
+        
+        private ChunkedInputStream(final ByteBuffer buffer) {
+            super();
+            this.buffer = buffer;
+            this.chunkRemaining = 0;
+        }
+        
+        private boolean nextChunk() throws IOException {
+            if (chunkRemaining == -1) {
+                return false;
+            }
+            if (chunkRemaining > 0) {
+                return true;
+            }
+            int position = buffer.position();
+            int end = lineEnd(buffer, position, buffer.limit());
+            if (end == position || end == position + 1 && buffer.get(position) == CR) {
+                // the line break that ends the previous chunk
+                position = end + 1;
+                end = lineEnd(buffer, position, buffer.limit());
+            }
+            if (end == -1) {
+                throw new IOException("Truncated chunked message body.");
+            }
+            String size = line(buffer, position, end);
+            final int extension = size.indexOf(';');
+            if (extension != -1) {
+                size = size.substring(0, extension);
+            }
+            try {
+                chunkRemaining = Integer.parseInt(size.trim(), 16);
+            } catch (final NumberFormatException e) {
+                throw new IOException("Invalid chunk size: " + size, e);
+            }
+            if (chunkRemaining < 0) {
+                throw new IOException("Invalid chunk size: " + size);
+            }
+            buffer.position(end + 1);
+            if (chunkRemaining == 0) {
+                chunkRemaining = -1;
+                return false;
+            }
+            if (chunkRemaining > buffer.remaining()) {
+                throw new IOException("Truncated chunked message body.");
+            }
+            return true;
+        }
+        
+        @Override
+        public int read() throws IOException {
+            if ( !nextChunk()) {
+                return -1;
+            }
+            chunkRemaining-- ;
+            return buffer.get() & 0xFF;
+        }
+        
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if ( !nextChunk()) {
+                return -1;
+            }
+            final int count = Math.min(len, chunkRemaining);
+            buffer.get(b, off, count);
+            chunkRemaining -= count;
+            return count;
+        }
+        
+        @Override
+        public int available() {
+            return Math.max(0, chunkRemaining);
+        }
+        
+    }
+    
+    private final FileChannel channel;
+    
+    private final long size;
+    
+    /**
+     * Whether each record is a separate gzip member.
+     */
+    private final boolean compressed;
+    
+    /**
+     * The offsets of the records in the file, in the first
+     * {@link #recordCount} elements. The records of a compressed archive are
+     * contiguous, so each ends where the next one starts.
+     */
+    private long[] offsets;
+    
+    private int recordCount;
+    
+    private ByteBuffer window;
+    
+    private long windowStart;
+    
+    /**
+     * Opens a WARC file and finds the records in it.
+     * 
+     * @param path the path of the file
+     * @throws IOException if the file cannot be read, or is not a WARC file,
+     *             or is truncated, or is compressed other than record by
+     *             record
+     */
+    public WarcArchive(final Path path) throws IOException {
+        super();
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            this.size = channel.size();
+            this.offsets = new long[16];
+            this.recordCount = 0;
+            this.window = null;
+            this.windowStart = 0;
+            this.compressed = isGzip(map(0, (int) Math.min(2, size)));
+            if (compressed) {
+                indexMembers();
+            } else {
+                index();
+            }
+        } catch (final IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+    
+    /**
+     * Returns a buffer of the file that starts at the given offset and holds
+     * at least the given number of bytes. The buffer shares the mapped region
+     * of the file, and its position is {@code 0}.
+     */
+    private synchronized ByteBuffer map(final long offset, final int length) throws IOException {
+        if (window == null || offset < windowStart || offset + length > windowStart + window.capacity()) {
+            final long mapLength = Math.max(length, Math.min(WINDOW_SIZE, size - offset));
+            window = channel.map(FileChannel.MapMode.READ_ONLY, offset, mapLength);
+            windowStart = offset;
+        }
+        return slice(window, (int) (offset - windowStart), window.capacity() - (int) (offset - windowStart));
+    }
+    
+    private void index() throws IOException {
+        long position = 0;
+        while (position < size) {
+            final ByteBuffer buffer = map(position, (int) Math.min(MAX_HEADER_LENGTH, size - position));
+            int start = 0;
+            while (start < buffer.limit() && (buffer.get(start) == CR || buffer.get(start) == LF)) {
+                start++ ;
+            }
+            if (start == buffer.limit()) {
+                position += start;
+                continue;
+            }
+            final long recordStart = position + start;
+            final Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            final long contentStart = recordStart + readRecordHeaders(recordStart, headers);
+            final long contentEnd = contentStart + getContentLength(recordStart, headers);
+            if (contentEnd > size) {
+                throw new IOException("Truncated record at offset " + recordStart);
+            }
+            addRecord(recordStart);
+            position = contentEnd;
+        }
+    }
+    
+    /**
+     * Finds the records of an archive compressed record by record, by
+     * inflating each gzip member in turn.
+     */
+    private void indexMembers() throws IOException {
+        final byte[] head = new byte[MAX_HEADER_LENGTH];
+        long position = 0;
+        while (position < size) {
+            int length = (int) Math.min(WINDOW_SIZE, size - position);
+            GzipMember member;
+            try {
+                member = inflate(map(position, length), head, false);
+                while (member == null && length < size - position && length < Integer.MAX_VALUE) {
+                    length = (int) Math.min(Integer.MAX_VALUE, Math.min(size - position, length * 2L));
+                    member = inflate(map(position, length), head, false);
+                }
+            } catch (final IOException e) {
+                throw new IOException("Invalid gzip member at offset " + position, e);
+            }
+            if (member == null) {
+                throw new IOException("Truncated gzip member at offset " + position);
+            }
+            final Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            final ByteBuffer inflated = ByteBuffer.wrap(head, 0, member.stored).slice();
+            final long recordLength = parseRecordHeaders(inflated, position, headers)
+                    + (long) getContentLength(position, headers);
+            if (member.inflatedLength < recordLength) {
+                throw new IOException("Truncated record at offset " + position);
+            }
+            if (member.inflatedLength > recordLength + 4) {
+                throw new IOException("More than one record in the gzip member at offset " + position);
+            }
+            addRecord(position);
+            position += member.length;
+        }
+    }
+    
+    private void addRecord(final long offset) {
+        if (recordCount == offsets.length) {
+            offsets = Arrays.copyOf(offsets, recordCount * 2);
+        }
+        offsets[recordCount++ ] = offset;
+    }
+    
+    /**
+     * Reads the headers of the record at the given offset into the map.
+     * 
+     * @return the length of the record headers, including the blank line
+     *         that ends them
+     */
+    private int readRecordHeaders(final long offset, final Map<String, String> headers) throws IOException {
+        return parseRecordHeaders(map(offset, (int) Math.min(MAX_HEADER_LENGTH, size - offset)), offset, headers);
+    }
+    
+    /**
+     * Parses the headers of the record at the start of a buffer into the
+     * map.
+     * 
+     * @return the length of the record headers, including the blank line
+     *         that ends them
+     */
+    private static int parseRecordHeaders(final ByteBuffer buffer, final long offset,
+            final Map<String, String> headers) throws IOException {
+        final int limit = Math.min(MAX_HEADER_LENGTH, buffer.limit());
+        final int versionEnd = lineEnd(buffer, 0, limit);
+        if (versionEnd == -1 || !line(buffer, 0, versionEnd).startsWith("WARC/")) {
+            throw new IOException("Not a WARC record at offset " + offset);
+        }
+        final int end = parseHeaders(buffer, versionEnd + 1, limit, headers);
+        if (end == -1) {
+            throw new IOException("Record headers too long at offset " + offset);
+        }
+        return end;
+    }
+    
+    private static int getContentLength(final long offset, final Map<String, String> headers) throws IOException {
+        final String value = headers.get("Content-Length");
+        if (value == null) {
+            throw new IOException("Record without Content-Length at offset " + offset);
+        }
+        try {
+            final long contentLength = Long.parseLong(value.trim());
+            if (contentLength < 0 || contentLength > Integer.MAX_VALUE) {
+                throw new IOException("Unsupported Content-Length " + contentLength + " at offset " + offset);
+            }
+            return (int) contentLength;
+        } catch (final NumberFormatException e) {
+            throw new IOException("Invalid Content-Length at offset " + offset, e);
+        }
+    }
+    
+    /**
+     * Returns the number of records in the archive, of any type.
+     * 
+     * @return the number of records
+     */
+    public int size() {
+        return recordCount;
+    }
+    
+    /**
+     * Reads a record of the archive.
+     * 
+     * @param index the position of the record in the archive, starting from
+     *            {@code 0}
+     * @return the record
+     * @throws IOException if the record cannot be read
+     * @throws IndexOutOfBoundsException if there is no such record
+     */
+    public Record getRecord(final int index) throws IOException {
+        if (index < 0 || index >= recordCount) {
+            throw new IndexOutOfBoundsException(String.valueOf(index));
+        }
+        final long offset = offsets[index];
+        if (compressed) {
+            final long end;
+            if (index + 1 < recordCount) {
+                end = offsets[index + 1];
+            } else {
+                end = size;
+            }
+            final ByteBuffer member = slice(map(offset, (int) (end - offset)), 0, (int) (end - offset));
+            final Record record = readCompressedRecord(offset, member, HEAD_LENGTH);
+            if (record == null) {
+                return readCompressedRecord(offset, member, 2 * MAX_HEADER_LENGTH);
+            }
+            return record;
+        }
+        final Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        final int headersLength = readRecordHeaders(offset, headers);
+        final int contentLength = getContentLength(offset, headers);
+        final ByteBuffer content = slice(map(offset + headersLength, contentLength), 0, contentLength);
+        return new Record(offset, headers, content, contentLength, null, headersLength);
+    }
+    
+    /**
+     * Reads a record of a compressed archive by inflating the start of its
+     * gzip member. A record small enough to be inflated completely is kept
+     * inflated.
+     * 
+     * @return the record, or {@code null} if its headers are longer than the
+     *         number of bytes inflated
+     */
+    private static Record readCompressedRecord(final long offset, final ByteBuffer member, final int headLength)
+            throws IOException {
+        final byte[] head = new byte[headLength];
+        final GzipMember inflated = inflate(member.duplicate(), head, true);
+        if (inflated == null) {
+            throw new IOException("Truncated gzip member at offset " + offset);
+        }
+        final ByteBuffer buffer = ByteBuffer.wrap(head, 0, inflated.stored).slice();
+        final Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        final int headersLength;
+        try {
+            headersLength = parseRecordHeaders(buffer, offset, headers);
+        } catch (final IOException e) {
+            if (inflated.finished || headLength >= 2 * MAX_HEADER_LENGTH) {
+                throw e;
+            }
+            return null;
+        }
+        final int contentLength = getContentLength(offset, headers);
+        final int available = Math.min(inflated.stored - headersLength, contentLength);
+        final ByteBuffer start = slice(buffer, headersLength, available);
+        if (available == contentLength) {
+            return new Record(offset, headers, start, contentLength, null, headersLength);
+        }
+        final Record record = new Record(offset, headers, start, contentLength, member, headersLength);
+        if (record.isHeadTooShort(available)) {
+            return null;
+        }
+        return record;
+    }
+    
+    /**
+     * Returns every record of the archive, in the order they appear in the
+     * file. The records are read as they are iterated over, and the iterators
+     * throw {@link IllegalStateException} if a record cannot be read because
+     * the archive was closed.
+     * 
+     * @return the records
+     */
+    public Iterable<Record> getRecords() {
+        return new Iterable<Record>() {
+            
+            @Override
+            public Iterator<Record> iterator() {
+                return new RecordIterator(false);
+            }
+        };
+    }
+    
+    /**
+     * Returns the records of the archive whose payload is an HTML document,
+     * in the order they appear in the file. The records are read as they are
+     * iterated over.
+     * 
+     * @return the HTML records
+     * @see Record#isHTML()
+     */
+    public Iterable<Record> getHTMLRecords() {
+        return new Iterable<Record>() {
+            
+            @Override
+            public Iterator<Record> iterator() {
+                return new RecordIterator(true);
+            }
+        };
+    }
+    
+    /**
+     * Parses every HTML document in the archive, handing each result to the
+     * handler as soon as it is available. The {@linkplain BatchParser.Result#getSource()
+     * source} of each result is the {@link Record} of the document.
+     * 
+     * @param batchParser the batch parser that parses the documents
+     * @param handler the handler for the results
+     * @throws InterruptedException if the calling thread is interrupted while
+     *             waiting for a result
+     * @see BatchParser#parseAll(Iterable, ResultHandler)
+     */
+    public void parseAll(final BatchParser batchParser, final ResultHandler handler) throws InterruptedException {
+        batchParser.parseAll(getHTMLRecords(), handler);
+    }
+    
+    private final class RecordIterator implements Iterator<Record> {
+        
+        private final boolean htmlOnly;
+        
+        private int index;
+        
+        private Record next;
+        
+        private RecordIterator(final boolean htmlOnly) {
+            super();
+            this.htmlOnly = htmlOnly;
+            this.index = 0;
+            this.next = null;
+        }
+        
+        @Override
+        public boolean hasNext() {
+            while (next == null && index < recordCount) {
+                final Record record;
+                try {
+                    record = getRecord(index++ );
+                } catch (final IOException e) {
+                    throw new IllegalStateException("Archive cannot be read.", e);
+                }
+                if ( !htmlOnly || record.isHTML()) {
+                    next = record;
+                }
+            }
+            return next != null;
+        }
+        
+        @Override
+        public Record next() {
+            if ( !hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final Record record = next;
+            next = null;
+            return record;
+        }
+        
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+        
+    }
+    
+    /**
+     * Closes the file. Records already read remain readable, but no more
+     * records can be read from the archive.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+    
+    private static boolean startsWith(final ByteBuffer buffer, final int... bytes) {
+        if (buffer.limit() < bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++ ) {
+            if ((buffer.get(i) & 0xFF) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static ByteBuffer slice(final ByteBuffer buffer, final int offset, final int length) {
+        final ByteBuffer slice = buffer.duplicate();
+        slice.limit(offset + length);
+        slice.position(offset);
+        return slice.slice();
+    }
+    
+    /**
+     * Returns the index of the next line feed, or {@code -1} if there is none
+     * before the limit.
+     */
+    private static int lineEnd(final ByteBuffer buffer, final int start, final int limit) {
+        for (int i = start; i < limit; i++ ) {
+            if (buffer.get(i) == LF) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Returns the line that ends at the given line feed, without the line
+     * break.
+     */
+    private static String line(final ByteBuffer buffer, final int start, final int lineFeed) {
+        int end = lineFeed;
+        if (end > start && buffer.get(end - 1) == CR) {
+            end-- ;
+        }
+        final char[] chars = new char[end - start];
+        for (int i = start; i < end; i++ ) {
+            chars[i - start] = (char) (buffer.get(i) & 0xFF);
+        }
+        return new String(chars);
+    }
+    
+    /**
+     * Parses header fields up to and including the blank line that ends them.
+     * Lines that start with white space continue the previous field, and
+     * lines without a colon are ignored.
+     * 
+     * @return the index after the blank line, or {@code -1} if there is no
+     *         blank line before the limit
+     */
+    private static int parseHeaders(final ByteBuffer buffer, final int start, final int limit,
+            final Map<String, String> headers) {
+        String name = null;
+        int position = start;
+        while (true) {
+            final int end = lineEnd(buffer, position, limit);
+            if (end == -1) {
+                return -1;
+            }
+            final String line = line(buffer, position, end);
+            position = end + 1;
+            if (line.isEmpty()) {
+                return position;
+            }
+            if (name != null && (line.charAt(0) == ' ' || line.charAt(0) == '\t')) {
+                headers.put(name, headers.get(name) + " " + line.trim());
+                continue;
+            }
+            final int colon = line.indexOf(':');
+            if (colon <= 0) {
+                name = null;
+                continue;
+            }
+            name = line.substring(0, colon).trim();
+            final String value = line.substring(colon + 1).trim();
+            final String previous = headers.get(name);
+            if (previous == null) {
+                headers.put(name, value);
+            } else {
+                headers.put(name, previous + ", " + value);
+            }
+        }
+    }
+    
+    private static int parseStatusCode(final String statusLine) {
+        final String[] parts = statusLine.split(" ", 3);
+        if (parts.length < 2) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(parts[1]);
+        } catch (final NumberFormatException e) {
+            return -1;
+        }
+    }
+    
+    private static String parseMediaType(final String contentType) {
+        final int semicolon = contentType.indexOf(';');
+        final String mediaType;
+        if (semicolon == -1) {
+            mediaType = contentType;
+        } else {
+            mediaType = contentType.substring(0, semicolon);
+        }
+        return mediaType.trim().toLowerCase(Locale.ENGLISH);
+    }
+    
+    private static String getParameter(final String contentType, final String name) {
+        final String[] parameters = contentType.split(";");
+        for (int i = 1; i < parameters.length; i++ ) {
+            final int equals = parameters[i].indexOf('=');
+            if (equals != -1 && parameters[i].substring(0, equals).trim().equalsIgnoreCase(name)) {
+                String value = parameters[i].substring(equals + 1).trim();
+                if (value.length() >= 2 && value.charAt(0) == '"' && value.charAt(value.length() - 1) == '"') {
+                    value = value.substring(1, value.length() - 1);
+                }
+                return value;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Returns the character encoding for a label. The labels the encoding
+     * standard maps to a superset of the labelled encoding get the superset,
+     * and unknown labels get the default.
+     * 
+     * @see <a href="https://encoding.spec.whatwg.org/#names-and-labels">Encoding, 4.2 Names and labels</a>
+     */
+    private static Charset lookupCharset(final String label) {
+        switch (label.trim().toLowerCase(Locale.ENGLISH)) {
+        case "us-ascii":
+        case "ascii":
+        case "iso-8859-1":
+        case "iso8859-1":
+        case "latin1":
+        case "l1": {
+            return DEFAULT_CHARSET;
+        } // break;
+        case "iso-8859-9":
+        case "latin5": {
+            return Charset.forName("windows-1254");
+        } // break;
+        case "gb2312": {
+            return Charset.forName("GBK");
+        } // break;
+        default: {
+            try {
+                if (Charset.isSupported(label.trim())) {
+                    return Charset.forName(label.trim());
+                }
+            } catch (final IllegalCharsetNameException e) {
+                // fall through to the default
+            }
+            return DEFAULT_CHARSET;
+        } // break;
+        }
+    }
+    
+}
@@ -0,0 +1,273 @@
+package org.silnith.parser.html5.grammar.dom;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.silnith.parser.html5.grammar.element.ElementKind;
+import org.silnith.parser.html5.lexical.token.TagToken;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+
+/**
+ * Creates the elements for start tag tokens in a single document.
+ * <p>
+ * Creating an element through {@link Document#createElementNS(String, String)}
+ * validates the qualified name every time, and setting each attribute through
+ * {@link Element#setAttribute(String, String)} validates the attribute name
+ * again. A document only ever contains a few dozen distinct element types, so
+ * the factory keeps one prototype element for each namespace and tag name it
+ * has seen, along with the {@link ElementKind} of the element type and its
+ * category flags. New elements are shallow clones of the prototype, which
+ * skips the name validation entirely.
+ * <p>
+ * Attribute names are validated the first time they are set. The tokenizer
+ * guarantees that the attributes of a tag token have unique names, so when
+ * every attribute name of a token has been validated before, the attributes
+ * are set with {@link Document#getStrictErrorChecking() strict error checking}
+ * turned off.
+ *
+ * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#create-an-element-for-the-token">create an element for a token</a>
+ * @author <a href="mailto:silnith@gmail.com">Kent Rosenkoetter</a>
+ */
+public class ElementFactory {
+    
+    private static final String HTML_NAMESPACE = "http://www.w3.org/1999/xhtml";
+    
+    private static final String MATHML_NAMESPACE = "http://www.w3.org/1998/Math/MathML";
+    
+    private static final String SVG_NAMESPACE = "http://www.w3.org/2000/svg";
+    
+    /**
+     * A pre-validated element for one element type, together with the
+     * {@link ElementKind} information for the type.
+     */
+    public static final class Prototype {
+        
+        private final Element element;
+        
+        private final int kind;
+        
+        private final int flags;
+        
+        Prototype(final Element element, final int kind) {
+            super();
+            this.element = element;
+            this.kind = kind;
+            this.flags = ElementKind.getFlags(kind);
+        }
+        
+        /**
+         * Returns the kind of the element type.
+         * 
+         * @return the element kind, as defined by {@link ElementKind}
+         */
+        public int getKind() {
+            return kind;
+        }
+        
+        /**
+         * Returns the category flags of the element type.
+         * 
+         * @return the category flags, as defined by {@link ElementKind}
+         */
+        public int getFlags() {
+            return flags;
+        }
+        
+        /**
+         * Returns whether the element type belongs to any of the categories in
+         * the given mask.
+         * 
+         * @param mask a bitwise OR of {@link ElementKind} category flags
+         * @return {@code true} if the element type has at least one of the
+         *         flags
+         */
+        public boolean isA(final int mask) {
+            return (flags & mask) != 0;
+        }
+        
+        /**
+         * Creates a new element of this type, with no attributes.
+         * 
+         * @return a new element
+         */
+        public Element newElement() {
+            return (Element) element.cloneNode(false);
+        }
+        
+    }
+    
+    private Document document;
+    
+    private final Map<String, Prototype> htmlPrototypes;
+    
+    private final Map<String, Prototype> mathMLPrototypes;
+    
+    private final Map<String, Prototype> svgPrototypes;
+    
+    /**
+     * Prototypes for elements in any other namespace, keyed by namespace and
+     * then by tag name.
+     */
+    private final Map<String, Map<String, Prototype>> otherPrototypes;
+    
+    /**
+     * The attribute names that have already been accepted by the document.
+     */
+    private final Set<String> validatedAttributeNames;
+    
+    /**
+     * Constructs a new element factory for the given document.
+     * 
+     * @param document the document that will own the created elements
+     */
+    public ElementFactory(final Document document) {
+        super();
+        this.document = document;
+        this.htmlPrototypes = new HashMap<>();
+        this.mathMLPrototypes = new HashMap<>();
+        this.svgPrototypes = new HashMap<>();
+        this.otherPrototypes = new HashMap<>();
+        this.validatedAttributeNames = new HashSet<>();
+    }
+    
+    /**
+     * Switches this factory to creating elements for a new document. The
+     * prototypes belong to the previous document, so they are discarded and
+     * recreated on demand. Whether an attribute name is valid does not depend
+     * on the document, so the attribute names already validated are kept. The
+     * new document should come from the same DOM implementation as the
+     * previous one.
+     * 
+     * @param document the document that will own the created elements
+     */
+    public void reset(final Document document) {
+        this.document = document;
+        htmlPrototypes.clear();
+        mathMLPrototypes.clear();
+        svgPrototypes.clear();
+        otherPrototypes.clear();
+    }
+    
+    /**
+     * Returns the document that owns the elements this factory creates.
+     * 
+     * @return the owner document
+     */
+    public Document getDocument() {
+        return document;
+    }
+    
+    /**
+     * Returns the prototype for elements with the given namespace and tag
+     * name, creating it if this is the first request for that element type.
+     * 
+     * @param namespace the namespace of the element
+     * @param tagName the tag name of the element
+     * @return the prototype for the element type
+     * @throws org.w3c.dom.DOMException if the tag name is not a valid
+     *             qualified name
+     */
+    public Prototype getPrototype(final String namespace, final String tagName) {
+        final Map<String, Prototype> prototypes = getPrototypes(namespace);
+        final Prototype cached = prototypes.get(tagName);
+        if (cached != null) {
+            return cached;
+        }
+        final Element element = document.createElementNS(namespace, tagName);
+        final Prototype prototype = new Prototype(element, ElementKind.kindOf(namespace, tagName));
+        prototypes.put(tagName, prototype);
+        return prototype;
+    }
+    
+    private Map<String, Prototype> getPrototypes(final String namespace) {
+        if (HTML_NAMESPACE.equals(namespace)) {
+            return htmlPrototypes;
+        } else if (MATHML_NAMESPACE.equals(namespace)) {
+            return mathMLPrototypes;
+        } else if (SVG_NAMESPACE.equals(namespace)) {
+            return svgPrototypes;
+        } else {
+            Map<String, Prototype> prototypes = otherPrototypes.get(namespace);
+            if (prototypes == null) {
+                prototypes = new HashMap<>();
+                otherPrototypes.put(namespace, prototypes);
+            }
+            return prototypes;
+        }
+    }
+    
+    /**
+     * Creates a new element with the given namespace and tag name, and the
+     * given attributes.
+     * 
+     * @param namespace the namespace of the element
+     * @param tagName the tag name of the element
+     * @param attributes the attributes of the element, with unique names
+     * @return the new element
+     * @throws org.w3c.dom.DOMException if the tag name or any attribute name
+     *             is not valid
+     */
+    public Element createElement(final String namespace, final String tagName,
+            final List<TagToken.Attribute> attributes) {
+        final Element element = getPrototype(namespace, tagName).newElement();
+        setAttributes(element, attributes);
+        return element;
+    }
+    
+    /**
+     * Sets the given attributes on an element that has no attributes yet.
+     * Attributes that have a namespace are set using
+     * {@link Element#setAttributeNS(String, String, String)}.
+     * 
+     * @param element an element created by this factory
+     * @param attributes the attributes to set, with unique names
+     * @throws org.w3c.dom.DOMException if any attribute name is not valid
+     */
+    public void setAttributes(final Element element, final List<TagToken.Attribute> attributes) {
+        final int size = attributes.size();
+        if (size == 0) {
+            return;
+        }
+        final String[] names = new String[size];
+        boolean allValidated = true;
+        for (int i = 0; i < size; i++ ) {
+            names[i] = attributes.get(i).getName();
+            if ( !validatedAttributeNames.contains(names[i])) {
+                allValidated = false;
+            }
+        }
+        if (allValidated) {
+            final boolean strictErrorChecking = document.getStrictErrorChecking();
+            document.setStrictErrorChecking(false);
+            try {
+                setAttributes(element, attributes, names);
+            } finally {
+                document.setStrictErrorChecking(strictErrorChecking);
+            }
+        } else {
+            setAttributes(element, attributes, names);
+            for (final String name : names) {
+                validatedAttributeNames.add(name);
+            }
+        }
+    }
+    
+    private void setAttributes(final Element element, final List<TagToken.Attribute> attributes,
+            final String[] names) {
+        for (int i = 0; i < names.length; i++ ) {
+            final TagToken.Attribute attribute = attributes.get(i);
+            final String namespace = attribute.getNamespace();
+            if (namespace == null) {
+                element.setAttribute(names[i], attribute.getValue());
+            } else {
+                element.setAttributeNS(namespace, names[i], attribute.getValue());
+            }
+        }
+    }
+    
+}
@@ -0,0 +1,40 @@
+package org.silnith.parser.html5.grammar.dom;
+
+import org.w3c.dom.Node;
+
+/**
+ * Inserts nodes into a node immediately before one of its children. This is
+ * used for foster parenting, where nodes are inserted immediately before the
+ * last {@code table} element.
+ * 
+ * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#appropriate-place-for-inserting-a-node">appropriate place for inserting a node</a>
+ * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#foster-parent">foster parenting</a>
+ */
+public class InsertBeforeSiblingInsertionPosition implements InsertionPosition {
+    
+    private final Node parentNode;
+    
+    private final Node nextSibling;
+    
+    public InsertBeforeSiblingInsertionPosition(final Node parentNode, final Node nextSibling) {
+        super();
+        this.parentNode = parentNode;
+        this.nextSibling = nextSibling;
+    }
+    
+    @Override
+    public Node getContainingNode() {
+        return parentNode;
+    }
+    
+    @Override
+    public Node getNodeImmediatelyBefore() {
+        return nextSibling.getPreviousSibling();
+    }
+    
+    @Override
+    public void insert(final Node node) {
+        parentNode.insertBefore(node, nextSibling);
+    }
+    
+}
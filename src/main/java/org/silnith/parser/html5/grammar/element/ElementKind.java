@@ -0,0 +1,884 @@
+package org.silnith.parser.html5.grammar.element;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.w3c.dom.Element;
+
+
+/**
+ * Integer identifiers for the element types the tree construction stage needs
+ * to recognize, together with a precomputed table of the categories each
+ * element type belongs to.
+ * <p>
+ * The tree construction rules constantly ask whether some element on the stack
+ * of open elements "is an" element of a particular type, or belongs to the
+ * "special" category, or bounds a particular scope. Answering those questions
+ * by comparing tag names or probing sets of strings is needlessly slow, since
+ * the answer never changes for a given element. Instead every element is
+ * classified once, when it is pushed onto the stack of open elements, and the
+ * resulting kind is stored alongside it. Category membership is then a single
+ * bitwise test against {@link #getFlags(int)}.
+ * <p>
+ * Element types that the parser does not need to distinguish are assigned one
+ * of {@link #HTML_UNKNOWN}, {@link #MATHML_UNKNOWN}, {@link #SVG_UNKNOWN}, or
+ * {@link #OTHER}. Callers that must compare two such elements have to fall
+ * back to comparing their local names.
+ * 
+ * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#stack-of-open-elements">8.2.3.2 The stack of open elements</a>
+ * @author <a href="mailto:silnith@gmail.com">Kent Rosenkoetter</a>
+ */
+public final class ElementKind {
+    
+    private static final String HTML_NAMESPACE = "http://www.w3.org/1999/xhtml";
+    
+    private static final String MATHML_NAMESPACE = "http://www.w3.org/1998/Math/MathML";
+    
+    private static final String SVG_NAMESPACE = "http://www.w3.org/2000/svg";
+    
+    /*
+     * Category flags.
+     */
+     
+    /**
+     * The element is in the HTML namespace.
+     */
+    public static final int NAMESPACE_HTML = 1 << 0;
+    
+    /**
+     * The element is in the MathML namespace.
+     */
+    public static final int NAMESPACE_MATHML = 1 << 1;
+    
+    /**
+     * The element is in the SVG namespace.
+     */
+    public static final int NAMESPACE_SVG = 1 << 2;
+    
+    /**
+     * The element is in the special category.
+     * 
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#special">special</a>
+     */
+    public static final int SPECIAL = 1 << 3;
+    
+    /**
+     * The element is in the formatting category.
+     * 
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#formatting">formatting</a>
+     */
+    public static final int FORMATTING = 1 << 4;
+    
+    /**
+     * The element is closed when generating implied end tags.
+     * 
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#generate-implied-end-tags">generate implied end tags</a>
+     */
+    public static final int IMPLIED_END_TAG = 1 << 5;
+    
+    /**
+     * The element bounds every kind of scope except table scope and select
+     * scope.
+     * 
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#has-an-element-in-scope">has an element in scope</a>
+     */
+    public static final int SCOPE = 1 << 6;
+    
+    /**
+     * The element additionally bounds button scope. Combine with
+     * {@link #SCOPE}.
+     * 
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#has-an-element-in-button-scope">has an element in button scope</a>
+     */
+    public static final int BUTTON_SCOPE = 1 << 7;
+    
+    /**
+     * The element additionally bounds list item scope. Combine with
+     * {@link #SCOPE}.
+     * 
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#has-an-element-in-list-item-scope">has an element in list item scope</a>
+     */
+    public static final int LIST_ITEM_SCOPE = 1 << 8;
+    
+    /**
+     * The element bounds table scope. These are also the elements that end
+     * clearing the stack back to a table context.
+     * 
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#has-an-element-in-table-scope">has an element in table scope</a>
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#clear-the-stack-back-to-a-table-context">clear the stack back to a table context</a>
+     */
+    public static final int TABLE_SCOPE = 1 << 9;
+    
+    /**
+     * The element is an {@code option} or {@code optgroup}, the only elements
+     * that do not bound select scope.
+     * 
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#has-an-element-in-select-scope">has an element in select scope</a>
+     */
+    public static final int SELECT_OPTION = 1 << 10;
+    
+    /**
+     * The element ends clearing the stack back to a table body context.
+     * 
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#clear-the-stack-back-to-a-table-body-context">clear the stack back to a table body context</a>
+     */
+    public static final int TABLE_BODY_CONTEXT = 1 << 11;
+    
+    /**
+     * The element ends clearing the stack back to a table row context.
+     * 
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#clear-the-stack-back-to-a-table-row-context">clear the stack back to a table row context</a>
+     */
+    public static final int TABLE_ROW_CONTEXT = 1 << 12;
+    
+    /**
+     * The element is a {@code tbody}, {@code tfoot}, or {@code thead}.
+     */
+    public static final int TABLE_SECTION = 1 << 13;
+    
+    /**
+     * The element is a {@code td} or {@code th}.
+     */
+    public static final int TABLE_CELL = 1 << 14;
+    
+    /**
+     * The element is one of {@code h1} through {@code h6}.
+     */
+    public static final int HEADING = 1 << 15;
+    
+    /**
+     * The element causes foster parenting when it is the target of an
+     * insertion.
+     * 
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#appropriate-place-for-inserting-a-node">appropriate place for inserting a node</a>
+     */
+    public static final int TABLE_CONTAINER = 1 << 16;
+    
+    /**
+     * The element may remain open when the {@code body} element is closed
+     * without it being a parse error.
+     */
+    public static final int ALLOWED_OPEN_AT_BODY_END = 1 << 17;
+    
+    /**
+     * The element may remain open at the end of the file without it being a
+     * parse error.
+     */
+    public static final int ALLOWED_OPEN_AT_EOF = 1 << 18;
+    
+    /**
+     * The element is a MathML text integration point.
+     * 
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#mathml-text-integration-point">MathML text integration point</a>
+     */
+    public static final int MATHML_TEXT_INTEGRATION_POINT = 1 << 19;
+    
+    /**
+     * The element is always an HTML integration point. The MathML
+     * {@code annotation-xml} element is an HTML integration point only for
+     * certain values of its {@code encoding} attribute, so it does not carry
+     * this flag.
+     * 
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#html-integration-point">HTML integration point</a>
+     */
+    public static final int HTML_INTEGRATION_POINT = 1 << 20;
+    
+    /**
+     * The element is a form-associated element.
+     * 
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/forms.html#form-associated-element">form-associated elements</a>
+     */
+    public static final int FORM_ASSOCIATED = 1 << 21;
+    
+    /**
+     * The element is a reassociateable form-associated element.
+     * 
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/forms.html#category-form-attr">Reassociateable elements</a>
+     */
+    public static final int REASSOCIATEABLE = 1 << 22;
+    
+    /**
+     * The element is a resettable form-associated element.
+     * 
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/forms.html#category-reset">Resettable elements</a>
+     */
+    public static final int RESETTABLE = 1 << 23;
+    
+    /**
+     * The element is a void element, which has no end tag and no content.
+     * 
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#void-elements">void elements</a>
+     */
+    public static final int VOID = 1 << 24;
+    
+    /**
+     * The text content of the element is serialized without escaping. These
+     * are the elements whose content the tokenizer reads as raw text, script
+     * data, or plain text. The {@code noscript} element also belongs here
+     * when scripting is enabled, which is not known in advance.
+     * 
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#serializing-html-fragments">8.3 Serializing HTML fragments</a>
+     */
+    public static final int RAW_TEXT = 1 << 25;
+    
+    /**
+     * The parser drops a newline that immediately follows the start tag of the
+     * element, so a serializer must write an extra newline if the content
+     * begins with one.
+     * 
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#serializing-html-fragments">8.3 Serializing HTML fragments</a>
+     */
+    public static final int LEADING_NEWLINE = 1 << 26;
+    
+    /*
+     * Element kinds.
+     */
+     
+    /**
+     * An element in a namespace other than HTML, MathML, or SVG.
+     */
+    public static final int OTHER = 0;
+    
+    /**
+     * An HTML element with no kind of its own.
+     */
+    public static final int HTML_UNKNOWN = 1;
+    
+    /**
+     * A MathML element with no kind of its own.
+     */
+    public static final int MATHML_UNKNOWN = 2;
+    
+    /**
+     * An SVG element with no kind of its own.
+     */
+    public static final int SVG_UNKNOWN = 3;
+    
+    /*
+     * HTML elements, named after their tag names.
+     */
+     
+    public static final int A = 4;
+    
+    public static final int ABBR = 5;
+    
+    public static final int ADDRESS = 6;
+    
+    public static final int APPLET = 7;
+    
+    public static final int AREA = 8;
+    
+    public static final int ARTICLE = 9;
+    
+    public static final int ASIDE = 10;
+    
+    public static final int AUDIO = 11;
+    
+    public static final int B = 12;
+    
+    public static final int BASE = 13;
+    
+    public static final int BASEFONT = 14;
+    
+    public static final int BDI = 15;
+    
+    public static final int BDO = 16;
+    
+    public static final int BGSOUND = 17;
+    
+    public static final int BIG = 18;
+    
+    public static final int BLOCKQUOTE = 19;
+    
+    public static final int BODY = 20;
+    
+    public static final int BR = 21;
+    
+    public static final int BUTTON = 22;
+    
+    public static final int CANVAS = 23;
+    
+    public static final int CAPTION = 24;
+    
+    public static final int CENTER = 25;
+    
+    public static final int CITE = 26;
+    
+    public static final int CODE = 27;
+    
+    public static final int COL = 28;
+    
+    public static final int COLGROUP = 29;
+    
+    public static final int DATA = 30;
+    
+    public static final int DATALIST = 31;
+    
+    public static final int DD = 32;
+    
+    public static final int DEL = 33;
+    
+    public static final int DETAILS = 34;
+    
+    public static final int DFN = 35;
+    
+    public static final int DIALOG = 36;
+    
+    public static final int DIR = 37;
+    
+    public static final int DIV = 38;
+    
+    public static final int DL = 39;
+    
+    public static final int DT = 40;
+    
+    public static final int EM = 41;
+    
+    public static final int EMBED = 42;
+    
+    public static final int FIELDSET = 43;
+    
+    public static final int FIGCAPTION = 44;
+    
+    public static final int FIGURE = 45;
+    
+    public static final int FONT = 46;
+    
+    public static final int FOOTER = 47;
+    
+    public static final int FORM = 48;
+    
+    public static final int FRAME = 49;
+    
+    public static final int FRAMESET = 50;
+    
+    public static final int H1 = 51;
+    
+    public static final int H2 = 52;
+    
+    public static final int H3 = 53;
+    
+    public static final int H4 = 54;
+    
+    public static final int H5 = 55;
+    
+    public static final int H6 = 56;
+    
+    public static final int HEAD = 57;
+    
+    public static final int HEADER = 58;
+    
+    public static final int HGROUP = 59;
+    
+    public static final int HR = 60;
+    
+    public static final int HTML = 61;
+    
+    public static final int I = 62;
+    
+    public static final int IFRAME = 63;
+    
+    public static final int IMAGE = 64;
+    
+    public static final int IMG = 65;
+    
+    public static final int INPUT = 66;
+    
+    public static final int INS = 67;
+    
+    public static final int ISINDEX = 68;
+    
+    public static final int KBD = 69;
+    
+    public static final int KEYGEN = 70;
+    
+    public static final int LABEL = 71;
+    
+    public static final int LEGEND = 72;
+    
+    public static final int LI = 73;
+    
+    public static final int LINK = 74;
+    
+    public static final int LISTING = 75;
+    
+    public static final int MAIN = 76;
+    
+    public static final int MAP = 77;
+    
+    public static final int MARK = 78;
+    
+    public static final int MARQUEE = 79;
+    
+    public static final int MENU = 80;
+    
+    public static final int MENUITEM = 81;
+    
+    public static final int META = 82;
+    
+    public static final int METER = 83;
+    
+    public static final int NAV = 84;
+    
+    public static final int NOBR = 85;
+    
+    public static final int NOEMBED = 86;
+    
+    public static final int NOFRAMES = 87;
+    
+    public static final int NOSCRIPT = 88;
+    
+    public static final int OBJECT = 89;
+    
+    public static final int OL = 90;
+    
+    public static final int OPTGROUP = 91;
+    
+    public static final int OPTION = 92;
+    
+    public static final int OUTPUT = 93;
+    
+    public static final int P = 94;
+    
+    public static final int PARAM = 95;
+    
+    public static final int PLAINTEXT = 96;
+    
+    public static final int PRE = 97;
+    
+    public static final int PROGRESS = 98;
+    
+    public static final int Q = 99;
+    
+    public static final int RB = 100;
+    
+    public static final int RP = 101;
+    
+    public static final int RT = 102;
+    
+    public static final int RTC = 103;
+    
+    public static final int RUBY = 104;
+    
+    public static final int S = 105;
+    
+    public static final int SAMP = 106;
+    
+    public static final int SCRIPT = 107;
+    
+    public static final int SECTION = 108;
+    
+    public static final int SELECT = 109;
+    
+    public static final int SMALL = 110;
+    
+    public static final int SOURCE = 111;
+    
+    public static final int SPAN = 112;
+    
+    public static final int STRIKE = 113;
+    
+    public static final int STRONG = 114;
+    
+    public static final int STYLE = 115;
+    
+    public static final int SUB = 116;
+    
+    public static final int SUMMARY = 117;
+    
+    public static final int SUP = 118;
+    
+    public static final int TABLE = 119;
+    
+    public static final int TBODY = 120;
+    
+    public static final int TD = 121;
+    
+    public static final int TEMPLATE = 122;
+    
+    public static final int TEXTAREA = 123;
+    
+    public static final int TFOOT = 124;
+    
+    public static final int TH = 125;
+    
+    public static final int THEAD = 126;
+    
+    public static final int TIME = 127;
+    
+    public static final int TITLE = 128;
+    
+    public static final int TR = 129;
+    
+    public static final int TRACK = 130;
+    
+    public static final int TT = 131;
+    
+    public static final int U = 132;
+    
+    public static final int UL = 133;
+    
+    public static final int VAR = 134;
+    
+    public static final int VIDEO = 135;
+    
+    public static final int WBR = 136;
+    
+    public static final int XMP = 137;
+    
+    /*
+     * MathML and SVG elements that the tree construction rules refer to.
+     */
+     
+    public static final int MATHML_MATH = 138;
+    
+    public static final int MATHML_MI = 139;
+    
+    public static final int MATHML_MO = 140;
+    
+    public static final int MATHML_MN = 141;
+    
+    public static final int MATHML_MS = 142;
+    
+    public static final int MATHML_MTEXT = 143;
+    
+    public static final int MATHML_ANNOTATION_XML = 144;
+    
+    public static final int SVG_SVG = 145;
+    
+    public static final int SVG_FOREIGN_OBJECT = 146;
+    
+    public static final int SVG_DESC = 147;
+    
+    public static final int SVG_TITLE = 148;
+    
+    /**
+     * One more than the largest element kind.
+     */
+    public static final int NUM_KINDS = 149;
+    
+    private static final int[] FLAGS = new int[NUM_KINDS];
+    
+    private static final String[] LOCAL_NAMES = new String[NUM_KINDS];
+    
+    private static final Map<String, Integer> HTML_KINDS = new HashMap<>();
+    
+    private static final Map<String, Integer> MATHML_KINDS = new HashMap<>();
+    
+    private static final Map<String, Integer> SVG_KINDS = new HashMap<>();
+    
+    /**
+     * The kinds that start and end tag tokens are dispatched on. These are the
+     * HTML kinds, plus the {@code math} and {@code svg} tags that switch the
+     * parser into foreign content.
+     */
+    private static final Map<String, Integer> TAG_KINDS = new HashMap<>();
+    
+    static {
+        FLAGS[OTHER] = 0;
+        FLAGS[HTML_UNKNOWN] = NAMESPACE_HTML;
+        FLAGS[MATHML_UNKNOWN] = NAMESPACE_MATHML;
+        FLAGS[SVG_UNKNOWN] = NAMESPACE_SVG;
+        
+        registerHTML(A, "a", FORMATTING);
+        registerHTML(ABBR, "abbr", 0);
+        registerHTML(ADDRESS, "address", SPECIAL);
+        registerHTML(APPLET, "applet", SPECIAL | SCOPE);
+        registerHTML(AREA, "area", SPECIAL | VOID);
+        registerHTML(ARTICLE, "article", SPECIAL);
+        registerHTML(ASIDE, "aside", SPECIAL);
+        registerHTML(AUDIO, "audio", 0);
+        registerHTML(B, "b", FORMATTING);
+        registerHTML(BASE, "base", SPECIAL | VOID);
+        registerHTML(BASEFONT, "basefont", SPECIAL | VOID);
+        registerHTML(BDI, "bdi", 0);
+        registerHTML(BDO, "bdo", 0);
+        registerHTML(BGSOUND, "bgsound", SPECIAL | VOID);
+        registerHTML(BIG, "big", FORMATTING);
+        registerHTML(BLOCKQUOTE, "blockquote", SPECIAL);
+        registerHTML(BODY, "body", SPECIAL | ALLOWED_OPEN_AT_BODY_END | ALLOWED_OPEN_AT_EOF);
+        registerHTML(BR, "br", SPECIAL | VOID);
+        registerHTML(BUTTON, "button", SPECIAL | BUTTON_SCOPE | FORM_ASSOCIATED | REASSOCIATEABLE);
+        registerHTML(CANVAS, "canvas", 0);
+        registerHTML(CAPTION, "caption", SPECIAL | SCOPE);
+        registerHTML(CENTER, "center", SPECIAL);
+        registerHTML(CITE, "cite", 0);
+        registerHTML(CODE, "code", FORMATTING);
+        registerHTML(COL, "col", SPECIAL | VOID);
+        registerHTML(COLGROUP, "colgroup", SPECIAL);
+        registerHTML(DATA, "data", 0);
+        registerHTML(DATALIST, "datalist", 0);
+        registerHTML(DD, "dd", SPECIAL | IMPLIED_END_TAG | ALLOWED_OPEN_AT_BODY_END | ALLOWED_OPEN_AT_EOF);
+        registerHTML(DEL, "del", 0);
+        registerHTML(DETAILS, "details", SPECIAL);
+        registerHTML(DFN, "dfn", 0);
+        registerHTML(DIALOG, "dialog", 0);
+        registerHTML(DIR, "dir", SPECIAL);
+        registerHTML(DIV, "div", SPECIAL);
+        registerHTML(DL, "dl", SPECIAL);
+        registerHTML(DT, "dt", SPECIAL | IMPLIED_END_TAG | ALLOWED_OPEN_AT_BODY_END | ALLOWED_OPEN_AT_EOF);
+        registerHTML(EM, "em", FORMATTING);
+        registerHTML(EMBED, "embed", SPECIAL | VOID);
+        registerHTML(FIELDSET, "fieldset", SPECIAL | FORM_ASSOCIATED | REASSOCIATEABLE);
+        registerHTML(FIGCAPTION, "figcaption", SPECIAL);
+        registerHTML(FIGURE, "figure", SPECIAL);
+        registerHTML(FONT, "font", FORMATTING);
+        registerHTML(FOOTER, "footer", SPECIAL);
+        registerHTML(FORM, "form", SPECIAL);
+        registerHTML(FRAME, "frame", SPECIAL | VOID);
+        registerHTML(FRAMESET, "frameset", SPECIAL);
+        registerHTML(H1, "h1", SPECIAL | HEADING);
+        registerHTML(H2, "h2", SPECIAL | HEADING);
+        registerHTML(H3, "h3", SPECIAL | HEADING);
+        registerHTML(H4, "h4", SPECIAL | HEADING);
+        registerHTML(H5, "h5", SPECIAL | HEADING);
+        registerHTML(H6, "h6", SPECIAL | HEADING);
+        registerHTML(HEAD, "head", SPECIAL);
+        registerHTML(HEADER, "header", SPECIAL);
+        registerHTML(HGROUP, "hgroup", SPECIAL);
+        registerHTML(HR, "hr", SPECIAL | VOID);
+        registerHTML(HTML, "html", SPECIAL | SCOPE | TABLE_SCOPE | TABLE_BODY_CONTEXT | TABLE_ROW_CONTEXT |
+                ALLOWED_OPEN_AT_BODY_END | ALLOWED_OPEN_AT_EOF);
+        registerHTML(I, "i", FORMATTING);
+        registerHTML(IFRAME, "iframe", SPECIAL | RAW_TEXT);
+        registerHTML(IMAGE, "image", 0);
+        registerHTML(IMG, "img", SPECIAL | VOID | FORM_ASSOCIATED);
+        registerHTML(INPUT, "input", SPECIAL | VOID | FORM_ASSOCIATED | REASSOCIATEABLE | RESETTABLE);
+        registerHTML(INS, "ins", 0);
+        registerHTML(ISINDEX, "isindex", SPECIAL);
+        registerHTML(KBD, "kbd", 0);
+        registerHTML(KEYGEN, "keygen", VOID | FORM_ASSOCIATED | REASSOCIATEABLE | RESETTABLE);
+        registerHTML(LABEL, "label", FORM_ASSOCIATED | REASSOCIATEABLE);
+        registerHTML(LEGEND, "legend", 0);
+        registerHTML(LI, "li", SPECIAL | IMPLIED_END_TAG | ALLOWED_OPEN_AT_BODY_END | ALLOWED_OPEN_AT_EOF);
+        registerHTML(LINK, "link", SPECIAL | VOID);
+        registerHTML(LISTING, "listing", SPECIAL | LEADING_NEWLINE);
+        registerHTML(MAIN, "main", SPECIAL);
+        registerHTML(MAP, "map", 0);
+        registerHTML(MARK, "mark", 0);
+        registerHTML(MARQUEE, "marquee", SPECIAL | SCOPE);
+        registerHTML(MENU, "menu", SPECIAL);
+        registerHTML(MENUITEM, "menuitem", SPECIAL | VOID);
+        registerHTML(META, "meta", SPECIAL | VOID);
+        registerHTML(METER, "meter", 0);
+        registerHTML(NAV, "nav", SPECIAL);
+        registerHTML(NOBR, "nobr", FORMATTING);
+        registerHTML(NOEMBED, "noembed", SPECIAL | RAW_TEXT);
+        registerHTML(NOFRAMES, "noframes", SPECIAL | RAW_TEXT);
+        registerHTML(NOSCRIPT, "noscript", SPECIAL);
+        registerHTML(OBJECT, "object", SPECIAL | SCOPE | FORM_ASSOCIATED | REASSOCIATEABLE);
+        registerHTML(OL, "ol", SPECIAL | LIST_ITEM_SCOPE);
+        registerHTML(OPTGROUP, "optgroup", IMPLIED_END_TAG | SELECT_OPTION | ALLOWED_OPEN_AT_BODY_END);
+        registerHTML(OPTION, "option", IMPLIED_END_TAG | SELECT_OPTION | ALLOWED_OPEN_AT_BODY_END);
+        registerHTML(OUTPUT, "output", FORM_ASSOCIATED | REASSOCIATEABLE | RESETTABLE);
+        registerHTML(P, "p", SPECIAL | IMPLIED_END_TAG | ALLOWED_OPEN_AT_BODY_END | ALLOWED_OPEN_AT_EOF);
+        registerHTML(PARAM, "param", SPECIAL | VOID);
+        registerHTML(PLAINTEXT, "plaintext", SPECIAL | RAW_TEXT);
+        registerHTML(PRE, "pre", SPECIAL | LEADING_NEWLINE);
+        registerHTML(PROGRESS, "progress", 0);
+        registerHTML(Q, "q", 0);
+        registerHTML(RB, "rb", 0);
+        registerHTML(RP, "rp", IMPLIED_END_TAG | ALLOWED_OPEN_AT_BODY_END);
+        registerHTML(RT, "rt", IMPLIED_END_TAG | ALLOWED_OPEN_AT_BODY_END);
+        registerHTML(RTC, "rtc", 0);
+        registerHTML(RUBY, "ruby", 0);
+        registerHTML(S, "s", FORMATTING);
+        registerHTML(SAMP, "samp", 0);
+        registerHTML(SCRIPT, "script", SPECIAL | RAW_TEXT);
+        registerHTML(SECTION, "section", SPECIAL);
+        registerHTML(SELECT, "select", SPECIAL | FORM_ASSOCIATED | REASSOCIATEABLE | RESETTABLE);
+        registerHTML(SMALL, "small", FORMATTING);
+        registerHTML(SOURCE, "source", SPECIAL | VOID);
+        registerHTML(SPAN, "span", 0);
+        registerHTML(STRIKE, "strike", FORMATTING);
+        registerHTML(STRONG, "strong", FORMATTING);
+        registerHTML(STYLE, "style", SPECIAL | RAW_TEXT);
+        registerHTML(SUB, "sub", 0);
+        registerHTML(SUMMARY, "summary", SPECIAL);
+        registerHTML(SUP, "sup", 0);
+        registerHTML(TABLE, "table", SPECIAL | SCOPE | TABLE_SCOPE | TABLE_CONTAINER);
+        registerHTML(TBODY, "tbody", SPECIAL | TABLE_BODY_CONTEXT | TABLE_SECTION | TABLE_CONTAINER |
+                ALLOWED_OPEN_AT_BODY_END | ALLOWED_OPEN_AT_EOF);
+        registerHTML(TD, "td", SPECIAL | SCOPE | TABLE_CELL | ALLOWED_OPEN_AT_BODY_END | ALLOWED_OPEN_AT_EOF);
+        registerHTML(TEMPLATE, "template", SPECIAL | SCOPE | TABLE_SCOPE | TABLE_BODY_CONTEXT | TABLE_ROW_CONTEXT);
+        registerHTML(TEXTAREA, "textarea", SPECIAL | LEADING_NEWLINE | FORM_ASSOCIATED | REASSOCIATEABLE | RESETTABLE);
+        registerHTML(TFOOT, "tfoot", SPECIAL | TABLE_BODY_CONTEXT | TABLE_SECTION | TABLE_CONTAINER |
+                ALLOWED_OPEN_AT_BODY_END | ALLOWED_OPEN_AT_EOF);
+        registerHTML(TH, "th", SPECIAL | SCOPE | TABLE_CELL | ALLOWED_OPEN_AT_BODY_END | ALLOWED_OPEN_AT_EOF);
+        registerHTML(THEAD, "thead", SPECIAL | TABLE_BODY_CONTEXT | TABLE_SECTION | TABLE_CONTAINER |
+                ALLOWED_OPEN_AT_BODY_END | ALLOWED_OPEN_AT_EOF);
+        registerHTML(TIME, "time", 0);
+        registerHTML(TITLE, "title", SPECIAL);
+        registerHTML(TR, "tr", SPECIAL | TABLE_ROW_CONTEXT | TABLE_CONTAINER | ALLOWED_OPEN_AT_BODY_END |
+                ALLOWED_OPEN_AT_EOF);
+        registerHTML(TRACK, "track", SPECIAL | VOID);
+        registerHTML(TT, "tt", FORMATTING);
+        registerHTML(U, "u", FORMATTING);
+        registerHTML(UL, "ul", SPECIAL | LIST_ITEM_SCOPE);
+        registerHTML(VAR, "var", 0);
+        registerHTML(VIDEO, "video", 0);
+        registerHTML(WBR, "wbr", SPECIAL | VOID);
+        registerHTML(XMP, "xmp", SPECIAL | RAW_TEXT);
+        
+        registerMathML(MATHML_MATH, "math", 0);
+        registerMathML(MATHML_MI, "mi", SPECIAL | SCOPE | MATHML_TEXT_INTEGRATION_POINT);
+        registerMathML(MATHML_MO, "mo", SPECIAL | SCOPE | MATHML_TEXT_INTEGRATION_POINT);
+        registerMathML(MATHML_MN, "mn", SPECIAL | SCOPE | MATHML_TEXT_INTEGRATION_POINT);
+        registerMathML(MATHML_MS, "ms", SPECIAL | SCOPE | MATHML_TEXT_INTEGRATION_POINT);
+        registerMathML(MATHML_MTEXT, "mtext", SPECIAL | SCOPE | MATHML_TEXT_INTEGRATION_POINT);
+        registerMathML(MATHML_ANNOTATION_XML, "annotation-xml", SPECIAL | SCOPE);
+        
+        registerSVG(SVG_SVG, "svg", 0);
+        registerSVG(SVG_FOREIGN_OBJECT, "foreignObject", SPECIAL | SCOPE | HTML_INTEGRATION_POINT);
+        registerSVG(SVG_DESC, "desc", SPECIAL | SCOPE | HTML_INTEGRATION_POINT);
+        registerSVG(SVG_TITLE, "title", SPECIAL | SCOPE | HTML_INTEGRATION_POINT);
+        
+        TAG_KINDS.putAll(HTML_KINDS);
+        TAG_KINDS.put("math", MATHML_MATH);
+        TAG_KINDS.put("svg", SVG_SVG);
+    }
+    
+    private static void registerHTML(final int kind, final String localName, final int flags) {
+        register(HTML_KINDS, kind, localName, NAMESPACE_HTML | flags);
+    }
+    
+    private static void registerMathML(final int kind, final String localName, final int flags) {
+        register(MATHML_KINDS, kind, localName, NAMESPACE_MATHML | flags);
+    }
+    
+    private static void registerSVG(final int kind, final String localName, final int flags) {
+        register(SVG_KINDS, kind, localName, NAMESPACE_SVG | flags);
+    }
+    
+    private static void register(final Map<String, Integer> kinds, final int kind, final String localName,
+            final int flags) {
+        assert LOCAL_NAMES[kind] == null;
+        FLAGS[kind] = flags;
+        LOCAL_NAMES[kind] = localName;
+        kinds.put(localName, kind);
+    }
+    
+    private ElementKind() {
+        super();
+    }
+    
+    /**
+     * Returns the kind of an element in the HTML namespace with the given tag
+     * name. This is the kind of element an HTML start or end tag token refers
+     * to.
+     * 
+     * @param tagName the tag name
+     * @return the element kind, or {@link #HTML_UNKNOWN}
+     */
+    public static int htmlKindOf(final String tagName) {
+        final Integer kind = HTML_KINDS.get(tagName);
+        if (kind == null) {
+            return HTML_UNKNOWN;
+        }
+        return kind;
+    }
+    
+    /**
+     * Returns the kind that a start or end tag token with the given tag name is
+     * dispatched on by the insertion modes. This is the same as
+     * {@link #htmlKindOf(String)}, except that the tag names {@code math} and
+     * {@code svg} map to {@link #MATHML_MATH} and {@link #SVG_SVG}.
+     * 
+     * @param tagName the tag name of the token
+     * @return the element kind, or {@link #HTML_UNKNOWN}
+     */
+    public static int tagKindOf(final String tagName) {
+        final Integer kind = TAG_KINDS.get(tagName);
+        if (kind == null) {
+            return HTML_UNKNOWN;
+        }
+        return kind;
+    }
+    
+    /**
+     * Returns the kind of an element with the given namespace and local name.
+     * 
+     * @param namespace the namespace URI
+     * @param localName the local name
+     * @return the element kind
+     */
+    public static int kindOf(final String namespace, final String localName) {
+        if (HTML_NAMESPACE.equals(namespace)) {
+            return htmlKindOf(localName);
+        } else if (MATHML_NAMESPACE.equals(namespace)) {
+            final Integer kind = MATHML_KINDS.get(localName);
+            if (kind == null) {
+                return MATHML_UNKNOWN;
+            }
+            return kind;
+        } else if (SVG_NAMESPACE.equals(namespace)) {
+            final Integer kind = SVG_KINDS.get(localName);
+            if (kind == null) {
+                return SVG_UNKNOWN;
+            }
+            return kind;
+        } else {
+            return OTHER;
+        }
+    }
+    
+    /**
+     * Returns the kind of the given element.
+     * 
+     * @param element the element
+     * @return the element kind
+     */
+    public static int of(final Element element) {
+        final String localName = element.getLocalName();
+        if (localName == null) {
+            return kindOf(element.getNamespaceURI(), element.getTagName());
+        }
+        return kindOf(element.getNamespaceURI(), localName);
+    }
+    
+    /**
+     * Returns the category flags for the given element kind.
+     * 
+     * @param kind the element kind
+     * @return the category flags
+     */
+    public static int getFlags(final int kind) {
+        return FLAGS[kind];
+    }
+    
+    /**
+     * Returns whether the given element kind belongs to any of the categories
+     * in the given mask.
+     * 
+     * @param kind the element kind
+     * @param mask a bitwise OR of category flags
+     * @return {@code true} if the kind has at least one of the flags
+     */
+    public static boolean isA(final int kind, final int mask) {
+        return (FLAGS[kind] & mask) != 0;
+    }
+    
+    /**
+     * Returns whether the given element kind identifies exactly one local
+     * name. Kinds such as {@link #HTML_UNKNOWN} do not, and elements of those
+     * kinds must be compared by name.
+     * 
+     * @param kind the element kind
+     * @return {@code true} if the kind is specific to one element type
+     */
+    public static boolean isKnown(final int kind) {
+        return LOCAL_NAMES[kind] != null;
+    }
+    
+    /**
+     * Returns the local name for the given element kind, or {@code null} if the
+     * kind does not identify a single element type.
+     * 
+     * @param kind the element kind
+     * @return the local name
+     */
+    public static String getLocalName(final int kind) {
+        return LOCAL_NAMES[kind];
+    }
+    
+}
@@ -0,0 +1,149 @@
+package org.silnith.parser.html5.grammar.element;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+
+/**
+ * Precomputed tables of the tag name and attribute name adjustments the tree
+ * construction stage applies to elements in foreign content.
+ * <p>
+ * The tokenizer lowercases every tag and attribute name, but SVG and MathML
+ * are case-sensitive and use namespaced attributes. Each adjustment is a
+ * single lookup keyed by the lowercase name the tokenizer produced, so no case
+ * conversion is done while parsing.
+ *
+ * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#adjust-mathml-attributes">adjust MathML attributes</a>
+ * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#adjust-svg-attributes">adjust SVG attributes</a>
+ * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#adjust-foreign-attributes">adjust foreign attributes</a>
+ * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#parsing-main-inforeign">8.2.5.5 The rules for parsing tokens in foreign content</a>
+ * @author <a href="mailto:silnith@gmail.com">Kent Rosenkoetter</a>
+ */
+public final class ForeignNames {
+    
+    private static final String XLINK_NAMESPACE = "http://www.w3.org/1999/xlink";
+    
+    private static final String XML_NAMESPACE = "http://www.w3.org/XML/1998/namespace";
+    
+    private static final String XMLNS_NAMESPACE = "http://www.w3.org/2000/xmlns/";
+    
+    private static final Map<String, String> SVG_TAG_NAMES = new HashMap<>();
+    
+    private static final Map<String, String> SVG_ATTRIBUTE_NAMES = new HashMap<>();
+    
+    private static final Map<String, String> MATHML_ATTRIBUTE_NAMES = new HashMap<>();
+    
+    private static final Map<String, String> FOREIGN_ATTRIBUTE_NAMESPACES = new HashMap<>();
+    
+    static {
+        final String[] svgTagNames = {
+            "altGlyph", "altGlyphDef", "altGlyphItem", "animateColor", "animateMotion", "animateTransform",
+            "clipPath", "feBlend", "feColorMatrix", "feComponentTransfer", "feComposite", "feConvolveMatrix",
+            "feDiffuseLighting", "feDisplacementMap", "feDistantLight", "feFlood", "feFuncA", "feFuncB",
+            "feFuncG", "feFuncR", "feGaussianBlur", "feImage", "feMerge", "feMergeNode", "feMorphology",
+            "feOffset", "fePointLight", "feSpecularLighting", "feSpotLight", "feTile", "feTurbulence",
+            "foreignObject", "glyphRef", "linearGradient", "radialGradient", "textPath",
+        };
+        for (final String tagName : svgTagNames) {
+            register(SVG_TAG_NAMES, tagName);
+        }
+        
+        final String[] svgAttributeNames = {
+            "attributeName", "attributeType", "baseFrequency", "baseProfile", "calcMode", "clipPathUnits",
+            "contentScriptType", "contentStyleType", "diffuseConstant", "edgeMode", "externalResourcesRequired",
+            "filterRes", "filterUnits", "glyphRef", "gradientTransform", "gradientUnits", "kernelMatrix",
+            "kernelUnitLength", "keyPoints", "keySplines", "keyTimes", "lengthAdjust", "limitingConeAngle",
+            "markerHeight", "markerUnits", "markerWidth", "maskContentUnits", "maskUnits", "numOctaves",
+            "pathLength", "patternContentUnits", "patternTransform", "patternUnits", "pointsAtX", "pointsAtY",
+            "pointsAtZ", "preserveAlpha", "preserveAspectRatio", "primitiveUnits", "refX", "refY",
+            "repeatCount", "repeatDur", "requiredExtensions", "requiredFeatures", "specularConstant",
+            "specularExponent", "spreadMethod", "startOffset", "stdDeviation", "stitchTiles", "surfaceScale",
+            "systemLanguage", "tableValues", "targetX", "targetY", "textLength", "viewBox", "viewTarget",
+            "xChannelSelector", "yChannelSelector", "zoomAndPan",
+        };
+        for (final String attributeName : svgAttributeNames) {
+            register(SVG_ATTRIBUTE_NAMES, attributeName);
+        }
+        
+        register(MATHML_ATTRIBUTE_NAMES, "definitionURL");
+        
+        FOREIGN_ATTRIBUTE_NAMESPACES.put("xlink:actuate", XLINK_NAMESPACE);
+        FOREIGN_ATTRIBUTE_NAMESPACES.put("xlink:arcrole", XLINK_NAMESPACE);
+        FOREIGN_ATTRIBUTE_NAMESPACES.put("xlink:href", XLINK_NAMESPACE);
+        FOREIGN_ATTRIBUTE_NAMESPACES.put("xlink:role", XLINK_NAMESPACE);
+        FOREIGN_ATTRIBUTE_NAMESPACES.put("xlink:show", XLINK_NAMESPACE);
+        FOREIGN_ATTRIBUTE_NAMESPACES.put("xlink:title", XLINK_NAMESPACE);
+        FOREIGN_ATTRIBUTE_NAMESPACES.put("xlink:type", XLINK_NAMESPACE);
+        FOREIGN_ATTRIBUTE_NAMESPACES.put("xml:base", XML_NAMESPACE);
+        FOREIGN_ATTRIBUTE_NAMESPACES.put("xml:lang", XML_NAMESPACE);
+        FOREIGN_ATTRIBUTE_NAMESPACES.put("xml:space", XML_NAMESPACE);
+        FOREIGN_ATTRIBUTE_NAMESPACES.put("xmlns", XMLNS_NAMESPACE);
+        FOREIGN_ATTRIBUTE_NAMESPACES.put("xmlns:xlink", XMLNS_NAMESPACE);
+    }
+    
+    /**
+     * Registers a case-sensitive name under its lowercase form. This is the
+     * only place case conversion happens, when the class is initialized.
+     */
+    private static void register(final Map<String, String> names, final String name) {
+        final String previous = names.put(name.toLowerCase(Locale.ENGLISH), name);
+        assert previous == null : name;
+    }
+    
+    private ForeignNames() {
+        super();
+    }
+    
+    /**
+     * Returns the correctly-cased name for an SVG element whose start tag has
+     * the given tag name.
+     * 
+     * @param tagName the lowercase tag name from the tokenizer
+     * @return the adjusted tag name, or {@code null} if no adjustment is
+     *         necessary
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#parsing-main-inforeign">8.2.5.5 The rules for parsing tokens in foreign content</a>
+     */
+    public static String adjustSVGTagName(final String tagName) {
+        return SVG_TAG_NAMES.get(tagName);
+    }
+    
+    /**
+     * Returns the correctly-cased name for an attribute on an SVG element.
+     * 
+     * @param attributeName the lowercase attribute name from the tokenizer
+     * @return the adjusted attribute name, or {@code null} if no adjustment is
+     *         necessary
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#adjust-svg-attributes">adjust SVG attributes</a>
+     */
+    public static String adjustSVGAttributeName(final String attributeName) {
+        return SVG_ATTRIBUTE_NAMES.get(attributeName);
+    }
+    
+    /**
+     * Returns the correctly-cased name for an attribute on a MathML element.
+     * 
+     * @param attributeName the lowercase attribute name from the tokenizer
+     * @return the adjusted attribute name, or {@code null} if no adjustment is
+     *         necessary
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#adjust-mathml-attributes">adjust MathML attributes</a>
+     */
+    public static String adjustMathMLAttributeName(final String attributeName) {
+        return MATHML_ATTRIBUTE_NAMES.get(attributeName);
+    }
+    
+    /**
+     * Returns the namespace of a namespaced attribute on a foreign element.
+     * The qualified name of the attribute is unchanged, its prefix (if any)
+     * is the part before the colon.
+     * 
+     * @param attributeName the lowercase attribute name from the tokenizer
+     * @return the namespace of the attribute, or {@code null} if the attribute
+     *         is not in a namespace
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#adjust-foreign-attributes">adjust foreign attributes</a>
+     */
+    public static String getForeignAttributeNamespace(final String attributeName) {
+        return FOREIGN_ATTRIBUTE_NAMESPACES.get(attributeName);
+    }
+    
+}
@@ -0,0 +1,6 @@
+/**
+ * Classification of the elements the tree construction stage operates on.
+ * 
+ * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#tree-construction">8.2.5 Tree construction</a>
+ */
+package org.silnith.parser.html5.grammar.element;
@@ -9,6 +9,7 @@ import static org.silnith.parser.util.UnicodeCodePoints.SPACE;
 import org.silnith.parser.html5.ParseErrors;
 import org.silnith.parser.html5.Parser;
 import org.silnith.parser.html5.grammar.dom.AfterLastChildInsertionPosition;
+import org.silnith.parser.html5.grammar.element.ElementKind;
 import org.silnith.parser.html5.lexical.token.CharacterToken;
 import org.silnith.parser.html5.lexical.token.CommentToken;
 import org.silnith.parser.html5.lexical.token.StartTagToken;
@@ -78,9 +79,8 @@ public class AfterAfterBodyInsertionMode extends InsertionMode {
         } // break;
         case START_TAG: {
             final StartTagToken startTagToken = (StartTagToken) token;
-            final String tagName = startTagToken.getTagName();
-            switch (tagName) {
-            case "html": {
+            switch (startTagToken.getTagKind()) {
+            case ElementKind.HTML: {
                 return processUsingRulesFor(Parser.Mode.IN_BODY, startTagToken);
             } // break;
             default: {
@@ -101,6 +101,10 @@ public class AfterAfterBodyInsertionMode extends InsertionMode {
     private boolean anythingElse(final Token token) {
         reportParseError(ParseErrors.UNEXPECTED_TOKEN_FOLLOWING_DOCUMENT, "Unexpected token in after after body mode: " + token);
         
+        reopenSourceRange(getFirstElementInStackOfOpenElements());
+        if (getStackOfOpenElementsSize() > 1) {
+            reopenSourceRange(getSecondElementOfStackOfOpenElements());
+        }
         setInsertionMode(Parser.Mode.IN_BODY);
         return REPROCESS_TOKEN;
     }
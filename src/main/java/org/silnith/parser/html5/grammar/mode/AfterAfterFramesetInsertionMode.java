@@ -9,6 +9,7 @@ import static org.silnith.parser.util.UnicodeCodePoints.SPACE;
 import org.silnith.parser.html5.ParseErrors;
 import org.silnith.parser.html5.Parser;
 import org.silnith.parser.html5.grammar.dom.AfterLastChildInsertionPosition;
+import org.silnith.parser.html5.grammar.element.ElementKind;
 import org.silnith.parser.html5.lexical.token.CharacterToken;
 import org.silnith.parser.html5.lexical.token.CommentToken;
 import org.silnith.parser.html5.lexical.token.StartTagToken;
@@ -82,12 +83,11 @@ public class AfterAfterFramesetInsertionMode extends InsertionMode {
         } // break;
         case START_TAG: {
             final StartTagToken startTagToken = (StartTagToken) token;
-            final String tagName = startTagToken.getTagName();
-            switch (tagName) {
-            case "html": {
+            switch (startTagToken.getTagKind()) {
+            case ElementKind.HTML: {
                 return processUsingRulesFor(Parser.Mode.IN_BODY, startTagToken);
             } // break;
-            case "noframes": {
+            case ElementKind.NOFRAMES: {
                 return processUsingRulesFor(Parser.Mode.IN_HEAD, startTagToken);
             } // break;
             default: {
@@ -9,6 +9,7 @@ import static org.silnith.parser.util.UnicodeCodePoints.SPACE;
 import org.silnith.parser.html5.ParseErrors;
 import org.silnith.parser.html5.Parser;
 import org.silnith.parser.html5.grammar.dom.AfterLastChildInsertionPosition;
+import org.silnith.parser.html5.grammar.element.ElementKind;
 import org.silnith.parser.html5.lexical.token.CharacterToken;
 import org.silnith.parser.html5.lexical.token.CommentToken;
 import org.silnith.parser.html5.lexical.token.EndTagToken;
@@ -95,9 +96,8 @@ public class AfterBodyInsertionMode extends InsertionMode {
         } // break;
         case START_TAG: {
             final StartTagToken startTagToken = (StartTagToken) token;
-            final String tagName = startTagToken.getTagName();
-            switch (tagName) {
-            case "html": {
+            switch (startTagToken.getTagKind()) {
+            case ElementKind.HTML: {
                 return processUsingRulesFor(Parser.Mode.IN_BODY, startTagToken);
             } // break;
             default: {
@@ -107,14 +107,14 @@ public class AfterBodyInsertionMode extends InsertionMode {
         } // break;
         case END_TAG: {
             final EndTagToken endTagToken = (EndTagToken) token;
-            final String tagName = endTagToken.getTagName();
-            switch (tagName) {
-            case "html": {
+            switch (endTagToken.getTagKind()) {
+            case ElementKind.HTML: {
                 if (isHTMLFragmentParsingAlgorithm()) {
                     reportParseError(ParseErrors.UNEXPECTED_HTML_CLOSE_TAG_FOLLOWING_BODY_IN_HTML_FRAGMENT, "Unexpected html close tag following body while parsing an HTML fragment.");
                     
                     return IGNORE_TOKEN;
                 } else {
+                    endSourceRange(getFirstElementInStackOfOpenElements());
                     setInsertionMode(Parser.Mode.AFTER_AFTER_BODY);
                     return TOKEN_HANDLED;
                 }
@@ -137,6 +137,9 @@ public class AfterBodyInsertionMode extends InsertionMode {
     private boolean anythingElse(final Token token) {
         reportParseError(ParseErrors.UNEXPECTED_TOKEN_FOLLOWING_BODY, "Unexpected token after body: " + token);
         
+        if (getStackOfOpenElementsSize() > 1) {
+            reopenSourceRange(getSecondElementOfStackOfOpenElements());
+        }
         setInsertionMode(Parser.Mode.IN_BODY);
         return REPROCESS_TOKEN;
     }
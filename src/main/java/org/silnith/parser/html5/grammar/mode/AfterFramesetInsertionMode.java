@@ -8,6 +8,7 @@ import static org.silnith.parser.util.UnicodeCodePoints.SPACE;
 
 import org.silnith.parser.html5.ParseErrors;
 import org.silnith.parser.html5.Parser;
+import org.silnith.parser.html5.grammar.element.ElementKind;
 import org.silnith.parser.html5.lexical.token.CharacterToken;
 import org.silnith.parser.html5.lexical.token.CommentToken;
 import org.silnith.parser.html5.lexical.token.EndTagToken;
@@ -95,12 +96,11 @@ public class AfterFramesetInsertionMode extends InsertionMode {
         } // break;
         case START_TAG: {
             final StartTagToken startTagToken = (StartTagToken) token;
-            final String tagName = startTagToken.getTagName();
-            switch (tagName) {
-            case "html": {
+            switch (startTagToken.getTagKind()) {
+            case ElementKind.HTML: {
                 return processUsingRulesFor(Parser.Mode.IN_BODY, startTagToken);
             } // break;
-            case "noframes": {
+            case ElementKind.NOFRAMES: {
                 return processUsingRulesFor(Parser.Mode.IN_HEAD, startTagToken);
             } // break;
             default: {
@@ -110,9 +110,8 @@ public class AfterFramesetInsertionMode extends InsertionMode {
         } // break;
         case END_TAG: {
             final EndTagToken endTagToken = (EndTagToken) token;
-            final String tagName = endTagToken.getTagName();
-            switch (tagName) {
-            case "html": {
+            switch (endTagToken.getTagKind()) {
+            case ElementKind.HTML: {
                 setInsertionMode(Parser.Mode.AFTER_AFTER_FRAMESET);
                 return TOKEN_HANDLED;
             } // break;
@@ -8,6 +8,7 @@ import static org.silnith.parser.util.UnicodeCodePoints.SPACE;
 
 import org.silnith.parser.html5.ParseErrors;
 import org.silnith.parser.html5.Parser;
+import org.silnith.parser.html5.grammar.element.ElementKind;
 import org.silnith.parser.html5.lexical.token.CharacterToken;
 import org.silnith.parser.html5.lexical.token.CommentToken;
 import org.silnith.parser.html5.lexical.token.EndTagToken;
@@ -117,36 +118,35 @@ public class AfterHeadInsertionMode extends InsertionMode {
         } // break;
         case START_TAG: {
             final StartTagToken startTagToken = (StartTagToken) token;
-            final String tagName = startTagToken.getTagName();
-            switch (tagName) {
-            case "html": {
+            switch (startTagToken.getTagKind()) {
+            case ElementKind.HTML: {
                 return processUsingRulesFor(Parser.Mode.IN_BODY, startTagToken);
             } // break;
-            case "body": {
+            case ElementKind.BODY: {
                 insertHTMLElement(startTagToken);
                 setFramesetOKFlag(NOT_OK);
                 setInsertionMode(Parser.Mode.IN_BODY);
                 return TOKEN_HANDLED;
             } // break;
-            case "frameset": {
+            case ElementKind.FRAMESET: {
                 insertHTMLElement(startTagToken);
                 setInsertionMode(Parser.Mode.IN_FRAMESET);
                 return TOKEN_HANDLED;
             } // break;
-            case "base": // fall through
-            case "basefont": // fall through
-            case "bgsound": // fall through
-            case "link": // fall through
-            case "meta": // fall through
-            case "noframes": // fall through
-            case "script": // fall through
-            case "style": // fall through
-            case "template": // fall through
-            case "title": {
+            case ElementKind.BASE: // fall through
+            case ElementKind.BASEFONT: // fall through
+            case ElementKind.BGSOUND: // fall through
+            case ElementKind.LINK: // fall through
+            case ElementKind.META: // fall through
+            case ElementKind.NOFRAMES: // fall through
+            case ElementKind.SCRIPT: // fall through
+            case ElementKind.STYLE: // fall through
+            case ElementKind.TEMPLATE: // fall through
+            case ElementKind.TITLE: {
                 reportParseError(ParseErrors.UNEXPECTED_METADATA_ELEMENT_FOLLOWING_HEAD, "Unexpected start tag token after head: " + startTagToken);
                 
                 assert getHeadElementPointer() != null;
-                addToStackOfOpenElements(getHeadElementPointer());
+                addToStackOfOpenElements(getHeadElementPointer(), ElementKind.HEAD);
                 final boolean returnValue = processUsingRulesFor(Parser.Mode.IN_HEAD, startTagToken);
                 Element popped;
                 do {
@@ -160,7 +160,7 @@ public class AfterHeadInsertionMode extends InsertionMode {
                 } while (popped != getHeadElementPointer());
                 return returnValue;
             } // break;
-            case "head": {
+            case ElementKind.HEAD: {
                 reportParseError(ParseErrors.HEAD_FOLLOWING_HEAD, "Unexpected start tag token after head: " + startTagToken);
                 
                 return IGNORE_TOKEN;
@@ -172,14 +172,13 @@ public class AfterHeadInsertionMode extends InsertionMode {
         } // break;
         case END_TAG: {
             final EndTagToken endTagToken = (EndTagToken) token;
-            final String tagName = endTagToken.getTagName();
-            switch (tagName) {
-            case "template": {
+            switch (endTagToken.getTagKind()) {
+            case ElementKind.TEMPLATE: {
                 return processUsingRulesFor(Parser.Mode.IN_HEAD, endTagToken);
             } // break;
-            case "body": // fall through
-            case "html": // fall through
-            case "br": {
+            case ElementKind.BODY: // fall through
+            case ElementKind.HTML: // fall through
+            case ElementKind.BR: {
                 return anythingElse(endTagToken);
             } // break;
             default: {
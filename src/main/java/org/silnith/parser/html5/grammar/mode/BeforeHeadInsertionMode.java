@@ -8,6 +8,7 @@ import static org.silnith.parser.util.UnicodeCodePoints.SPACE;
 
 import org.silnith.parser.html5.ParseErrors;
 import org.silnith.parser.html5.Parser;
+import org.silnith.parser.html5.grammar.element.ElementKind;
 import org.silnith.parser.html5.lexical.token.CharacterToken;
 import org.silnith.parser.html5.lexical.token.CommentToken;
 import org.silnith.parser.html5.lexical.token.EndTagToken;
@@ -100,12 +101,11 @@ public class BeforeHeadInsertionMode extends InsertionMode {
         } // break;
         case START_TAG: {
             final StartTagToken startTagToken = (StartTagToken) token;
-            final String tagName = startTagToken.getTagName();
-            switch (tagName) {
-            case "html": {
+            switch (startTagToken.getTagKind()) {
+            case ElementKind.HTML: {
                 return processUsingRulesFor(Parser.Mode.IN_BODY, startTagToken);
             } // break;
-            case "head": {
+            case ElementKind.HEAD: {
                 final Element headElement = insertHTMLElement(startTagToken);
                 setHeadElementPointer(headElement);
                 setInsertionMode(Parser.Mode.IN_HEAD);
@@ -118,12 +118,11 @@ public class BeforeHeadInsertionMode extends InsertionMode {
         } // break;
         case END_TAG: {
             final EndTagToken endTagToken = (EndTagToken) token;
-            final String tagName = endTagToken.getTagName();
-            switch (tagName) {
-            case "head": // fall through
-            case "body": // fall through
-            case "html": // fall through
-            case "br": {
+            switch (endTagToken.getTagKind()) {
+            case ElementKind.HEAD: // fall through
+            case ElementKind.BODY: // fall through
+            case ElementKind.HTML: // fall through
+            case ElementKind.BR: {
                 return anythingElse(endTagToken);
             } // break;
             default: {
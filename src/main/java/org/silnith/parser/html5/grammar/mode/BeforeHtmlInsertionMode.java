@@ -10,6 +10,7 @@ import org.silnith.parser.html5.ParseErrors;
 import org.silnith.parser.html5.Parser;
 import org.silnith.parser.html5.grammar.dom.AfterLastChildInsertionPosition;
 import org.silnith.parser.html5.grammar.dom.InsertionPosition;
+import org.silnith.parser.html5.grammar.element.ElementKind;
 import org.silnith.parser.html5.lexical.token.CharacterToken;
 import org.silnith.parser.html5.lexical.token.CommentToken;
 import org.silnith.parser.html5.lexical.token.EndTagToken;
@@ -101,9 +102,8 @@ public class BeforeHtmlInsertionMode extends InsertionMode {
         } // break;
         case START_TAG: {
             final StartTagToken startTagToken = (StartTagToken) token;
-            final String tagName = startTagToken.getTagName();
-            switch (tagName) {
-            case "html": {
+            switch (startTagToken.getTagKind()) {
+            case ElementKind.HTML: {
                 /*
                  * The correct algorithm, DOM throws up.
                  */
@@ -117,7 +117,9 @@ public class BeforeHtmlInsertionMode extends InsertionMode {
                     final String value = attribute.getValue();
                     htmlElement.setAttribute(name, value);
                 }
-                addToStackOfOpenElements(htmlElement);
+                indexElement(htmlElement, ElementKind.HTML);
+                startSourceRange(htmlElement, startTagToken);
+                addToStackOfOpenElements(htmlElement, ElementKind.HTML);
                 /*
                  * TODO:
                  * If this is a navigation, do the manifest check and select the
@@ -133,12 +135,11 @@ public class BeforeHtmlInsertionMode extends InsertionMode {
         } // break;
         case END_TAG: {
             final EndTagToken endTagToken = (EndTagToken) token;
-            final String tagName = endTagToken.getTagName();
-            switch (tagName) {
-            case "head": // fall through
-            case "body": // fall through
-            case "html": // fall through
-            case "br": {
+            switch (endTagToken.getTagKind()) {
+            case ElementKind.HEAD: // fall through
+            case ElementKind.BODY: // fall through
+            case ElementKind.HTML: // fall through
+            case ElementKind.BR: {
                 return anythingElse(endTagToken);
             } // break;
             default: {
@@ -164,7 +165,9 @@ public class BeforeHtmlInsertionMode extends InsertionMode {
     
     private boolean anythingElse(final Token token) {
         final Element htmlElement = createHtmlElement();
-        addToStackOfOpenElements(htmlElement);
+        indexElement(htmlElement, ElementKind.HTML);
+        startSourceRange(htmlElement, null);
+        addToStackOfOpenElements(htmlElement, ElementKind.HTML);
         /*
          * TODO:
          * If this is a navigation, do the manifest check and select the
@@ -12,6 +12,8 @@ import java.util.Locale;
 
 import org.silnith.parser.html5.ParseErrors;
 import org.silnith.parser.html5.Parser;
+import org.silnith.parser.html5.grammar.element.ElementKind;
+import org.silnith.parser.html5.grammar.element.ForeignNames;
 import org.silnith.parser.html5.lexical.token.CharacterToken;
 import org.silnith.parser.html5.lexical.token.CommentToken;
 import org.silnith.parser.html5.lexical.token.EndTagToken;
@@ -276,82 +278,73 @@ public class ForeignContentMode extends InsertionMode {
         } // break;
         case START_TAG: {
             final StartTagToken startTagToken = (StartTagToken) token;
-            final String tagName = startTagToken.getTagName();
-            switch (tagName) {
-            case "b": // fall through
-            case "big": // fall through
-            case "blockquote": // fall through
-            case "body": // fall through
-            case "br": // fall through
-            case "center": // fall through
-            case "code": // fall through
-            case "dd": // fall through
-            case "div": // fall through
-            case "dl": // fall through
-            case "dt": // fall through
-            case "em": // fall through
-            case "embed": // fall through
-            case "h1": // fall through
-            case "h2": // fall through
-            case "h3": // fall through
-            case "h4": // fall through
-            case "h5": // fall through
-            case "h6": // fall through
-            case "head": // fall through
-            case "hr": // fall through
-            case "i": // fall through
-            case "img": // fall through
-            case "li": // fall through
-            case "listing": // fall through
-            case "main": // fall through
-            case "meta": // fall through
-            case "nobr": // fall through
-            case "ol": // fall through
-            case "p": // fall through
-            case "pre": // fall through
-            case "ruby": // fall through
-            case "s": // fall through
-            case "small": // fall through
-            case "span": // fall through
-            case "strong": // fall through
-            case "strike": // fall through
-            case "sub": // fall through
-            case "sup": // fall through
-            case "table": // fall through
-            case "tt": // fall through
-            case "u": // fall through
-            case "ul": // fall through
-            case "var": {
+            switch (startTagToken.getTagKind()) {
+            case ElementKind.B: // fall through
+            case ElementKind.BIG: // fall through
+            case ElementKind.BLOCKQUOTE: // fall through
+            case ElementKind.BODY: // fall through
+            case ElementKind.BR: // fall through
+            case ElementKind.CENTER: // fall through
+            case ElementKind.CODE: // fall through
+            case ElementKind.DD: // fall through
+            case ElementKind.DIV: // fall through
+            case ElementKind.DL: // fall through
+            case ElementKind.DT: // fall through
+            case ElementKind.EM: // fall through
+            case ElementKind.EMBED: // fall through
+            case ElementKind.H1: // fall through
+            case ElementKind.H2: // fall through
+            case ElementKind.H3: // fall through
+            case ElementKind.H4: // fall through
+            case ElementKind.H5: // fall through
+            case ElementKind.H6: // fall through
+            case ElementKind.HEAD: // fall through
+            case ElementKind.HR: // fall through
+            case ElementKind.I: // fall through
+            case ElementKind.IMG: // fall through
+            case ElementKind.LI: // fall through
+            case ElementKind.LISTING: // fall through
+            case ElementKind.MAIN: // fall through
+            case ElementKind.META: // fall through
+            case ElementKind.NOBR: // fall through
+            case ElementKind.OL: // fall through
+            case ElementKind.P: // fall through
+            case ElementKind.PRE: // fall through
+            case ElementKind.RUBY: // fall through
+            case ElementKind.S: // fall through
+            case ElementKind.SMALL: // fall through
+            case ElementKind.SPAN: // fall through
+            case ElementKind.STRONG: // fall through
+            case ElementKind.STRIKE: // fall through
+            case ElementKind.SUB: // fall through
+            case ElementKind.SUP: // fall through
+            case ElementKind.TABLE: // fall through
+            case ElementKind.TT: // fall through
+            case ElementKind.U: // fall through
+            case ElementKind.UL: // fall through
+            case ElementKind.VAR: {
                 reportParseError(ParseErrors.UNEXPECTED_ELEMENT_IN_FOREIGN_CONTENT, "Unexpected start tag token in foreign content: " + token);
                 
-                if (isHTMLFragmentParsingAlgorithm()) {
+                if (isHTMLFragmentParsingAlgorithm() && !parser.isParsingTemplateContents()) {
                     return anyOtherStartTag(startTagToken);
                 } else {
                     popCurrentNode();
-                    while (!parser.isHTMLIntegrationPoint(getCurrentNode())
-                            && !parser.isMathMLTextIntegrationPoint(getCurrentNode())
-                            && !getCurrentNode().getNamespaceURI().equals(HTML_NAMESPACE)) {
-                        popCurrentNode();
-                    }
+                    popUntilHTMLOrIntegrationPoint();
                     return REPROCESS_TOKEN;
                 }
             } // break;
-            case "font": {
+            case ElementKind.FONT: {
                 final Attribute colorAttribute = getAttributeNamed(startTagToken, "color");
                 final Attribute faceAttribute = getAttributeNamed(startTagToken, "face");
                 final Attribute sizeAttribute = getAttributeNamed(startTagToken, "size");
                 if (colorAttribute != null || faceAttribute != null || sizeAttribute != null) {
                     reportParseError(ParseErrors.UNEXPECTED_ELEMENT_IN_FOREIGN_CONTENT, "Unexpected start tag token in foreign content: " + token);
                     
-                    if (isHTMLFragmentParsingAlgorithm()) {
+                    if (isHTMLFragmentParsingAlgorithm() && !parser.isParsingTemplateContents()) {
                         return anyOtherStartTag(startTagToken);
                     } else {
                         popCurrentNode();
-                        while (!parser.isHTMLIntegrationPoint(getCurrentNode())
-                                && !parser.isMathMLTextIntegrationPoint(getCurrentNode())
-                                && !getCurrentNode().getNamespaceURI().equals(HTML_NAMESPACE)) {
-                            popCurrentNode();
-                        }
+                        popUntilHTMLOrIntegrationPoint();
                         return REPROCESS_TOKEN;
                     }
                 } else {
@@ -365,9 +358,8 @@ public class ForeignContentMode extends InsertionMode {
         } // break;
         case END_TAG: {
             final EndTagToken endTagToken = (EndTagToken) token;
-            final String tagName = endTagToken.getTagName();
-            switch (tagName) {
-            case "script": {
+            switch (endTagToken.getTagKind()) {
+            case ElementKind.SCRIPT: {
                 // if isElementA(getCurrentNode(), "script", SVG_NAMESPACE)
                 // then do lots of stuff
                 // else
@@ -388,21 +380,16 @@ public class ForeignContentMode extends InsertionMode {
     private boolean anyOtherStartTag(final StartTagToken startTagToken) {
         final Element adjustedCurrentNode = getAdjustedCurrentNode();
         if (adjustedCurrentNode.getNamespaceURI().equals(MATHML_NAMESPACE)) {
-            /*
-             * TODO: adjust MathML attributes
-             */
+            adjustMathMLAttributes(startTagToken);
         }
         if (adjustedCurrentNode.getNamespaceURI().equals(SVG_NAMESPACE)) {
-            /*
-             * TODO: replace tag name using table provided, or leave it
-             */
-            /*
-             * TODO: adjust SVG attributes.
-             */
+            final String adjustedTagName = ForeignNames.adjustSVGTagName(startTagToken.getTagName());
+            if (adjustedTagName != null) {
+                startTagToken.setTagName(adjustedTagName);
+            }
+            adjustSVGAttributes(startTagToken);
         }
-        /*
-         * TODO: adjust foreign attributes
-         */
+        adjustForeignAttributes(startTagToken);
         insertForeignElement(startTagToken, adjustedCurrentNode.getNamespaceURI());
         if (startTagToken.isSelfClosing()) {
             if (startTagToken.getTagName().equals("script")) {
@@ -417,12 +404,40 @@ public class ForeignContentMode extends InsertionMode {
         return TOKEN_HANDLED;
     }
     
+    /**
+     * Pops elements from the stack of open elements until the current node is
+     * a MathML text integration point, an HTML integration point, or an
+     * element in the HTML namespace.
+     */
+    private void popUntilHTMLOrIntegrationPoint() {
+        while ( !isCurrentNodeInCategory(ElementKind.NAMESPACE_HTML | ElementKind.MATHML_TEXT_INTEGRATION_POINT
+                | ElementKind.HTML_INTEGRATION_POINT)) {
+            popCurrentNode();
+        }
+    }
+    
     private boolean anyOtherEndTag(final EndTagToken endTagToken) {
+        final String tagName = endTagToken.getTagName();
+        int index = getStackOfOpenElementsSize() - 1;
         Element node = getCurrentNode();
-        if (!node.getTagName().toLowerCase(Locale.ENGLISH).equals(endTagToken.getTagName())) {
-//            reportParseError(errorType, message);
+        if ( !node.getTagName().toLowerCase(Locale.ENGLISH).equals(tagName)) {
+            reportParseError(ParseErrors.MISMATCHED_END_TAG_IN_FOREIGN_CONTENT, "Unexpected end tag token in foreign content: " + endTagToken);
+        }
+        while (index > 0) {
+            if (node.getTagName().toLowerCase(Locale.ENGLISH).equals(tagName)) {
+                Element popped;
+                do {
+                    popped = popCurrentNode();
+                } while (popped != node);
+                return TOKEN_HANDLED;
+            }
+            index-- ;
+            node = parser.getOpenElement(index);
+            if (ElementKind.isA(getOpenElementKind(index), ElementKind.NAMESPACE_HTML)) {
+                return processUsingRulesFor(getInsertionMode(), endTagToken);
+            }
         }
-        throw new UnsupportedOperationException("Not implemented yet.");
+        return IGNORE_TOKEN;
     }
     
 }
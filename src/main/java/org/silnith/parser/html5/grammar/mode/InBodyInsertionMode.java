@@ -7,14 +7,14 @@ import static org.silnith.parser.util.UnicodeCodePoints.LINE_FEED;
 import static org.silnith.parser.util.UnicodeCodePoints.NULL;
 import static org.silnith.parser.util.UnicodeCodePoints.SPACE;
 
-import java.util.Arrays;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.Set;
+import java.util.IdentityHashMap;
+import java.util.Map;
 
 import org.silnith.parser.ParseErrorException;
+import org.silnith.parser.html5.ActiveFormattingElements;
 import org.silnith.parser.html5.Parser;
 import org.silnith.parser.html5.Parser.FormattingElement;
+import org.silnith.parser.html5.grammar.element.ElementKind;
 import org.silnith.parser.html5.lexical.Tokenizer;
 import org.silnith.parser.html5.lexical.token.CharacterToken;
 import org.silnith.parser.html5.lexical.token.CommentToken;
@@ -23,7 +23,6 @@ import org.silnith.parser.html5.lexical.token.StartTagToken;
 import org.silnith.parser.html5.lexical.token.TagToken;
 import org.silnith.parser.html5.lexical.token.Token;
 import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
 
 
 /**
@@ -579,11 +578,10 @@ public class InBodyInsertionMode extends InsertionMode {
         } // break;
         case START_TAG: {
             final StartTagToken startTagToken = (StartTagToken) token;
-            final String tagName = startTagToken.getTagName();
-            switch (tagName) {
-            case "html": {
+            switch (startTagToken.getTagKind()) {
+            case ElementKind.HTML: {
                 if (isAllowParseErrors()) {
-                    if (isStackOfOpenElementsContains("template")) {
+                    if (isTemplateOnStackOfOpenElements()) {
                         return IGNORE_TOKEN;
                     }
                     for (final TagToken.Attribute attribute : startTagToken.getAttributes()) {
@@ -591,6 +589,7 @@ public class InBodyInsertionMode extends InsertionMode {
                         final Element htmlElement = getFirstElementInStackOfOpenElements();
                         if ( !htmlElement.hasAttribute(name)) {
                             htmlElement.setAttribute(name, attribute.getValue());
+                            indexAttribute(htmlElement, name, attribute.getValue());
                         }
                     }
                     return TOKEN_HANDLED;
@@ -598,19 +597,19 @@ public class InBodyInsertionMode extends InsertionMode {
                     throw new ParseErrorException("Unexpected start tag token in body: " + startTagToken);
                 }
             } // break;
-            case "base": // fall through
-            case "basefont": // fall through
-            case "bgsound": // fall through
-            case "link": // fall through
-            case "meta": // fall through
-            case "noframes": // fall through
-            case "script": // fall through
-            case "style": // fall through
-            case "template": // fall through
-            case "title": {
+            case ElementKind.BASE: // fall through
+            case ElementKind.BASEFONT: // fall through
+            case ElementKind.BGSOUND: // fall through
+            case ElementKind.LINK: // fall through
+            case ElementKind.META: // fall through
+            case ElementKind.NOFRAMES: // fall through
+            case ElementKind.SCRIPT: // fall through
+            case ElementKind.STYLE: // fall through
+            case ElementKind.TEMPLATE: // fall through
+            case ElementKind.TITLE: {
                 return processUsingRulesFor(Parser.Mode.IN_HEAD, startTagToken);
             } // break;
-            case "body": {
+            case ElementKind.BODY: {
                 if (isAllowParseErrors()) {
                     if (isStackOfOpenElementsHasOnlyOneNode()) {
                         return IGNORE_TOKEN;
@@ -619,7 +618,7 @@ public class InBodyInsertionMode extends InsertionMode {
                     if ( !isElementA(bodyElement, "body")) {
                         return IGNORE_TOKEN;
                     }
-                    if (isStackOfOpenElementsContains("template")) {
+                    if (isTemplateOnStackOfOpenElements()) {
                         return IGNORE_TOKEN;
                     }
                     setFramesetOKFlag(NOT_OK);
@@ -627,6 +626,7 @@ public class InBodyInsertionMode extends InsertionMode {
                         final String name = attribute.getName();
                         if ( !bodyElement.hasAttribute(name)) {
                             bodyElement.setAttribute(name, attribute.getValue());
+                            indexAttribute(bodyElement, name, attribute.getValue());
                         }
                     }
                     return TOKEN_HANDLED;
@@ -634,7 +634,7 @@ public class InBodyInsertionMode extends InsertionMode {
                     throw new ParseErrorException("Unexpected start tag token in body: " + startTagToken);
                 }
             } // break;
-            case "frameset": {
+            case ElementKind.FRAMESET: {
                 if (isAllowParseErrors()) {
                     if (isStackOfOpenElementsHasOnlyOneNode()) {
                         return IGNORE_TOKEN;
@@ -660,51 +660,50 @@ public class InBodyInsertionMode extends InsertionMode {
                     throw new ParseErrorException("Unexpected start tag token in body: " + token);
                 }
             } // break;
-            case "address": // fall through
-            case "article": // fall through
-            case "aside": // fall through
-            case "blockquote": // fall through
-            case "center": // fall through
-            case "details": // fall through
-            case "dialog": // fall through
-            case "dir": // fall through
-            case "div": // fall through
-            case "dl": // fall through
-            case "fieldset": // fall through
-            case "figcaption": // fall through
-            case "figure": // fall through
-            case "footer": // fall through
-            case "header": // fall through
-            case "hgroup": // fall through
-            case "main": // fall through
-            case "menu": // fall through
-            case "nav": // fall through
-            case "ol": // fall through
-            case "p": // fall through
-            case "section": // fall through
-            case "summary": // fall through
-            case "ul": {
+            case ElementKind.ADDRESS: // fall through
+            case ElementKind.ARTICLE: // fall through
+            case ElementKind.ASIDE: // fall through
+            case ElementKind.BLOCKQUOTE: // fall through
+            case ElementKind.CENTER: // fall through
+            case ElementKind.DETAILS: // fall through
+            case ElementKind.DIALOG: // fall through
+            case ElementKind.DIR: // fall through
+            case ElementKind.DIV: // fall through
+            case ElementKind.DL: // fall through
+            case ElementKind.FIELDSET: // fall through
+            case ElementKind.FIGCAPTION: // fall through
+            case ElementKind.FIGURE: // fall through
+            case ElementKind.FOOTER: // fall through
+            case ElementKind.HEADER: // fall through
+            case ElementKind.HGROUP: // fall through
+            case ElementKind.MAIN: // fall through
+            case ElementKind.MENU: // fall through
+            case ElementKind.NAV: // fall through
+            case ElementKind.OL: // fall through
+            case ElementKind.P: // fall through
+            case ElementKind.SECTION: // fall through
+            case ElementKind.SUMMARY: // fall through
+            case ElementKind.UL: {
                 if (hasParticularElementInButtonScope("p")) {
                     closePElement();
                 }
                 insertHTMLElement(startTagToken);
                 return TOKEN_HANDLED;
             } // break;
-            case "h1": // fall through
-            case "h2": // fall through
-            case "h3": // fall through
-            case "h4": // fall through
-            case "h5": // fall through
-            case "h6": {
+            case ElementKind.H1: // fall through
+            case ElementKind.H2: // fall through
+            case ElementKind.H3: // fall through
+            case ElementKind.H4: // fall through
+            case ElementKind.H5: // fall through
+            case ElementKind.H6: {
                 if (hasParticularElementInButtonScope("p")) {
                     closePElement();
                 }
                 // if current node is h1, h2, h3, h4, h5, h6 element, parse
 // error
-                if (isElementA(getCurrentNode(), "h1", "h2", "h3", "h4", "h5", "h6")) {
+                if (isCurrentNodeInCategory(ElementKind.HEADING)) {
                     if (isAllowParseErrors()) {
                         popCurrentNode();
-                        break;
                     } else {
                         throw new ParseErrorException("Found " + startTagToken.getTagName() + " nested inside "
                                 + getCurrentNode().getTagName());
@@ -713,18 +712,18 @@ public class InBodyInsertionMode extends InsertionMode {
                 insertHTMLElement(startTagToken);
                 return TOKEN_HANDLED;
             } // break;
-            case "pre": // fall through
-            case "listing": {
+            case ElementKind.PRE: // fall through
+            case ElementKind.LISTING: {
                 if (hasParticularElementInButtonScope("p")) {
                     closePElement();
                 }
                 insertHTMLElement(startTagToken);
-                // peek next token, if it is LINE_FEED character, ignore it
+                ignoreNextLineFeed();
                 setFramesetOKFlag(NOT_OK);
                 return TOKEN_HANDLED;
             } // break;
-            case "form": {
-                if (getFormElementPointer() != null && !isStackOfOpenElementsContains("template")) {
+            case ElementKind.FORM: {
+                if (getFormElementPointer() != null && !isTemplateOnStackOfOpenElements()) {
                     if (isAllowParseErrors()) {
                         return IGNORE_TOKEN;
                     } else {
@@ -735,19 +734,19 @@ public class InBodyInsertionMode extends InsertionMode {
                     closePElement();
                 }
                 final Element formElement = insertHTMLElement(startTagToken);
-                if ( !isStackOfOpenElementsContains("template")) {
+                if ( !isTemplateOnStackOfOpenElements()) {
                     setFormElementPointer(formElement);
                 }
                 return TOKEN_HANDLED;
             } // break;
-            case "li": {
+            case ElementKind.LI: {
                 setFramesetOKFlag(NOT_OK);
                 int index = getStackOfOpenElementsSize() - 1;
                 while (index >= 0) {
-                    final Element node = getOpenElement(index);
-                    if (isElementA(node, "li")) {
-                        generateImpliedEndTagsExcept("li");
-                        if ( !isElementA(getCurrentNode(), "li")) {
+                    final int kind = getOpenElementKind(index);
+                    if (kind == ElementKind.LI) {
+                        generateImpliedEndTagsExcept(ElementKind.LI);
+                        if ( !isCurrentNodeA(ElementKind.LI)) {
                             if (isAllowParseErrors()) {
                                 // do nothing?
                             } else {
@@ -755,12 +754,10 @@ public class InBodyInsertionMode extends InsertionMode {
                                         "Unclosed element inside li element: " + getCurrentNode().getTagName());
                             }
                         }
-                        Element popped = popCurrentNode();
-                        do {
-                            popped = popCurrentNode();
-                        } while ( !isElementA(popped, "li"));
+                        popElementsUntilPopped(ElementKind.LI);
                         break;
-                    } else if (isSpecialCategoryExcept(node.getTagName(), "address", "div", "p")) {
+                    } else if (isSpecialCategory(kind) && kind != ElementKind.ADDRESS && kind != ElementKind.DIV
+                            && kind != ElementKind.P) {
                         break;
                     } else {
                         // loop
@@ -773,15 +770,15 @@ public class InBodyInsertionMode extends InsertionMode {
                 insertHTMLElement(startTagToken);
                 return TOKEN_HANDLED;
             } // break;
-            case "dd": // fall through
-            case "dt": {
+            case ElementKind.DD: // fall through
+            case ElementKind.DT: {
                 setFramesetOKFlag(NOT_OK);
                 int index = getStackOfOpenElementsSize() - 1;
                 while (index >= 0) {
-                    final Element node = getOpenElement(index);
-                    if (isElementA(node, "dd")) {
-                        generateImpliedEndTagsExcept("dd");
-                        if ( !isElementA(getCurrentNode(), "dd")) {
+                    final int kind = getOpenElementKind(index);
+                    if (kind == ElementKind.DD) {
+                        generateImpliedEndTagsExcept(ElementKind.DD);
+                        if ( !isCurrentNodeA(ElementKind.DD)) {
                             if (isAllowParseErrors()) {
                                 // do nothing?
                             } else {
@@ -789,14 +786,11 @@ public class InBodyInsertionMode extends InsertionMode {
                                         "Unclosed element inside dd element: " + getCurrentNode().getTagName());
                             }
                         }
-                        Element popped = popCurrentNode();
-                        do {
-                            popped = popCurrentNode();
-                        } while ( !isElementA(popped, "dd"));
+                        popElementsUntilPopped(ElementKind.DD);
                         break;
-                    } else if (isElementA(node, "dt")) {
-                        generateImpliedEndTagsExcept("dt");
-                        if ( !isElementA(getCurrentNode(), "dt")) {
+                    } else if (kind == ElementKind.DT) {
+                        generateImpliedEndTagsExcept(ElementKind.DT);
+                        if ( !isCurrentNodeA(ElementKind.DT)) {
                             if (isAllowParseErrors()) {
                                 // do nothing?
                             } else {
@@ -804,12 +798,10 @@ public class InBodyInsertionMode extends InsertionMode {
                                         "Unclosed element inside dt element: " + getCurrentNode().getTagName());
                             }
                         }
-                        Element popped = popCurrentNode();
-                        do {
-                            popped = popCurrentNode();
-                        } while ( !isElementA(popped, "dt"));
+                        popElementsUntilPopped(ElementKind.DT);
                         break;
-                    } else if (isSpecialCategoryExcept(node.getTagName(), "address", "div", "p")) {
+                    } else if (isSpecialCategory(kind) && kind != ElementKind.ADDRESS && kind != ElementKind.DIV
+                            && kind != ElementKind.P) {
                         break;
                     } else {
                         // loop
@@ -822,7 +814,7 @@ public class InBodyInsertionMode extends InsertionMode {
                 insertHTMLElement(startTagToken);
                 return TOKEN_HANDLED;
             } // break;
-            case "plaintext": {
+            case ElementKind.PLAINTEXT: {
                 if (hasParticularElementInButtonScope("p")) {
                     closePElement();
                 }
@@ -833,15 +825,12 @@ public class InBodyInsertionMode extends InsertionMode {
                  * There is no way to switch out of the plaintext state.
                  */
             } // break;
-            case "button": {
+            case ElementKind.BUTTON: {
                 // if stack of open elements has a button, parse error
                 if (hasParticularElementInScope("button")) {
                     if (isAllowParseErrors()) {
                         generateImpliedEndTags();
-                        Element popped;
-                        do {
-                            popped = popCurrentNode();
-                        } while ( !isElementA(popped, "button"));
+                        popElementsUntilPopped(ElementKind.BUTTON);
                     } else {
                         throw new ParseErrorException("Attempt to nest button element inside another button element.");
                     }
@@ -851,16 +840,15 @@ public class InBodyInsertionMode extends InsertionMode {
                 setFramesetOKFlag(NOT_OK);
                 return TOKEN_HANDLED;
             } // break;
-            case "a": {
-                // if list of active formatting elements contains "a" after last
-// marker
-                if (isListOfActiveFormattingElementsContainsAfterLastMarker("a")) {
+            case ElementKind.A: {
+                final ActiveFormattingElements listOfActiveFormattingElements = parser.getListOfActiveFormattingElements();
+                final int anchorIndex = listOfActiveFormattingElements.lastIndexOfKindAfterLastMarker(ElementKind.A);
+                if (anchorIndex != -1) {
                     if (isAllowParseErrors()) {
+                        final Element anchor = listOfActiveFormattingElements.getElement(anchorIndex);
                         adoptionAgencyAlgorithm("a");
-                        // remove the anchor element from the list of active
-// formatting elements
-                        // remove the anchor element from the stack of open
-// elements, if it is still there
+                        listOfActiveFormattingElements.remove(anchor);
+                        parser.removeOpenElement(anchor);
                     } else {
                         throw new ParseErrorException();
                     }
@@ -870,24 +858,24 @@ public class InBodyInsertionMode extends InsertionMode {
                 pushOntoListOfActiveFormattingElements(startTagToken, anchorElement);
                 return TOKEN_HANDLED;
             } // break;
-            case "b": // fall through
-            case "big": // fall through
-            case "code": // fall through
-            case "em": // fall through
-            case "font": // fall through
-            case "i": // fall through
-            case "s": // fall through
-            case "small": // fall through
-            case "strike": // fall through
-            case "strong": // fall through
-            case "tt": // fall through
-            case "u": {
+            case ElementKind.B: // fall through
+            case ElementKind.BIG: // fall through
+            case ElementKind.CODE: // fall through
+            case ElementKind.EM: // fall through
+            case ElementKind.FONT: // fall through
+            case ElementKind.I: // fall through
+            case ElementKind.S: // fall through
+            case ElementKind.SMALL: // fall through
+            case ElementKind.STRIKE: // fall through
+            case ElementKind.STRONG: // fall through
+            case ElementKind.TT: // fall through
+            case ElementKind.U: {
                 reconstructActiveFormattingElements();
                 final Element formattingElement = insertHTMLElement(startTagToken);
                 pushOntoListOfActiveFormattingElements(startTagToken, formattingElement);
                 return TOKEN_HANDLED;
             } // break;
-            case "nobr": {
+            case ElementKind.NOBR: {
                 reconstructActiveFormattingElements();
                 if (hasParticularElementInScope("nobr")) {
                     if (isAllowParseErrors()) {
@@ -901,16 +889,16 @@ public class InBodyInsertionMode extends InsertionMode {
                 pushOntoListOfActiveFormattingElements(startTagToken, nobrElement);
                 return TOKEN_HANDLED;
             } // break;
-            case "applet": // fall through
-            case "marquee": // fall through
-            case "object": {
+            case ElementKind.APPLET: // fall through
+            case ElementKind.MARQUEE: // fall through
+            case ElementKind.OBJECT: {
                 reconstructActiveFormattingElements();
                 insertHTMLElement(startTagToken);
                 insertMarkerAtEndOfListOfActiveFormattingElements();
                 setFramesetOKFlag(NOT_OK);
                 return TOKEN_HANDLED;
             } // break;
-            case "table": {
+            case ElementKind.TABLE: {
                 if ( !isQuirksMode() && hasParticularElementInButtonScope("p")) {
                     closePElement();
                 }
@@ -919,12 +907,12 @@ public class InBodyInsertionMode extends InsertionMode {
                 setInsertionMode(Parser.Mode.IN_TABLE);
                 return TOKEN_HANDLED;
             } // break;
-            case "area": // fall through
-            case "br": // fall through
-            case "embed": // fall through
-            case "img": // fall through
-            case "keygen": // fall through
-            case "wbr": {
+            case ElementKind.AREA: // fall through
+            case ElementKind.BR: // fall through
+            case ElementKind.EMBED: // fall through
+            case ElementKind.IMG: // fall through
+            case ElementKind.KEYGEN: // fall through
+            case ElementKind.WBR: {
                 reconstructActiveFormattingElements();
                 insertHTMLElement(startTagToken);
                 popCurrentNode();
@@ -932,7 +920,7 @@ public class InBodyInsertionMode extends InsertionMode {
                 setFramesetOKFlag(NOT_OK);
                 return TOKEN_HANDLED;
             } // break;
-            case "input": {
+            case ElementKind.INPUT: {
                 reconstructActiveFormattingElements();
                 insertHTMLElement(startTagToken);
                 popCurrentNode();
@@ -943,16 +931,16 @@ public class InBodyInsertionMode extends InsertionMode {
                 }
                 return TOKEN_HANDLED;
             } // break;
-            case "menuitem": // fall through
-            case "param": // fall through
-            case "source": // fall through
-            case "track": {
+            case ElementKind.MENUITEM: // fall through
+            case ElementKind.PARAM: // fall through
+            case ElementKind.SOURCE: // fall through
+            case ElementKind.TRACK: {
                 insertHTMLElement(startTagToken);
                 popCurrentNode();
                 acknowledgeTokenSelfClosingFlag(startTagToken);
                 return TOKEN_HANDLED;
             } // break;
-            case "hr": {
+            case ElementKind.HR: {
                 if (hasParticularElementInButtonScope("p")) {
                     closePElement();
                 }
@@ -962,12 +950,12 @@ public class InBodyInsertionMode extends InsertionMode {
                 setFramesetOKFlag(NOT_OK);
                 return TOKEN_HANDLED;
             } // break;
-            case "image": {
+            case ElementKind.IMAGE: {
                 throw new ParseErrorException("Unrecognized start tag token (did you mean \"img\"?): " + startTagToken);
             } // break;
-            case "isindex": {
+            case ElementKind.ISINDEX: {
                 if (isAllowParseErrors()) {
-                    if ( !isStackOfOpenElementsContains("template") && getFormElementPointer() != null) {
+                    if ( !isTemplateOnStackOfOpenElements() && getFormElementPointer() != null) {
                         return IGNORE_TOKEN;
                     }
                     acknowledgeTokenSelfClosingFlag(startTagToken);
@@ -976,7 +964,7 @@ public class InBodyInsertionMode extends InsertionMode {
                         closePElement();
                     }
                     final Element formElement = insertHTMLElement("form");
-                    if ( !isStackOfOpenElementsContains("template")) {
+                    if ( !isTemplateOnStackOfOpenElements()) {
                         setFormElementPointer(formElement);
                     }
                     final TagToken.Attribute actionAttribute = getAttributeNamed(startTagToken, "action");
@@ -996,6 +984,7 @@ public class InBodyInsertionMode extends InsertionMode {
                         final String name = attr.getName();
                         if ( !name.equals("name") && !name.equals("action") && !name.equals("prompt")) {
                             inputElement.setAttribute(name, attr.getValue());
+                            indexAttribute(inputElement, name, attr.getValue());
                         }
                     }
                     inputElement.setAttribute("name", "isindex");
@@ -1005,7 +994,7 @@ public class InBodyInsertionMode extends InsertionMode {
                     insertHTMLElement("hr");
                     popCurrentNode();
                     popCurrentNode();
-                    if ( !isStackOfOpenElementsContains("template")) {
+                    if ( !isTemplateOnStackOfOpenElements()) {
                         setFormElementPointer(null);
                     }
                     return TOKEN_HANDLED;
@@ -1013,16 +1002,16 @@ public class InBodyInsertionMode extends InsertionMode {
                     throw new ParseErrorException("Unexpected start tag token in body: " + startTagToken);
                 }
             } // break;
-            case "textarea": {
+            case ElementKind.TEXTAREA: {
                 insertHTMLElement(startTagToken);
-                // if next token is LINE_FEED, ignore it
+                ignoreNextLineFeed();
                 setTokenizerState(Tokenizer.State.RCDATA);
                 setOriginalInsertionMode(getInsertionMode());
                 setFramesetOKFlag(NOT_OK);
                 setInsertionMode(Parser.Mode.TEXT);
                 return TOKEN_HANDLED;
             } // break;
-            case "xmp": {
+            case ElementKind.XMP: {
                 if (hasParticularElementInButtonScope("p")) {
                     closePElement();
                 }
@@ -1031,16 +1020,16 @@ public class InBodyInsertionMode extends InsertionMode {
                 genericRawTextElementParsingAlgorithm(startTagToken);
                 return TOKEN_HANDLED;
             } // break;
-            case "iframe": {
+            case ElementKind.IFRAME: {
                 setFramesetOKFlag(NOT_OK);
                 genericRawTextElementParsingAlgorithm(startTagToken);
                 return TOKEN_HANDLED;
             } // break;
-            case "noembed": {
+            case ElementKind.NOEMBED: {
                 genericRawTextElementParsingAlgorithm(startTagToken);
                 return TOKEN_HANDLED;
             } // break;
-            case "noscript": {
+            case ElementKind.NOSCRIPT: {
                 if (isScriptingEnabled()) {
                     genericRawTextElementParsingAlgorithm(startTagToken);
                     return TOKEN_HANDLED;
@@ -1048,7 +1037,7 @@ public class InBodyInsertionMode extends InsertionMode {
                     return anyOtherStartTag(startTagToken);
                 }
             } // break;
-            case "select": {
+            case ElementKind.SELECT: {
                 reconstructActiveFormattingElements();
                 insertHTMLElement(startTagToken);
                 setFramesetOKFlag(NOT_OK);
@@ -1068,25 +1057,25 @@ public class InBodyInsertionMode extends InsertionMode {
                 }
                 return TOKEN_HANDLED;
             } // break;
-            case "optgroup": // fall through
-            case "option": {
-                if (isElementA(getCurrentNode(), "option")) {
+            case ElementKind.OPTGROUP: // fall through
+            case ElementKind.OPTION: {
+                if (isCurrentNodeA(ElementKind.OPTION)) {
                     popCurrentNode();
                 }
                 return anyOtherStartTag(startTagToken);
             } // break;
-            case "rp": // fall through
-            case "rt": {
+            case ElementKind.RP: // fall through
+            case ElementKind.RT: {
                 if (hasParticularElementInScope("ruby")) {
                     generateImpliedEndTags();
                 }
-                if (isAllowParseErrors() && !isElementA(getCurrentNode(), "ruby")) {
+                if (isAllowParseErrors() && !isCurrentNodeA(ElementKind.RUBY)) {
                     throw new ParseErrorException();
                 }
                 insertHTMLElement(startTagToken);
                 return TOKEN_HANDLED;
             } // break;
-            case "math": {
+            case ElementKind.MATHML_MATH: {
                 reconstructActiveFormattingElements();
                 adjustMathMLAttributes(startTagToken);
                 adjustForeignAttributes(startTagToken);
@@ -1097,7 +1086,7 @@ public class InBodyInsertionMode extends InsertionMode {
                 }
                 return TOKEN_HANDLED;
             } // break;
-            case "svg": {
+            case ElementKind.SVG_SVG: {
                 reconstructActiveFormattingElements();
                 adjustSVGAttributes(startTagToken);
                 adjustForeignAttributes(startTagToken);
@@ -1108,17 +1097,17 @@ public class InBodyInsertionMode extends InsertionMode {
                 }
                 return TOKEN_HANDLED;
             } // break;
-            case "caption": // fall through
-            case "col": // fall through
-            case "colgroup": // fall through
-            case "frame": // fall through
-            case "head": // fall through
-            case "tbody": // fall through
-            case "td": // fall through
-            case "tfoot": // fall through
-            case "th": // fall through
-            case "thead": // fall through
-            case "tr": {
+            case ElementKind.CAPTION: // fall through
+            case ElementKind.COL: // fall through
+            case ElementKind.COLGROUP: // fall through
+            case ElementKind.FRAME: // fall through
+            case ElementKind.HEAD: // fall through
+            case ElementKind.TBODY: // fall through
+            case ElementKind.TD: // fall through
+            case ElementKind.TFOOT: // fall through
+            case ElementKind.TH: // fall through
+            case ElementKind.THEAD: // fall through
+            case ElementKind.TR: {
                 if (isAllowParseErrors()) {
                     return IGNORE_TOKEN;
                 } else {
@@ -1133,11 +1122,11 @@ public class InBodyInsertionMode extends InsertionMode {
         case END_TAG: {
             final EndTagToken endTagToken = (EndTagToken) token;
             final String tagName = endTagToken.getTagName();
-            switch (tagName) {
-            case "template": {
+            switch (endTagToken.getTagKind()) {
+            case ElementKind.TEMPLATE: {
                 return processUsingRulesFor(Parser.Mode.IN_HEAD, endTagToken);
             } // break;
-            case "body": {
+            case ElementKind.BODY: {
                 if ( !hasParticularElementInScope("body")) {
                     if (isAllowParseErrors()) {
                         return IGNORE_TOKEN;
@@ -1145,10 +1134,12 @@ public class InBodyInsertionMode extends InsertionMode {
                         throw new ParseErrorException("Body end tag token encountered without body start tag token.");
                     }
                 }
-                final Set<String> acceptable = new HashSet<>(Arrays.asList("dd", "dt", "li", "optgroup", "option", "p",
-                        "rp", "rt", "tbody", "td", "tfoot", "th", "thead", "tr", "body", "html"));
-                if (isStackOfOpenElementsContainsOtherThan(acceptable)) {
-                    throw new ParseErrorException("Unclosed element at body end.");
+                if (isStackOfOpenElementsContainsOtherThan(ElementKind.ALLOWED_OPEN_AT_BODY_END)) {
+                    if (isAllowParseErrors()) {
+                        // do nothing?
+                    } else {
+                        throw new ParseErrorException("Unclosed element at body end.");
+                    }
                 }
 //                for (final Element openElement : getStackOfOpenElements()) {
 //                    if ( !acceptable.contains(openElement.getTagName())) {
@@ -1156,10 +1147,11 @@ public class InBodyInsertionMode extends InsertionMode {
 //                                openElement.getTagName());
 //                    }
 //                }
+                endSourceRange(getSecondElementOfStackOfOpenElements());
                 setInsertionMode(Parser.Mode.AFTER_BODY);
                 return TOKEN_HANDLED;
             } // break;
-            case "html": {
+            case ElementKind.HTML: {
                 if ( !hasParticularElementInScope("body")) {
                     if (isAllowParseErrors()) {
                         return IGNORE_TOKEN;
@@ -1167,10 +1159,12 @@ public class InBodyInsertionMode extends InsertionMode {
                         throw new ParseErrorException("Body end tag token encountered without body start tag token.");
                     }
                 }
-                final Set<String> acceptable = new HashSet<>(Arrays.asList("dd", "dt", "li", "optgroup", "option", "p",
-                        "rp", "rt", "tbody", "td", "tfoot", "th", "thead", "tr", "body", "html"));
-                if (isStackOfOpenElementsContainsOtherThan(acceptable)) {
-                    throw new ParseErrorException("Unclosed element at body end.");
+                if (isStackOfOpenElementsContainsOtherThan(ElementKind.ALLOWED_OPEN_AT_BODY_END)) {
+                    if (isAllowParseErrors()) {
+                        // do nothing?
+                    } else {
+                        throw new ParseErrorException("Unclosed element at body end.");
+                    }
                 }
 //                for (final Element openElement : getStackOfOpenElements()) {
 //                    if ( !acceptable.contains(openElement.getTagName())) {
@@ -1178,35 +1172,36 @@ public class InBodyInsertionMode extends InsertionMode {
 //                                openElement.getTagName());
 //                    }
 //                }
+                endSourceRange(getSecondElementOfStackOfOpenElements());
                 setInsertionMode(Parser.Mode.AFTER_BODY);
                 return REPROCESS_TOKEN;
             } // break;
-            case "address": // fall through
-            case "article": // fall through
-            case "aside": // fall through
-            case "blockquote": // fall through
-            case "button": // fall through
-            case "center": // fall through
-            case "details": // fall through
-            case "dialog": // fall through
-            case "dir": // fall through
-            case "div": // fall through
-            case "dl": // fall through
-            case "fieldset": // fall through
-            case "figcaption": // fall through
-            case "figure": // fall through
-            case "footer": // fall through
-            case "header": // fall through
-            case "hgroup": // fall through
-            case "listing": // fall through
-            case "main": // fall through
-            case "menu": // fall through
-            case "nav": // fall through
-            case "ol": // fall through
-            case "pre": // fall through
-            case "section": // fall through
-            case "summary": // fall through
-            case "ul": {
+            case ElementKind.ADDRESS: // fall through
+            case ElementKind.ARTICLE: // fall through
+            case ElementKind.ASIDE: // fall through
+            case ElementKind.BLOCKQUOTE: // fall through
+            case ElementKind.BUTTON: // fall through
+            case ElementKind.CENTER: // fall through
+            case ElementKind.DETAILS: // fall through
+            case ElementKind.DIALOG: // fall through
+            case ElementKind.DIR: // fall through
+            case ElementKind.DIV: // fall through
+            case ElementKind.DL: // fall through
+            case ElementKind.FIELDSET: // fall through
+            case ElementKind.FIGCAPTION: // fall through
+            case ElementKind.FIGURE: // fall through
+            case ElementKind.FOOTER: // fall through
+            case ElementKind.HEADER: // fall through
+            case ElementKind.HGROUP: // fall through
+            case ElementKind.LISTING: // fall through
+            case ElementKind.MAIN: // fall through
+            case ElementKind.MENU: // fall through
+            case ElementKind.NAV: // fall through
+            case ElementKind.OL: // fall through
+            case ElementKind.PRE: // fall through
+            case ElementKind.SECTION: // fall through
+            case ElementKind.SUMMARY: // fall through
+            case ElementKind.UL: {
                 if ( !hasParticularElementInScope(tagName)) {
                     if (isAllowParseErrors()) {
                         return IGNORE_TOKEN;
@@ -1223,15 +1218,12 @@ public class InBodyInsertionMode extends InsertionMode {
                                 + getCurrentNode().getTagName() + "): " + endTagToken);
                     }
                 }
-                Element popped;
-                do {
-                    popped = popCurrentNode();
-                } while ( !isElementA(popped, tagName));
+                popElementsUntilPopped(tagName);
                 return TOKEN_HANDLED;
             } // break;
-            case "form": {
+            case ElementKind.FORM: {
                 // do wacky shit
-                if ( !isStackOfOpenElementsContains("template")) {
+                if ( !isTemplateOnStackOfOpenElements()) {
                     final Element node = getFormElementPointer();
                     setFormElementPointer(null);
                     if (node == null || !hasParticularElementInScope(node.getTagName())) {
@@ -1255,21 +1247,18 @@ public class InBodyInsertionMode extends InsertionMode {
                         }
                     }
                     generateImpliedEndTags();
-                    if ( !isElementA(getCurrentNode(), "form")) {
+                    if ( !isCurrentNodeA(ElementKind.FORM)) {
                         if (isAllowParseErrors()) {
                             // do nothing?
                         } else {
                             throw new ParseErrorException();
                         }
                     }
-                    Element popped;
-                    do {
-                        popped = popCurrentNode();
-                    } while ( !isElementA(popped, "form"));
+                    popElementsUntilPopped(ElementKind.FORM);
                 }
                 return TOKEN_HANDLED;
             } // break;
-            case "p": {
+            case ElementKind.P: {
                 if ( !hasParticularElementInButtonScope("p")) {
                     if (isAllowParseErrors()) {
                         insertHTMLElement("p");
@@ -1281,7 +1270,7 @@ public class InBodyInsertionMode extends InsertionMode {
                 closePElement();
                 return TOKEN_HANDLED;
             } // break;
-            case "li": {
+            case ElementKind.LI: {
                 if ( !hasParticularElementInListItemScope("li")) {
                     if (isAllowParseErrors()) {
                         return IGNORE_TOKEN;
@@ -1290,7 +1279,7 @@ public class InBodyInsertionMode extends InsertionMode {
                     }
                 }
                 generateImpliedEndTagsExcept("li");
-                if ( !isElementA(getCurrentNode(), "li")) {
+                if ( !isCurrentNodeA(ElementKind.LI)) {
                     if (isAllowParseErrors()) {
                         // do nothing?
                     } else {
@@ -1298,14 +1287,11 @@ public class InBodyInsertionMode extends InsertionMode {
                                 + getCurrentNode().getTagName());
                     }
                 }
-                Element popped;
-                do {
-                    popped = popCurrentNode();
-                } while ( !isElementA(popped, "li"));
+                popElementsUntilPopped(ElementKind.LI);
                 return TOKEN_HANDLED;
             } // break;
-            case "dd": // fall through
-            case "dt": {
+            case ElementKind.DD: // fall through
+            case ElementKind.DT: {
                 if ( !hasParticularElementInListItemScope(tagName)) {
                     if (isAllowParseErrors()) {
                         return IGNORE_TOKEN;
@@ -1323,18 +1309,15 @@ public class InBodyInsertionMode extends InsertionMode {
                                 + " element when current element is: " + getCurrentNode().getTagName());
                     }
                 }
-                Element popped;
-                do {
-                    popped = popCurrentNode();
-                } while ( !isElementA(popped, tagName));
+                popElementsUntilPopped(tagName);
                 return TOKEN_HANDLED;
             } // break;
-            case "h1": // fall through
-            case "h2": // fall through
-            case "h3": // fall through
-            case "h4": // fall through
-            case "h5": // fall through
-            case "h6": {
+            case ElementKind.H1: // fall through
+            case ElementKind.H2: // fall through
+            case ElementKind.H3: // fall through
+            case ElementKind.H4: // fall through
+            case ElementKind.H5: // fall through
+            case ElementKind.H6: {
                 if ( !hasParticularElementInScope("h1") && !hasParticularElementInScope("h2")
                         && !hasParticularElementInScope("h3") && !hasParticularElementInScope("h4")
                         && !hasParticularElementInScope("h5") && !hasParticularElementInScope("h6")) {
@@ -1354,32 +1337,29 @@ public class InBodyInsertionMode extends InsertionMode {
                                 + " element when current element is: " + getCurrentNode().getTagName());
                     }
                 }
-                Element popped;
-                do {
-                    popped = popCurrentNode();
-                } while ( !isElementA(popped, "h1", "h2", "h3", "h4", "h5", "h6"));
+                popElementsUntilPoppedCategory(ElementKind.HEADING);
                 return TOKEN_HANDLED;
             } // break;
-            case "a": // fall through
-            case "b": // fall through
-            case "big": // fall through
-            case "code": // fall through
-            case "em": // fall through
-            case "font": // fall through
-            case "i": // fall through
-            case "nobr": // fall through
-            case "s": // fall through
-            case "small": // fall through
-            case "strike": // fall through
-            case "strong": // fall through
-            case "tt": // fall through
-            case "u": {
+            case ElementKind.A: // fall through
+            case ElementKind.B: // fall through
+            case ElementKind.BIG: // fall through
+            case ElementKind.CODE: // fall through
+            case ElementKind.EM: // fall through
+            case ElementKind.FONT: // fall through
+            case ElementKind.I: // fall through
+            case ElementKind.NOBR: // fall through
+            case ElementKind.S: // fall through
+            case ElementKind.SMALL: // fall through
+            case ElementKind.STRIKE: // fall through
+            case ElementKind.STRONG: // fall through
+            case ElementKind.TT: // fall through
+            case ElementKind.U: {
                 adoptionAgencyAlgorithm(tagName);
                 return TOKEN_HANDLED;
             } // break;
-            case "applet": // fall through
-            case "marquee": // fall through
-            case "object": {
+            case ElementKind.APPLET: // fall through
+            case ElementKind.MARQUEE: // fall through
+            case ElementKind.OBJECT: {
                 if ( !isStackOfOpenElementsContains(tagName)) {
                     if (isAllowParseErrors()) {
                         return IGNORE_TOKEN;
@@ -1395,14 +1375,11 @@ public class InBodyInsertionMode extends InsertionMode {
                         throw new ParseErrorException();
                     }
                 }
-                Element popped;
-                do {
-                    popped = popCurrentNode();
-                } while ( !isElementA(popped, tagName));
+                popElementsUntilPopped(tagName);
                 clearListOfActiveFormattingElementsUpToLastMarker();
                 return TOKEN_HANDLED;
             } // break;
-            case "br": {
+            case ElementKind.BR: {
                 if (isAllowParseErrors()) {
                     reconstructActiveFormattingElements();
                     insertHTMLElement("br");
@@ -1420,9 +1397,7 @@ public class InBodyInsertionMode extends InsertionMode {
         } // break;
         case EOF: {
             // handle stack of open elements
-            final Set<String> acceptable = new HashSet<>(
-                    Arrays.asList("dd", "dt", "li", "p", "tbody", "td", "tfoot", "th", "thead", "tr", "body", "html"));
-            if (isStackOfOpenElementsContainsOtherThan(acceptable)) {
+            if (isStackOfOpenElementsContainsOtherThan(ElementKind.ALLOWED_OPEN_AT_EOF)) {
                 if (isAllowParseErrors()) {
                     // do nothing?
                 } else {
@@ -1458,11 +1433,12 @@ public class InBodyInsertionMode extends InsertionMode {
     }
     
     private boolean anyOtherEndTag(final String tagName) {
+        final int kind = ElementKind.htmlKindOf(tagName);
         int index = getStackOfOpenElementsSize() - 1;
         while (index >= 0) {
             final Element node = getOpenElement(index);
-            if (isElementA(node, tagName)) {
-                generateImpliedEndTagsExcept(tagName);
+            if (isOpenElementA(index, kind, tagName)) {
+                generateImpliedEndTagsExcept(kind);
                 if (node != getCurrentNode() && !isAllowParseErrors()) {
                     throw new ParseErrorException();
                 }
@@ -1472,7 +1448,7 @@ public class InBodyInsertionMode extends InsertionMode {
                 } while (popped != node);
                 return TOKEN_HANDLED;
             } else {
-                if (isSpecialCategory(node)) {
+                if (isSpecialCategory(getOpenElementKind(index))) {
                     if (isAllowParseErrors()) {
                         return IGNORE_TOKEN;
                     } else {
@@ -1511,40 +1487,25 @@ public class InBodyInsertionMode extends InsertionMode {
             // 4
 //            outerLoopCounter++;
             // 5
-            int formattingElementIndexInList = parser.listOfActiveFormattingElements.size() - 1;
-            StartTagToken formattingElementToken = null;
-            Element formattingElement = null;
-            while (formattingElementIndexInList >= 0) {
-                final FormattingElement temp = parser.listOfActiveFormattingElements.get(formattingElementIndexInList);
-                if (parser.isMarker(temp)) {
-                    break;
-                }
-                final StartTagToken tok = temp.getKey();
-                final Element el = temp.getValue();
-                if (isElementA(el, subject)) {
-                    formattingElementToken = tok;
-                    formattingElement = el;
-                    break;
-                }
-                formattingElementIndexInList-- ;
-            }
-            if (formattingElement == null) {
+            final ActiveFormattingElements listOfActiveFormattingElements = parser.getListOfActiveFormattingElements();
+            final int formattingElementIndexInList = listOfActiveFormattingElements.lastIndexOfTagNameAfterLastMarker(subject);
+            if (formattingElementIndexInList == -1) {
                 anyOtherEndTag(subject);
                 return;
             }
+            final StartTagToken formattingElementToken = listOfActiveFormattingElements.get(formattingElementIndexInList).getKey();
+            final Element formattingElement = listOfActiveFormattingElements.getElement(formattingElementIndexInList);
             // 6
             final int formattingElementIndexInStack = parser.getIndexOfOpenElement(formattingElement);
             if (formattingElementIndexInStack == -1) {
                 if (isAllowParseErrors()) {
-                    assert parser.listOfActiveFormattingElements.get(formattingElementIndexInList) == formattingElement;
-                    parser.listOfActiveFormattingElements.remove(formattingElementIndexInList);
+                    listOfActiveFormattingElements.remove(formattingElementIndexInList);
                     return;
                 } else {
                     throw new ParseErrorException();
                 }
             }
             // 7
-            assert parser.containsOpenElement(formattingElement);
             if ( !hasParticularElementInScope(subject)) {
                 if (isAllowParseErrors()) {
                     return;
@@ -1560,9 +1521,8 @@ public class InBodyInsertionMode extends InsertionMode {
             Element furthestBlock = null;
             int furthestBlockIndex = formattingElementIndexInStack + 1;
             while (furthestBlockIndex < parser.getNumOpenElements()) {
-                final Element temp = parser.getOpenElement(furthestBlockIndex);
-                if (isSpecialCategory(temp)) {
-                    furthestBlock = temp;
+                if (isSpecialCategory(parser.getOpenElementKind(furthestBlockIndex))) {
+                    furthestBlock = parser.getOpenElement(furthestBlockIndex);
                     break;
                 }
                 furthestBlockIndex++ ;
@@ -1573,30 +1533,45 @@ public class InBodyInsertionMode extends InsertionMode {
                 do {
                     popped = popCurrentNode();
                 } while (popped != formattingElement);
-                parser.listOfActiveFormattingElements.remove(formattingElementIndexInList);
+                listOfActiveFormattingElements.remove(formattingElementIndexInList);
                 return;
             }
             // 11
             final int commonAncestorIndex = formattingElementIndexInStack - 1;
             final Element commonAncestor = parser.getOpenElement(commonAncestorIndex);
-            // 12
-            int bookmark = indexOfInActiveList(formattingElement);
-            FormattingElement beforeBookmark;
-            if (bookmark > 0) {
-                beforeBookmark = parser.listOfActiveFormattingElements.get(bookmark - 1);
-            } else {
-                beforeBookmark = null;
-            }
-            FormattingElement afterBookmark;
-            if (bookmark + 1 < parser.listOfActiveFormattingElements.size()) {
-                afterBookmark = parser.listOfActiveFormattingElements.get(bookmark + 1);
-            } else {
-                afterBookmark = null;
+            /*
+             * Rather than removing entries from the middle of the stack of
+             * open elements and the list of active formatting elements as the
+             * inner loop runs, the loop records what happens to each entry and
+             * both structures are spliced once at the end. The entries of the
+             * list after the formatting element are indexed by element, so the
+             * inner loop never searches the list.
+             */
+            final int listSize = listOfActiveFormattingElements.size();
+            final Map<Element, Integer> listPositions = new IdentityHashMap<>();
+            for (int index = formattingElementIndexInList + 1; index < listSize; index++ ) {
+                final Element element = listOfActiveFormattingElements.getElement(index);
+                if (element != null) {
+                    listPositions.put(element, index);
+                }
             }
+            final boolean[] removedFromList = new boolean[listSize];
+            // 12
+            /*
+             * The bookmark is the index of the entry in the list after which
+             * the new element will be inserted. The formatting element itself
+             * is removed, so initially this puts the new element in its place.
+             */
+            int bookmark = formattingElementIndexInList;
             // 13
+            /*
+             * The elements between the formatting element and the furthest
+             * block that stay on the stack, from the top down.
+             */
+            final Element[] keptOpenElements = new Element[furthestBlockIndex - formattingElementIndexInStack - 1];
+            int keptCount = 0;
             int nodeIndex = furthestBlockIndex;
-            int lastNodeIndex = furthestBlockIndex;
-            Element lastNode = parser.getOpenElement(lastNodeIndex);
+            Element lastNode = furthestBlock;
             // 13.1
             int innerLoopCounter = 0;
             // 13.2
@@ -1611,46 +1586,32 @@ public class InBodyInsertionMode extends InsertionMode {
                     // go to 14:
                     break;
                 }
+                final Integer position = listPositions.get(node);
+                int indexInFormattingList = position == null ? -1 : position;
                 // 13.5
-                if (innerLoopCounter > 3 && listOfActiveFormattingElementsContains(node)) {
-                    removeFromListOfActiveFormattingElements(node);
+                if (innerLoopCounter > 3 && indexInFormattingList != -1) {
+                    removedFromList[indexInFormattingList] = true;
+                    indexInFormattingList = -1;
                 }
                 // 13.6
-                if ( !listOfActiveFormattingElementsContains(node)) {
-                    parser.removeOpenElement(node);
+                if (indexInFormattingList == -1) {
+                    // removed from the stack by not keeping it
                     // go to INNER LOOP:
                     continue;
                 }
                 // 13.7
-                int indexInFormattingList = indexOfInActiveList(node);
-                final FormattingElement wrapped = parser.listOfActiveFormattingElements.get(indexInFormattingList);
-                final StartTagToken nodeToken = wrapped.getKey();
+                final StartTagToken nodeToken = listOfActiveFormattingElements.get(indexInFormattingList).getKey();
                 final Element newElement = createElementForToken(nodeToken, HTML_NAMESPACE, commonAncestor);
-                final FormattingElement wrapper = new FormattingElement(nodeToken, newElement);
-                indexInFormattingList = indexOfInActiveList(node);
-                parser.listOfActiveFormattingElements.set(indexInFormattingList, wrapper);
-                parser.setOpenElement(nodeIndex, newElement);
+                listOfActiveFormattingElements.replaceElement(indexInFormattingList, newElement);
+                keptOpenElements[keptCount++ ] = newElement;
                 node = newElement;
                 // 13.8
                 if (lastNode == furthestBlock) {
-                    // TODO: bookmark moved after node in
-// parser.listOfActiveFormattingElements
                     bookmark = indexInFormattingList;
-                    if (bookmark > 0) {
-                        beforeBookmark = parser.listOfActiveFormattingElements.get(bookmark - 1);
-                    } else {
-                        beforeBookmark = null;
-                    }
-                    if (bookmark + 1 < parser.listOfActiveFormattingElements.size()) {
-                        afterBookmark = parser.listOfActiveFormattingElements.get(bookmark + 1);
-                    } else {
-                        afterBookmark = null;
-                    }
                 }
                 // 13.9
                 node.appendChild(lastNode);
                 // 13.10
-                lastNodeIndex = nodeIndex;
                 lastNode = node;
                 // 13.11
                 // go to INNER LOOP:
@@ -1660,72 +1621,39 @@ public class InBodyInsertionMode extends InsertionMode {
             // 15
             final Element thatNewElement = createElementForToken(formattingElementToken, HTML_NAMESPACE, furthestBlock);
             // 16
-            final NodeList childrenToMove = furthestBlock.getChildNodes();
-            for (int i = 0; i < childrenToMove.getLength(); i++ ) {
-                thatNewElement.appendChild(childrenToMove.item(i));
+            while (furthestBlock.hasChildNodes()) {
+                thatNewElement.appendChild(furthestBlock.getFirstChild());
             }
             // 17
             furthestBlock.appendChild(thatNewElement);
             // 18
-            removeFromListOfActiveFormattingElements(formattingElement);
-            // insert thatNewElement at bookmark
-            final FormattingElement thatNewWrapper = new FormattingElement(formattingElementToken, thatNewElement);
-            if (beforeBookmark != null) {
-                final int indexOfBefore = parser.listOfActiveFormattingElements.indexOf(beforeBookmark);
-                parser.listOfActiveFormattingElements.add(indexOfBefore + 1, thatNewWrapper);
-            } else {
-                final int indexOfAfter = parser.listOfActiveFormattingElements.indexOf(afterBookmark);
-                parser.listOfActiveFormattingElements.add(indexOfAfter, thatNewWrapper);
+            final FormattingElement[] listReplacement = new FormattingElement[listSize - formattingElementIndexInList];
+            int listReplacementCount = 0;
+            for (int index = formattingElementIndexInList; index < listSize; index++ ) {
+                if (index != formattingElementIndexInList && !removedFromList[index]) {
+                    listReplacement[listReplacementCount++ ] = listOfActiveFormattingElements.get(index);
+                }
+                if (index == bookmark) {
+                    listReplacement[listReplacementCount++ ] = new FormattingElement(formattingElementToken, thatNewElement);
+                }
             }
+            listOfActiveFormattingElements.replaceFrom(formattingElementIndexInList, listReplacement, listReplacementCount);
             // 19
-            parser.removeOpenElement(formattingElement);
-            furthestBlockIndex = parser.getIndexOfOpenElement(furthestBlock);
-            parser.insertOpenElement(furthestBlockIndex, thatNewElement);
+            final Element[] stackReplacement = new Element[keptCount + 2];
+            for (int index = 0; index < keptCount; index++ ) {
+                stackReplacement[index] = keptOpenElements[keptCount - 1 - index];
+            }
+            stackReplacement[keptCount] = furthestBlock;
+            stackReplacement[keptCount + 1] = thatNewElement;
+            parser.replaceOpenElements(formattingElementIndexInStack, furthestBlockIndex + 1, stackReplacement,
+                    keptCount + 2);
             // 20
             // go to OUTER LOOP:
         }
     }
     
-    private int indexOfInActiveList(final Element formattingElement) {
-        for (int i = 0; i < parser.listOfActiveFormattingElements.size(); i++ ) {
-            final FormattingElement wrapper = parser.listOfActiveFormattingElements.get(i);
-            if (parser.isMarker(wrapper)) {
-                continue;
-            }
-            final Element element = wrapper.getValue();
-            if (element == formattingElement) {
-                return i;
-            }
-        }
-        return -1;
-    }
-    
     private boolean listOfActiveFormattingElementsContains(final Element formattingElement) {
-        for (final FormattingElement wrapper : parser.listOfActiveFormattingElements) {
-            if (parser.isMarker(wrapper)) {
-                continue;
-            }
-            final Element element = wrapper.getValue();
-            if (element == formattingElement) {
-                return true;
-            }
-        }
-        return false;
-    }
-    
-    private void removeFromListOfActiveFormattingElements(final Element formattingElement) {
-        final Iterator<FormattingElement> iterator = parser.listOfActiveFormattingElements.iterator();
-        while (iterator.hasNext()) {
-            final FormattingElement wrapper = iterator.next();
-            if (parser.isMarker(wrapper)) {
-                continue;
-            }
-            final Element element = wrapper.getValue();
-            if (formattingElement == element) {
-                iterator.remove();
-//                return;
-            }
-        }
+        return parser.getListOfActiveFormattingElements().contains(formattingElement);
     }
     
     /**
@@ -1743,10 +1671,7 @@ public class InBodyInsertionMode extends InsertionMode {
                         + getCurrentNode().getTagName());
             }
         }
-        Element popped;
-        do {
-            popped = popCurrentNode();
-        } while ( !isElementA(popped, "p"));
+        popElementsUntilPopped(ElementKind.P);
     }
     
 }
@@ -2,6 +2,7 @@ package org.silnith.parser.html5.grammar.mode;
 
 import org.silnith.parser.ParseErrorException;
 import org.silnith.parser.html5.Parser;
+import org.silnith.parser.html5.grammar.element.ElementKind;
 import org.silnith.parser.html5.lexical.token.EndTagToken;
 import org.silnith.parser.html5.lexical.token.StartTagToken;
 import org.silnith.parser.html5.lexical.token.Token;
@@ -59,17 +60,16 @@ public class InCaptionInsertionMode extends InsertionMode {
         switch (token.getType()) {
         case START_TAG: {
             final StartTagToken startTagToken = (StartTagToken) token;
-            final String tagName = startTagToken.getTagName();
-            switch (tagName) {
-            case "caption": // fall through
-            case "col": // fall through
-            case "colgroup": // fall through
-            case "tbody": // fall through
-            case "td": // fall through
-            case "tfoot": // fall through
-            case "th": // fall through
-            case "thead": // fall through
-            case "tr": {
+            switch (startTagToken.getTagKind()) {
+            case ElementKind.CAPTION: // fall through
+            case ElementKind.COL: // fall through
+            case ElementKind.COLGROUP: // fall through
+            case ElementKind.TBODY: // fall through
+            case ElementKind.TD: // fall through
+            case ElementKind.TFOOT: // fall through
+            case ElementKind.TH: // fall through
+            case ElementKind.THEAD: // fall through
+            case ElementKind.TR: {
                 if ( !hasParticularElementInTableScope("caption")) {
                     if (isAllowParseErrors()) {
                         return IGNORE_TOKEN;
@@ -80,17 +80,14 @@ public class InCaptionInsertionMode extends InsertionMode {
                     }
                 }
                 generateImpliedEndTags();
-                if (isElementA(getCurrentNode(), "caption")) {
+                if ( !isCurrentNodeA(ElementKind.CAPTION)) {
                     if (isAllowParseErrors()) {
                         // do nothing?
                     } else {
                         throw new ParseErrorException("Expected current node to be a caption element.");
                     }
                 }
-                Element popped;
-                do {
-                    popped = popCurrentNode();
-                } while ( !isElementA(popped, "caption"));
+                popElementsUntilPopped(ElementKind.CAPTION);
                 clearListOfActiveFormattingElementsUpToLastMarker();
                 setInsertionMode(Parser.Mode.IN_TABLE);
                 return REPROCESS_TOKEN;
@@ -102,9 +99,8 @@ public class InCaptionInsertionMode extends InsertionMode {
         } // break;
         case END_TAG: {
             final EndTagToken endTagToken = (EndTagToken) token;
-            final String tagName = endTagToken.getTagName();
-            switch (tagName) {
-            case "caption": {
+            switch (endTagToken.getTagKind()) {
+            case ElementKind.CAPTION: {
                 if ( !hasParticularElementInTableScope("caption")) {
                     if (isAllowParseErrors()) {
                         return IGNORE_TOKEN;
@@ -114,22 +110,19 @@ public class InCaptionInsertionMode extends InsertionMode {
                     }
                 }
                 generateImpliedEndTags();
-                if (isElementA(getCurrentNode(), "caption")) {
+                if ( !isCurrentNodeA(ElementKind.CAPTION)) {
                     if (isAllowParseErrors()) {
                         // do nothing?
                     } else {
                         throw new ParseErrorException("Expected current node to be a caption element.");
                     }
                 }
-                Element popped;
-                do {
-                    popped = popCurrentNode();
-                } while ( !isElementA(popped, "caption"));
+                popElementsUntilPopped(ElementKind.CAPTION);
                 clearListOfActiveFormattingElementsUpToLastMarker();
                 setInsertionMode(Parser.Mode.IN_TABLE);
                 return TOKEN_HANDLED;
             } // break;
-            case "table": {
+            case ElementKind.TABLE: {
                 if ( !hasParticularElementInTableScope("caption")) {
                     if (isAllowParseErrors()) {
                         return IGNORE_TOKEN;
@@ -139,31 +132,28 @@ public class InCaptionInsertionMode extends InsertionMode {
                     }
                 }
                 generateImpliedEndTags();
-                if (isElementA(getCurrentNode(), "caption")) {
+                if ( !isCurrentNodeA(ElementKind.CAPTION)) {
                     if (isAllowParseErrors()) {
                         // do nothing?
                     } else {
                         throw new ParseErrorException("Expected current node to be a caption element.");
                     }
                 }
-                Element popped;
-                do {
-                    popped = popCurrentNode();
-                } while ( !isElementA(popped, "caption"));
+                popElementsUntilPopped(ElementKind.CAPTION);
                 clearListOfActiveFormattingElementsUpToLastMarker();
                 setInsertionMode(Parser.Mode.IN_TABLE);
                 return REPROCESS_TOKEN;
             } // break;
-            case "body": // fall through
-            case "col": // fall through
-            case "colgroup": // fall through
-            case "html": // fall through
-            case "tbody": // fall through
-            case "td": // fall through
-            case "tfoot": // fall through
-            case "th": // fall through
-            case "thead": // fall through
-            case "tr": {
+            case ElementKind.BODY: // fall through
+            case ElementKind.COL: // fall through
+            case ElementKind.COLGROUP: // fall through
+            case ElementKind.HTML: // fall through
+            case ElementKind.TBODY: // fall through
+            case ElementKind.TD: // fall through
+            case ElementKind.TFOOT: // fall through
+            case ElementKind.TH: // fall through
+            case ElementKind.THEAD: // fall through
+            case ElementKind.TR: {
                 if (isAllowParseErrors()) {
                     return IGNORE_TOKEN;
                 } else {
@@ -2,6 +2,7 @@ package org.silnith.parser.html5.grammar.mode;
 
 import org.silnith.parser.ParseErrorException;
 import org.silnith.parser.html5.Parser;
+import org.silnith.parser.html5.grammar.element.ElementKind;
 import org.silnith.parser.html5.lexical.token.EndTagToken;
 import org.silnith.parser.html5.lexical.token.StartTagToken;
 import org.silnith.parser.html5.lexical.token.Token;
@@ -66,17 +67,16 @@ public class InCellInsertionMode extends InsertionMode {
         switch (token.getType()) {
         case START_TAG: {
             final StartTagToken startTagToken = (StartTagToken) token;
-            final String tagName = startTagToken.getTagName();
-            switch (tagName) {
-            case "caption": // fall through
-            case "col": // fall through
-            case "colgroup": // fall through
-            case "tbody": // fall through
-            case "td": // fall through
-            case "tfoot": // fall through
-            case "th": // fall through
-            case "thead": // fall through
-            case "tr": {
+            switch (startTagToken.getTagKind()) {
+            case ElementKind.CAPTION: // fall through
+            case ElementKind.COL: // fall through
+            case ElementKind.COLGROUP: // fall through
+            case ElementKind.TBODY: // fall through
+            case ElementKind.TD: // fall through
+            case ElementKind.TFOOT: // fall through
+            case ElementKind.TH: // fall through
+            case ElementKind.THEAD: // fall through
+            case ElementKind.TR: {
                 if ( !hasParticularElementInTableScope("td") && !hasParticularElementInTableScope("th")) {
                     if (isAllowParseErrors()) {
                         return IGNORE_TOKEN;
@@ -95,9 +95,9 @@ public class InCellInsertionMode extends InsertionMode {
         case END_TAG: {
             final EndTagToken endTagToken = (EndTagToken) token;
             final String tagName = endTagToken.getTagName();
-            switch (tagName) {
-            case "td": // fall through
-            case "th": {
+            switch (endTagToken.getTagKind()) {
+            case ElementKind.TD: // fall through
+            case ElementKind.TH: {
                 if ( !hasParticularElementInTableScope(tagName)) {
                     if (isAllowParseErrors()) {
                         return IGNORE_TOKEN;
@@ -114,30 +114,27 @@ public class InCellInsertionMode extends InsertionMode {
                                 + getCurrentNode().getTagName());
                     }
                 }
-                Element popped;
-                do {
-                    popped = popCurrentNode();
-                } while ( !isElementA(popped, tagName));
+                popElementsUntilPopped(tagName);
                 clearListOfActiveFormattingElementsUpToLastMarker();
                 setInsertionMode(Parser.Mode.IN_ROW);
                 return TOKEN_HANDLED;
             } // break;
-            case "body": // fall through
-            case "caption": // fall through
-            case "col": // fall through
-            case "colgroup": // fall through
-            case "html": {
+            case ElementKind.BODY: // fall through
+            case ElementKind.CAPTION: // fall through
+            case ElementKind.COL: // fall through
+            case ElementKind.COLGROUP: // fall through
+            case ElementKind.HTML: {
                 if (isAllowParseErrors()) {
                     return IGNORE_TOKEN;
                 } else {
                     throw new ParseErrorException("Unexpected end tag token in table cell: " + endTagToken);
                 }
             } // break;
-            case "table": // fall through
-            case "tbody": // fall through
-            case "tfoot": // fall through
-            case "thead": // fall through
-            case "tr": {
+            case ElementKind.TABLE: // fall through
+            case ElementKind.TBODY: // fall through
+            case ElementKind.TFOOT: // fall through
+            case ElementKind.THEAD: // fall through
+            case ElementKind.TR: {
                 if ( !hasParticularElementInTableScope(tagName)) {
                     if (isAllowParseErrors()) {
                         return IGNORE_TOKEN;
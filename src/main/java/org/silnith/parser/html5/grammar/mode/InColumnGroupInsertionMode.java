@@ -8,6 +8,7 @@ import static org.silnith.parser.util.UnicodeCodePoints.SPACE;
 
 import org.silnith.parser.ParseErrorException;
 import org.silnith.parser.html5.Parser;
+import org.silnith.parser.html5.grammar.element.ElementKind;
 import org.silnith.parser.html5.lexical.token.CharacterToken;
 import org.silnith.parser.html5.lexical.token.CommentToken;
 import org.silnith.parser.html5.lexical.token.EndTagToken;
@@ -112,18 +113,17 @@ public class InColumnGroupInsertionMode extends InsertionMode {
         } // break;
         case START_TAG: {
             final StartTagToken startTagToken = (StartTagToken) token;
-            final String tagName = startTagToken.getTagName();
-            switch (tagName) {
-            case "html": {
+            switch (startTagToken.getTagKind()) {
+            case ElementKind.HTML: {
                 return processUsingRulesFor(Parser.Mode.IN_BODY, startTagToken);
             } // break;
-            case "col": {
+            case ElementKind.COL: {
                 insertHTMLElement(startTagToken);
                 popCurrentNode();
                 acknowledgeTokenSelfClosingFlag(startTagToken);
                 return TOKEN_HANDLED;
             } // break;
-            case "template": {
+            case ElementKind.TEMPLATE: {
                 return processUsingRulesFor(Parser.Mode.IN_HEAD, startTagToken);
             } // break;
             default: {
@@ -133,10 +133,9 @@ public class InColumnGroupInsertionMode extends InsertionMode {
         } // break;
         case END_TAG: {
             final EndTagToken endTagToken = (EndTagToken) token;
-            final String tagName = endTagToken.getTagName();
-            switch (tagName) {
-            case "colgroup": {
-                if ( !isElementA(getCurrentNode(), "colgroup")) {
+            switch (endTagToken.getTagKind()) {
+            case ElementKind.COLGROUP: {
+                if ( !isCurrentNodeA(ElementKind.COLGROUP)) {
                     if (isAllowParseErrors()) {
                         return IGNORE_TOKEN;
                     } else {
@@ -148,14 +147,14 @@ public class InColumnGroupInsertionMode extends InsertionMode {
                 setInsertionMode(Parser.Mode.IN_TABLE);
                 return TOKEN_HANDLED;
             } // break;
-            case "col": {
+            case ElementKind.COL: {
                 if (isAllowParseErrors()) {
                     return IGNORE_TOKEN;
                 } else {
                     throw new ParseErrorException("Unexpected end tag token in column group: " + endTagToken);
                 }
             } // break;
-            case "template": {
+            case ElementKind.TEMPLATE: {
                 return processUsingRulesFor(Parser.Mode.IN_HEAD, endTagToken);
             } // break;
             default: {
@@ -173,7 +172,7 @@ public class InColumnGroupInsertionMode extends InsertionMode {
     }
     
     private boolean anythingElse(final Token token) {
-        if ( !isElementA(getCurrentNode(), "colgroup")) {
+        if ( !isCurrentNodeA(ElementKind.COLGROUP)) {
             if (isAllowParseErrors()) {
                 return IGNORE_TOKEN;
             } else {
@@ -8,6 +8,7 @@ import static org.silnith.parser.util.UnicodeCodePoints.SPACE;
 
 import org.silnith.parser.ParseErrorException;
 import org.silnith.parser.html5.Parser;
+import org.silnith.parser.html5.grammar.element.ElementKind;
 import org.silnith.parser.html5.lexical.token.CharacterToken;
 import org.silnith.parser.html5.lexical.token.CommentToken;
 import org.silnith.parser.html5.lexical.token.EndTagToken;
@@ -110,23 +111,22 @@ public class InFramesetInsertionMode extends InsertionMode {
         } // break;
         case START_TAG: {
             final StartTagToken startTagToken = (StartTagToken) token;
-            final String tagName = startTagToken.getTagName();
-            switch (tagName) {
-            case "html": {
+            switch (startTagToken.getTagKind()) {
+            case ElementKind.HTML: {
                 return processUsingRulesFor(Parser.Mode.IN_BODY, startTagToken);
             } // break;
-            case "frameset": {
+            case ElementKind.FRAMESET: {
                 insertHTMLElement(startTagToken);
                 return TOKEN_HANDLED;
             } // break;
-            case "frame": {
+            case ElementKind.FRAME: {
                 insertHTMLElement(startTagToken);
                 popCurrentNode();
                 // acknowledge self-closing flag
                 acknowledgeTokenSelfClosingFlag(startTagToken);
                 return TOKEN_HANDLED;
             } // break;
-            case "noframes": {
+            case ElementKind.NOFRAMES: {
                 return processUsingRulesFor(Parser.Mode.IN_HEAD, startTagToken);
             } // break;
             default: {
@@ -136,10 +136,9 @@ public class InFramesetInsertionMode extends InsertionMode {
         } // break;
         case END_TAG: {
             final EndTagToken endTagToken = (EndTagToken) token;
-            final String tagName = endTagToken.getTagName();
-            switch (tagName) {
-            case "frameset": {
-                if (isElementA(getCurrentNode(), "html")) {
+            switch (endTagToken.getTagKind()) {
+            case ElementKind.FRAMESET: {
+                if (isCurrentNodeA(ElementKind.HTML)) {
                     if (isAllowParseErrors()) {
                         return IGNORE_TOKEN;
                     } else {
@@ -147,7 +146,7 @@ public class InFramesetInsertionMode extends InsertionMode {
                     }
                 }
                 popCurrentNode();
-                if ( !isHTMLFragmentParsingAlgorithm() && !isElementA(getCurrentNode(), "frameset")) {
+                if ( !isHTMLFragmentParsingAlgorithm() && !isCurrentNodeA(ElementKind.FRAMESET)) {
                     setInsertionMode(Parser.Mode.AFTER_FRAMESET);
                 }
                 return TOKEN_HANDLED;
@@ -158,7 +157,7 @@ public class InFramesetInsertionMode extends InsertionMode {
             }
         } // break;
         case EOF: {
-            if ( !isElementA(getCurrentNode(), "html")) {
+            if ( !isCurrentNodeA(ElementKind.HTML)) {
                 if (isAllowParseErrors()) {
                     // do nothing?
                 } else {
@@ -9,6 +9,7 @@ import static org.silnith.parser.util.UnicodeCodePoints.SPACE;
 import org.silnith.parser.ParseErrorException;
 import org.silnith.parser.html5.Parser;
 import org.silnith.parser.html5.grammar.dom.InsertionPosition;
+import org.silnith.parser.html5.grammar.element.ElementKind;
 import org.silnith.parser.html5.lexical.Tokenizer;
 import org.silnith.parser.html5.lexical.token.CharacterToken;
 import org.silnith.parser.html5.lexical.token.CommentToken;
@@ -167,15 +168,14 @@ public class InHeadInsertionMode extends InsertionMode {
         } // break;
         case START_TAG: {
             final StartTagToken startTagToken = (StartTagToken) token;
-            final String tagName = startTagToken.getTagName();
-            switch (tagName) {
-            case "html": {
+            switch (startTagToken.getTagKind()) {
+            case ElementKind.HTML: {
                 return processUsingRulesFor(Parser.Mode.IN_BODY, startTagToken);
             } // break;
-            case "base": // fall through
-            case "basefont": // fall through
-            case "bgsound": // fall through
-            case "link": {
+            case ElementKind.BASE: // fall through
+            case ElementKind.BASEFONT: // fall through
+            case ElementKind.BGSOUND: // fall through
+            case ElementKind.LINK: {
                 final Element element = insertHTMLElement(startTagToken);
                 final Element popped = popCurrentNode();
                 
@@ -184,7 +184,7 @@ public class InHeadInsertionMode extends InsertionMode {
                 acknowledgeTokenSelfClosingFlag(startTagToken);
                 return TOKEN_HANDLED;
             } // break;
-            case "meta": {
+            case ElementKind.META: {
                 final Element element = insertHTMLElement(startTagToken);
                 final Element popped = popCurrentNode();
                 
@@ -194,16 +194,16 @@ public class InHeadInsertionMode extends InsertionMode {
                 // TODO: handle charset special behavior
                 return TOKEN_HANDLED;
             } // break;
-            case "title": {
+            case ElementKind.TITLE: {
                 genericRCDATAElementParsingAlgorithm(startTagToken);
                 return TOKEN_HANDLED;
             } // break;
-            case "noframes": // fall through
-            case "style": {
+            case ElementKind.NOFRAMES: // fall through
+            case ElementKind.STYLE: {
                 genericRawTextElementParsingAlgorithm(startTagToken);
                 return TOKEN_HANDLED;
             } // break;
-            case "noscript": {
+            case ElementKind.NOSCRIPT: {
                 if (isScriptingEnabled()) {
                     genericRawTextElementParsingAlgorithm(startTagToken);
                     return TOKEN_HANDLED;
@@ -213,7 +213,7 @@ public class InHeadInsertionMode extends InsertionMode {
                     return TOKEN_HANDLED;
                 }
             } // break;
-            case "script": {
+            case ElementKind.SCRIPT: {
                 final InsertionPosition adjustedInsertionLocation = getAppropriatePlaceForInsertingNode();
                 final Element element = createElementForToken(startTagToken, HTML_NAMESPACE,
                         adjustedInsertionLocation.getContainingNode());
@@ -224,14 +224,20 @@ public class InHeadInsertionMode extends InsertionMode {
                     // mark the script as already started
                 }
                 adjustedInsertionLocation.insert(element);
-                addToStackOfOpenElements(element);
+                addToStackOfOpenElements(element, ElementKind.SCRIPT);
                 assert element == getCurrentNode();
                 setTokenizerState(Tokenizer.State.SCRIPT_DATA);
                 setOriginalInsertionMode(getInsertionMode());
                 setInsertionMode(Parser.Mode.TEXT);
                 return TOKEN_HANDLED;
             } // break;
-            case "template": {
+            case ElementKind.TEMPLATE: {
+                if (parser.isDeferTemplateContents()) {
+                    final Element template = insertHTMLElement(startTagToken);
+                    setFramesetOKFlag(NOT_OK);
+                    parser.deferTemplateContents(template);
+                    return TOKEN_HANDLED;
+                }
                 insertHTMLElement(startTagToken);
                 insertMarkerAtEndOfListOfActiveFormattingElements();
                 setFramesetOKFlag(NOT_OK);
@@ -240,7 +246,7 @@ public class InHeadInsertionMode extends InsertionMode {
                 assert Parser.Mode.IN_TEMPLATE == getCurrentTemplateInsertionMode();
                 return TOKEN_HANDLED;
             } // break;
-            case "head": {
+            case ElementKind.HEAD: {
                 if (isAllowParseErrors()) {
                     return IGNORE_TOKEN;
                 } else {
@@ -254,20 +260,19 @@ public class InHeadInsertionMode extends InsertionMode {
         } // break;
         case END_TAG: {
             final EndTagToken endTagToken = (EndTagToken) token;
-            final String tagName = endTagToken.getTagName();
-            switch (tagName) {
-            case "head": {
+            switch (endTagToken.getTagKind()) {
+            case ElementKind.HEAD: {
                 final Element head = popCurrentNode();
                 assert isElementA(head, "head");
                 setInsertionMode(Parser.Mode.AFTER_HEAD);
                 return TOKEN_HANDLED;
             } // break;
-            case "body": // fall through
-            case "html": // fall through
-            case "br": {
+            case ElementKind.BODY: // fall through
+            case ElementKind.HTML: // fall through
+            case ElementKind.BR: {
                 return anythingElse(endTagToken);
             } // break;
-            case "template": {
+            case ElementKind.TEMPLATE: {
                 // confirm stack of open elements contains a "template"
                 if ( !isStackOfOpenElementsContains("template")) {
                     if (isAllowParseErrors()) {
@@ -278,14 +283,11 @@ public class InHeadInsertionMode extends InsertionMode {
                     }
                 }
                 generateImpliedEndTags();
-                if (isAllowParseErrors() && !isElementA(getCurrentNode(), "template")) {
+                if ( !isAllowParseErrors() && !isCurrentNodeA(ElementKind.TEMPLATE)) {
                     throw new ParseErrorException(
                             "Expected current element to be a template element, was: " + getCurrentNode().getTagName());
                 }
-                Element popped;
-                do {
-                    popped = popCurrentNode();
-                } while ( !isElementA(popped, "template"));
+                popElementsUntilPopped(ElementKind.TEMPLATE);
                 clearListOfActiveFormattingElementsUpToLastMarker();
                 popCurrentTemplateInsertionMode();
                 resetInsertionModeAppropriately();
@@ -8,6 +8,7 @@ import static org.silnith.parser.util.UnicodeCodePoints.SPACE;
 
 import org.silnith.parser.ParseErrorException;
 import org.silnith.parser.html5.Parser;
+import org.silnith.parser.html5.grammar.element.ElementKind;
 import org.silnith.parser.html5.lexical.token.CharacterToken;
 import org.silnith.parser.html5.lexical.token.CommentToken;
 import org.silnith.parser.html5.lexical.token.EndTagToken;
@@ -80,21 +81,20 @@ public class InHeadNoScriptInsertionMode extends InsertionMode {
         } // break;
         case START_TAG: {
             final StartTagToken startTagToken = (StartTagToken) token;
-            final String tagName = startTagToken.getTagName();
-            switch (tagName) {
-            case "html": {
+            switch (startTagToken.getTagKind()) {
+            case ElementKind.HTML: {
                 return processUsingRulesFor(Parser.Mode.IN_BODY, startTagToken);
             } // break;
-            case "basefont": // fall through
-            case "bgsound": // fall through
-            case "link": // fall through
-            case "meta": // fall through
-            case "noframes": // fall through
-            case "style": {
+            case ElementKind.BASEFONT: // fall through
+            case ElementKind.BGSOUND: // fall through
+            case ElementKind.LINK: // fall through
+            case ElementKind.META: // fall through
+            case ElementKind.NOFRAMES: // fall through
+            case ElementKind.STYLE: {
                 return processUsingRulesFor(Parser.Mode.IN_HEAD, startTagToken);
             } // break;
-            case "head": // fall through
-            case "noscript": {
+            case ElementKind.HEAD: // fall through
+            case ElementKind.NOSCRIPT: {
                 if (isAllowParseErrors()) {
                     return IGNORE_TOKEN;
                 } else {
@@ -108,16 +108,15 @@ public class InHeadNoScriptInsertionMode extends InsertionMode {
         } // break;
         case END_TAG: {
             final EndTagToken endTagToken = (EndTagToken) token;
-            final String tagName = endTagToken.getTagName();
-            switch (tagName) {
-            case "noscript": {
+            switch (endTagToken.getTagKind()) {
+            case ElementKind.NOSCRIPT: {
                 final Element popped = popCurrentNode();
                 assert isElementA(popped, "noscript");
-                assert isElementA(getCurrentNode(), "head");
+                assert isCurrentNodeA(ElementKind.HEAD);
                 setInsertionMode(Parser.Mode.IN_HEAD);
                 return TOKEN_HANDLED;
             } // break;
-            case "br": {
+            case ElementKind.BR: {
                 return anythingElse(endTagToken);
             } // break;
             default: {
@@ -159,7 +158,7 @@ public class InHeadNoScriptInsertionMode extends InsertionMode {
         if (isAllowParseErrors()) {
             final Element popped = popCurrentNode();
             assert isElementA(popped, "noscript");
-            assert isElementA(getCurrentNode(), "head");
+            assert isCurrentNodeA(ElementKind.HEAD);
             setInsertionMode(Parser.Mode.IN_HEAD);
             return REPROCESS_TOKEN;
         } else {
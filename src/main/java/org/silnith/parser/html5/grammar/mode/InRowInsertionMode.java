@@ -2,6 +2,7 @@ package org.silnith.parser.html5.grammar.mode;
 
 import org.silnith.parser.ParseErrorException;
 import org.silnith.parser.html5.Parser;
+import org.silnith.parser.html5.grammar.element.ElementKind;
 import org.silnith.parser.html5.lexical.token.EndTagToken;
 import org.silnith.parser.html5.lexical.token.StartTagToken;
 import org.silnith.parser.html5.lexical.token.Token;
@@ -69,23 +70,22 @@ public class InRowInsertionMode extends InsertionMode {
         switch (token.getType()) {
         case START_TAG: {
             final StartTagToken startTagToken = (StartTagToken) token;
-            final String tagName = startTagToken.getTagName();
-            switch (tagName) {
-            case "th": // fall through
-            case "td": {
+            switch (startTagToken.getTagKind()) {
+            case ElementKind.TH: // fall through
+            case ElementKind.TD: {
                 clearStackBackToTableRowContext();
                 insertHTMLElement(startTagToken);
                 setInsertionMode(Parser.Mode.IN_CELL);
                 insertMarkerAtEndOfListOfActiveFormattingElements();
                 return TOKEN_HANDLED;
             } // break;
-            case "caption": // fall through
-            case "col": // fall through
-            case "colgroup": // fall through
-            case "tbody": // fall through
-            case "tfoot": // fall through
-            case "thead": // fall through
-            case "tr": {
+            case ElementKind.CAPTION: // fall through
+            case ElementKind.COL: // fall through
+            case ElementKind.COLGROUP: // fall through
+            case ElementKind.TBODY: // fall through
+            case ElementKind.TFOOT: // fall through
+            case ElementKind.THEAD: // fall through
+            case ElementKind.TR: {
                 if ( !hasParticularElementInTableScope("tr")) {
                     if (isAllowParseErrors()) {
                         return IGNORE_TOKEN;
@@ -107,8 +107,8 @@ public class InRowInsertionMode extends InsertionMode {
         case END_TAG: {
             final EndTagToken endTagToken = (EndTagToken) token;
             final String tagName = endTagToken.getTagName();
-            switch (tagName) {
-            case "tr": {
+            switch (endTagToken.getTagKind()) {
+            case ElementKind.TR: {
                 if ( !hasParticularElementInTableScope("tr")) {
                     if (isAllowParseErrors()) {
                         return IGNORE_TOKEN;
@@ -122,7 +122,7 @@ public class InRowInsertionMode extends InsertionMode {
                 setInsertionMode(Parser.Mode.IN_TABLE_BODY);
                 return TOKEN_HANDLED;
             } // break;
-            case "table": {
+            case ElementKind.TABLE: {
                 if ( !hasParticularElementInTableScope("tr")) {
                     if (isAllowParseErrors()) {
                         return IGNORE_TOKEN;
@@ -136,9 +136,9 @@ public class InRowInsertionMode extends InsertionMode {
                 setInsertionMode(Parser.Mode.IN_TABLE_BODY);
                 return REPROCESS_TOKEN;
             } // break;
-            case "tbody": // fall through
-            case "tfoot": // fall through
-            case "thead": {
+            case ElementKind.TBODY: // fall through
+            case ElementKind.TFOOT: // fall through
+            case ElementKind.THEAD: {
                 if ( !hasParticularElementInTableScope(tagName)) {
                     if (isAllowParseErrors()) {
                         return IGNORE_TOKEN;
@@ -155,13 +155,13 @@ public class InRowInsertionMode extends InsertionMode {
                 setInsertionMode(Parser.Mode.IN_TABLE_BODY);
                 return IGNORE_TOKEN;
             } // break;
-            case "body": // fall through
-            case "caption": // fall through
-            case "col": // fall through
-            case "colgroup": // fall through
-            case "html": // fall through
-            case "td": // fall through
-            case "th": {
+            case ElementKind.BODY: // fall through
+            case ElementKind.CAPTION: // fall through
+            case ElementKind.COL: // fall through
+            case ElementKind.COLGROUP: // fall through
+            case ElementKind.HTML: // fall through
+            case ElementKind.TD: // fall through
+            case ElementKind.TH: {
                 if (isAllowParseErrors()) {
                     return IGNORE_TOKEN;
                 } else {
@@ -2,6 +2,7 @@ package org.silnith.parser.html5.grammar.mode;
 
 import org.silnith.parser.ParseErrorException;
 import org.silnith.parser.html5.Parser;
+import org.silnith.parser.html5.grammar.element.ElementKind;
 import org.silnith.parser.html5.lexical.token.EndTagToken;
 import org.silnith.parser.html5.lexical.token.StartTagToken;
 import org.silnith.parser.html5.lexical.token.Token;
@@ -50,21 +51,17 @@ public class InSelectInTableInsertionMode extends InsertionMode {
         switch (token.getType()) {
         case START_TAG: {
             final StartTagToken startTagToken = (StartTagToken) token;
-            final String tagName = startTagToken.getTagName();
-            switch (tagName) {
-            case "caption": // fall through
-            case "table": // fall through
-            case "tbody": // fall through
-            case "tfoot": // fall through
-            case "thead": // fall through
-            case "tr": // fall through
-            case "td": // fall through
-            case "th": {
+            switch (startTagToken.getTagKind()) {
+            case ElementKind.CAPTION: // fall through
+            case ElementKind.TABLE: // fall through
+            case ElementKind.TBODY: // fall through
+            case ElementKind.TFOOT: // fall through
+            case ElementKind.THEAD: // fall through
+            case ElementKind.TR: // fall through
+            case ElementKind.TD: // fall through
+            case ElementKind.TH: {
                 if (isAllowParseErrors()) {
-                    Element popped;
-                    do {
-                        popped = popCurrentNode();
-                    } while ( !isElementA(popped, "select"));
+                    popElementsUntilPopped(ElementKind.SELECT);
                     resetInsertionModeAppropriately();
                     return REPROCESS_TOKEN;
                 } else {
@@ -79,23 +76,20 @@ public class InSelectInTableInsertionMode extends InsertionMode {
         case END_TAG: {
             final EndTagToken endTagToken = (EndTagToken) token;
             final String tagName = endTagToken.getTagName();
-            switch (tagName) {
-            case "caption": // fall through
-            case "table": // fall through
-            case "tbody": // fall through
-            case "tfoot": // fall through
-            case "thead": // fall through
-            case "tr": // fall through
-            case "td": // fall through
-            case "th": {
+            switch (endTagToken.getTagKind()) {
+            case ElementKind.CAPTION: // fall through
+            case ElementKind.TABLE: // fall through
+            case ElementKind.TBODY: // fall through
+            case ElementKind.TFOOT: // fall through
+            case ElementKind.THEAD: // fall through
+            case ElementKind.TR: // fall through
+            case ElementKind.TD: // fall through
+            case ElementKind.TH: {
                 if (isAllowParseErrors()) {
                     if ( !hasParticularElementInTableScope(tagName)) {
                         return IGNORE_TOKEN;
                     }
-                    Element popped;
-                    do {
-                        popped = popCurrentNode();
-                    } while ( !isElementA(popped, "select"));
+                    popElementsUntilPopped(ElementKind.SELECT);
                     resetInsertionModeAppropriately();
                     return REPROCESS_TOKEN;
                 } else {
@@ -4,6 +4,7 @@ import static org.silnith.parser.util.UnicodeCodePoints.NULL;
 
 import org.silnith.parser.ParseErrorException;
 import org.silnith.parser.html5.Parser;
+import org.silnith.parser.html5.grammar.element.ElementKind;
 import org.silnith.parser.html5.lexical.token.CharacterToken;
 import org.silnith.parser.html5.lexical.token.CommentToken;
 import org.silnith.parser.html5.lexical.token.EndTagToken;
@@ -137,59 +138,52 @@ public class InSelectInsertionMode extends InsertionMode {
         } // break;
         case START_TAG: {
             final StartTagToken startTagToken = (StartTagToken) token;
-            final String tagName = startTagToken.getTagName();
-            switch (tagName) {
-            case "html": {
+            switch (startTagToken.getTagKind()) {
+            case ElementKind.HTML: {
                 return processUsingRulesFor(Parser.Mode.IN_BODY, startTagToken);
             } // break;
-            case "option": {
-                if (isElementA(getCurrentNode(), "option")) {
+            case ElementKind.OPTION: {
+                if (isCurrentNodeA(ElementKind.OPTION)) {
                     popCurrentNode();
                 }
                 insertHTMLElement(startTagToken);
                 return TOKEN_HANDLED;
             } // break;
-            case "optgroup": {
-                if (isElementA(getCurrentNode(), "option")) {
+            case ElementKind.OPTGROUP: {
+                if (isCurrentNodeA(ElementKind.OPTION)) {
                     popCurrentNode();
                 }
-                if (isElementA(getCurrentNode(), "optgroup")) {
+                if (isCurrentNodeA(ElementKind.OPTGROUP)) {
                     popCurrentNode();
                 }
                 insertHTMLElement(startTagToken);
                 return TOKEN_HANDLED;
             } // break;
-            case "select": {
+            case ElementKind.SELECT: {
                 if (isAllowParseErrors()) {
-                    Element popped;
-                    do {
-                        popped = popCurrentNode();
-                    } while ( !isElementA(popped, "select"));
+                    popElementsUntilPopped(ElementKind.SELECT);
                     resetInsertionModeAppropriately();
                     return TOKEN_HANDLED;
                 } else {
                     throw new ParseErrorException("Unexpected start tag token in select: " + startTagToken);
                 }
             } // break;
-            case "input": // fall through
-            case "keygen": // fall through
-            case "textarea": {
+            case ElementKind.INPUT: // fall through
+            case ElementKind.KEYGEN: // fall through
+            case ElementKind.TEXTAREA: {
                 if (isAllowParseErrors()) {
                     if ( !hasParticularElementInSelectScope("select")) {
                         return IGNORE_TOKEN;
                     }
-                    Element popped;
-                    do {
-                        popped = popCurrentNode();
-                    } while ( !isElementA(popped, "select"));
+                    popElementsUntilPopped(ElementKind.SELECT);
                     resetInsertionModeAppropriately();
                     return REPROCESS_TOKEN;
                 } else {
                     throw new ParseErrorException("Unexpected start tag token in select: " + startTagToken);
                 }
             } // break;
-            case "template": // fall through
-            case "script": {
+            case ElementKind.TEMPLATE: // fall through
+            case ElementKind.SCRIPT: {
                 return processUsingRulesFor(Parser.Mode.IN_HEAD, startTagToken);
             } // break;
             default: {
@@ -199,14 +193,13 @@ public class InSelectInsertionMode extends InsertionMode {
         } // break;
         case END_TAG: {
             final EndTagToken endTagToken = (EndTagToken) token;
-            final String tagName = endTagToken.getTagName();
-            switch (tagName) {
-            case "optgroup": {
-                if (isElementA(getCurrentNode(), "option")
+            switch (endTagToken.getTagKind()) {
+            case ElementKind.OPTGROUP: {
+                if (isCurrentNodeA(ElementKind.OPTION)
                         && isElementA(getNodeImmediatelyBeforeCurrentNode(), "optgroup")) {
                     popCurrentNode();
                 }
-                if (isElementA(getCurrentNode(), "optgroup")) {
+                if (isCurrentNodeA(ElementKind.OPTGROUP)) {
                     popCurrentNode();
                     return TOKEN_HANDLED;
                 } else {
@@ -218,8 +211,8 @@ public class InSelectInsertionMode extends InsertionMode {
                     }
                 }
             } // break;
-            case "option": {
-                if (isElementA(getCurrentNode(), "option")) {
+            case ElementKind.OPTION: {
+                if (isCurrentNodeA(ElementKind.OPTION)) {
                     popCurrentNode();
                     return TOKEN_HANDLED;
                 } else {
@@ -231,7 +224,7 @@ public class InSelectInsertionMode extends InsertionMode {
                     }
                 }
             } // break;
-            case "select": {
+            case ElementKind.SELECT: {
                 // verify stack of open elements has select element in select
 // scope
                 if ( !hasParticularElementInSelectScope("select")) {
@@ -241,14 +234,11 @@ public class InSelectInsertionMode extends InsertionMode {
                         throw new ParseErrorException("Expected select element in select scope.");
                     }
                 }
-                Element poppedElement;
-                do {
-                    poppedElement = popCurrentNode();
-                } while ( !isElementA(poppedElement, "select"));
+                popElementsUntilPopped(ElementKind.SELECT);
                 resetInsertionModeAppropriately();
                 return TOKEN_HANDLED;
             } // break;
-            case "template": {
+            case ElementKind.TEMPLATE: {
                 return processUsingRulesFor(Parser.Mode.IN_HEAD, endTagToken);
             } // break;
             default: {
@@ -2,6 +2,7 @@ package org.silnith.parser.html5.grammar.mode;
 
 import org.silnith.parser.ParseErrorException;
 import org.silnith.parser.html5.Parser;
+import org.silnith.parser.html5.grammar.element.ElementKind;
 import org.silnith.parser.html5.lexical.token.EndTagToken;
 import org.silnith.parser.html5.lexical.token.StartTagToken;
 import org.silnith.parser.html5.lexical.token.Token;
@@ -66,16 +67,15 @@ public class InTableBodyInsertionMode extends InsertionMode {
         switch (token.getType()) {
         case START_TAG: {
             final StartTagToken startTagToken = (StartTagToken) token;
-            final String tagName = startTagToken.getTagName();
-            switch (tagName) {
-            case "tr": {
+            switch (startTagToken.getTagKind()) {
+            case ElementKind.TR: {
                 clearStackBackToTableBodyContext();
                 insertHTMLElement(startTagToken);
                 setInsertionMode(Parser.Mode.IN_ROW);
                 return TOKEN_HANDLED;
             } // break;
-            case "th": // fall through
-            case "td": {
+            case ElementKind.TH: // fall through
+            case ElementKind.TD: {
                 if (isAllowParseErrors()) {
                     clearStackBackToTableBodyContext();
                     insertHTMLElement("tr");
@@ -85,12 +85,12 @@ public class InTableBodyInsertionMode extends InsertionMode {
                     throw new ParseErrorException("Unexpected start tag token in table body: " + startTagToken);
                 }
             } // break;
-            case "caption": // fall through
-            case "col": // fall through
-            case "colgroup": // fall through
-            case "tbody": // fall through
-            case "tfoot": // fall through
-            case "thead": {
+            case ElementKind.CAPTION: // fall through
+            case ElementKind.COL: // fall through
+            case ElementKind.COLGROUP: // fall through
+            case ElementKind.TBODY: // fall through
+            case ElementKind.TFOOT: // fall through
+            case ElementKind.THEAD: {
                 if ( !hasParticularElementInTableScope("tbody") && !hasParticularElementInTableScope("tfoot")
                         && !hasParticularElementInTableScope("thead")) {
                     if (isAllowParseErrors()) {
@@ -112,10 +112,10 @@ public class InTableBodyInsertionMode extends InsertionMode {
         case END_TAG: {
             final EndTagToken endTagToken = (EndTagToken) token;
             final String tagName = endTagToken.getTagName();
-            switch (tagName) {
-            case "tbody": // fall through
-            case "tfoot": // fall through
-            case "thead": {
+            switch (endTagToken.getTagKind()) {
+            case ElementKind.TBODY: // fall through
+            case ElementKind.TFOOT: // fall through
+            case ElementKind.THEAD: {
                 // verify stack of open elements has matching start tag in table
 // scope
                 if ( !hasParticularElementInTableScope(tagName)) {
@@ -131,7 +131,7 @@ public class InTableBodyInsertionMode extends InsertionMode {
                 setInsertionMode(Parser.Mode.IN_TABLE);
                 return TOKEN_HANDLED;
             } // break;
-            case "table": {
+            case ElementKind.TABLE: {
                 if ( !hasParticularElementInTableScope("tbody") && !hasParticularElementInTableScope("tfoot")
                         && !hasParticularElementInTableScope("thead")) {
                     if (isAllowParseErrors()) {
@@ -145,14 +145,14 @@ public class InTableBodyInsertionMode extends InsertionMode {
                 setInsertionMode(Parser.Mode.IN_TABLE);
                 return REPROCESS_TOKEN;
             } // break;
-            case "body": // fall through
-            case "caption": // fall through
-            case "col": // fall through
-            case "colgroup": // fall through
-            case "html": // fall through
-            case "td": // fall through
-            case "th": // fall through
-            case "tr": {
+            case ElementKind.BODY: // fall through
+            case ElementKind.CAPTION: // fall through
+            case ElementKind.COL: // fall through
+            case ElementKind.COLGROUP: // fall through
+            case ElementKind.HTML: // fall through
+            case ElementKind.TD: // fall through
+            case ElementKind.TH: // fall through
+            case ElementKind.TR: {
                 if (isAllowParseErrors()) {
                     return IGNORE_TOKEN;
                 } else {
@@ -2,6 +2,7 @@ package org.silnith.parser.html5.grammar.mode;
 
 import org.silnith.parser.ParseErrorException;
 import org.silnith.parser.html5.Parser;
+import org.silnith.parser.html5.grammar.element.ElementKind;
 import org.silnith.parser.html5.lexical.token.CharacterToken;
 import org.silnith.parser.html5.lexical.token.CommentToken;
 import org.silnith.parser.html5.lexical.token.EndTagToken;
@@ -126,13 +127,12 @@ public class InTableInsertionMode extends InsertionMode {
         switch (token.getType()) {
         case CHARACTER: {
             final CharacterToken characterToken = (CharacterToken) token;
-            final Element currentNode = getCurrentNode();
-            switch (currentNode.getTagName()) {
-            case "table": // fall through
-            case "tbody": // fall through
-            case "tfoot": // fall through
-            case "thead": // fall through
-            case "tr": {
+            switch (getCurrentNodeKind()) {
+            case ElementKind.TABLE: // fall through
+            case ElementKind.TBODY: // fall through
+            case ElementKind.TFOOT: // fall through
+            case ElementKind.THEAD: // fall through
+            case ElementKind.TR: {
                 setPendingTableCharacterTokens();
                 setOriginalInsertionMode(getInsertionMode());
                 setInsertionMode(Parser.Mode.IN_TABLE_TEXT);
@@ -157,64 +157,60 @@ public class InTableInsertionMode extends InsertionMode {
         } // break;
         case START_TAG: {
             final StartTagToken startTagToken = (StartTagToken) token;
-            final String tagName = startTagToken.getTagName();
-            switch (tagName) {
-            case "caption": {
+            switch (startTagToken.getTagKind()) {
+            case ElementKind.CAPTION: {
                 clearStackBackToTableContext();
                 insertMarkerAtEndOfListOfActiveFormattingElements();
                 insertHTMLElement(startTagToken);
                 setInsertionMode(Parser.Mode.IN_CAPTION);
                 return TOKEN_HANDLED;
             } // break;
-            case "colgroup": {
+            case ElementKind.COLGROUP: {
                 clearStackBackToTableContext();
                 insertHTMLElement(startTagToken);
                 setInsertionMode(Parser.Mode.IN_COLUMN_GROUP);
                 return TOKEN_HANDLED;
             } // break;
-            case "col": {
+            case ElementKind.COL: {
                 clearStackBackToTableContext();
                 insertHTMLElement("colgroup");
                 setInsertionMode(Parser.Mode.IN_COLUMN_GROUP);
                 return REPROCESS_TOKEN;
             } // break;
-            case "tbody": // fall through
-            case "tfoot": // fall through
-            case "thead": {
+            case ElementKind.TBODY: // fall through
+            case ElementKind.TFOOT: // fall through
+            case ElementKind.THEAD: {
                 clearStackBackToTableContext();
                 insertHTMLElement(startTagToken);
                 setInsertionMode(Parser.Mode.IN_TABLE_BODY);
                 return TOKEN_HANDLED;
             } // break;
-            case "td": // fall through
-            case "th": // fall through
-            case "tr": {
+            case ElementKind.TD: // fall through
+            case ElementKind.TH: // fall through
+            case ElementKind.TR: {
                 clearStackBackToTableContext();
                 insertHTMLElement("tbody");
                 setInsertionMode(Parser.Mode.IN_TABLE_BODY);
                 return REPROCESS_TOKEN;
             } // break;
-            case "table": {
+            case ElementKind.TABLE: {
                 if (isAllowParseErrors()) {
                     if ( !hasParticularElementInTableScope("table")) {
                         return IGNORE_TOKEN;
                     }
-                    Element popped;
-                    do {
-                        popped = popCurrentNode();
-                    } while ( !isElementA(popped, "table"));
+                    popElementsUntilPopped(ElementKind.TABLE);
                     resetInsertionModeAppropriately();
                     return REPROCESS_TOKEN;
                 } else {
                     throw new ParseErrorException("Unexpected start tag token in table: " + startTagToken);
                 }
             } // break;
-            case "style": // fall through
-            case "script": // fall through
-            case "template": {
+            case ElementKind.STYLE: // fall through
+            case ElementKind.SCRIPT: // fall through
+            case ElementKind.TEMPLATE: {
                 return processUsingRulesFor(Parser.Mode.IN_HEAD, startTagToken);
             } // break;
-            case "input": {
+            case ElementKind.INPUT: {
                 final TagToken.Attribute typeAttribute = getAttributeNamed(startTagToken, "type");
                 if (typeAttribute == null || typeAttribute.getValue().equalsIgnoreCase("hidden")) {
                     return anythingElse(startTagToken);
@@ -228,9 +224,9 @@ public class InTableInsertionMode extends InsertionMode {
                     throw new ParseErrorException("Unexpected start tag token in table: " + startTagToken);
                 }
             } // break;
-            case "form": {
+            case ElementKind.FORM: {
                 if (isAllowParseErrors()) {
-                    if (isStackOfOpenElementsContains("template") || getFormElementPointer() != null) {
+                    if (isTemplateOnStackOfOpenElements() || getFormElementPointer() != null) {
                         return IGNORE_TOKEN;
                     }
                     final Element formElement = insertHTMLElement(startTagToken);
@@ -248,9 +244,8 @@ public class InTableInsertionMode extends InsertionMode {
         } // break;
         case END_TAG: {
             final EndTagToken endTagToken = (EndTagToken) token;
-            final String tagName = endTagToken.getTagName();
-            switch (tagName) {
-            case "table": {
+            switch (endTagToken.getTagKind()) {
+            case ElementKind.TABLE: {
                 if ( !hasParticularElementInTableScope("table")) {
                     if (isAllowParseErrors()) {
                         return IGNORE_TOKEN;
@@ -259,31 +254,28 @@ public class InTableInsertionMode extends InsertionMode {
                                 "End tag token for table with no matching start tag in table scope.");
                     }
                 }
-                Element poppedElement;
-                do {
-                    poppedElement = popCurrentNode();
-                } while ( !isElementA(poppedElement, "table"));
+                popElementsUntilPopped(ElementKind.TABLE);
                 resetInsertionModeAppropriately();
                 return TOKEN_HANDLED;
             } // break;
-            case "body": // fall through
-            case "caption": // fall through
-            case "col": // fall through
-            case "colgroup": // fall through
-            case "html": // fall through
-            case "tbody": // fall through
-            case "td": // fall through
-            case "tfoot": // fall through
-            case "th": // fall through
-            case "thead": // fall through
-            case "tr": {
+            case ElementKind.BODY: // fall through
+            case ElementKind.CAPTION: // fall through
+            case ElementKind.COL: // fall through
+            case ElementKind.COLGROUP: // fall through
+            case ElementKind.HTML: // fall through
+            case ElementKind.TBODY: // fall through
+            case ElementKind.TD: // fall through
+            case ElementKind.TFOOT: // fall through
+            case ElementKind.TH: // fall through
+            case ElementKind.THEAD: // fall through
+            case ElementKind.TR: {
                 if (isAllowParseErrors()) {
                     return IGNORE_TOKEN;
                 } else {
                     throw new ParseErrorException("Unexpected end tag token in table: " + endTagToken);
                 }
             } // break;
-            case "template": {
+            case ElementKind.TEMPLATE: {
                 return processUsingRulesFor(Parser.Mode.IN_HEAD, endTagToken);
             } // break;
             default: {
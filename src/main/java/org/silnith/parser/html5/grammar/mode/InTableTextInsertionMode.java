@@ -66,21 +66,26 @@ public class InTableTextInsertionMode extends InsertionMode {
     }
     
     private boolean anythingElse(final Token token) {
-        // if pending table character tokens contains non-space characters
+        final String pendingTableCharacters = getPendingTableCharacters();
         if (isPendingTableCharacterTokensListContainsCharactersThatAreNotSpaceCharacters()) {
-            // reprocess the pending table character tokens according to the
-            // "anything else" case of the IN_TABLE mode
-            if (isAllowParseErrors()) {
-                enableFosterParenting();
-                final boolean returnValue = processUsingRulesFor(Parser.Mode.IN_BODY, token);
-                disableFosterParenting();
-                return returnValue;
-            } else {
-                throw new ParseErrorException("Unexpected token in table text: " + token);
+            /*
+             * Reprocess the pending characters using the "anything else" entry
+             * of the "in table" insertion mode. That processes each character
+             * using the "in body" rules with foster parenting enabled, which
+             * reconstructs the active formatting elements and inserts the
+             * character. Nothing else is inserted in between, so the
+             * characters are inserted together.
+             */
+            if ( !isAllowParseErrors()) {
+                throw new ParseErrorException("Unexpected characters in table: " + pendingTableCharacters);
             }
-        }
-        for (final CharacterToken characterToken : getPendingTableCharacterTokens()) {
-            insertCharacter(characterToken);
+            enableFosterParenting();
+            reconstructActiveFormattingElements();
+            insertCharacters(pendingTableCharacters);
+            disableFosterParenting();
+            setFramesetOKFlag(NOT_OK);
+        } else {
+            insertCharacters(pendingTableCharacters);
         }
         /*
          * The "spec" does not actually say to clear the pending table character
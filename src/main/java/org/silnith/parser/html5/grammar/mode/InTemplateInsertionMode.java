@@ -2,6 +2,7 @@ package org.silnith.parser.html5.grammar.mode;
 
 import org.silnith.parser.ParseErrorException;
 import org.silnith.parser.html5.Parser;
+import org.silnith.parser.html5.grammar.element.ElementKind;
 import org.silnith.parser.html5.lexical.token.EndTagToken;
 import org.silnith.parser.html5.lexical.token.StartTagToken;
 import org.silnith.parser.html5.lexical.token.Token;
@@ -90,44 +91,43 @@ public class InTemplateInsertionMode extends InsertionMode {
         } // break;
         case START_TAG: {
             final StartTagToken startTagToken = (StartTagToken) token;
-            final String tagName = startTagToken.getTagName();
-            switch (tagName) {
-            case "base": // fall through
-            case "basefont": // fall through
-            case "bgsound": // fall through
-            case "link": // fall through
-            case "meta": // fall through
-            case "noframes": // fall through
-            case "script": // fall through
-            case "style": // fall through
-            case "template": // fall through
-            case "title": {
+            switch (startTagToken.getTagKind()) {
+            case ElementKind.BASE: // fall through
+            case ElementKind.BASEFONT: // fall through
+            case ElementKind.BGSOUND: // fall through
+            case ElementKind.LINK: // fall through
+            case ElementKind.META: // fall through
+            case ElementKind.NOFRAMES: // fall through
+            case ElementKind.SCRIPT: // fall through
+            case ElementKind.STYLE: // fall through
+            case ElementKind.TEMPLATE: // fall through
+            case ElementKind.TITLE: {
                 return processUsingRulesFor(Parser.Mode.IN_HEAD, startTagToken);
             } // break;
-            case "caption": // fall through
-            case "colgroup": // fall through
-            case "tbody": // fall through
-            case "tfoot": // fall through
-            case "thead": {
+            case ElementKind.CAPTION: // fall through
+            case ElementKind.COLGROUP: // fall through
+            case ElementKind.TBODY: // fall through
+            case ElementKind.TFOOT: // fall through
+            case ElementKind.THEAD: {
                 popCurrentTemplateInsertionMode();
                 pushOntoStackOfTemplateInsertionModes(Parser.Mode.IN_TABLE);
                 setInsertionMode(Parser.Mode.IN_TABLE);
                 return REPROCESS_TOKEN;
             } // break;
-            case "col": {
+            case ElementKind.COL: {
                 popCurrentTemplateInsertionMode();
                 pushOntoStackOfTemplateInsertionModes(Parser.Mode.IN_COLUMN_GROUP);
                 setInsertionMode(Parser.Mode.IN_COLUMN_GROUP);
                 return REPROCESS_TOKEN;
             } // break;
-            case "tr": {
+            case ElementKind.TR: {
                 popCurrentTemplateInsertionMode();
                 pushOntoStackOfTemplateInsertionModes(Parser.Mode.IN_TABLE_BODY);
                 setInsertionMode(Parser.Mode.IN_TABLE_BODY);
                 return REPROCESS_TOKEN;
             } // break;
-            case "th": // fall through
-            case "td": {
+            case ElementKind.TH: // fall through
+            case ElementKind.TD: {
                 popCurrentTemplateInsertionMode();
                 pushOntoStackOfTemplateInsertionModes(Parser.Mode.IN_ROW);
                 setInsertionMode(Parser.Mode.IN_ROW);
@@ -143,9 +143,8 @@ public class InTemplateInsertionMode extends InsertionMode {
         } // break;
         case END_TAG: {
             final EndTagToken endTagToken = (EndTagToken) token;
-            final String tagName = endTagToken.getTagName();
-            switch (tagName) {
-            case "template": {
+            switch (endTagToken.getTagKind()) {
+            case ElementKind.TEMPLATE: {
                 return processUsingRulesFor(Parser.Mode.IN_HEAD, endTagToken);
             } // break;
             default: {
@@ -164,10 +163,7 @@ public class InTemplateInsertionMode extends InsertionMode {
                 return TOKEN_HANDLED;
             }
             if (isAllowParseErrors()) {
-                Element popped;
-                do {
-                    popped = popCurrentNode();
-                } while ( !isElementA(popped, "template"));
+                popElementsUntilPopped(ElementKind.TEMPLATE);
                 clearListOfActiveFormattingElementsUpToLastMarker();
                 popCurrentTemplateInsertionMode();
                 resetInsertionModeAppropriately();
@@ -12,6 +12,7 @@ import org.silnith.parser.html5.grammar.dom.AfterLastChildInsertionPosition;
 import org.silnith.parser.html5.lexical.token.CharacterToken;
 import org.silnith.parser.html5.lexical.token.CommentToken;
 import org.silnith.parser.html5.lexical.token.DOCTYPEToken;
+import org.silnith.parser.html5.lexical.token.DocumentMode;
 import org.silnith.parser.html5.lexical.token.Token;
 import org.w3c.dom.Document;
 
@@ -165,27 +166,27 @@ public class InitialInsertionMode extends InsertionMode {
             final String publicIdentifier = doctypeToken.getPublicIdentifier();
             final String systemIdentifier = doctypeToken.getSystemIdentifier();
             
-            if (name.equals("html")) {
+            if ("html".equals(name)) {
                 // valid
             } else if (publicIdentifier != null) {
                 // valid
             } else if (systemIdentifier != null && !systemIdentifier.equals("about:legacy-compat")) {
                 // valid
-            } else if (name.equals("html")
+            } else if ("html".equals(name)
                     && (publicIdentifier != null && publicIdentifier.equals("-//W3C//DTD HTML 4.0//EN"))
                     && (systemIdentifier == null
                             || systemIdentifier.equals("http://www.w3.org/TR/REC-html40/strict.dtd"))) {
                 // valid
-            } else if (name.equals("html")
+            } else if ("html".equals(name)
                     && (publicIdentifier != null && publicIdentifier.equals("-//W3C//DTD HTML 4.01//EN"))
                     && (systemIdentifier == null || systemIdentifier.equals("http://www.w3.org/TR/html4/strict.dtd"))) {
                 // valid
-            } else if (name.equals("html")
+            } else if ("html".equals(name)
                     && (publicIdentifier != null && publicIdentifier.equals("-//W3C//DTD XHTML 1.0 Strict//EN"))
                     && (systemIdentifier != null
                             && systemIdentifier.equals("http://www.w3.org/TR/xhtml1/DTD/xhtml1-strict.dtd"))) {
                 // valid
-            } else if (name.equals("html")
+            } else if ("html".equals(name)
                     && (publicIdentifier != null && publicIdentifier.equals("-//W3C//DTD XHTML 1.1//EN"))
                     && (systemIdentifier != null
                             && systemIdentifier.equals("http://www.w3.org/TR/xhtml11/DTD/xhtml11.dtd"))) {
@@ -202,6 +203,11 @@ public class InitialInsertionMode extends InsertionMode {
 //            implementation.createDocument(HTML_NAMESPACE, "html", documentType);
 //            document.appendChild(documentType);
             
+            final boolean isIframeSrcdocDocument = false;
+            if ( !isIframeSrcdocDocument) {
+                parser.setDocumentMode(doctypeToken.getDocumentMode());
+            }
+            
             setInsertionMode(Parser.Mode.BEFORE_HTML);
             return TOKEN_HANDLED;
         } // break;
@@ -215,7 +221,7 @@ public class InitialInsertionMode extends InsertionMode {
         final boolean isIframeSrcdocDocument = false;
         if (!isIframeSrcdocDocument) {
             if (isAllowParseErrors()) {
-                // set document to quirks mode
+                parser.setDocumentMode(DocumentMode.QUIRKS);
             } else {
                 throw new ParseErrorException("Unexpected content before document: " + token);
             }
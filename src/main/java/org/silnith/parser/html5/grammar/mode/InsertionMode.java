@@ -2,19 +2,20 @@ package org.silnith.parser.html5.grammar.mode;
 
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.List;
-import java.util.ListIterator;
-import java.util.Set;
 
 import org.silnith.parser.ParseErrorException;
+import org.silnith.parser.html5.ActiveFormattingElements;
+import org.silnith.parser.html5.ElementIndex;
 import org.silnith.parser.html5.ParseErrors;
 import org.silnith.parser.html5.Parser;
-import org.silnith.parser.html5.Parser.FormattingElement;
+import org.silnith.parser.html5.TemplateContents;
 import org.silnith.parser.html5.Parser.Mode;
 import org.silnith.parser.html5.grammar.dom.AfterLastChildInsertionPosition;
+import org.silnith.parser.html5.grammar.dom.ElementFactory;
+import org.silnith.parser.html5.grammar.dom.InsertBeforeSiblingInsertionPosition;
 import org.silnith.parser.html5.grammar.dom.InsertionPosition;
+import org.silnith.parser.html5.grammar.element.ElementKind;
+import org.silnith.parser.html5.grammar.element.ForeignNames;
 import org.silnith.parser.html5.lexical.Tokenizer;
 import org.silnith.parser.html5.lexical.token.CharacterToken;
 import org.silnith.parser.html5.lexical.token.CommentToken;
@@ -98,45 +99,18 @@ public abstract class InsertionMode {
      */
     protected static final boolean NOT_OK = false;
     
-    private static final Set<String> SPECIFIC_SCOPE;
-    
-    private static final Set<String> BUTTON_SCOPE;
-    
-    private static final Set<String> LIST_ITEM_SCOPE;
-    
-    private static final Set<String> TABLE_SCOPE;
-    
-    private static final Set<String> IMPLIED_END_TAGS;
+    /**
+     * The categories that bound a particular scope.
+     * 
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#has-an-element-in-the-specific-scope">has an element in the specific scope</a>
+     */
+    private static final int SPECIFIC_SCOPE = ElementKind.SCOPE;
     
-    private static final Set<String> SPECIAL_ELEMENTS;
+    private static final int BUTTON_SCOPE = ElementKind.SCOPE | ElementKind.BUTTON_SCOPE;
     
-    private static final Set<String> FORMATTING_ELEMENTS;
+    private static final int LIST_ITEM_SCOPE = ElementKind.SCOPE | ElementKind.LIST_ITEM_SCOPE;
     
-    static {
-        SPECIFIC_SCOPE = Collections.unmodifiableSet(new HashSet<>(
-                Arrays.asList("applet", "caption", "html", "table", "td", "th", "marquee", "object", "template")));
-        final Set<String> buttonScope = new HashSet<>(SPECIFIC_SCOPE);
-        buttonScope.add("button");
-        BUTTON_SCOPE = Collections.unmodifiableSet(buttonScope);
-        final Set<String> listItemScope = new HashSet<>(SPECIFIC_SCOPE);
-        listItemScope.add("ol");
-        listItemScope.add("ul");
-        LIST_ITEM_SCOPE = Collections.unmodifiableSet(listItemScope);
-        TABLE_SCOPE = Collections.unmodifiableSet(new HashSet<>(Arrays.asList("html", "table", "template")));
-        IMPLIED_END_TAGS = Collections.unmodifiableSet(
-                new HashSet<>(Arrays.asList("dd", "dt", "li", "option", "optgroup", "p", "rp", "rt")));
-        SPECIAL_ELEMENTS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList("address", "applet", "area",
-                "article", "aside", "base", "basefont", "bgsound", "blockquote", "body", "br", "button", "caption",
-                "center", "col", "colgroup", "dd", "details", "dir", "div", "dl", "dt", "embed", "fieldset",
-                "figcaption", "figure", "footer", "form", "frame", "frameset", "h1", "h2", "h3", "h4", "h5", "h6",
-                "head", "header", "hgroup", "hr", "html", "iframe", "img", "input", "isindex", "li", "link", "listing",
-                "main", "marquee", "menu", "menuitem", "meta", "nav", "noembed", "noframes", "noscript", "object", "ol",
-                "p", "param", "plaintext", "pre", "script", "section", "select", "source", "style", "summary", "table",
-                "tbody", "td", "template", "textarea", "tfoot", "th", "thead", "title", "tr", "track", "ul", "wbr",
-                "xmp")));
-        FORMATTING_ELEMENTS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList("a", "b", "big", "code", "em",
-                "font", "i", "nobr", "s", "small", "strike", "strong", "tt", "u")));
-    }
+    private static final int TABLE_SCOPE = ElementKind.TABLE_SCOPE;
     
     /**
      * All state should be saved in the parser. State needs to be shared across
@@ -222,6 +196,19 @@ public abstract class InsertionMode {
         return parser.isHTMLFragmentParsingAlgorithm();
     }
     
+    /**
+     * Returns whether there is a {@code template} element on the stack of
+     * open elements. The {@code template} element whose deferred contents
+     * are being parsed counts as one, since it would have been on the stack
+     * if its contents had not been deferred.
+     * 
+     * @return whether there is a {@code template} element on the stack
+     * @see Parser#isParsingTemplateContents()
+     */
+    protected boolean isTemplateOnStackOfOpenElements() {
+        return parser.isParsingTemplateContents() || isStackOfOpenElementsContains(ElementKind.TEMPLATE);
+    }
+    
     /**
      * Whether scripting is enabled for this parser.
      * <p>
@@ -412,128 +399,46 @@ public abstract class InsertionMode {
      * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#the-list-of-active-formatting-elements">8.2.3.3 The list of active formatting elements</a>
      */
     protected void reconstructActiveFormattingElements() {
-        final List<FormattingElement> listOfActiveFormattingElements = parser.listOfActiveFormattingElements;
-        if (listOfActiveFormattingElements.isEmpty()) {
+        final ActiveFormattingElements listOfActiveFormattingElements = parser.getListOfActiveFormattingElements();
+        final int size = listOfActiveFormattingElements.size();
+        if (size == 0) {
             return;
         }
-        final FormattingElement mostRecentlyAddedEntry = listOfActiveFormattingElements.get(listOfActiveFormattingElements.size() - 1);
-        if (parser.isMarker(mostRecentlyAddedEntry)) {
+        if (listOfActiveFormattingElements.isMarker(size - 1)) {
             return;
         }
-        if (parser.containsOpenElement(mostRecentlyAddedEntry.getValue())) {
+        if (parser.containsOpenElement(listOfActiveFormattingElements.getElement(size - 1))) {
             return;
         }
         
-        final ListIterator<FormattingElement> entryIter =
-                listOfActiveFormattingElements.listIterator(listOfActiveFormattingElements.size());
-        assert entryIter.hasPrevious();
-        FormattingElement entry = null;
-        while (entryIter.hasPrevious()) {
-            entry = entryIter.previous();
-            if (parser.isMarker(entry) || parser.containsOpenElement(entry.getValue())) {
-                entry = entryIter.next();
+        int index = size - 1;
+        while (index > 0) {
+            final int previous = index - 1;
+            if (listOfActiveFormattingElements.isMarker(previous)
+                    || parser.containsOpenElement(listOfActiveFormattingElements.getElement(previous))) {
                 break;
             }
+            index = previous;
         }
-        // entry is the first element to be re-opened
-        do {
-            final StartTagToken startTagToken = entry.getKey();
+        // index is the first element to be re-opened
+        for ( ; index < size; index++ ) {
+            final StartTagToken startTagToken = listOfActiveFormattingElements.get(index).getKey();
             final Element newElement = insertHTMLElement(startTagToken);
-            entryIter.set(new FormattingElement(startTagToken, newElement));
-            if ( !entryIter.hasNext()) {
-                return;
-            }
-            entry = entryIter.next();
-        } while (true);
+            listOfActiveFormattingElements.replaceElement(index, newElement);
+        }
     }
     
     /**
      * Resets the insertion mode appropriately based on the stack of open
      * elements.
      * 
+     * @see Parser#resetInsertionModeAppropriately()
      * @see <a href=
      *      "http://www.w3.org/TR/html5/syntax.html#reset-the-insertion-mode-appropriately">
      *      reset the insertion mode appropriately</a>
      */
     protected void resetInsertionModeAppropriately() {
-        for (int index = getStackOfOpenElementsSize() - 1; index >= 0; index-- ) {
-            final Element node = getOpenElement(index);
-            final boolean last = (index == 0);
-            // TODO: fragment -> context
-            if (isElementA(node, "select")) {
-                if (last) {
-                    setInsertionMode(Mode.IN_SELECT);
-                    return;
-                }
-                for (int ancestorIndex = index; ancestorIndex >= 0; ancestorIndex-- ) {
-                    final Element ancestor = getOpenElement(ancestorIndex);
-                    if (isElementA(ancestor, "template")) {
-                        break;
-                    }
-                    if (isElementA(ancestor, "table")) {
-                        setInsertionMode(Parser.Mode.IN_SELECT_IN_TABLE);
-                        return;
-                    }
-                }
-                setInsertionMode(Parser.Mode.IN_SELECT);
-                return;
-            }
-            if (isElementA(node, "td", "th") && !last) {
-                setInsertionMode(Mode.IN_CELL);
-                return;
-            }
-            if (isElementA(node, "tr")) {
-                setInsertionMode(Mode.IN_ROW);
-                return;
-            }
-            if (isElementA(node, "tbody", "thead", "tfoot")) {
-                setInsertionMode(Mode.IN_TABLE_BODY);
-                return;
-            }
-            if (isElementA(node, "caption")) {
-                setInsertionMode(Mode.IN_CAPTION);
-                return;
-            }
-            if (isElementA(node, "colgroup")) {
-                setInsertionMode(Mode.IN_COLUMN_GROUP);
-                return;
-            }
-            if (isElementA(node, "table")) {
-                setInsertionMode(Mode.IN_TABLE);
-                return;
-            }
-            if (isElementA(node, "template")) {
-                setInsertionMode(getCurrentTemplateInsertionMode());
-                return;
-            }
-            if (isElementA(node, "head") && !last) {
-                setInsertionMode(Mode.IN_HEAD);
-                return;
-            }
-            if (isElementA(node, "body")) {
-                setInsertionMode(Mode.IN_BODY);
-                return;
-            }
-            if (isElementA(node, "frameset")) {
-                setInsertionMode(Mode.IN_FRAMESET);
-                return;
-            }
-            if (isElementA(node, "html")) {
-                if (getHeadElementPointer() == null) {
-                    setInsertionMode(Mode.BEFORE_HEAD);
-                    return;
-                } else {
-                    setInsertionMode(Mode.AFTER_HEAD);
-                    return;
-                }
-            }
-            if (last) {
-                setInsertionMode(Mode.IN_BODY);
-                return;
-            }
-        }
-        assert false;
-        throw new IllegalStateException("Should have exited loop in the last check of the loop above.");
+        parser.resetInsertionModeAppropriately();
     }
     
     protected void setTokenizerState(final Tokenizer.State state) {
@@ -547,11 +452,7 @@ public abstract class InsertionMode {
      *      adjusted current node</a>
      */
     protected Element getAdjustedCurrentNode() {
-        if (getStackOfOpenElementsSize() == 1 && isHTMLFragmentParsingAlgorithm()) {
-            throw new UnsupportedOperationException();
-        } else {
-            return getCurrentNode();
-        }
+        return parser.getAdjustedCurrentNode();
     }
     
     /**
@@ -567,6 +468,38 @@ public abstract class InsertionMode {
         return parser.getCurrentOpenElement();
     }
     
+    /**
+     * Returns the kind of the current node.
+     * 
+     * @return the {@link ElementKind} of the current node
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#current-node">current node</a>
+     */
+    protected int getCurrentNodeKind() {
+        return parser.getCurrentOpenElementKind();
+    }
+    
+    /**
+     * Returns whether the current node is an HTML element of the given kind.
+     * 
+     * @param kind the {@link ElementKind} to check for
+     * @return {@code true} if the current node is of the given kind
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#current-node">current node</a>
+     */
+    protected boolean isCurrentNodeA(final int kind) {
+        return getCurrentNodeKind() == kind;
+    }
+    
+    /**
+     * Returns whether the current node belongs to any of the given categories.
+     * 
+     * @param category a bitwise OR of {@link ElementKind} category flags
+     * @return {@code true} if the current node is in one of the categories
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#current-node">current node</a>
+     */
+    protected boolean isCurrentNodeInCategory(final int category) {
+        return (parser.getCurrentOpenElementFlags() & category) != 0;
+    }
+    
     /**
      * Pops the current node.
      * <p>
@@ -606,8 +539,27 @@ public abstract class InsertionMode {
      * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#stack-of-open-elements">stack of open elements</a>
      */
     protected boolean isStackOfOpenElementsContains(final String tagName) {
-        for (final Element element : parser.getOpenElementsIterable()) {
-            if (isElementA(element, tagName)) {
+        final int kind = ElementKind.htmlKindOf(tagName);
+        if (ElementKind.isKnown(kind)) {
+            return isStackOfOpenElementsContains(kind);
+        }
+        for (int index = getStackOfOpenElementsSize() - 1; index >= 0; index-- ) {
+            if (isOpenElementA(index, kind, tagName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * @param kind the {@link ElementKind} to search for
+     * @return whether an element of the given kind is in the stack of open
+     *         elements
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#stack-of-open-elements">stack of open elements</a>
+     */
+    protected boolean isStackOfOpenElementsContains(final int kind) {
+        for (int index = getStackOfOpenElementsSize() - 1; index >= 0; index-- ) {
+            if (getOpenElementKind(index) == kind) {
                 return true;
             }
         }
@@ -655,15 +607,16 @@ public abstract class InsertionMode {
     }
     
     /**
-     * @param tagNames
-     * @return
+     * @param category a bitwise OR of {@link ElementKind} category flags
+     * @return whether the stack of open elements contains an element that is
+     *         in none of the given categories
      * @see <a href=
      *      "http://www.w3.org/TR/html5/syntax.html#stack-of-open-elements">
      *      stack of open elements</a>
      */
-    protected boolean isStackOfOpenElementsContainsOtherThan(final Collection<String> tagNames) {
-        for (final Element element : parser.getOpenElementsIterable()) {
-            if ( !isElementA(element, tagNames)) {
+    protected boolean isStackOfOpenElementsContainsOtherThan(final int category) {
+        for (int index = getStackOfOpenElementsSize() - 1; index >= 0; index-- ) {
+            if ( !ElementKind.isA(getOpenElementKind(index), category)) {
                 return true;
             }
         }
@@ -681,6 +634,38 @@ public abstract class InsertionMode {
         return parser.getOpenElement(index);
     }
     
+    /**
+     * @param index the index into the stack of open elements
+     * @return the {@link ElementKind} of the open element at the given index
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#stack-of-open-elements">stack of open elements</a>
+     */
+    protected int getOpenElementKind(final int index) {
+        return parser.getOpenElementKind(index);
+    }
+    
+    /**
+     * Returns whether the open element at the given index is an HTML element
+     * with the given tag name. The kind must be the result of
+     * {@link ElementKind#htmlKindOf(String)} for the tag name; it is passed in
+     * so that loops over the stack only look it up once.
+     * 
+     * @param index the index into the stack of open elements
+     * @param kind the {@link ElementKind} for the tag name
+     * @param tagName the tag name
+     * @return {@code true} if the open element is an HTML element with the tag
+     *         name
+     */
+    protected boolean isOpenElementA(final int index, final int kind, final String tagName) {
+        final int openElementKind = getOpenElementKind(index);
+        if (openElementKind != kind) {
+            return false;
+        }
+        if (ElementKind.isKnown(kind)) {
+            return true;
+        }
+        return tagName.equals(getOpenElement(index).getLocalName());
+    }
+    
     /**
      * Adds the element to the stack of open elements.
      * <p>
@@ -695,13 +680,24 @@ public abstract class InsertionMode {
         parser.pushOpenElement(element);
     }
     
+    /**
+     * Adds the element to the stack of open elements.
+     * 
+     * @param element the open element to add to the stack
+     * @param kind the {@link ElementKind} of the element
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#stack-of-open-elements">stack of open elements</a>
+     */
+    protected void addToStackOfOpenElements(final Element element, final int kind) {
+        parser.pushOpenElement(element, kind);
+    }
+    
     /**
      * @see <a href=
      *      "http://www.w3.org/TR/html5/syntax.html#clear-the-stack-back-to-a-table-context">
      *      clear the stack back to a table context</a>
      */
     protected void clearStackBackToTableContext() {
-        while (isElementA(getCurrentNode(), "table", "template", "html")) {
+        while ( !isCurrentNodeInCategory(ElementKind.TABLE_SCOPE)) {
             popCurrentNode();
         }
     }
@@ -712,7 +708,7 @@ public abstract class InsertionMode {
      *      clear the stack back to a table body context</a>
      */
     protected void clearStackBackToTableBodyContext() {
-        while (isElementA(getCurrentNode(), "tbody", "tfoot", "thead", "template", "html")) {
+        while ( !isCurrentNodeInCategory(ElementKind.TABLE_BODY_CONTEXT)) {
             popCurrentNode();
         }
     }
@@ -723,7 +719,7 @@ public abstract class InsertionMode {
      *      clear the stack back to a table row context</a>
      */
     protected void clearStackBackToTableRowContext() {
-        while (isElementA(getCurrentNode(), "tr", "template", "html")) {
+        while ( !isCurrentNodeInCategory(ElementKind.TABLE_ROW_CONTEXT)) {
             popCurrentNode();
         }
     }
@@ -768,14 +764,8 @@ public abstract class InsertionMode {
         return parser.getCurrentTemplateInsertionMode();
     }
     
-    protected boolean isListOfActiveFormattingElementsContainsAfterLastMarker(final String... tagNames) {
-        return isListOfActiveFormattingElementsContainsAfterLastMarker(Arrays.asList(tagNames));
-    }
-    
-    protected boolean isListOfActiveFormattingElementsContainsAfterLastMarker(final Collection<String> tagNames) {
-        throw new UnsupportedOperationException();
-        // TODO: ??
-//        return false;
+    protected boolean isListOfActiveFormattingElementsContainsAfterLastMarker(final String tagName) {
+        return parser.getListOfActiveFormattingElements().lastIndexOfTagNameAfterLastMarker(tagName) != -1;
     }
     
     /**
@@ -824,18 +814,30 @@ public abstract class InsertionMode {
      *      space characters</a>
      */
     protected boolean isPendingTableCharacterTokensListContainsCharactersThatAreNotSpaceCharacters() {
-        // TODO
-        throw new UnsupportedOperationException();
+        return parser.isPendingTableCharactersContainNonSpace();
     }
     
-    protected List<CharacterToken> getPendingTableCharacterTokens() {
-        // TODO
-        throw new UnsupportedOperationException();
+    /**
+     * Returns the characters of the pending table character tokens.
+     * 
+     * @return the pending table characters
+     * @see <a href=
+     *      "http://www.w3.org/TR/html5/syntax.html#pending-table-character-tokens">
+     *      pending table character tokens</a>
+     */
+    protected String getPendingTableCharacters() {
+        return parser.getPendingTableCharacters();
     }
     
+    /**
+     * Lets the pending table character tokens be an empty list.
+     * 
+     * @see <a href=
+     *      "http://www.w3.org/TR/html5/syntax.html#pending-table-character-tokens">
+     *      pending table character tokens</a>
+     */
     protected void setPendingTableCharacterTokens() {
-        // TODO
-        throw new UnsupportedOperationException();
+        parser.clearPendingTableCharacters();
     }
     
     /**
@@ -845,8 +847,7 @@ public abstract class InsertionMode {
      *      pending table character tokens</a>
      */
     protected void appendToPendingTableCharacterTokens(final CharacterToken characterToken) {
-        // TODO
-        throw new UnsupportedOperationException();
+        parser.appendToPendingTableCharacters(characterToken.getCharacter());
     }
     
     /**
@@ -939,20 +940,33 @@ public abstract class InsertionMode {
         
         final InsertionPosition adjustedInsertionLocation;
         
-        final Set<String> tableContainers = new HashSet<>(Arrays.asList("table", "tbody", "tfoot", "thead", "tr"));
         if (isFosterParentingEnabled() && target.getNodeType() == Node.ELEMENT_NODE
-                && tableContainers.contains(target.getNodeName())) {
-            // find last template in stack of open elements
-            // find last table in stack of open elements
-            throw new UnsupportedOperationException();
+                && ElementKind.isA(ElementKind.of((Element) target), ElementKind.TABLE_CONTAINER)) {
+            final int lastTemplateIndex = parser.getIndexOfLastOpenTemplate();
+            final int lastTableIndex = parser.getIndexOfLastOpenTable();
+            if (lastTemplateIndex != -1 && (lastTableIndex == -1 || lastTemplateIndex > lastTableIndex)) {
+                adjustedInsertionLocation = new AfterLastChildInsertionPosition(parser.getOpenElement(lastTemplateIndex));
+            } else if (lastTableIndex == -1) {
+                // fragment case
+                adjustedInsertionLocation = new AfterLastChildInsertionPosition(parser.getOpenElement(0));
+            } else {
+                final Element lastTable = parser.getOpenElement(lastTableIndex);
+                final Node parentNode = lastTable.getParentNode();
+                if (parentNode != null) {
+                    adjustedInsertionLocation = new InsertBeforeSiblingInsertionPosition(parentNode, lastTable);
+                } else {
+                    final Element previousElement = parser.getOpenElement(lastTableIndex - 1);
+                    adjustedInsertionLocation = new AfterLastChildInsertionPosition(previousElement);
+                }
+            }
         } else {
             adjustedInsertionLocation = new AfterLastChildInsertionPosition(target);
         }
         
-        if (adjustedInsertionLocation.getContainingNode().getNodeType() == Node.ELEMENT_NODE
-                && adjustedInsertionLocation.getContainingNode().getNodeName().equals("template")) {
-            // return position inside "template contents", after last child
-            throw new UnsupportedOperationException();
+        final Node containingNode = adjustedInsertionLocation.getContainingNode();
+        if (containingNode.getNodeType() == Node.ELEMENT_NODE
+                && ElementKind.of((Element) containingNode) == ElementKind.TEMPLATE) {
+            return new AfterLastChildInsertionPosition(TemplateContents.getTemplateContents((Element) containingNode));
         } else {
             return adjustedInsertionLocation;
         }
@@ -997,7 +1011,17 @@ public abstract class InsertionMode {
      * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#insert-a-character">insert a character</a>
      */
     protected void insertCharacter(final char character) {
-        final String data = String.valueOf(character);
+        insertCharacters(String.valueOf(character));
+    }
+    
+    /**
+     * Inserts several characters at once. This is the same as inserting each
+     * character in turn, as long as nothing else is inserted in between.
+     * 
+     * @param data the characters to insert
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#insert-a-character">insert a character</a>
+     */
+    protected void insertCharacters(final String data) {
         final InsertionPosition adjustedInsertionLocation = getAppropriatePlaceForInsertingNode();
         if (adjustedInsertionLocation.getContainingNode().getNodeType() == Node.DOCUMENT_NODE) {
             // abort
@@ -1094,20 +1118,39 @@ public abstract class InsertionMode {
     protected Element createElementForToken(final StartTagToken startTagToken, final String givenNamespace,
             final Node intendedParent) {
         final Document document = intendedParent.getOwnerDocument();
-        final Element element = document.createElementNS(givenNamespace, startTagToken.getTagName());
-        for (final TagToken.Attribute attribute : startTagToken.getAttributes()) {
-            final String name = attribute.getName();
-            final String value = attribute.getValue();
-            element.setAttribute(name, value);
+        final Element element;
+        final int kind;
+        final ElementFactory elementFactory = parser.getElementFactory();
+        if (elementFactory.getDocument() == document) {
+            final ElementFactory.Prototype prototype = elementFactory.getPrototype(givenNamespace, startTagToken.getTagName());
+            element = prototype.newElement();
+            elementFactory.setAttributes(element, startTagToken.getAttributes());
+            kind = prototype.getKind();
+        } else {
+            element = document.createElementNS(givenNamespace, startTagToken.getTagName());
+            for (final TagToken.Attribute attribute : startTagToken.getAttributes()) {
+                final String name = attribute.getName();
+                final String value = attribute.getValue();
+                final String namespace = attribute.getNamespace();
+                if (namespace == null) {
+                    element.setAttribute(name, value);
+                } else {
+                    element.setAttributeNS(namespace, name, value);
+                }
+            }
+            kind = ElementKind.kindOf(givenNamespace, startTagToken.getTagName());
         }
+        final int flags = ElementKind.getFlags(kind);
+        indexElement(element, kind);
+        startSourceRange(element, startTagToken);
         // check for xmlns attribute
         // check for xmlns:xlink attribute
-        if (isResettable(element)) {
+        if ((flags & ElementKind.RESETTABLE) != 0) {
             invokeResetAlgorithm(element);
         }
         // check if form-associated element
-        if (isFormAssociatedElement(element) && getFormElementPointer() != null
-                && !isStackOfOpenElementsContains("template")) {
+        if ((flags & ElementKind.FORM_ASSOCIATED) != 0 && getFormElementPointer() != null
+                && !isTemplateOnStackOfOpenElements()) {
             // check not reassociateable or no form attribute
             // check intended parent in same home subtree as form pointer
             // associate with form
@@ -1115,6 +1158,82 @@ public abstract class InsertionMode {
         return element;
     }
     
+    /**
+     * Adds a newly created element to the element index, if the parser keeps
+     * one. Elements in template contents are not part of the document, so
+     * they are not indexed.
+     * 
+     * @param element the new element
+     * @param kind the kind of the element
+     * @see Parser#setIndexElements(boolean)
+     */
+    protected void indexElement(final Element element, final int kind) {
+        final ElementIndex elementIndex = parser.getElementIndex();
+        if (elementIndex != null && parser.getIndexOfLastOpenTemplate() == -1) {
+            elementIndex.add(element, kind);
+        }
+    }
+    
+    /**
+     * Records an attribute added to an element after it was created in the
+     * element index, if the parser keeps one.
+     * 
+     * @param element the element
+     * @param name the attribute name
+     * @param value the attribute value
+     * @see Parser#setIndexElements(boolean)
+     */
+    protected void indexAttribute(final Element element, final String name, final String value) {
+        final ElementIndex elementIndex = parser.getElementIndex();
+        if (elementIndex != null) {
+            elementIndex.addAttribute(element, name, value);
+        }
+    }
+    
+    /**
+     * Ignores the next token if it is a "LF" (U+000A) character token.
+     * 
+     * @see Parser#ignoreNextLineFeed()
+     */
+    protected void ignoreNextLineFeed() {
+        parser.ignoreNextLineFeed();
+    }
+    
+    /**
+     * Records the start of the source range of a newly created element, if
+     * the parser records source ranges.
+     * 
+     * @param element the new element
+     * @param token the token the element was created for
+     * @see Parser#startSourceRange(Element, Token)
+     */
+    protected void startSourceRange(final Element element, final Token token) {
+        parser.startSourceRange(element, token);
+    }
+    
+    /**
+     * Records the end of the source range of an element that stays on the
+     * stack of open elements, such as the {@code body} element when its end
+     * tag is seen. Elements popped from the stack are handled by the parser.
+     * 
+     * @param element the element
+     * @see Parser#endSourceRange(Element)
+     */
+    protected void endSourceRange(final Element element) {
+        parser.endSourceRange(element);
+    }
+    
+    /**
+     * Forgets the end of the source range of an element that content is being
+     * inserted into again.
+     * 
+     * @param element the element
+     * @see Parser#reopenSourceRange(Element)
+     */
+    protected void reopenSourceRange(final Element element) {
+        parser.reopenSourceRange(element);
+    }
+    
     /**
      * Inserts a foreign element.
      * <p>
@@ -1140,7 +1259,7 @@ public abstract class InsertionMode {
         } catch (final RuntimeException e) {
             // drop it on the floor
         }
-        addToStackOfOpenElements(element);
+        addToStackOfOpenElements(element, ElementKind.kindOf(givenNamespace, startTagToken.getTagName()));
         
         assert getCurrentNode() == element;
         
@@ -1169,7 +1288,7 @@ public abstract class InsertionMode {
 //        }
         return element;
     }
-
+    
     /**
      * Inserts an HTML element.
      * <p>
@@ -1189,25 +1308,27 @@ public abstract class InsertionMode {
     }
     
     /**
+     * @param excludedTag the tag name that should not be closed
      * @see <a href=
      *      "http://www.w3.org/TR/html5/syntax.html#generate-implied-end-tags">
      *      generate implied end tags</a>
      */
-    protected void generateImpliedEndTagsExcept(final Collection<String> excludedTags) {
-        final Set<String> implied = new HashSet<>(IMPLIED_END_TAGS);
-        implied.removeAll(excludedTags);
-        while (implied.contains(getCurrentNode().getTagName())) {
-            popCurrentNode();
-        }
+    protected void generateImpliedEndTagsExcept(final String excludedTag) {
+        generateImpliedEndTagsExcept(ElementKind.htmlKindOf(excludedTag));
     }
     
     /**
+     * @param excludedKind the {@link ElementKind} that should not be closed
      * @see <a href=
      *      "http://www.w3.org/TR/html5/syntax.html#generate-implied-end-tags">
      *      generate implied end tags</a>
      */
-    protected void generateImpliedEndTagsExcept(final String... excludedTags) {
-        generateImpliedEndTagsExcept(Arrays.asList(excludedTags));
+    protected void generateImpliedEndTagsExcept(final int excludedKind) {
+        int kind = getCurrentNodeKind();
+        while (kind != excludedKind && ElementKind.isA(kind, ElementKind.IMPLIED_END_TAG)) {
+            popCurrentNode();
+            kind = getCurrentNodeKind();
+        }
     }
     
     /**
@@ -1216,7 +1337,7 @@ public abstract class InsertionMode {
      *      generate implied end tags</a>
      */
     protected void generateImpliedEndTags() {
-        while (IMPLIED_END_TAGS.contains(getCurrentNode().getTagName())) {
+        while (isCurrentNodeInCategory(ElementKind.IMPLIED_END_TAG)) {
             popCurrentNode();
         }
     }
@@ -1227,7 +1348,7 @@ public abstract class InsertionMode {
      */
     protected void closeCell() {
         generateImpliedEndTags();
-        if ( !isElementA(getCurrentNode(), "td", "th")) {
+        if ( !isCurrentNodeInCategory(ElementKind.TABLE_CELL)) {
             if (isAllowParseErrors()) {
                 // do nothing?
             } else {
@@ -1236,10 +1357,7 @@ public abstract class InsertionMode {
             }
         }
         // pop stack until popped "td" or "th"
-        Element popped;
-        do {
-            popped = popCurrentNode();
-        } while ( !isElementA(popped, "td", "th"));
+        popElementsUntilPoppedCategory(ElementKind.TABLE_CELL);
         clearListOfActiveFormattingElementsUpToLastMarker();
         setInsertionMode(Parser.Mode.IN_ROW);
     }
@@ -1293,8 +1411,12 @@ public abstract class InsertionMode {
      *      adjust MathML attributes</a>
      */
     protected void adjustMathMLAttributes(final StartTagToken startTagToken) {
-        // TODO
-        throw new UnsupportedOperationException();
+        for (final TagToken.Attribute attribute : startTagToken.getAttributes()) {
+            final String adjustedName = ForeignNames.adjustMathMLAttributeName(attribute.getName());
+            if (adjustedName != null) {
+                attribute.setName(adjustedName);
+            }
+        }
     }
     
     /**
@@ -1304,8 +1426,12 @@ public abstract class InsertionMode {
      *      adjust foreign attributes</a>
      */
     protected void adjustForeignAttributes(final StartTagToken startTagToken) {
-        // TODO
-        throw new UnsupportedOperationException();
+        for (final TagToken.Attribute attribute : startTagToken.getAttributes()) {
+            final String namespace = ForeignNames.getForeignAttributeNamespace(attribute.getName());
+            if (namespace != null) {
+                attribute.setNamespace(namespace);
+            }
+        }
     }
     
     /**
@@ -1315,25 +1441,33 @@ public abstract class InsertionMode {
      *      adjust SVG attributes</a>
      */
     protected void adjustSVGAttributes(final StartTagToken startTagToken) {
-        // TODO
-        throw new UnsupportedOperationException();
+        for (final TagToken.Attribute attribute : startTagToken.getAttributes()) {
+            final String adjustedName = ForeignNames.adjustSVGAttributeName(attribute.getName());
+            if (adjustedName != null) {
+                attribute.setName(adjustedName);
+            }
+        }
     }
     
     /**
-     * @param target
-     * @param elementTypes
-     * @return
+     * Returns whether the stack of open elements has an HTML element with the
+     * given tag name in a specific scope.
+     * 
+     * @param target the tag name of the target node
+     * @param scope a bitwise OR of the {@link ElementKind} category flags
+     *            that bound the scope
+     * @return {@code true} if the target is in scope
      * @see <a href=
      *      "http://www.w3.org/TR/html5/syntax.html#has-an-element-in-the-specific-scope">
      *      have an element <var>target node</var> in a specific scope</a>
      */
-    protected boolean hasElementInScope(final String target, final Collection<String> elementTypes) {
+    protected boolean hasElementInScope(final String target, final int scope) {
+        final int kind = ElementKind.htmlKindOf(target);
         for (int index = getStackOfOpenElementsSize() - 1; index >= 0; index-- ) {
-            final Element node = getOpenElement(index);
-            if (isElementA(node, target)) {
+            if (isOpenElementA(index, kind, target)) {
                 return true;
             }
-            if (isElementA(node, elementTypes)) {
+            if (ElementKind.isA(getOpenElementKind(index), scope)) {
                 return false;
             }
         }
@@ -1341,15 +1475,29 @@ public abstract class InsertionMode {
     }
     
     /**
-     * @param target
-     * @param elementTypes
-     * @return
+     * Returns whether the stack of open elements has an element of any of the
+     * given target categories in a specific scope.
+     * 
+     * @param targets a bitwise OR of {@link ElementKind} category flags
+     *            identifying the target nodes
+     * @param scope a bitwise OR of the {@link ElementKind} category flags
+     *            that bound the scope
+     * @return {@code true} if a target is in scope
      * @see <a href=
      *      "http://www.w3.org/TR/html5/syntax.html#has-an-element-in-the-specific-scope">
      *      have an element <var>target node</var> in a specific scope</a>
      */
-    protected boolean hasElementInScope(final String target, final String... elementTypes) {
-        return hasElementInScope(target, Arrays.asList(elementTypes));
+    protected boolean hasElementOfCategoryInScope(final int targets, final int scope) {
+        for (int index = getStackOfOpenElementsSize() - 1; index >= 0; index-- ) {
+            final int kind = getOpenElementKind(index);
+            if (ElementKind.isA(kind, targets)) {
+                return true;
+            }
+            if (ElementKind.isA(kind, scope)) {
+                return false;
+            }
+        }
+        throw new ParseErrorException("Should have found an html element in the stack of open elements.");
     }
     
     /**
@@ -1383,18 +1531,58 @@ public abstract class InsertionMode {
      *      have a particular element in select scope</a>
      */
     protected boolean hasParticularElementInSelectScope(final String target) {
+        final int kind = ElementKind.htmlKindOf(target);
         for (int index = getStackOfOpenElementsSize() - 1; index >= 0; index-- ) {
-            final Element node = getOpenElement(index);
-            if (isElementA(node, target)) {
+            if (isOpenElementA(index, kind, target)) {
                 return true;
             }
-            if ( !isElementA(node, "option", "optgroup")) {
+            if ( !ElementKind.isA(getOpenElementKind(index), ElementKind.SELECT_OPTION)) {
                 return false;
             }
         }
         throw new ParseErrorException("Should have found an html element in the stack of open elements.");
     }
     
+    /**
+     * Pops elements from the stack of open elements until an HTML element with
+     * the given tag name has been popped.
+     * 
+     * @param tagName the tag name of the last element to pop
+     */
+    protected void popElementsUntilPopped(final String tagName) {
+        final int kind = ElementKind.htmlKindOf(tagName);
+        while ( !isOpenElementA(getStackOfOpenElementsSize() - 1, kind, tagName)) {
+            popCurrentNode();
+        }
+        popCurrentNode();
+    }
+    
+    /**
+     * Pops elements from the stack of open elements until an element of the
+     * given kind has been popped.
+     * 
+     * @param kind the {@link ElementKind} of the last element to pop
+     */
+    protected void popElementsUntilPopped(final int kind) {
+        while (getCurrentNodeKind() != kind) {
+            popCurrentNode();
+        }
+        popCurrentNode();
+    }
+    
+    /**
+     * Pops elements from the stack of open elements until an element in any of
+     * the given categories has been popped.
+     * 
+     * @param category a bitwise OR of {@link ElementKind} category flags
+     */
+    protected void popElementsUntilPoppedCategory(final int category) {
+        while ( !isCurrentNodeInCategory(category)) {
+            popCurrentNode();
+        }
+        popCurrentNode();
+    }
+    
     /**
      * Acknowledges the token's self-closing flag, if set.
      * <p>
@@ -1417,26 +1605,22 @@ public abstract class InsertionMode {
         return isElementA(element, Arrays.asList(tagNames));
     }
     
-    protected boolean isSpecialCategory(final Element element) {
-        return isElementA(element, SPECIAL_ELEMENTS);
-    }
-    
-    protected boolean isSpecialCategory(final String tagName) {
-        return SPECIAL_ELEMENTS.contains(tagName);
-    }
-    
-    protected boolean isSpecialCategoryExcept(final String tagName, final Collection<String> excluded) {
-        final Set<String> set = new HashSet<>(SPECIAL_ELEMENTS);
-        set.removeAll(excluded);
-        return set.contains(tagName);
-    }
-    
-    protected boolean isSpecialCategoryExcept(final String tagName, final String... excluded) {
-        return isSpecialCategoryExcept(tagName, Arrays.asList(excluded));
+    /**
+     * @param kind the {@link ElementKind} of an element
+     * @return whether the element is in the special category
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#special">special</a>
+     */
+    protected boolean isSpecialCategory(final int kind) {
+        return ElementKind.isA(kind, ElementKind.SPECIAL);
     }
     
-    protected boolean isFormattingCategory(final String tagName) {
-        return FORMATTING_ELEMENTS.contains(tagName);
+    /**
+     * @param kind the {@link ElementKind} of an element
+     * @return whether the element is in the formatting category
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#formatting">formatting</a>
+     */
+    protected boolean isFormattingCategory(final int kind) {
+        return ElementKind.isA(kind, ElementKind.FORMATTING);
     }
     
     /**
@@ -1456,24 +1640,7 @@ public abstract class InsertionMode {
      * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/forms.html#category-reset">Resettable elements</a>
      */
     protected boolean isResettable(final Element element) {
-        final String namespaceURI = element.getNamespaceURI();
-        final String localName = element.getLocalName();
-        if (HTML_NAMESPACE.equals(namespaceURI)) {
-            switch (localName) {
-            case "input": // fall through
-            case "keygen": // fall through
-            case "output": // fall through
-            case "select": // fall through
-            case "textarea": {
-                return true;
-            }
-            default: {
-                return false;
-            }
-            }
-        } else {
-            return false;
-        }
+        return ElementKind.isA(ElementKind.of(element), ElementKind.RESETTABLE);
     }
     
     /**
@@ -1483,12 +1650,17 @@ public abstract class InsertionMode {
      * <p>
      * Each resettable element defines its own reset algorithm. Changes made to form controls as part of these algorithms do not count as changes caused by the user (and thus, e.g., do not cause input events to fire).
      * 
-     * @param element
+     * <p>
+     * The reset algorithms only initialize the value, checkedness, and
+     * selectedness of form controls. The W3C DOM has no representation for
+     * that state apart from the attributes themselves, so there is nothing to
+     * do here.
+     * 
+     * @param element the resettable element
      * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/forms.html#concept-form-reset-control">4.10.23 Resetting a form</a>
      */
     protected void invokeResetAlgorithm(final Element element) {
-        // TODO
-        throw new UnsupportedOperationException();
+        // the W3C DOM does not model the state the reset algorithms initialize
     }
     
     /**
@@ -1513,28 +1685,7 @@ public abstract class InsertionMode {
      * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/forms.html#form-associated-element">form-associated elements</a>
      */
     protected boolean isFormAssociatedElement(final Element element) {
-        final String namespaceURI = element.getNamespaceURI();
-        final String localName = element.getLocalName();
-        if (HTML_NAMESPACE.equals(namespaceURI)) {
-            switch (localName) {
-            case "button": // fall through
-            case "fieldset": // fall through
-            case "input": // fall through
-            case "keygen": // fall through
-            case "label": // fall through
-            case "object": // fall through
-            case "output": // fall through
-            case "select": // fall through
-            case "textarea": // fall through
-            case "img": {
-                return true;
-            }
-            default: {
-                return false;
-            }
-            }
-        }
-        return false;
+        return ElementKind.isA(ElementKind.of(element), ElementKind.FORM_ASSOCIATED);
     }
     
     /**
@@ -1558,27 +1709,7 @@ public abstract class InsertionMode {
      * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/forms.html#category-form-attr">Reassociateable elements</a>
      */
     protected boolean isReassociateableElement(final Element element) {
-        final String namespaceURI = element.getNamespaceURI();
-        final String localName = element.getLocalName();
-        if (HTML_NAMESPACE.equals(namespaceURI)) {
-            switch (localName) {
-            case "button": // fall through
-            case "fieldset": // fall through
-            case "input": // fall through
-            case "keygen": // fall through
-            case "label": // fall through
-            case "object": // fall through
-            case "output": // fall through
-            case "select": // fall through
-            case "textarea": {
-                return true;
-            }
-            default: {
-                return false;
-            }
-            }
-        }
-        return false;
+        return ElementKind.isA(ElementKind.of(element), ElementKind.REASSOCIATEABLE);
     }
     
     protected TagToken.Attribute getAttributeNamed(final StartTagToken startTagToken, final String attributeName) {
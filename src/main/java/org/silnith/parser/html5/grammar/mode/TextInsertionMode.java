@@ -4,6 +4,7 @@ import static org.silnith.parser.util.UnicodeCodePoints.NULL;
 
 import org.silnith.parser.ParseErrorException;
 import org.silnith.parser.html5.Parser;
+import org.silnith.parser.html5.grammar.element.ElementKind;
 import org.silnith.parser.html5.lexical.token.CharacterToken;
 import org.silnith.parser.html5.lexical.token.EndTagToken;
 import org.silnith.parser.html5.lexical.token.Token;
@@ -101,9 +102,8 @@ public class TextInsertionMode extends InsertionMode {
         } // break;
         case END_TAG: {
             final EndTagToken endTagToken = (EndTagToken) token;
-            final String tagName = endTagToken.getTagName();
-            switch (tagName) {
-            case "script": {
+            switch (endTagToken.getTagKind()) {
+            case ElementKind.SCRIPT: {
                 // do lots and lots and lots of shit
                 // if stack of script settings is empty, perform a microtask
 // checkpoint
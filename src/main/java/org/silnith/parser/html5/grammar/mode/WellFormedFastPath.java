@@ -0,0 +1,331 @@
+package org.silnith.parser.html5.grammar.mode;
+
+import static org.silnith.parser.util.UnicodeCodePoints.CARRIAGE_RETURN;
+import static org.silnith.parser.util.UnicodeCodePoints.CHARACTER_TABULATION;
+import static org.silnith.parser.util.UnicodeCodePoints.FORM_FEED;
+import static org.silnith.parser.util.UnicodeCodePoints.LINE_FEED;
+import static org.silnith.parser.util.UnicodeCodePoints.NULL;
+import static org.silnith.parser.util.UnicodeCodePoints.SPACE;
+
+import org.silnith.parser.html5.ActiveFormattingElements;
+import org.silnith.parser.html5.Parser;
+import org.silnith.parser.html5.grammar.element.ElementKind;
+import org.silnith.parser.html5.lexical.token.CharacterToken;
+import org.silnith.parser.html5.lexical.token.CommentToken;
+import org.silnith.parser.html5.lexical.token.EndTagToken;
+import org.silnith.parser.html5.lexical.token.StartTagToken;
+import org.silnith.parser.html5.lexical.token.Token;
+
+
+/**
+ * A speculative fast path for the "in body" insertion mode that handles the
+ * tokens of properly nested markup with as little work as possible.
+ * <p>
+ * Most of the work the {@link InBodyInsertionMode} does for a token is there
+ * to recover from misnested markup: scope checks, generating implied end
+ * tags, and the adoption agency algorithm. For a start tag that is inserted as
+ * is, or an end tag that matches the current node, none of that changes the
+ * outcome. This mode recognizes those tokens and applies their effect
+ * directly. Any other token is declined, and the parser hands it to the full
+ * insertion mode instead.
+ * <p>
+ * There is no state of its own to hand over. This mode works on the stack of
+ * open elements and the list of active formatting elements kept by the
+ * {@link Parser}, so the full insertion modes always see exactly the state
+ * they would have built themselves, and the fast path picks up again with the
+ * next token it recognizes.
+ * <p>
+ * Unlike the other insertion modes, a return value of {@code false} from
+ * {@link #insert(Token)} does not mean the token needs to be reprocessed in
+ * this mode, it means the token was not handled at all.
+ *
+ * @see Parser#setWellFormedFastPath(boolean)
+ * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#parsing-main-inbody">8.2.5.4.7 The "in body" insertion mode</a>
+ * @author <a href="mailto:silnith@gmail.com">Kent Rosenkoetter</a>
+ */
+public class WellFormedFastPath extends InsertionMode {
+    
+    /**
+     * The value returned when a token is left for the full insertion mode.
+     */
+    private static final boolean DECLINE_TOKEN = false;
+    
+    public WellFormedFastPath(final Parser parser) {
+        super(parser);
+    }
+    
+    /**
+     * Handles the token if it is one that properly nested markup produces and
+     * its effect does not depend on any error recovery.
+     * 
+     * @param token the token to insert into the document
+     * @return {@code true} if the token was handled, {@code false} if it must
+     *         be processed by the full "in body" insertion mode
+     */
+    @Override
+    public boolean insert(final Token token) {
+        switch (token.getType()) {
+        case CHARACTER: {
+            final char character = ((CharacterToken) token).getCharacter();
+            switch (character) {
+            case NULL: {
+                return DECLINE_TOKEN;
+            } // break;
+            case CHARACTER_TABULATION: // fall through
+            case LINE_FEED: // fall through
+            case FORM_FEED: // fall through
+            case CARRIAGE_RETURN: // fall through
+            case SPACE: {
+                reconstructActiveFormattingElements();
+                insertCharacter(character);
+                return TOKEN_HANDLED;
+            } // break;
+            default: {
+                reconstructActiveFormattingElements();
+                insertCharacter(character);
+                setFramesetOKFlag(NOT_OK);
+                return TOKEN_HANDLED;
+            } // break;
+            }
+        } // break;
+        case COMMENT: {
+            insertComment((CommentToken) token);
+            return TOKEN_HANDLED;
+        } // break;
+        case START_TAG: {
+            return startTag((StartTagToken) token);
+        } // break;
+        case END_TAG: {
+            return endTag((EndTagToken) token);
+        } // break;
+        default: {
+            return DECLINE_TOKEN;
+        } // break;
+        }
+    }
+    
+    private boolean startTag(final StartTagToken startTagToken) {
+        switch (startTagToken.getTagKind()) {
+        case ElementKind.ADDRESS: // fall through
+        case ElementKind.ARTICLE: // fall through
+        case ElementKind.ASIDE: // fall through
+        case ElementKind.BLOCKQUOTE: // fall through
+        case ElementKind.CENTER: // fall through
+        case ElementKind.DETAILS: // fall through
+        case ElementKind.DIALOG: // fall through
+        case ElementKind.DIR: // fall through
+        case ElementKind.DIV: // fall through
+        case ElementKind.DL: // fall through
+        case ElementKind.FIELDSET: // fall through
+        case ElementKind.FIGCAPTION: // fall through
+        case ElementKind.FIGURE: // fall through
+        case ElementKind.FOOTER: // fall through
+        case ElementKind.HEADER: // fall through
+        case ElementKind.HGROUP: // fall through
+        case ElementKind.MAIN: // fall through
+        case ElementKind.MENU: // fall through
+        case ElementKind.NAV: // fall through
+        case ElementKind.OL: // fall through
+        case ElementKind.P: // fall through
+        case ElementKind.SECTION: // fall through
+        case ElementKind.SUMMARY: // fall through
+        case ElementKind.UL: {
+            if (hasParticularElementInButtonScope("p")) {
+                return DECLINE_TOKEN;
+            }
+            insertHTMLElement(startTagToken);
+            return TOKEN_HANDLED;
+        } // break;
+        case ElementKind.H1: // fall through
+        case ElementKind.H2: // fall through
+        case ElementKind.H3: // fall through
+        case ElementKind.H4: // fall through
+        case ElementKind.H5: // fall through
+        case ElementKind.H6: {
+            if (isCurrentNodeInCategory(ElementKind.HEADING) || hasParticularElementInButtonScope("p")) {
+                return DECLINE_TOKEN;
+            }
+            insertHTMLElement(startTagToken);
+            return TOKEN_HANDLED;
+        } // break;
+        case ElementKind.B: // fall through
+        case ElementKind.BIG: // fall through
+        case ElementKind.CODE: // fall through
+        case ElementKind.EM: // fall through
+        case ElementKind.FONT: // fall through
+        case ElementKind.I: // fall through
+        case ElementKind.S: // fall through
+        case ElementKind.SMALL: // fall through
+        case ElementKind.STRIKE: // fall through
+        case ElementKind.STRONG: // fall through
+        case ElementKind.TT: // fall through
+        case ElementKind.U: {
+            reconstructActiveFormattingElements();
+            pushOntoListOfActiveFormattingElements(startTagToken, insertHTMLElement(startTagToken));
+            return TOKEN_HANDLED;
+        } // break;
+        case ElementKind.AREA: // fall through
+        case ElementKind.BR: // fall through
+        case ElementKind.EMBED: // fall through
+        case ElementKind.IMG: // fall through
+        case ElementKind.KEYGEN: // fall through
+        case ElementKind.WBR: {
+            reconstructActiveFormattingElements();
+            insertHTMLElement(startTagToken);
+            popCurrentNode();
+            acknowledgeTokenSelfClosingFlag(startTagToken);
+            setFramesetOKFlag(NOT_OK);
+            return TOKEN_HANDLED;
+        } // break;
+        case ElementKind.HR: {
+            if (hasParticularElementInButtonScope("p")) {
+                return DECLINE_TOKEN;
+            }
+            insertHTMLElement(startTagToken);
+            popCurrentNode();
+            acknowledgeTokenSelfClosingFlag(startTagToken);
+            setFramesetOKFlag(NOT_OK);
+            return TOKEN_HANDLED;
+        } // break;
+        case ElementKind.HTML_UNKNOWN: // fall through
+        case ElementKind.ABBR: // fall through
+        case ElementKind.AUDIO: // fall through
+        case ElementKind.BDI: // fall through
+        case ElementKind.BDO: // fall through
+        case ElementKind.CANVAS: // fall through
+        case ElementKind.CITE: // fall through
+        case ElementKind.DATA: // fall through
+        case ElementKind.DEL: // fall through
+        case ElementKind.DFN: // fall through
+        case ElementKind.INS: // fall through
+        case ElementKind.KBD: // fall through
+        case ElementKind.LABEL: // fall through
+        case ElementKind.MARK: // fall through
+        case ElementKind.Q: // fall through
+        case ElementKind.SAMP: // fall through
+        case ElementKind.SPAN: // fall through
+        case ElementKind.SUB: // fall through
+        case ElementKind.SUP: // fall through
+        case ElementKind.TIME: // fall through
+        case ElementKind.VAR: // fall through
+        case ElementKind.VIDEO: {
+            reconstructActiveFormattingElements();
+            insertHTMLElement(startTagToken);
+            return TOKEN_HANDLED;
+        } // break;
+        default: {
+            return DECLINE_TOKEN;
+        } // break;
+        }
+    }
+    
+    /**
+     * Handles an end tag that matches the current node. Each of the end tags
+     * handled here ends up popping exactly the current node when it matches,
+     * because the current node is always in scope and is never removed by
+     * generating implied end tags.
+     */
+    private boolean endTag(final EndTagToken endTagToken) {
+        final int kind = endTagToken.getTagKind();
+        final int currentNodeIndex = getStackOfOpenElementsSize() - 1;
+        if ( !isOpenElementA(currentNodeIndex, kind, endTagToken.getTagName())) {
+            return DECLINE_TOKEN;
+        }
+        switch (kind) {
+        case ElementKind.ADDRESS: // fall through
+        case ElementKind.ARTICLE: // fall through
+        case ElementKind.ASIDE: // fall through
+        case ElementKind.BLOCKQUOTE: // fall through
+        case ElementKind.BUTTON: // fall through
+        case ElementKind.CENTER: // fall through
+        case ElementKind.DETAILS: // fall through
+        case ElementKind.DIALOG: // fall through
+        case ElementKind.DIR: // fall through
+        case ElementKind.DIV: // fall through
+        case ElementKind.DL: // fall through
+        case ElementKind.FIELDSET: // fall through
+        case ElementKind.FIGCAPTION: // fall through
+        case ElementKind.FIGURE: // fall through
+        case ElementKind.FOOTER: // fall through
+        case ElementKind.HEADER: // fall through
+        case ElementKind.HGROUP: // fall through
+        case ElementKind.LISTING: // fall through
+        case ElementKind.MAIN: // fall through
+        case ElementKind.MENU: // fall through
+        case ElementKind.NAV: // fall through
+        case ElementKind.OL: // fall through
+        case ElementKind.PRE: // fall through
+        case ElementKind.SECTION: // fall through
+        case ElementKind.SUMMARY: // fall through
+        case ElementKind.UL: // fall through
+        case ElementKind.P: // fall through
+        case ElementKind.LI: // fall through
+        case ElementKind.DD: // fall through
+        case ElementKind.DT: // fall through
+        case ElementKind.H1: // fall through
+        case ElementKind.H2: // fall through
+        case ElementKind.H3: // fall through
+        case ElementKind.H4: // fall through
+        case ElementKind.H5: // fall through
+        case ElementKind.H6: // fall through
+        case ElementKind.HTML_UNKNOWN: // fall through
+        case ElementKind.ABBR: // fall through
+        case ElementKind.AUDIO: // fall through
+        case ElementKind.BDI: // fall through
+        case ElementKind.BDO: // fall through
+        case ElementKind.CANVAS: // fall through
+        case ElementKind.CITE: // fall through
+        case ElementKind.DATA: // fall through
+        case ElementKind.DEL: // fall through
+        case ElementKind.DFN: // fall through
+        case ElementKind.INS: // fall through
+        case ElementKind.KBD: // fall through
+        case ElementKind.LABEL: // fall through
+        case ElementKind.MARK: // fall through
+        case ElementKind.Q: // fall through
+        case ElementKind.SAMP: // fall through
+        case ElementKind.SPAN: // fall through
+        case ElementKind.SUB: // fall through
+        case ElementKind.SUP: // fall through
+        case ElementKind.TIME: // fall through
+        case ElementKind.VAR: // fall through
+        case ElementKind.VIDEO: {
+            popCurrentNode();
+            return TOKEN_HANDLED;
+        } // break;
+        case ElementKind.A: // fall through
+        case ElementKind.B: // fall through
+        case ElementKind.BIG: // fall through
+        case ElementKind.CODE: // fall through
+        case ElementKind.EM: // fall through
+        case ElementKind.FONT: // fall through
+        case ElementKind.I: // fall through
+        case ElementKind.NOBR: // fall through
+        case ElementKind.S: // fall through
+        case ElementKind.SMALL: // fall through
+        case ElementKind.STRIKE: // fall through
+        case ElementKind.STRONG: // fall through
+        case ElementKind.TT: // fall through
+        case ElementKind.U: {
+            /*
+             * When the current node is the last entry in the list of active
+             * formatting elements, the adoption agency algorithm finds no
+             * furthest block and simply pops it and removes it from the list.
+             */
+            final ActiveFormattingElements listOfActiveFormattingElements = parser.getListOfActiveFormattingElements();
+            final int last = listOfActiveFormattingElements.size() - 1;
+            if (last < 0 || listOfActiveFormattingElements.isMarker(last)
+                    || listOfActiveFormattingElements.getElement(last) != getCurrentNode()) {
+                return DECLINE_TOKEN;
+            }
+            listOfActiveFormattingElements.remove(last);
+            popCurrentNode();
+            return TOKEN_HANDLED;
+        } // break;
+        default: {
+            return DECLINE_TOKEN;
+        } // break;
+        }
+    }
+    
+}
@@ -0,0 +1,97 @@
+package org.silnith.parser.html5.internal;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * The implementation of {@link Primitives} for Java 7, which is used on any
+ * runtime that has no more specific implementation.
+ *
+ * @author <a href="mailto:silnith@gmail.com">Kent Rosenkoetter</a>
+ */
+/* package */class Java7Primitives implements Primitives {
+    
+    /**
+     * Starts a daemon thread for each helper task, reusing threads that have
+     * finished their tasks.
+     */
+    private static final class HelperExecutorHolder {
+        
+        private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+            
+            private final AtomicInteger count = new AtomicInteger();
+            
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, "html5-parser-helper-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        
+    }
+    
+    /* package */Java7Primitives() {
+        super();
+    }
+    
+    @Override
+    public int indexOf(final CharSequence text, final char ch, final int fromIndex) {
+        if (text instanceof String) {
+            return ((String) text).indexOf(ch, fromIndex);
+        }
+        final int length = text.length();
+        for (int i = Math.max(fromIndex, 0); i < length; i++ ) {
+            if (text.charAt(i) == ch) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    @Override
+    public boolean regionMatchesIgnoreCase(final CharSequence text, final int offset, final String lowerCase) {
+        final int length = lowerCase.length();
+        if (offset < 0 || offset > text.length() - length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++ ) {
+            if (toASCIILowerCase(text.charAt(offset + i)) != lowerCase.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /* package */static char toASCIILowerCase(final char ch) {
+        if (ch >= 'A' && ch <= 'Z') {
+            return (char) (ch + ('a' - 'A'));
+        }
+        return ch;
+    }
+    
+    @Override
+    public int decodeASCII(final byte[] src, final int srcOffset, final char[] dst, final int dstOffset,
+            final int length) {
+        int i = 0;
+        while (i < length) {
+            final byte b = src[srcOffset + i];
+            if (b < 0) {
+                break;
+            }
+            dst[dstOffset + i] = (char) b;
+            i++ ;
+        }
+        return i;
+    }
+    
+    @Override
+    public Executor getHelperExecutor() {
+        return HelperExecutorHolder.EXECUTOR;
+    }
+    
+}
@@ -0,0 +1,75 @@
+package org.silnith.parser.html5.internal;
+
+import java.util.concurrent.Executor;
+
+
+/**
+ * Low-level operations that later Java releases can do faster than the Java 7
+ * baseline. They decode input in the {@code DecodingReader}, scan deferred
+ * template contents, normalize newlines for the {@code SpeculativeTokenizer},
+ * and run the helper tasks of the {@code DecodingReader} and the
+ * {@code PipelinedTokenizer}. The state machine of the tokenizer reads its
+ * input one character at a time and does not use them.
+ * <p>
+ * Every implementation gives the same results. The implementation for the
+ * running Java release is chosen when this interface is first used.
+ *
+ * @author <a href="mailto:silnith@gmail.com">Kent Rosenkoetter</a>
+ */
+public interface Primitives {
+    
+    /**
+     * The implementation for the running Java release.
+     */
+    Primitives INSTANCE = PrimitivesLoader.load();
+    
+    /**
+     * Returns the index of the first occurrence of a character in a
+     * character sequence, starting at the given index.
+     * 
+     * @param text the characters to search
+     * @param ch the character to find
+     * @param fromIndex the index to start searching from
+     * @return the index of the character, or {@code -1} if it does not occur
+     *         at or after {@code fromIndex}
+     */
+    int indexOf(CharSequence text, char ch, int fromIndex);
+    
+    /**
+     * Returns whether the characters of a sequence starting at the given
+     * offset are an ASCII case-insensitive match for the given string, which
+     * must be in ASCII lowercase.
+     * 
+     * @param text the characters to compare
+     * @param offset the index in {@code text} to start comparing at
+     * @param lowerCase the string to compare with, in ASCII lowercase
+     * @return {@code true} if the characters match
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/infrastructure.html#ascii-case-insensitive">ASCII case-insensitive</a>
+     */
+    boolean regionMatchesIgnoreCase(CharSequence text, int offset, String lowerCase);
+    
+    /**
+     * Decodes the leading run of ASCII bytes of a byte array into characters.
+     * Decoding stops at the first byte that is not ASCII, which is left for a
+     * full {@link java.nio.charset.CharsetDecoder} to decode.
+     * 
+     * @param src the bytes to decode
+     * @param srcOffset the index of the first byte
+     * @param dst the array for the decoded characters
+     * @param dstOffset the index for the first character
+     * @param length the most bytes to decode
+     * @return the number of bytes decoded
+     */
+    int decodeASCII(byte[] src, int srcOffset, char[] dst, int dstOffset, int length);
+    
+    /**
+     * Returns an executor for helper tasks that spend most of their time
+     * blocked, such as reading and decoding input ahead of the tokenizer, or
+     * tokenizing ahead of tree construction. The executor starts every task
+     * promptly, and does not keep the virtual machine running.
+     * 
+     * @return the executor for helper tasks
+     */
+    Executor getHelperExecutor();
+    
+}
@@ -0,0 +1,41 @@
+package org.silnith.parser.html5.internal;
+
+/**
+ * Chooses the implementation of {@link Primitives} for the running Java
+ * release.
+ * <p>
+ * The implementations for later releases are only found in the versioned
+ * directories of the multi-release JAR, where a runtime only looks if it
+ * supports that release. Each one is tried from the latest release to the
+ * earliest, so the first one that can be loaded is the best one the runtime
+ * supports. When the classes are not packaged in a JAR, the Java 7
+ * implementation is used.
+ *
+ * @author <a href="mailto:silnith@gmail.com">Kent Rosenkoetter</a>
+ */
+/* package */final class PrimitivesLoader {
+    
+    private static final String[] IMPLEMENTATIONS = {
+            "org.silnith.parser.html5.internal.Java21Primitives",
+            "org.silnith.parser.html5.internal.Java17Primitives",
+            "org.silnith.parser.html5.internal.Java11Primitives",
+    };
+    
+    private PrimitivesLoader() {
+        super();
+    }
+    
+    /* package */static Primitives load() {
+        for (final String name : IMPLEMENTATIONS) {
+            try {
+                return (Primitives) Class.forName(name).newInstance();
+            } catch (final ClassNotFoundException | InstantiationException | IllegalAccessException e) {
+                // try the next one
+            } catch (final LinkageError e) {
+                // compiled for a later release than the one running
+            }
+        }
+        return new Java7Primitives();
+    }
+    
+}
@@ -0,0 +1,14 @@
+/**
+ * Contains support classes used by the parser that are not part of its API,
+ * and may change without notice.
+ * <p>
+ * The {@link org.silnith.parser.html5.internal.Primitives} used by the
+ * tokenizer have one implementation for each Java release that offers faster
+ * ways to do the same work. The implementations for later releases are
+ * packaged under {@code META-INF/versions} in the multi-release JAR, so each
+ * runtime uses the most recent implementation it supports, while the library
+ * as a whole still runs on Java 7.
+ * 
+ * @author <a href="mailto:silnith@gmail.com">Kent Rosenkoetter</a>
+ */
+package org.silnith.parser.html5.internal;
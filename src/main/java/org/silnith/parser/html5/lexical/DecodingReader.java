@@ -0,0 +1,469 @@
+package org.silnith.parser.html5.lexical;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.PushbackInputStream;
+import java.io.Reader;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import org.silnith.parser.html5.internal.Primitives;
+
+
+/**
+ * Decompresses and decodes an input byte stream on another thread, ahead of
+ * the thread that reads the characters.
+ * <p>
+ * A helper task, run by the executor given at construction, reads the bytes,
+ * inflates them if they are compressed, and decodes them into large blocks of
+ * characters. Finished blocks are handed to the reader through a bounded
+ * queue, so the helper stops when it is too far ahead, and the blocks are
+ * reused once they have been read. The reader is meant to be given to a
+ * {@link Tokenizer}, whose {@link InputStreamPreprocessor} then reads the
+ * characters straight out of the blocks, so decompression, decoding, and
+ * tokenization all overlap.
+ * <p>
+ * Malformed and unmappable byte sequences are decoded to U+FFFD REPLACEMENT
+ * CHARACTER, as the decoders used by the HTML specification do. A failure to
+ * read or inflate the input is thrown from the read that reaches the point
+ * where it failed.
+ * <p>
+ * The executor must start the helper promptly, because reads wait for it.
+ * The helper finishes when it reaches the end of the input, and closes the
+ * input stream. A reader that is not read to the end must be closed, which
+ * stops the helper early. The helper only holds a weak reference to this
+ * reader, so one that is dropped without being closed stops its helper once
+ * it is garbage collected, but not before.
+ *
+ * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#the-input-byte-stream">8.2.2 The input byte stream</a>
+ * @author <a href="mailto:silnith@gmail.com">Kent Rosenkoetter</a>
+ */
+public class DecodingReader extends Reader {
+    
+    /**
+     * The compression applied to an input byte stream.
+     * 
+     * @author <a href="mailto:silnith@gmail.com">Kent Rosenkoetter</a>
+     */
+    public enum Compression {
+        /**
+         * The input is not compressed.
+         */
+        NONE,
+        /**
+         * The input is in the gzip file format, as with the HTTP content
+         * coding {@code gzip}. Concatenated gzip members are read as one
+         * stream.
+         */
+        GZIP,
+        /**
+         * The input is in the zlib format, as with the HTTP content coding
+         * {@code deflate}. Since some servers send raw deflate data for that
+         * coding instead, input without a zlib header is inflated as raw
+         * deflate data.
+         */
+        DEFLATE
+    }
+    
+    /**
+     * The default number of characters in a block.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 32768;
+    
+    /**
+     * The default number of decoded blocks the helper may run ahead.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 4;
+    
+    /**
+     * How long the helper waits for room in the queue before checking whether
+     * the reader was closed or dropped.
+     */
+    private static final long OFFER_TIMEOUT_MILLIS = 100;
+    
+    /**
+     * A block of decoded characters, or the end of the input, or a failure.
+     */
+    private static final class Block {
+        
+        private final char[] chars;
+        
+        private final int length;
+        
+        private final Throwable failure;
+        
+        private Block(final char[] chars, final int length, final Throwable failure) {
+            super();
+            this.chars = chars;
+            this.length = length;
+            this.failure = failure;
+        }
+        
+    }
+    
+    private static final class Decoder implements Runnable {
+        
+        /**
+         * The reader, held weakly so that the helper can tell when the reader
+         * was dropped without being closed.
+         */
+        private final WeakReference<DecodingReader> owner;
+        
+        private final BlockingQueue<Block> filled;
+        
+        private final BlockingQueue<char[]> empty;
+        
+        private final int blockSize;
+        
+        private final InputStream in;
+        
+        private final Compression compression;
+        
+        private final CharsetDecoder decoder;
+        
+        /**
+         * Whether every ASCII byte decodes to the same character regardless
+         * of the bytes around it, so runs of ASCII bytes can be decoded
+         * without the charset decoder.
+         */
+        private final boolean asciiCompatible;
+        
+        private Decoder(final DecodingReader owner, final InputStream in, final Compression compression,
+                final Charset charset) {
+            super();
+            this.owner = new WeakReference<>(owner);
+            this.filled = owner.filled;
+            this.empty = owner.empty;
+            this.blockSize = owner.blockSize;
+            this.in = in;
+            this.compression = compression;
+            this.decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            this.asciiCompatible = ASCII_COMPATIBLE_CHARSETS.contains(charset.name());
+        }
+        
+        @Override
+        public void run() {
+            Block last;
+            try (final InputStream bytes = decompress(in, compression)) {
+                decode(bytes);
+                last = new Block(null, -1, null);
+            } catch (final Throwable e) {
+                last = new Block(null, -1, e);
+            }
+            publish(last);
+        }
+        
+        private void decode(final InputStream bytes) throws IOException {
+            final ByteBuffer input = ByteBuffer.allocate(blockSize);
+            CharBuffer output = CharBuffer.wrap(allocate());
+            boolean endOfInput = false;
+            while ( !endOfInput) {
+                final int count = bytes.read(input.array(), input.position(), input.remaining());
+                if (count == -1) {
+                    endOfInput = true;
+                } else {
+                    input.position(input.position() + count);
+                }
+                input.flip();
+                if (asciiCompatible) {
+                    decodeASCII(input, output);
+                }
+                CoderResult result = decoder.decode(input, output, endOfInput);
+                while (result.isOverflow()) {
+                    output = publish(output);
+                    result = decoder.decode(input, output, endOfInput);
+                }
+                input.compact();
+                if ( !output.hasRemaining() || (output.position() > 0 && bytes.available() == 0)) {
+                    output = publish(output);
+                }
+                if (isAbandoned()) {
+                    return;
+                }
+            }
+            while (decoder.flush(output).isOverflow()) {
+                output = publish(output);
+            }
+            if (output.position() > 0) {
+                publish(output);
+            }
+        }
+        
+        /**
+         * Decodes the leading run of ASCII bytes of the input directly into
+         * the output. This must only be done where the charset decoder is not
+         * in the middle of a byte sequence, which for these charsets is
+         * wherever it left off, since it leaves incomplete sequences in the
+         * input.
+         */
+        private void decodeASCII(final ByteBuffer input, final CharBuffer output) {
+            final int count = Primitives.INSTANCE.decodeASCII(input.array(), input.position(), output.array(),
+                    output.position(), Math.min(input.remaining(), output.remaining()));
+            input.position(input.position() + count);
+            output.position(output.position() + count);
+        }
+        
+        /**
+         * Hands a full block to the reader, and returns an empty block to fill
+         * next.
+         */
+        private CharBuffer publish(final CharBuffer output) {
+            publish(new Block(output.array(), output.position(), null));
+            return CharBuffer.wrap(allocate());
+        }
+        
+        /**
+         * Returns whether the reader was closed, or dropped without being
+         * closed and garbage collected.
+         */
+        private boolean isAbandoned() {
+            final DecodingReader reader = owner.get();
+            return reader == null || reader.closed;
+        }
+        
+        private void publish(final Block block) {
+            boolean interrupted = false;
+            try {
+                while ( !isAbandoned()) {
+                    try {
+                        if (filled.offer(block, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                            return;
+                        }
+                    } catch (final InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        
+        private char[] allocate() {
+            final char[] chars = empty.poll();
+            if (chars == null) {
+                return new char[blockSize];
+            }
+            return chars;
+        }
+        
+    }
+    
+    /**
+     * Returns a stream that inflates the given input according to its
+     * compression.
+     * 
+     * @param in the input
+     * @param compression the compression of the input
+     * @return a stream of the uncompressed bytes
+     * @throws IOException if the header of the input cannot be read
+     */
+    private static InputStream decompress(final InputStream in, final Compression compression) throws IOException {
+        switch (compression) {
+        case NONE: {
+            return in;
+        } // break;
+        case GZIP: {
+            return new GZIPInputStream(in, 8192);
+        } // break;
+        case DEFLATE: {
+            final PushbackInputStream pushback = new PushbackInputStream(in, 2);
+            final int cmf = pushback.read();
+            final int flg = pushback.read();
+            if (flg != -1) {
+                pushback.unread(flg);
+            }
+            if (cmf != -1) {
+                pushback.unread(cmf);
+            }
+            final boolean zlibHeader = cmf != -1 && flg != -1 && (cmf & 0x0F) == 8 && ((cmf << 8) | flg) % 31 == 0;
+            return new InflaterInputStream(pushback, new Inflater( !zlibHeader), 8192);
+        } // break;
+        default: {
+            throw new IllegalArgumentException(String.valueOf(compression));
+        } // break;
+        }
+    }
+    
+    /**
+     * The canonical names of the charsets, among those commonly used on the
+     * web, that decode every ASCII byte to the same character on its own.
+     */
+    private static final Set<String> ASCII_COMPATIBLE_CHARSETS = new HashSet<>(Arrays.asList("UTF-8", "US-ASCII",
+            "ISO-8859-1", "windows-1252"));
+    
+    private final int blockSize;
+    
+    private final BlockingQueue<Block> filled;
+    
+    /**
+     * Blocks that have been read, for the helper to fill again.
+     */
+    private final BlockingQueue<char[]> empty;
+    
+    private volatile boolean closed;
+    
+    private Block current;
+    
+    private int index;
+    
+    /**
+     * Constructs a new decoding reader with the default block size and queue
+     * capacity, whose helper is run by the default executor for helper tasks
+     * on the running Java release.
+     * 
+     * @param in the input byte stream
+     * @param charset the character encoding of the input
+     * @param compression the compression of the input
+     * @see Primitives#getHelperExecutor()
+     */
+    public DecodingReader(final InputStream in, final Charset charset, final Compression compression) {
+        this(in, charset, compression, Primitives.INSTANCE.getHelperExecutor());
+    }
+    
+    /**
+     * Constructs a new decoding reader with the default block size and queue
+     * capacity.
+     * 
+     * @param in the input byte stream
+     * @param charset the character encoding of the input
+     * @param compression the compression of the input
+     * @param executor the executor that runs the helper
+     */
+    public DecodingReader(final InputStream in, final Charset charset, final Compression compression,
+            final Executor executor) {
+        this(in, charset, compression, executor, DEFAULT_BLOCK_SIZE, DEFAULT_QUEUE_CAPACITY);
+    }
+    
+    /**
+     * Constructs a new decoding reader.
+     * 
+     * @param in the input byte stream
+     * @param charset the character encoding of the input
+     * @param compression the compression of the input
+     * @param executor the executor that runs the helper
+     * @param blockSize the number of characters in a block
+     * @param queueCapacity the number of decoded blocks the helper may run
+     *            ahead of the reads
+     */
+    public DecodingReader(final InputStream in, final Charset charset, final Compression compression,
+            final Executor executor, final int blockSize, final int queueCapacity) {
+        super();
+        if (in == null || charset == null || compression == null || executor == null) {
+            throw new NullPointerException();
+        }
+        if (blockSize < 16) {
+            throw new IllegalArgumentException("Block size too small: " + blockSize);
+        }
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("Queue capacity must be positive: " + queueCapacity);
+        }
+        this.blockSize = blockSize;
+        this.filled = new ArrayBlockingQueue<>(queueCapacity);
+        this.empty = new ArrayBlockingQueue<>(queueCapacity + 1);
+        this.closed = false;
+        this.current = null;
+        this.index = 0;
+        executor.execute(new Decoder(this, in, compression, charset));
+    }
+    
+    /**
+     * Makes sure there are characters left in the current block, waiting for
+     * the helper if necessary.
+     * 
+     * @return {@code false} if the end of the input was reached
+     * @throws IOException if the helper failed, or this reader was closed
+     */
+    private boolean fill() throws IOException {
+        if (closed) {
+            throw new IOException("Reader closed.");
+        }
+        while (true) {
+            if (current != null) {
+                if (current.length == -1) {
+                    return false;
+                }
+                if (index < current.length) {
+                    return true;
+                }
+                empty.offer(current.chars);
+            }
+            try {
+                current = filled.take();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            index = 0;
+            if (current.failure != null) {
+                final Throwable failure = current.failure;
+                current = new Block(null, -1, null);
+                if (failure instanceof IOException) {
+                    throw (IOException) failure;
+                }
+                throw new IOException(failure);
+            }
+        }
+    }
+    
+    @Override
+    public int read() throws IOException {
+        if ( !fill()) {
+            return -1;
+        }
+        return current.chars[index++ ];
+    }
+    
+    @Override
+    public int read(final char[] cbuf, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if ( !fill()) {
+            return -1;
+        }
+        final int count = Math.min(len, current.length - index);
+        System.arraycopy(current.chars, index, cbuf, off, count);
+        index += count;
+        return count;
+    }
+    
+    /**
+     * Returns whether characters can be read without waiting, which is the
+     * case while there are characters left in the current block.
+     */
+    @Override
+    public boolean ready() throws IOException {
+        if (closed) {
+            throw new IOException("Reader closed.");
+        }
+        return (current != null && index < current.length) || !filled.isEmpty();
+    }
+    
+    @Override
+    public void close() {
+        closed = true;
+        filled.clear();
+        empty.clear();
+        current = null;
+    }
+    
+}
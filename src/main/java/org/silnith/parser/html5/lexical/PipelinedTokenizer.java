@@ -0,0 +1,549 @@
+package org.silnith.parser.html5.lexical;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.LockSupport;
+
+import org.silnith.parser.html5.internal.Primitives;
+import org.silnith.parser.html5.lexical.token.StartTagToken;
+import org.silnith.parser.html5.lexical.token.Token;
+
+
+/**
+ * A tokenizer that tokenizes ahead of the tree construction stage on another
+ * thread.
+ * <p>
+ * A producer task, run by the executor given at construction, tokenizes the
+ * input and publishes the tokens through a bounded single-producer,
+ * single-consumer {@link RingBuffer}. The thread that calls
+ * {@link #getNextToken()}, usually the thread running the
+ * {@link org.silnith.parser.html5.Parser}, only takes tokens off the ring, so
+ * tokenization and tree construction overlap.
+ * <p>
+ * The tree construction stage switches the tokenizer into the RCDATA,
+ * RAWTEXT, script data, and PLAINTEXT states after certain start tags, but the
+ * producer runs ahead of it. The producer therefore guesses these switches
+ * from the tag name alone, as they would happen for HTML elements. Each batch
+ * of tokens records the state it was tokenized from, and is only used if that
+ * is the real state of this tokenizer when the batch is taken. When the guess
+ * was wrong, such as for a {@code title} element inside an {@code svg}
+ * element, the producer is stopped, the tokens it produced after that point
+ * are discarded, and a new producer is started from the end of the last batch
+ * used, in the real state. The part of the input that may still be needed
+ * for this is kept until the batches read from it have been used.
+ * <p>
+ * If the producer fails, for example because of a parse error when parse
+ * errors are not allowed or because reading the input failed, this tokenizer
+ * rolls back in the same way and tokenizes the rest of the input itself, so
+ * that the failure is reported exactly where a sequential tokenizer would
+ * report it. Consuming the contents of a {@code template} element also
+ * switches to sequential tokenization.
+ * <p>
+ * The executor must start the producer promptly, because the tree
+ * construction stage waits for its tokens. The producer finishes when it
+ * reaches the end of the input, or when its thread is interrupted. If the
+ * tokens are abandoned before that, {@link #close()} must be called to stop
+ * the producer. A {@link org.silnith.parser.html5.Parser} does this when it
+ * stops parsing, whether it finished or failed.
+ * <p>
+ * The input offsets of individual tokens are not tracked for tokens produced
+ * on another thread, so this tokenizer cannot retain its input, and a parser
+ * using it cannot record source ranges. The offset returned by
+ * {@link #getPosition()} is accurate.
+ *
+ * @see SpeculativeTokenizer
+ * @author <a href="mailto:silnith@gmail.com">Kent Rosenkoetter</a>
+ */
+public class PipelinedTokenizer extends Tokenizer implements Closeable {
+    
+    /**
+     * The default number of token batches the producer may run ahead.
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+    
+    /**
+     * The number of times to poll the ring before yielding the processor.
+     */
+    private static final int SPINS = 128;
+    
+    /**
+     * The number of times to yield before parking the thread.
+     */
+    private static final int YIELDS = 16;
+    
+    /**
+     * The amount of recorded input that may be discarded at once.
+     */
+    private static final int DISCARD_THRESHOLD = 16384;
+    
+    /**
+     * The tokens produced by one call to {@link Tokenizer#getNextToken()} that
+     * found the token queue empty.
+     */
+    private static final class Batch {
+        
+        private final State entryState;
+        
+        private final State exitState;
+        
+        private final int endOffset;
+        
+        private final List<Token> tokens;
+        
+        private final Throwable failure;
+        
+        private Batch(final State entryState, final State exitState, final int endOffset, final List<Token> tokens,
+                final Throwable failure) {
+            super();
+            this.entryState = entryState;
+            this.exitState = exitState;
+            this.endOffset = endOffset;
+            this.tokens = tokens;
+            this.failure = failure;
+        }
+        
+    }
+    
+    /**
+     * Reads the preprocessed input for the producer, and records every
+     * character read so that the input can be read again from any offset
+     * the consumer has not passed yet.
+     */
+    private static final class Recorder extends Reader {
+        
+        private final Reader in;
+        
+        /**
+         * Characters to read before reading from {@link #in}.
+         */
+        private final String pending;
+        
+        private int pendingIndex;
+        
+        /**
+         * The characters read, or {@code null} if they are not recorded.
+         */
+        private final StringBuilder recorded;
+        
+        /**
+         * The input offset of the first recorded character.
+         */
+        private int base;
+        
+        private Recorder(final Reader in, final String pending, final int base, final boolean record) {
+            super();
+            this.in = in;
+            this.pending = pending;
+            this.pendingIndex = 0;
+            if (record) {
+                this.recorded = new StringBuilder();
+            } else {
+                this.recorded = null;
+            }
+            this.base = base;
+        }
+        
+        @Override
+        public int read() throws IOException {
+            final int ch;
+            if (pendingIndex < pending.length()) {
+                ch = pending.charAt(pendingIndex++ );
+            } else {
+                ch = in.read();
+            }
+            if (ch != -1 && recorded != null) {
+                recorded.append((char) ch);
+            }
+            return ch;
+        }
+        
+        @Override
+        public int read(final char[] cbuf, final int off, final int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            final int count;
+            if (pendingIndex < pending.length()) {
+                count = Math.min(len, pending.length() - pendingIndex);
+                pending.getChars(pendingIndex, pendingIndex + count, cbuf, off);
+                pendingIndex += count;
+            } else {
+                count = in.read(cbuf, off, len);
+            }
+            if (count > 0 && recorded != null) {
+                recorded.append(cbuf, off, count);
+            }
+            return count;
+        }
+        
+        @Override
+        public boolean ready() throws IOException {
+            return pendingIndex < pending.length() || in.ready();
+        }
+        
+        /**
+         * Discards the recorded characters before an offset, if there are
+         * enough of them to be worth it.
+         * 
+         * @param offset the first offset that may still be read again
+         */
+        private void discardBefore(final int offset) {
+            final int count = offset - base;
+            if (count >= DISCARD_THRESHOLD && count >= recorded.length() / 2) {
+                recorded.delete(0, count);
+                base = offset;
+            }
+        }
+        
+        /**
+         * Returns a reader that reads the input again from the given offset.
+         * This must only be called once the producer reading from this has
+         * stopped.
+         * 
+         * @param offset the offset to read from
+         * @param record whether the new recorder records what it reads
+         * @return a new recorder starting at the offset
+         */
+        private Recorder rewind(final int offset, final boolean record) {
+            final String remaining = recorded.substring(offset - base) + pending.substring(pendingIndex);
+            return new Recorder(in, remaining, offset, record);
+        }
+        
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+        
+    }
+    
+    private final class Producer implements Runnable {
+        
+        private final Tokenizer tokenizer;
+        
+        private final Recorder recorder;
+        
+        private final RingBuffer<Batch> ring;
+        
+        private final CountDownLatch done;
+        
+        private volatile boolean stopped;
+        
+        private Producer(final Recorder recorder, final int offset, final State state,
+                final StartTagToken lastStartTag) {
+            super();
+            this.tokenizer = new Tokenizer(new StringReader(""));
+            this.tokenizer.resume(recorder, offset);
+            this.tokenizer.setState(state);
+            this.tokenizer.setLastStartTag(lastStartTag);
+            this.tokenizer.setAllowParseErrors(isAllowParseErrors());
+            this.recorder = recorder;
+            this.ring = new RingBuffer<>(capacity);
+            this.done = new CountDownLatch(1);
+            this.stopped = false;
+        }
+        
+        @Override
+        public void run() {
+            try {
+                while ( !stopped) {
+                    final State entryState = tokenizer.getState();
+                    final Token first = tokenizer.getNextToken();
+                    final State exitState = tokenizer.getState();
+                    final List<Token> tokens = new ArrayList<>(1);
+                    tokens.add(first);
+                    while ( !tokenizer.isTokenQueueEmpty()) {
+                        tokens.add(tokenizer.getNextToken());
+                    }
+                    if ( !publish(new Batch(entryState, exitState, tokenizer.getPosition(), tokens, null))) {
+                        return;
+                    }
+                    final Token last = tokens.get(tokens.size() - 1);
+                    if (last.getType() == Token.Type.EOF) {
+                        return;
+                    }
+                    if (last.getType() == Token.Type.START_TAG) {
+                        final StartTagToken startTag = (StartTagToken) last;
+                        if (startTag.isSelfClosing()) {
+                            tokenizer.acknowledgeSelfClosingFlag();
+                        }
+                        tokenizer.setState(SpeculativeTokenizer.guessStateAfter(startTag.getTagName()));
+                    }
+                    recorder.discardBefore(consumedPosition);
+                }
+            } catch (final Throwable e) {
+                publish(new Batch(null, null, 0, null, e));
+            } finally {
+                done.countDown();
+            }
+        }
+        
+        private boolean publish(final Batch batch) {
+            int waits = 0;
+            while ( !ring.offer(batch)) {
+                if (stopped || Thread.currentThread().isInterrupted()) {
+                    return false;
+                }
+                backOff(waits++ );
+            }
+            return true;
+        }
+        
+        private void stop() {
+            stopped = true;
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    done.await();
+                    break;
+                } catch (final InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        
+    }
+    
+    private static void backOff(final int waits) {
+        if (waits < SPINS) {
+            // spin
+        } else if (waits < SPINS + YIELDS) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(50000);
+        }
+    }
+    
+    private final Executor executor;
+    
+    private final int capacity;
+    
+    /**
+     * The preprocessed input, before it is recorded.
+     */
+    private Reader source;
+    
+    /**
+     * The producer, or {@code null} if it has not been started yet or this
+     * tokenizer is tokenizing sequentially.
+     */
+    private Producer producer;
+    
+    private boolean sequential;
+    
+    /**
+     * The input offset just past the last batch of tokens taken from the
+     * producer.
+     */
+    private volatile int consumedPosition;
+    
+    private int rollbackCount;
+    
+    /**
+     * Constructs a new pipelined tokenizer with the default capacity, whose
+     * producer is run by the default executor for helper tasks on the running
+     * Java release.
+     * 
+     * @param in the input
+     * @see Primitives#getHelperExecutor()
+     */
+    public PipelinedTokenizer(final Reader in) {
+        this(in, Primitives.INSTANCE.getHelperExecutor(), DEFAULT_CAPACITY);
+    }
+    
+    /**
+     * Constructs a new pipelined tokenizer with the default capacity.
+     * 
+     * @param in the input
+     * @param executor the executor that runs the producer
+     */
+    public PipelinedTokenizer(final Reader in, final Executor executor) {
+        this(in, executor, DEFAULT_CAPACITY);
+    }
+    
+    /**
+     * Constructs a new pipelined tokenizer.
+     * 
+     * @param in the input
+     * @param executor the executor that runs the producer
+     * @param capacity the number of token batches the producer may run ahead
+     *            of the tree construction stage
+     */
+    public PipelinedTokenizer(final Reader in, final Executor executor, final int capacity) {
+        super(new StringReader(""));
+        if (in == null || executor == null) {
+            throw new NullPointerException();
+        }
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.executor = executor;
+        this.capacity = capacity;
+        this.source = new InputStreamPreprocessor(in);
+        this.producer = null;
+        this.sequential = false;
+        this.consumedPosition = 0;
+        this.rollbackCount = 0;
+    }
+    
+    /**
+     * Returns the number of times the tokens produced ahead were discarded,
+     * either because the producer guessed the tokenizer state wrong or
+     * because it failed.
+     * 
+     * @return the number of rollbacks
+     */
+    public int getRollbackCount() {
+        return rollbackCount;
+    }
+    
+    /**
+     * A pipelined tokenizer cannot be checkpointed.
+     * 
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public Checkpoint checkpoint() {
+        throw new UnsupportedOperationException("A pipelined tokenizer cannot be checkpointed.");
+    }
+    
+    /**
+     * A pipelined tokenizer cannot be restored from a checkpoint.
+     * 
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void restore(final Checkpoint checkpoint, final Reader in) {
+        throw new UnsupportedOperationException("A pipelined tokenizer cannot be restored from a checkpoint.");
+    }
+    
+    @Override
+    public void setRetainInput(final boolean retainInput) {
+        if (retainInput) {
+            throw new UnsupportedOperationException("A pipelined tokenizer cannot retain its input.");
+        }
+        super.setRetainInput(retainInput);
+    }
+    
+    @Override
+    public int getPosition() {
+        if (sequential) {
+            return super.getPosition();
+        }
+        return consumedPosition;
+    }
+    
+    @Override
+    public void reset(final Reader in) {
+        close();
+        super.reset(new StringReader(""));
+        source = new InputStreamPreprocessor(in);
+        producer = null;
+        sequential = false;
+        consumedPosition = 0;
+        rollbackCount = 0;
+    }
+    
+    /**
+     * Stops the producer, if it is still running. Tokens that were not taken
+     * yet are discarded, and tokenizing continues on the calling thread. The
+     * input is not closed.
+     */
+    @Override
+    public void close() {
+        if (producer != null) {
+            rollBack(true);
+        }
+    }
+    
+    @Override
+    public String consumeTemplateContents() throws IOException {
+        if (producer != null) {
+            rollBack(true);
+        } else if ( !sequential) {
+            sequential = true;
+            resume(source, consumedPosition);
+        }
+        return super.consumeTemplateContents();
+    }
+    
+    @Override
+    protected List<Token> dispatch() throws IOException {
+        if (sequential) {
+            return super.dispatch();
+        }
+        if (producer == null) {
+            start(new Recorder(source, "", consumedPosition, true));
+        }
+        final Batch batch = take();
+        if (batch.failure != null) {
+            rollbackCount++ ;
+            rollBack(true);
+            return super.dispatch();
+        }
+        if (batch.entryState != getState()) {
+            rollbackCount++ ;
+            rollBack(false);
+            return dispatch();
+        }
+        setState(batch.exitState);
+        consumedPosition = batch.endOffset;
+        if (batch.tokens.get(batch.tokens.size() - 1).getType() == Token.Type.EOF) {
+            rollBack(true);
+        }
+        return batch.tokens;
+    }
+    
+    private void start(final Recorder recorder) {
+        producer = new Producer(recorder, consumedPosition, getState(), getLastStartTag());
+        executor.execute(producer);
+    }
+    
+    private Batch take() {
+        int waits = 0;
+        Batch batch = producer.ring.poll();
+        while (batch == null) {
+            if (producer.done.getCount() == 0) {
+                // The producer was interrupted before it could publish.
+                batch = producer.ring.poll();
+                if (batch == null) {
+                    batch = new Batch(null, null, 0, null, new InterruptedIOException());
+                }
+                return batch;
+            }
+            backOff(waits++ );
+            batch = producer.ring.poll();
+        }
+        return batch;
+    }
+    
+    /**
+     * Stops the producer and discards the tokens it produced that were not
+     * taken yet. Then either starts a new producer from the end of the last
+     * batch taken, in the current state, or continues sequentially from that
+     * point.
+     * 
+     * @param sequentially whether to continue tokenizing on this thread
+     */
+    private void rollBack(final boolean sequentially) {
+        producer.stop();
+        final Recorder rewound = producer.recorder.rewind(consumedPosition, !sequentially);
+        producer = null;
+        if (sequentially) {
+            sequential = true;
+            resume(rewound, consumedPosition);
+        } else {
+            start(rewound);
+        }
+    }
+    
+}
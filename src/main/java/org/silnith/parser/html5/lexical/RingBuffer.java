@@ -0,0 +1,107 @@
+package org.silnith.parser.html5.lexical;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * A bounded, lock-free queue for exactly one producer thread and one consumer
+ * thread.
+ * <p>
+ * Each side only writes its own index, and publishes it with an ordered
+ * store, so neither side ever waits on a lock or a compare-and-set. Each side
+ * also caches the last index it read from the other side, and only reads it
+ * again when the cached index says the queue is full or empty.
+ *
+ * @param <E> the type of the elements
+ * @author <a href="mailto:silnith@gmail.com">Kent Rosenkoetter</a>
+ */
+/* package */final class RingBuffer<E> {
+    
+    private final Object[] slots;
+    
+    private final int mask;
+    
+    /**
+     * The index of the next element to take, only written by the consumer.
+     */
+    private final AtomicLong head;
+    
+    /**
+     * The index of the next element to put, only written by the producer.
+     */
+    private final AtomicLong tail;
+    
+    /**
+     * The producer's copy of {@link #head}.
+     */
+    private long cachedHead;
+    
+    /**
+     * The consumer's copy of {@link #tail}.
+     */
+    private long cachedTail;
+    
+    /**
+     * Constructs a new empty ring buffer.
+     * 
+     * @param capacity the minimum number of elements the buffer can hold,
+     *            which is rounded up to a power of two
+     */
+    /* package */RingBuffer(final int capacity) {
+        super();
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity out of range: " + capacity);
+        }
+        final int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.slots = new Object[Math.max(size, 1)];
+        this.mask = slots.length - 1;
+        this.head = new AtomicLong();
+        this.tail = new AtomicLong();
+        this.cachedHead = 0;
+        this.cachedTail = 0;
+    }
+    
+    /**
+     * Adds an element if there is room. This may only be called by the
+     * producer thread.
+     * 
+     * @param element the element to add
+     * @return {@code true} if the element was added, {@code false} if the
+     *         buffer is full
+     */
+    /* package */boolean offer(final E element) {
+        final long index = tail.get();
+        if (index - cachedHead == slots.length) {
+            cachedHead = head.get();
+            if (index - cachedHead == slots.length) {
+                return false;
+            }
+        }
+        slots[(int) index & mask] = element;
+        tail.lazySet(index + 1);
+        return true;
+    }
+    
+    /**
+     * Removes the oldest element if there is one. This may only be called by
+     * the consumer thread.
+     * 
+     * @return the oldest element, or {@code null} if the buffer is empty
+     */
+    /* package */E poll() {
+        final long index = head.get();
+        if (index == cachedTail) {
+            cachedTail = tail.get();
+            if (index == cachedTail) {
+                return null;
+            }
+        }
+        final int slot = (int) index & mask;
+        @SuppressWarnings("unchecked")
+        final E element = (E) slots[slot];
+        slots[slot] = null;
+        head.lazySet(index + 1);
+        return element;
+    }
+    
+}
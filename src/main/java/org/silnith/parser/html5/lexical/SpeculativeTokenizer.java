@@ -0,0 +1,535 @@
+package org.silnith.parser.html5.lexical;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+import org.silnith.parser.html5.internal.Primitives;
+import org.silnith.parser.html5.lexical.token.StartTagToken;
+import org.silnith.parser.html5.lexical.token.Token;
+
+
+/**
+ * A tokenizer that speculatively tokenizes a large in-memory document on
+ * several threads at once.
+ * <p>
+ * The input is split into chunks, each beginning at a {@code <} that starts a
+ * tag. Every chunk after the first is tokenized on the executor by its own
+ * tokenizer, starting in the data state. The tree construction stage switches
+ * the tokenizer into the RCDATA, RAWTEXT, script data, and PLAINTEXT states
+ * after certain start tags, so the chunk tokenizers guess these switches from
+ * the tag name alone, as they would happen for HTML elements.
+ * <p>
+ * The tokens are then handed out in order. Before each batch of speculated
+ * tokens is returned, the state it was tokenized from is checked against the
+ * real state of this tokenizer, as left by the tree construction stage. When
+ * the guess was wrong, such as for a {@code title} element inside an
+ * {@code svg} element, or when a chunk boundary fell inside a comment or a
+ * {@code script} element, this tokenizer carries on sequentially from that
+ * point. It picks up the speculated tokens again at the next chunk boundary
+ * it reaches in the data state. The tokens returned are therefore exactly
+ * those a sequential tokenizer would return, and only the chunks whose guess
+ * was wrong are tokenized twice.
+ * <p>
+ * Only a bounded number of chunks are tokenized ahead of the tree
+ * construction stage, which limits the number of tokens held in memory.
+ * <p>
+ * The input offsets of individual tokens are not tracked for speculated
+ * tokens, so this tokenizer cannot retain its input, and a parser using it
+ * cannot record source ranges. The offset returned by {@link #getPosition()}
+ * is accurate. Resetting this tokenizer for a new input turns speculation
+ * off.
+ *
+ * @author <a href="mailto:silnith@gmail.com">Kent Rosenkoetter</a>
+ */
+public class SpeculativeTokenizer extends Tokenizer {
+    
+    /**
+     * The smallest chunk worth tokenizing on another thread.
+     */
+    private static final int MIN_CHUNK_LENGTH = 4096;
+    
+    /**
+     * The largest chunk, which bounds the number of speculated tokens that
+     * are held at once.
+     */
+    private static final int MAX_CHUNK_LENGTH = 262144;
+    
+    /**
+     * The tokens produced by tokenizing one chunk of the input.
+     */
+    private static final class Chunk {
+        
+        /**
+         * The offset of the chunk in the input.
+         */
+        private final int start;
+        
+        /**
+         * The batches of tokens, each produced by one call to
+         * {@link Tokenizer#dispatch()} or more.
+         */
+        private final List<List<Token>> batches;
+        
+        /**
+         * The state each batch was tokenized from. This has one more entry
+         * than {@link #batches}, the state at the end of the usable batches.
+         */
+        private final List<State> entryStates;
+        
+        /**
+         * The state of the chunk tokenizer after each batch.
+         */
+        private final List<State> exitStates;
+        
+        /**
+         * The offset just past each batch, relative to {@link #start}.
+         */
+        private final List<Integer> endOffsets;
+        
+        private Chunk(final int start) {
+            super();
+            this.start = start;
+            this.batches = new ArrayList<>();
+            this.entryStates = new ArrayList<>();
+            this.exitStates = new ArrayList<>();
+            this.endOffsets = new ArrayList<>();
+        }
+        
+        private int getEndOffset(final int batchIndex) {
+            if (batchIndex == 0) {
+                return start;
+            }
+            return start + endOffsets.get(batchIndex - 1);
+        }
+        
+    }
+    
+    private final class ChunkTokenization implements Callable<Chunk> {
+        
+        private final int start;
+        
+        private final int end;
+        
+        private ChunkTokenization(final int start, final int end) {
+            super();
+            this.start = start;
+            this.end = end;
+        }
+        
+        @Override
+        public Chunk call() {
+            final Chunk chunk = new Chunk(start);
+            final Tokenizer tokenizer = new Tokenizer(new StringReader(input.substring(start, end)));
+            tokenizer.setAllowParseErrors(isAllowParseErrors());
+            boolean cleanEnd = false;
+            try {
+                while (true) {
+                    final State entryState = tokenizer.getState();
+                    final Token first = tokenizer.getNextToken();
+                    final State exitState = tokenizer.getState();
+                    final List<Token> batch = new ArrayList<>(1);
+                    batch.add(first);
+                    while ( !tokenizer.isTokenQueueEmpty()) {
+                        batch.add(tokenizer.getNextToken());
+                    }
+                    final Token last = batch.get(batch.size() - 1);
+                    if (last.getType() == Token.Type.EOF) {
+                        chunk.entryStates.add(entryState);
+                        cleanEnd = batch.size() == 1 && entryState == State.DATA;
+                        break;
+                    }
+                    chunk.batches.add(batch);
+                    chunk.entryStates.add(entryState);
+                    chunk.exitStates.add(exitState);
+                    chunk.endOffsets.add(tokenizer.getPosition());
+                    if (last.getType() == Token.Type.START_TAG) {
+                        final StartTagToken startTag = (StartTagToken) last;
+                        if (startTag.isSelfClosing()) {
+                            tokenizer.acknowledgeSelfClosingFlag();
+                        }
+                        tokenizer.setState(guessStateAfter(startTag.getTagName()));
+                    }
+                }
+            } catch (final IOException | RuntimeException e) {
+                chunk.entryStates.add(tokenizer.getState());
+            }
+            /*
+             * Speculation may only hand over to sequential tokenization where
+             * no token is partially constructed.
+             */
+            int usable = chunk.batches.size();
+            if ( !cleanEnd) {
+                while (usable > 0 && !isBetweenTokens(chunk.entryStates.get(usable))) {
+                    usable-- ;
+                }
+            }
+            truncate(chunk.batches, usable);
+            truncate(chunk.entryStates, usable + 1);
+            truncate(chunk.exitStates, usable);
+            truncate(chunk.endOffsets, usable);
+            return chunk;
+        }
+        
+    }
+    
+    private static <T> void truncate(final List<T> list, final int size) {
+        list.subList(size, list.size()).clear();
+    }
+    
+    /**
+     * Guesses the state the tree construction stage will switch the tokenizer
+     * to after a start tag, assuming it is for an HTML element.
+     * 
+     * @param tagName the tag name
+     * @return the state the tokenizer is likely to be in after the tag
+     */
+    /* package */static State guessStateAfter(final String tagName) {
+        switch (tagName) {
+        case "title": // fall through
+        case "textarea": {
+            return State.RCDATA;
+        } // break;
+        case "style": // fall through
+        case "xmp": // fall through
+        case "iframe": // fall through
+        case "noembed": // fall through
+        case "noframes": {
+            return State.RAWTEXT;
+        } // break;
+        case "script": {
+            return State.SCRIPT_DATA;
+        } // break;
+        case "plaintext": {
+            return State.PLAINTEXT;
+        } // break;
+        default: {
+            return State.DATA;
+        } // break;
+        }
+    }
+    
+    /**
+     * Returns whether the tokenizer holds no partially constructed token when
+     * it is about to tokenize from the given state.
+     * 
+     * @param state the tokenizer state
+     * @return {@code true} if tokenizing may start fresh from the state
+     */
+    private static boolean isBetweenTokens(final State state) {
+        switch (state) {
+        case DATA: // fall through
+        case RCDATA: // fall through
+        case RAWTEXT: // fall through
+        case SCRIPT_DATA: // fall through
+        case PLAINTEXT: {
+            return true;
+        } // break;
+        default: {
+            return false;
+        } // break;
+        }
+    }
+    
+    /**
+     * The input, with every carriage return and CR LF pair replaced by a line
+     * feed, so that input offsets and preprocessed offsets are the same.
+     */
+    private final String input;
+    
+    private final Executor executor;
+    
+    /**
+     * The offsets of the chunks after the first.
+     */
+    private int[] chunkStarts;
+    
+    private final List<FutureTask<Chunk>> chunks;
+    
+    /**
+     * The number of chunks to tokenize ahead of the chunk being returned.
+     */
+    private final int lookAhead;
+    
+    /**
+     * The index of the next chunk this tokenizer may resume speculation at.
+     */
+    private int nextChunk;
+    
+    /**
+     * The number of chunks submitted to the executor.
+     */
+    private int submitted;
+    
+    /**
+     * The chunk whose tokens are being returned, or {@code null} if this
+     * tokenizer is tokenizing sequentially.
+     */
+    private Chunk currentChunk;
+    
+    /**
+     * The index in {@link #currentChunk} of the next batch to return.
+     */
+    private int batchIndex;
+    
+    private int speculatedPosition;
+    
+    private int mispredictedChunks;
+    
+    /**
+     * Constructs a new speculative tokenizer for the given input.
+     * 
+     * @param input the entire document
+     * @param executor the executor that tokenizes the chunks
+     * @param parallelism the number of chunks to tokenize at once, usually
+     *            the number of threads of the executor
+     */
+    public SpeculativeTokenizer(final CharSequence input, final Executor executor, final int parallelism) {
+        this(normalizeNewlines(input), executor, parallelism);
+    }
+    
+    private SpeculativeTokenizer(final String input, final Executor executor, final int parallelism) {
+        super(new StringReader(input));
+        if (executor == null) {
+            throw new NullPointerException();
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        }
+        this.input = input;
+        this.executor = executor;
+        this.lookAhead = parallelism * 2;
+        final int chunkLength = Math.max(MIN_CHUNK_LENGTH,
+                Math.min(MAX_CHUNK_LENGTH, input.length() / (parallelism * 4)));
+        this.chunkStarts = findChunkStarts(input, chunkLength);
+        this.chunks = new ArrayList<>(chunkStarts.length);
+        for (int i = 0; i < chunkStarts.length; i++ ) {
+            final int end;
+            if (i + 1 < chunkStarts.length) {
+                end = chunkStarts[i + 1];
+            } else {
+                end = input.length();
+            }
+            chunks.add(new FutureTask<>(new ChunkTokenization(chunkStarts[i], end)));
+        }
+        this.nextChunk = 0;
+        this.submitted = 0;
+        this.currentChunk = null;
+        this.batchIndex = 0;
+        this.speculatedPosition = 0;
+        this.mispredictedChunks = 0;
+        submitChunks();
+    }
+    
+    private static String normalizeNewlines(final CharSequence input) {
+        final int length = input.length();
+        int i = Primitives.INSTANCE.indexOf(input, '\r', 0);
+        if (i == -1) {
+            return input.toString();
+        }
+        final StringBuilder builder = new StringBuilder(length);
+        builder.append(input, 0, i);
+        for (; i < length; i++ ) {
+            final char ch = input.charAt(i);
+            if (ch == '\r') {
+                builder.append('\n');
+                if (i + 1 < length && input.charAt(i + 1) == '\n') {
+                    i++ ;
+                }
+            } else {
+                builder.append(ch);
+            }
+        }
+        return builder.toString();
+    }
+    
+    /**
+     * Finds the chunk boundaries. Each boundary is the first {@code <}
+     * followed by an ASCII letter at or after the target length from the
+     * previous boundary.
+     */
+    private static int[] findChunkStarts(final String input, final int chunkLength) {
+        final List<Integer> starts = new ArrayList<>();
+        int target = chunkLength;
+        final int limit = input.length() - MIN_CHUNK_LENGTH;
+        while (target < limit) {
+            int start = input.indexOf('<', target);
+            while (start != -1 && start + 1 < input.length() && !isASCIILetter(input.charAt(start + 1))) {
+                start = input.indexOf('<', start + 1);
+            }
+            if (start == -1 || start >= limit) {
+                break;
+            }
+            starts.add(start);
+            target = start + chunkLength;
+        }
+        final int[] result = new int[starts.size()];
+        for (int i = 0; i < result.length; i++ ) {
+            result[i] = starts.get(i);
+        }
+        return result;
+    }
+    
+    private static boolean isASCIILetter(final char ch) {
+        return (ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z');
+    }
+    
+    private void submitChunks() {
+        final int limit = Math.min(chunks.size(), nextChunk + lookAhead);
+        for (; submitted < limit; submitted++ ) {
+            executor.execute(chunks.get(submitted));
+        }
+    }
+    
+    /**
+     * Returns the number of chunks the input was split into, not counting the
+     * first chunk, which is always tokenized sequentially.
+     * 
+     * @return the number of speculatively tokenized chunks
+     */
+    public int getChunkCount() {
+        return chunks.size();
+    }
+    
+    /**
+     * Returns the number of chunks whose speculated tokens were not used to
+     * the end because the guessed tokenizer state was wrong.
+     * 
+     * @return the number of mispredicted chunks
+     */
+    public int getMispredictedChunkCount() {
+        return mispredictedChunks;
+    }
+    
+    /**
+     * A speculative tokenizer cannot be checkpointed.
+     * 
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public Checkpoint checkpoint() {
+        throw new UnsupportedOperationException("A speculative tokenizer cannot be checkpointed.");
+    }
+    
+    /**
+     * A speculative tokenizer cannot be restored from a checkpoint.
+     * 
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void restore(final Checkpoint checkpoint, final Reader in) {
+        throw new UnsupportedOperationException("A speculative tokenizer cannot be restored from a checkpoint.");
+    }
+    
+    @Override
+    public void setRetainInput(final boolean retainInput) {
+        if (retainInput) {
+            throw new UnsupportedOperationException("A speculative tokenizer cannot retain its input.");
+        }
+        super.setRetainInput(retainInput);
+    }
+    
+    @Override
+    public int getPosition() {
+        if (currentChunk != null) {
+            return speculatedPosition;
+        }
+        return super.getPosition();
+    }
+    
+    @Override
+    public void reset(final Reader in) {
+        super.reset(in);
+        for (final FutureTask<Chunk> chunk : chunks) {
+            chunk.cancel(false);
+        }
+        chunks.clear();
+        chunkStarts = new int[0];
+        nextChunk = 0;
+        submitted = 0;
+        currentChunk = null;
+        batchIndex = 0;
+        speculatedPosition = 0;
+        mispredictedChunks = 0;
+    }
+    
+    @Override
+    public String consumeTemplateContents() throws IOException {
+        if (currentChunk != null) {
+            resumeSequentially();
+        }
+        return super.consumeTemplateContents();
+    }
+    
+    @Override
+    protected List<Token> dispatch() throws IOException {
+        if (currentChunk != null) {
+            if (batchIndex < currentChunk.batches.size()
+                    && getState() == currentChunk.entryStates.get(batchIndex)) {
+                final List<Token> batch = currentChunk.batches.get(batchIndex);
+                setState(currentChunk.exitStates.get(batchIndex));
+                batchIndex++ ;
+                speculatedPosition = currentChunk.getEndOffset(batchIndex);
+                return batch;
+            }
+            resumeSequentially();
+        }
+        final int position = super.getPosition();
+        while (nextChunk < chunkStarts.length && chunkStarts[nextChunk] < position) {
+            mispredictedChunks++ ;
+            nextChunk++ ;
+        }
+        if (nextChunk < chunkStarts.length && chunkStarts[nextChunk] == position && getState() == State.DATA) {
+            final Chunk chunk = awaitChunk(nextChunk);
+            nextChunk++ ;
+            submitChunks();
+            if (chunk != null) {
+                currentChunk = chunk;
+                batchIndex = 0;
+                speculatedPosition = position;
+                return dispatch();
+            }
+            mispredictedChunks++ ;
+        }
+        return super.dispatch();
+    }
+    
+    /**
+     * Stops returning speculated tokens, and continues tokenizing the input
+     * sequentially from the end of the last batch returned.
+     */
+    private void resumeSequentially() throws IOException {
+        final int offset = currentChunk.getEndOffset(batchIndex);
+        final int chunkEnd;
+        if (nextChunk < chunkStarts.length) {
+            chunkEnd = chunkStarts[nextChunk];
+        } else {
+            chunkEnd = input.length();
+        }
+        if (offset != chunkEnd) {
+            mispredictedChunks++ ;
+        }
+        currentChunk = null;
+        final StringReader reader = new StringReader(input);
+        reader.skip(offset);
+        resume(reader, offset);
+    }
+    
+    private Chunk awaitChunk(final int index) {
+        try {
+            return chunks.get(index).get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (final ExecutionException e) {
+            return null;
+        }
+    }
+    
+}
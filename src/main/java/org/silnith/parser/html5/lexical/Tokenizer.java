@@ -6,10 +6,12 @@ import java.io.Reader;
 import java.util.ArrayDeque;
 import java.util.EnumMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Queue;
 
 import org.silnith.parser.ParseErrorException;
+import org.silnith.parser.html5.internal.Primitives;
 import org.silnith.parser.html5.lexical.state.AfterAttributeNameState;
 import org.silnith.parser.html5.lexical.state.AfterAttributeValueQuotedState;
 import org.silnith.parser.html5.lexical.state.AfterDOCTYPENameState;
@@ -188,7 +190,69 @@ public class Tokenizer {
         CDATA_SECTION
     }
     
-    private final PushbackReader in;
+    /**
+     * The state of a tokenizer between two tokens, from which tokenizing can
+     * continue on the rest of the input. A checkpoint is immutable, so it may
+     * be restored any number of times, by any number of tokenizers.
+     * 
+     * @see Tokenizer#checkpoint()
+     * @see Tokenizer#restore(Checkpoint, Reader)
+     * @author <a href="mailto:silnith@gmail.com">Kent Rosenkoetter</a>
+     */
+    public static final class Checkpoint {
+        
+        private final State state;
+        
+        private final StartTagToken lastStartTag;
+        
+        private final boolean emittedSelfClosingStartTag;
+        
+        private final String temporaryBuffer;
+        
+        private final int position;
+        
+        private Checkpoint(final State state, final StartTagToken lastStartTag,
+                final boolean emittedSelfClosingStartTag, final StringBuilder temporaryBuffer, final int position) {
+            super();
+            this.state = state;
+            this.lastStartTag = lastStartTag;
+            this.emittedSelfClosingStartTag = emittedSelfClosingStartTag;
+            if (temporaryBuffer == null) {
+                this.temporaryBuffer = null;
+            } else {
+                this.temporaryBuffer = temporaryBuffer.toString();
+            }
+            this.position = position;
+        }
+        
+        /**
+         * Returns the tokenizer state the checkpoint was taken in.
+         * 
+         * @return the tokenizer state
+         */
+        public State getState() {
+            return state;
+        }
+        
+        /**
+         * Returns the offset in the preprocessed input where the checkpoint
+         * was taken. The input given when restoring the checkpoint must start
+         * at this offset.
+         * 
+         * @return the input offset
+         */
+        public int getPosition() {
+            return position;
+        }
+        
+    }
+    
+    private PushbackReader in;
+    
+    /**
+     * The most characters any tokenizer state pushes back onto the input.
+     */
+    private final int maxPushback;
     
     private State state;
     
@@ -202,6 +266,39 @@ public class Tokenizer {
     
     private boolean emittedSelfClosingStartTag;
     
+    /**
+     * The number of characters consumed from the preprocessed input stream,
+     * less the number of characters unconsumed. This is the offset of the
+     * next input character.
+     */
+    private int position;
+    
+    /**
+     * The preprocessed input consumed so far, if the tokenizer retains it.
+     */
+    private StringBuilder retainedInput;
+    
+    /**
+     * The offset of the {@code <} that began the most recent tag.
+     */
+    private int tagStart;
+    
+    /**
+     * The offsets spanned by the tokens most recently added to the token
+     * queue.
+     */
+    private int batchStart;
+    
+    private int batchEnd;
+    
+    /**
+     * The source offsets of the token most recently returned by
+     * {@link #getNextToken()}.
+     */
+    private int tokenStart;
+    
+    private int tokenEnd;
+    
     public Tokenizer(final Reader in) {
         super();
         if (in == null) {
@@ -213,6 +310,13 @@ public class Tokenizer {
         this.tokenQueue = new ArrayDeque<>();
         this.lastStartTag = null;
         this.emittedSelfClosingStartTag = false;
+        this.position = 0;
+        this.retainedInput = null;
+        this.tagStart = 0;
+        this.batchStart = 0;
+        this.batchEnd = 0;
+        this.tokenStart = 0;
+        this.tokenEnd = 0;
         
         this.stateTokenizer.put(State.DATA, new DataState(this));
         this.stateTokenizer.put(State.CHARACTER_REFERENCE_IN_DATA, new CharacterReferenceInDataState(this));
@@ -293,7 +397,148 @@ public class Tokenizer {
         for (final TokenizerState state : this.stateTokenizer.values()) {
             maxPushback = Math.max(maxPushback, state.getMaxPushback());
         }
+        this.maxPushback = maxPushback;
+        this.in = new PushbackReader(new InputStreamPreprocessor(in), maxPushback);
+    }
+    
+    /**
+     * Prepares this tokenizer to tokenize a new input stream, discarding all
+     * state from the previous input. The tokenizer returns to the data state
+     * with an empty token queue, and any partially built token is dropped.
+     * The tokenizer states themselves hold no per-input state, so they are
+     * kept, along with the token queue and the setting for parse errors.
+     * <p>
+     * If the tokenizer retains its input, it starts retaining the new input in
+     * a new buffer. The sequence returned by {@link #getRetainedInput()}
+     * before the reset is not modified, so anything that still refers to the
+     * previous input remains valid.
+     * <p>
+     * The previous input stream is not closed.
+     * 
+     * @param in the new input stream
+     */
+    public void reset(final Reader in) {
+        if (in == null) {
+            throw new NullPointerException();
+        }
+        this.in = new PushbackReader(new InputStreamPreprocessor(in), maxPushback);
+        this.state = State.DATA;
+        this.tokenQueue.clear();
+        this.lastStartTag = null;
+        this.emittedSelfClosingStartTag = false;
+        this.position = 0;
+        if (retainedInput != null) {
+            this.retainedInput = new StringBuilder(retainedInput.length());
+        }
+        this.tagStart = 0;
+        this.batchStart = 0;
+        this.batchEnd = 0;
+        this.tokenStart = 0;
+        this.tokenEnd = 0;
+        this.pendingToken = null;
+        this.temporaryBuffer = null;
+        this.commentToken = null;
+        this.doctypeToken = null;
+    }
+    
+    /**
+     * Continues tokenizing from a different input stream, which must hold the
+     * rest of the same preprocessed input starting at the given offset. The
+     * current state, the last start tag, and the setting for parse errors are
+     * kept. This may only be done between tokens, when no token is partially
+     * constructed and the token queue is empty.
+     * 
+     * @param in the rest of the input
+     * @param position the offset of the first character of {@code in}
+     */
+    /* package */void resume(final Reader in, final int position) {
         this.in = new PushbackReader(new InputStreamPreprocessor(in), maxPushback);
+        this.position = position;
+    }
+    
+    /**
+     * Returns whether all tokens produced by the last call to
+     * {@link #dispatch()} have been returned by {@link #getNextToken()}.
+     * 
+     * @return {@code true} if the token queue is empty
+     */
+    /* package */boolean isTokenQueueEmpty() {
+        return tokenQueue.isEmpty();
+    }
+    
+    /**
+     * Returns the most recent start tag returned by {@link #getNextToken()},
+     * which decides whether an end tag is appropriate.
+     * 
+     * @return the last start tag, or {@code null} if there was none
+     */
+    /* package */StartTagToken getLastStartTag() {
+        return lastStartTag;
+    }
+    
+    /**
+     * Sets the start tag that decides whether an end tag is appropriate, as
+     * if it had been the last start tag returned by {@link #getNextToken()}.
+     * 
+     * @param lastStartTag the last start tag
+     */
+    /* package */void setLastStartTag(final StartTagToken lastStartTag) {
+        this.lastStartTag = lastStartTag;
+    }
+    
+    /**
+     * Captures the state of this tokenizer between two tokens, so that
+     * tokenizing can later continue from the same point on the rest of the
+     * input, any number of times, using {@link #restore(Checkpoint, Reader)}.
+     * 
+     * @return the current state of this tokenizer
+     * @throws IllegalStateException if a token is partially constructed or
+     *             the token queue is not empty, or if the input is retained
+     */
+    public Checkpoint checkpoint() {
+        if ( !tokenQueue.isEmpty() || pendingToken != null || commentToken != null || doctypeToken != null) {
+            throw new IllegalStateException("The tokenizer is not between tokens.");
+        }
+        if (retainedInput != null) {
+            throw new IllegalStateException("A tokenizer that retains its input cannot be checkpointed.");
+        }
+        final StartTagToken frozen;
+        if (lastStartTag == null) {
+            frozen = null;
+        } else {
+            frozen = lastStartTag.freeze();
+        }
+        return new Checkpoint(state, frozen, emittedSelfClosingStartTag, temporaryBuffer, position);
+    }
+    
+    /**
+     * Continues tokenizing from a checkpoint. The given input stream must hold
+     * the rest of the input, starting at the offset where the checkpoint was
+     * taken. All other state from the previous input is discarded, as with
+     * {@link #reset(Reader)}, and the setting for parse errors is kept.
+     * <p>
+     * The previous input stream is not closed.
+     * 
+     * @param checkpoint the state to continue from
+     * @param in the rest of the input
+     * @throws IllegalStateException if this tokenizer retains its input
+     * @see #checkpoint()
+     */
+    public void restore(final Checkpoint checkpoint, final Reader in) {
+        if (retainedInput != null) {
+            throw new IllegalStateException("A tokenizer that retains its input cannot be restored.");
+        }
+        reset(in);
+        this.state = checkpoint.state;
+        this.lastStartTag = checkpoint.lastStartTag;
+        this.emittedSelfClosingStartTag = checkpoint.emittedSelfClosingStartTag;
+        this.position = checkpoint.position;
+        this.tagStart = checkpoint.position;
+        this.tokenStart = checkpoint.position;
+        this.tokenEnd = checkpoint.position;
+        if (checkpoint.temporaryBuffer != null) {
+            this.temporaryBuffer = new StringBuilder(checkpoint.temporaryBuffer);
+        }
     }
     
     public void setAllowParseErrors(final boolean allowParseErrors) {
@@ -304,32 +549,128 @@ public class Tokenizer {
         return allowParseErrors;
     }
     
+    /**
+     * Sets whether the tokenizer retains the input it consumes, after
+     * preprocessing. By default it does not. This must be set before any input
+     * is consumed.
+     * 
+     * @param retainInput whether to retain the consumed input
+     * @throws IllegalStateException if input has already been consumed
+     * @see #getRetainedInput()
+     */
+    public void setRetainInput(final boolean retainInput) {
+        if (position != 0) {
+            throw new IllegalStateException("Input has already been consumed.");
+        }
+        if (retainInput) {
+            if (retainedInput == null) {
+                retainedInput = new StringBuilder();
+            }
+        } else {
+            retainedInput = null;
+        }
+    }
+    
+    /**
+     * Returns the preprocessed input consumed so far. Source offsets reported
+     * by this tokenizer are indices into this sequence. The sequence grows as
+     * more input is consumed.
+     * 
+     * @return the consumed input, or {@code null} if the input is not retained
+     * @see #setRetainInput(boolean)
+     */
+    public CharSequence getRetainedInput() {
+        return retainedInput;
+    }
+    
+    /**
+     * Returns the offset of the next character in the preprocessed input
+     * stream. This is the number of characters consumed so far.
+     * 
+     * @return the current input offset
+     */
+    public int getPosition() {
+        return position;
+    }
+    
+    /**
+     * Returns the offset in the preprocessed input of the first character of
+     * the token most recently returned by {@link #getNextToken()}. For start
+     * and end tags this is the offset of the {@code <}. Tokens that were
+     * emitted together, such as the characters of a character reference, all
+     * share the same offsets.
+     * 
+     * @return the start offset of the current token
+     */
+    public int getTokenStart() {
+        return tokenStart;
+    }
+    
+    /**
+     * Returns the offset in the preprocessed input just past the last
+     * character of the token most recently returned by {@link #getNextToken()}.
+     * 
+     * @return the end offset of the current token
+     * @see #getTokenStart()
+     */
+    public int getTokenEnd() {
+        return tokenEnd;
+    }
+    
     public int consume() throws IOException {
-        return in.read();
+        final int ch = in.read();
+        if (ch != -1) {
+            if (retainedInput != null && position == retainedInput.length()) {
+                retainedInput.append((char) ch);
+            }
+            position++ ;
+        }
+        return ch;
     }
     
     public int consume(final char[] buf, final int len) throws IOException {
-        if (len > buf.length) {
-            throw new IllegalStateException();
-        }
-        return in.read(buf, 0, len);
+        return consume(buf, 0, len);
     }
     
     public int consume(final char[] buf, final int offset, final int len) throws IOException {
         if (len + offset > buf.length) {
             throw new IllegalStateException();
         }
-        return in.read(buf, offset, len);
+        final int count = in.read(buf, offset, len);
+        if (count > 0) {
+            if (retainedInput != null) {
+                for (int i = 0; i < count; i++ ) {
+                    if (position + i == retainedInput.length()) {
+                        retainedInput.append(buf[offset + i]);
+                    }
+                }
+            }
+            position += count;
+        }
+        return count;
     }
     
     public void unconsume(final int ch) throws IOException {
         in.unread(ch);
+        position-- ;
     }
     
     public void setState(final State state) {
         if (this.state == State.ATTRIBUTE_NAME && state != State.ATTRIBUTE_NAME) {
             pendingToken.validateCurrentAttributeNameUnique(allowParseErrors);
         }
+        switch (state) {
+        case TAG_OPEN: // fall through
+        case RCDATA_LESS_THAN_SIGN: // fall through
+        case RAWTEXT_LESS_THAN_SIGN: // fall through
+        case SCRIPT_DATA_LESS_THAN_SIGN: // fall through
+        case SCRIPT_DATA_ESCAPED_LESS_THAN_SIGN: {
+            tagStart = position - 1;
+        } break;
+        default: {
+            // nothing
+        } break;
+        }
         this.state = state;
     }
     
@@ -343,15 +684,27 @@ public class Tokenizer {
         }
         
         int count = 0;
-        while (tokenQueue.isEmpty()) {
-            tokenQueue.addAll(dispatch());
-            // TODO: Remove this once I'm confident in the lexer.
-            if (count++ > 8192) {
-                throw new ParseErrorException("Too many stack frames!");
+        if (tokenQueue.isEmpty()) {
+            batchStart = tokenEnd;
+            while (tokenQueue.isEmpty()) {
+                tokenQueue.addAll(dispatch());
+                // TODO: Remove this once I'm confident in the lexer.
+                if (count++ > 8192) {
+                    throw new ParseErrorException("Too many stack frames!");
+                }
             }
+            batchEnd = position;
         }
         final Token nextToken = tokenQueue.remove();
         
+        final Token.Type type = nextToken.getType();
+        if (type == Token.Type.START_TAG || type == Token.Type.END_TAG) {
+            tokenStart = tagStart;
+        } else {
+            tokenStart = batchStart;
+        }
+        tokenEnd = batchEnd;
+        
         emittedSelfClosingStartTag = false;
         if (nextToken.getType() == Token.Type.START_TAG) {
             lastStartTag = (StartTagToken) nextToken;
@@ -457,6 +810,139 @@ public class Tokenizer {
         doctypeToken = null;
     }
     
+    /**
+     * Consumes the raw source of the contents of a {@code template} element,
+     * up to and including the matching {@code template} end tag. This must
+     * only be called immediately after the {@code template} start tag has been
+     * emitted, while the tokenizer is in the {@link State#DATA data state}.
+     * <p>
+     * This does not tokenize the contents. It only recognizes enough of the
+     * syntax to find the matching end tag: nested {@code template} tags,
+     * comments, the raw text of {@code script}, {@code style},
+     * {@code textarea}, {@code title}, {@code xmp}, {@code iframe},
+     * {@code noembed}, and {@code noframes} elements, and {@code plaintext},
+     * which runs to the end of the input. The returned source can
+     * later be tokenized using the HTML fragment parsing algorithm with the
+     * {@code template} element as the context element.
+     * 
+     * @return the source of the template contents, without the end tag
+     * @throws IOException if an I/O error occurs
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/scripting-1.html#template-contents">template contents</a>
+     */
+    public String consumeTemplateContents() throws IOException {
+        if (state != State.DATA || !tokenQueue.isEmpty()) {
+            throw new IllegalStateException("Template contents can only be consumed in the data state.");
+        }
+        final StringBuilder source = new StringBuilder();
+        int depth = 1;
+        int ch = consume();
+        while (ch != -1) {
+            if (ch != '<') {
+                source.append((char) ch);
+                ch = consume();
+                continue;
+            }
+            final int tagStart = source.length();
+            source.append((char) ch);
+            ch = consume();
+            if (ch == '!') {
+                source.append((char) ch);
+                ch = consumeComment(source);
+                continue;
+            }
+            final boolean endTag = ch == '/';
+            if (endTag) {
+                source.append((char) ch);
+                ch = consume();
+            }
+            final int nameStart = source.length();
+            while (ch != -1 && isTagNameCharacter(ch)) {
+                source.append((char) ch);
+                ch = consume();
+            }
+            final String tagName = source.substring(nameStart).toLowerCase(Locale.ENGLISH);
+            if (tagName.isEmpty() || ( !isTagNameTerminator(ch))) {
+                continue;
+            }
+            if ("template".equals(tagName)) {
+                if ( !endTag) {
+                    depth++ ;
+                } else if (--depth == 0) {
+                    while (ch != -1 && ch != '>') {
+                        ch = consume();
+                    }
+                    source.setLength(tagStart);
+                    tokenEnd = position;
+                    return source.toString();
+                }
+            } else if (endTag) {
+                continue;
+            } else if ("script".equals(tagName) || "style".equals(tagName) || "textarea".equals(tagName)
+                    || "title".equals(tagName) || "xmp".equals(tagName) || "iframe".equals(tagName)
+                    || "noembed".equals(tagName) || "noframes".equals(tagName)) {
+                ch = consumeRawText(source, ch, tagName);
+            } else if ("plaintext".equals(tagName)) {
+                while (ch != -1) {
+                    source.append((char) ch);
+                    ch = consume();
+                }
+            }
+        }
+        tokenEnd = position;
+        return source.toString();
+    }
+    
+    private int consumeComment(final StringBuilder source) throws IOException {
+        int ch = consume();
+        if (ch != '-') {
+            return ch;
+        }
+        source.append((char) ch);
+        ch = consume();
+        if (ch != '-') {
+            return ch;
+        }
+        source.append((char) ch);
+        ch = consume();
+        while (ch != -1) {
+            source.append((char) ch);
+            if (ch == '>' && endsWithIgnoreCase(source, "-->")) {
+                return consume();
+            }
+            ch = consume();
+        }
+        return ch;
+    }
+    
+    private int consumeRawText(final StringBuilder source, final int first, final String tagName) throws IOException {
+        final String endTag = "</" + tagName;
+        int ch = first;
+        while (ch != -1 && ch != '>') {
+            source.append((char) ch);
+            ch = consume();
+        }
+        while (ch != -1) {
+            source.append((char) ch);
+            ch = consume();
+            if (endsWithIgnoreCase(source, endTag) && isTagNameTerminator(ch)) {
+                return ch;
+            }
+        }
+        return ch;
+    }
+    
+    private boolean endsWithIgnoreCase(final StringBuilder source, final String suffix) {
+        return Primitives.INSTANCE.regionMatchesIgnoreCase(source, source.length() - suffix.length(), suffix);
+    }
+    
+    private boolean isTagNameCharacter(final int ch) {
+        return ch != '\t' && ch != '\n' && ch != '\f' && ch != ' ' && ch != '/' && ch != '>' && ch != '<';
+    }
+    
+    private boolean isTagNameTerminator(final int ch) {
+        return ch == '\t' || ch == '\n' || ch == '\f' || ch == ' ' || ch == '/' || ch == '>' || ch == -1;
+    }
+    
     /**
      * An appropriate end tag token is an end tag token whose tag name matches the tag name of the last start tag to have been emitted from this tokenizer, if any. If no start tag has been emitted from this tokenizer, then no end tag token is appropriate.
      * 
@@ -472,6 +958,9 @@ public class Tokenizer {
             throw new IllegalStateException(
                     "The pending token should be an end tag token, instead it is: " + tagToken.getType());
         }
+        if (lastStartTag == null) {
+            return false;
+        }
         final String startTagName = lastStartTag.getTagName();
         final String endTagName = tagToken.getTagName();
         return (endTagName.equals(startTagName));
@@ -112,6 +112,20 @@ public class DOCTYPEToken extends Token {
         this.forceQuirks = forceQuirks;
     }
     
+    /**
+     * Returns the mode a document with this DOCTYPE is in, assuming the
+     * document is not an iframe srcdoc document. This only depends on the
+     * token, so it can be used to detect the document mode without
+     * constructing a document.
+     * 
+     * @return the document mode
+     * @see DocumentModeClassifier
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#the-initial-insertion-mode">8.2.5.4.1 The "initial" insertion mode</a>
+     */
+    public DocumentMode getDocumentMode() {
+        return DocumentModeClassifier.classify(name, publicIdentifier, systemIdentifier, forceQuirks);
+    }
+    
     @Override
     public Type getType() {
         return Type.DOCTYPE;
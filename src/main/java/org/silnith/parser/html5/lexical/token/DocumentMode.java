@@ -0,0 +1,29 @@
+package org.silnith.parser.html5.lexical.token;
+
+/**
+ * The mode of a document, as determined by its DOCTYPE.
+ * 
+ * @see DOCTYPEToken#getDocumentMode()
+ * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/infrastructure.html#no-quirks-mode">no-quirks mode</a>
+ * @author <a href="mailto:silnith@gmail.com">Kent Rosenkoetter</a>
+ */
+public enum DocumentMode {
+    /**
+     * The document is in no-quirks mode.
+     * 
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/infrastructure.html#no-quirks-mode">no-quirks mode</a>
+     */
+    NO_QUIRKS,
+    /**
+     * The document is in limited-quirks mode.
+     * 
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/infrastructure.html#limited-quirks-mode">limited-quirks mode</a>
+     */
+    LIMITED_QUIRKS,
+    /**
+     * The document is in quirks mode.
+     * 
+     * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/infrastructure.html#quirks-mode">quirks mode</a>
+     */
+    QUIRKS
+}
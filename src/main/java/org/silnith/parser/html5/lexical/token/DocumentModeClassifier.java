@@ -0,0 +1,252 @@
+package org.silnith.parser.html5.lexical.token;
+
+/**
+ * Determines the document mode from the name, public identifier, and system
+ * identifier of a DOCTYPE token.
+ * <p>
+ * The public identifiers that trigger quirks and limited-quirks mode are
+ * compiled into a trie that ignores ASCII case. Classifying a public
+ * identifier walks the trie once over its characters, stopping at the first
+ * prefix that decides the mode, instead of comparing the identifier against
+ * each listed string in turn.
+ * 
+ * @see DOCTYPEToken#getDocumentMode()
+ * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#the-initial-insertion-mode">8.2.5.4.1 The "initial" insertion mode</a>
+ * @author <a href="mailto:silnith@gmail.com">Kent Rosenkoetter</a>
+ */
+public final class DocumentModeClassifier {
+    
+    /**
+     * A public identifier starting with this prefix means quirks mode.
+     */
+    private static final int QUIRKS_PREFIX = 1;
+    
+    /**
+     * A public identifier equal to this string means quirks mode.
+     */
+    private static final int QUIRKS_EXACT = 2;
+    
+    /**
+     * A public identifier starting with this prefix means limited-quirks mode.
+     */
+    private static final int LIMITED_QUIRKS_PREFIX = 3;
+    
+    /**
+     * A public identifier starting with this prefix means quirks mode if the
+     * system identifier is missing, and limited-quirks mode otherwise.
+     */
+    private static final int SYSTEM_DEPENDENT_PREFIX = 4;
+    
+    private static final String QUIRKS_SYSTEM_IDENTIFIER = "http://www.ibm.com/data/dtd/v11/ibmxhtml1-transitional.dtd";
+    
+    /**
+     * A node in the trie. The children are found by a linear scan of
+     * {@link #labels}, which is fast because almost every node has a single
+     * child.
+     */
+    private static final class Node {
+        
+        private char[] labels = new char[0];
+        
+        private Node[] children = new Node[0];
+        
+        /**
+         * What reaching this node after consuming a whole prefix means, or
+         * {@code 0}.
+         */
+        private int prefixMatch;
+        
+        /**
+         * What reaching this node at the end of the identifier means, or
+         * {@code 0}.
+         */
+        private int exactMatch;
+        
+        private Node child(final char label) {
+            for (int i = 0; i < labels.length; i++ ) {
+                if (labels[i] == label) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+        
+        private Node addChild(final char label) {
+            final Node existing = child(label);
+            if (existing != null) {
+                return existing;
+            }
+            final int length = labels.length;
+            final char[] newLabels = new char[length + 1];
+            final Node[] newChildren = new Node[length + 1];
+            System.arraycopy(labels, 0, newLabels, 0, length);
+            System.arraycopy(children, 0, newChildren, 0, length);
+            newLabels[length] = label;
+            newChildren[length] = new Node();
+            labels = newLabels;
+            children = newChildren;
+            return newChildren[length];
+        }
+        
+    }
+    
+    private static final Node ROOT = new Node();
+    
+    static {
+        final String[] quirksPrefixes = {
+            "+//Silmaril//dtd html Pro v0r11 19970101//",
+            "-//AdvaSoft Ltd//DTD HTML 3.0 asWedit + extensions//",
+            "-//AS//DTD HTML 3.0 asWedit + extensions//",
+            "-//IETF//DTD HTML 2.0 Level 1//",
+            "-//IETF//DTD HTML 2.0 Level 2//",
+            "-//IETF//DTD HTML 2.0 Strict Level 1//",
+            "-//IETF//DTD HTML 2.0 Strict Level 2//",
+            "-//IETF//DTD HTML 2.0 Strict//",
+            "-//IETF//DTD HTML 2.0//",
+            "-//IETF//DTD HTML 2.1E//",
+            "-//IETF//DTD HTML 3.0//",
+            "-//IETF//DTD HTML 3.2 Final//",
+            "-//IETF//DTD HTML 3.2//",
+            "-//IETF//DTD HTML 3//",
+            "-//IETF//DTD HTML Level 0//",
+            "-//IETF//DTD HTML Level 1//",
+            "-//IETF//DTD HTML Level 2//",
+            "-//IETF//DTD HTML Level 3//",
+            "-//IETF//DTD HTML Strict Level 0//",
+            "-//IETF//DTD HTML Strict Level 1//",
+            "-//IETF//DTD HTML Strict Level 2//",
+            "-//IETF//DTD HTML Strict Level 3//",
+            "-//IETF//DTD HTML Strict//",
+            "-//IETF//DTD HTML//",
+            "-//Metrius//DTD Metrius Presentational//",
+            "-//Microsoft//DTD Internet Explorer 2.0 HTML Strict//",
+            "-//Microsoft//DTD Internet Explorer 2.0 HTML//",
+            "-//Microsoft//DTD Internet Explorer 2.0 Tables//",
+            "-//Microsoft//DTD Internet Explorer 3.0 HTML Strict//",
+            "-//Microsoft//DTD Internet Explorer 3.0 HTML//",
+            "-//Microsoft//DTD Internet Explorer 3.0 Tables//",
+            "-//Netscape Comm. Corp.//DTD HTML//",
+            "-//Netscape Comm. Corp.//DTD Strict HTML//",
+            "-//O'Reilly and Associates//DTD HTML 2.0//",
+            "-//O'Reilly and Associates//DTD HTML Extended 1.0//",
+            "-//O'Reilly and Associates//DTD HTML Extended Relaxed 1.0//",
+            "-//SoftQuad Software//DTD HoTMetaL PRO 6.0::19990601::extensions to HTML 4.0//",
+            "-//SoftQuad//DTD HoTMetaL PRO 4.0::19971010::extensions to HTML 4.0//",
+            "-//Spyglass//DTD HTML 2.0 Extended//",
+            "-//SQ//DTD HTML 2.0 HoTMetaL + extensions//",
+            "-//Sun Microsystems Corp.//DTD HotJava HTML//",
+            "-//Sun Microsystems Corp.//DTD HotJava Strict HTML//",
+            "-//W3C//DTD HTML 3 1995-03-24//",
+            "-//W3C//DTD HTML 3.2 Draft//",
+            "-//W3C//DTD HTML 3.2 Final//",
+            "-//W3C//DTD HTML 3.2//",
+            "-//W3C//DTD HTML 3.2S Draft//",
+            "-//W3C//DTD HTML 4.0 Frameset//",
+            "-//W3C//DTD HTML 4.0 Transitional//",
+            "-//W3C//DTD HTML Experimental 19960712//",
+            "-//W3C//DTD HTML Experimental 970421//",
+            "-//W3C//DTD W3 HTML//",
+            "-//W3O//DTD W3 HTML 3.0//",
+            "-//WebTechs//DTD Mozilla HTML 2.0//",
+            "-//WebTechs//DTD Mozilla HTML//",
+        };
+        for (final String prefix : quirksPrefixes) {
+            add(prefix).prefixMatch = QUIRKS_PREFIX;
+        }
+        add("-//W3O//DTD W3 HTML Strict 3.0//EN//").exactMatch = QUIRKS_EXACT;
+        add("-/W3C/DTD HTML 4.0 Transitional/EN").exactMatch = QUIRKS_EXACT;
+        add("HTML").exactMatch = QUIRKS_EXACT;
+        add("-//W3C//DTD XHTML 1.0 Frameset//").prefixMatch = LIMITED_QUIRKS_PREFIX;
+        add("-//W3C//DTD XHTML 1.0 Transitional//").prefixMatch = LIMITED_QUIRKS_PREFIX;
+        add("-//W3C//DTD HTML 4.01 Frameset//").prefixMatch = SYSTEM_DEPENDENT_PREFIX;
+        add("-//W3C//DTD HTML 4.01 Transitional//").prefixMatch = SYSTEM_DEPENDENT_PREFIX;
+    }
+    
+    private static Node add(final String identifier) {
+        Node node = ROOT;
+        for (int i = 0; i < identifier.length(); i++ ) {
+            node = node.addChild(toASCIILowerCase(identifier.charAt(i)));
+        }
+        return node;
+    }
+    
+    private static char toASCIILowerCase(final char ch) {
+        if (ch >= 'A' && ch <= 'Z') {
+            return (char) (ch + 0x20);
+        }
+        return ch;
+    }
+    
+    private DocumentModeClassifier() {
+        super();
+    }
+    
+    /**
+     * Returns the document mode for a DOCTYPE with the given properties. This
+     * assumes the document is not an iframe srcdoc document.
+     * 
+     * @param name the name, or {@code null} if it is missing
+     * @param publicIdentifier the public identifier, or {@code null} if it is
+     *            missing
+     * @param systemIdentifier the system identifier, or {@code null} if it is
+     *            missing
+     * @param forceQuirks the force-quirks flag
+     * @return the document mode
+     */
+    public static DocumentMode classify(final CharSequence name, final CharSequence publicIdentifier,
+            final CharSequence systemIdentifier, final boolean forceQuirks) {
+        if (forceQuirks || name == null || !"html".contentEquals(name)) {
+            return DocumentMode.QUIRKS;
+        }
+        if (systemIdentifier != null && equalsIgnoreASCIICase(systemIdentifier, QUIRKS_SYSTEM_IDENTIFIER)) {
+            return DocumentMode.QUIRKS;
+        }
+        if (publicIdentifier == null) {
+            return DocumentMode.NO_QUIRKS;
+        }
+        
+        Node node = ROOT;
+        final int length = publicIdentifier.length();
+        for (int i = 0; i < length; i++ ) {
+            node = node.child(toASCIILowerCase(publicIdentifier.charAt(i)));
+            if (node == null) {
+                return DocumentMode.NO_QUIRKS;
+            }
+            switch (node.prefixMatch) {
+            case QUIRKS_PREFIX: {
+                return DocumentMode.QUIRKS;
+            } // break;
+            case LIMITED_QUIRKS_PREFIX: {
+                return DocumentMode.LIMITED_QUIRKS;
+            } // break;
+            case SYSTEM_DEPENDENT_PREFIX: {
+                if (systemIdentifier == null) {
+                    return DocumentMode.QUIRKS;
+                } else {
+                    return DocumentMode.LIMITED_QUIRKS;
+                }
+            } // break;
+            default: {
+            } break;
+            }
+        }
+        if (node.exactMatch == QUIRKS_EXACT) {
+            return DocumentMode.QUIRKS;
+        }
+        return DocumentMode.NO_QUIRKS;
+    }
+    
+    private static boolean equalsIgnoreASCIICase(final CharSequence value, final String expected) {
+        final int length = value.length();
+        if (length != expected.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++ ) {
+            if (toASCIILowerCase(value.charAt(i)) != toASCIILowerCase(expected.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+}
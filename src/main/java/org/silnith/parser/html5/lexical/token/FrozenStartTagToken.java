@@ -0,0 +1,205 @@
+package org.silnith.parser.html5.lexical.token;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * An immutable snapshot of a {@link StartTagToken}. The parser retains start
+ * tag tokens for as long as the elements they created remain in the list of
+ * active formatting elements, and uses them to compare elements and to create
+ * new elements when reconstructing the active formatting elements or running
+ * the adoption agency algorithm. A frozen token holds its tag name and
+ * attributes as plain strings so that none of those operations need to copy
+ * the tokenizer's buffers again, and carries a precomputed fingerprint of its
+ * tag name and attributes.
+ * 
+ * @see StartTagToken#freeze()
+ * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#the-list-of-active-formatting-elements">8.2.3.3 The list of active formatting elements</a>
+ * @author <a href="mailto:silnith@gmail.com">Kent Rosenkoetter</a>
+ */
+public final class FrozenStartTagToken extends StartTagToken {
+    
+    private final String tagName;
+    
+    private final boolean selfClosing;
+    
+    /**
+     * Attribute names and values, interleaved.
+     */
+    private final String[] attributes;
+    
+    private final int fingerprint;
+    
+    private List<Attribute> attributeList;
+    
+    FrozenStartTagToken(final StartTagToken startTagToken) {
+        super();
+        this.tagName = startTagToken.getTagName();
+        this.selfClosing = startTagToken.isSelfClosing();
+        final List<Attribute> original = startTagToken.getAttributes();
+        this.attributes = new String[original.size() * 2];
+        int attributeFingerprint = 0;
+        int index = 0;
+        for (final Attribute attribute : original) {
+            final String name = attribute.getName();
+            final String value = attribute.getValue();
+            attributes[index++ ] = name;
+            attributes[index++ ] = value;
+            /*
+             * Attribute order does not matter when comparing tokens, so the
+             * per-attribute hashes are combined commutatively.
+             */
+            attributeFingerprint += name.hashCode() * 31 ^ value.hashCode();
+        }
+        this.fingerprint = tagName.hashCode() * 31 + attributeFingerprint;
+        this.attributeList = null;
+    }
+    
+    /**
+     * Returns a hash of the tag name and attributes of this token. Two tokens
+     * for which {@link #hasSameTagNameAndAttributes(FrozenStartTagToken)}
+     * returns {@code true} have the same fingerprint.
+     * 
+     * @return the fingerprint
+     */
+    public int getFingerprint() {
+        return fingerprint;
+    }
+    
+    /**
+     * Returns whether this token has the same tag name and the same set of
+     * attributes as the given token. The order of the attributes does not
+     * matter.
+     * 
+     * @param other the token to compare with
+     * @return {@code true} if the tag names and attributes match
+     */
+    public boolean hasSameTagNameAndAttributes(final FrozenStartTagToken other) {
+        if (fingerprint != other.fingerprint) {
+            return false;
+        }
+        if ( !tagName.equals(other.tagName)) {
+            return false;
+        }
+        if (attributes.length != other.attributes.length) {
+            return false;
+        }
+        for (int index = 0; index < attributes.length; index += 2) {
+            final String value = other.getAttributeValue(attributes[index]);
+            if (value == null || !value.equals(attributes[index + 1])) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Returns the number of attributes on this token.
+     * 
+     * @return the number of attributes
+     */
+    public int getAttributeCount() {
+        return attributes.length / 2;
+    }
+    
+    /**
+     * Returns the name of the attribute at the given index.
+     * 
+     * @param index the index of the attribute
+     * @return the attribute name
+     */
+    public String getAttributeName(final int index) {
+        return attributes[index * 2];
+    }
+    
+    /**
+     * Returns the value of the attribute at the given index.
+     * 
+     * @param index the index of the attribute
+     * @return the attribute value
+     */
+    public String getAttributeValue(final int index) {
+        return attributes[index * 2 + 1];
+    }
+    
+    /**
+     * Returns the value of the attribute with the given name.
+     * 
+     * @param name the attribute name
+     * @return the attribute value, or {@code null} if there is no such
+     *         attribute
+     */
+    public String getAttributeValue(final String name) {
+        for (int index = 0; index < attributes.length; index += 2) {
+            if (attributes[index].equals(name)) {
+                return attributes[index + 1];
+            }
+        }
+        return null;
+    }
+    
+    @Override
+    public FrozenStartTagToken freeze() {
+        return this;
+    }
+    
+    @Override
+    public String getTagName() {
+        return tagName;
+    }
+    
+    @Override
+    public boolean isSelfClosing() {
+        return selfClosing;
+    }
+    
+    @Override
+    public List<Attribute> getAttributes() {
+        if (attributeList == null) {
+            final List<Attribute> list = new ArrayList<>(getAttributeCount());
+            for (int index = 0; index < attributes.length; index += 2) {
+                final Attribute attribute = new Attribute();
+                for (final char character : attributes[index].toCharArray()) {
+                    attribute.appendToName(character);
+                }
+                attribute.appendToValue(attributes[index + 1].toCharArray());
+                list.add(attribute);
+            }
+            attributeList = Collections.unmodifiableList(list);
+        }
+        return attributeList;
+    }
+    
+    @Override
+    public void setSelfClosing() {
+        throw new UnsupportedOperationException("Frozen start tag tokens cannot be modified.");
+    }
+    
+    @Override
+    public void setTagName(final String tagName) {
+        throw new UnsupportedOperationException("Frozen start tag tokens cannot be modified.");
+    }
+    
+    @Override
+    public void appendToTagName(final char character) {
+        throw new UnsupportedOperationException("Frozen start tag tokens cannot be modified.");
+    }
+    
+    @Override
+    public Attribute createNewAttribute() {
+        throw new UnsupportedOperationException("Frozen start tag tokens cannot be modified.");
+    }
+    
+    @Override
+    public Attribute getCurrentAttribute() {
+        return null;
+    }
+    
+    @Override
+    public void validateCurrentAttributeNameUnique(final boolean allowParseError) {
+        throw new UnsupportedOperationException("Frozen start tag tokens cannot be modified.");
+    }
+    
+}
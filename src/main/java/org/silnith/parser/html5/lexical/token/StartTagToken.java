@@ -13,6 +13,16 @@ public class StartTagToken extends TagToken {
         super();
     }
     
+    /**
+     * Returns an immutable copy of this token, suitable for retaining after
+     * the tokenizer has moved on.
+     * 
+     * @return a frozen copy of this token
+     */
+    public FrozenStartTagToken freeze() {
+        return new FrozenStartTagToken(this);
+    }
+    
     @Override
     public Type getType() {
         return Token.Type.START_TAG;
@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.silnith.parser.ParseErrorException;
+import org.silnith.parser.html5.grammar.element.ElementKind;
 
 
 public abstract class TagToken extends Token {
@@ -14,10 +15,17 @@ public abstract class TagToken extends Token {
         
         private final StringBuilder value;
         
+        /**
+         * The namespace of the attribute, or {@code null} if it is not in a
+         * namespace.
+         */
+        private String namespace;
+        
         public Attribute() {
             super();
             this.name = new StringBuilder();
             this.value = new StringBuilder();
+            this.namespace = null;
         }
         
         public void appendToName(final char ch) {
@@ -28,6 +36,42 @@ public abstract class TagToken extends Token {
             return name.toString();
         }
         
+        /**
+         * Replaces the name of the attribute. This is used by the tree
+         * construction stage to restore the case of attribute names in
+         * foreign content.
+         * 
+         * @param name the new attribute name
+         * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#adjust-svg-attributes">adjust SVG attributes</a>
+         */
+        public void setName(final String name) {
+            this.name.setLength(0);
+            this.name.append(name);
+        }
+        
+        /**
+         * Returns the namespace of the attribute. Attributes only have a
+         * namespace after the tree construction stage adjusts the attributes
+         * of a foreign element.
+         * 
+         * @return the namespace, or {@code null}
+         * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#adjust-foreign-attributes">adjust foreign attributes</a>
+         */
+        public String getNamespace() {
+            return namespace;
+        }
+        
+        /**
+         * Sets the namespace of the attribute. The name of the attribute is
+         * used as the qualified name.
+         * 
+         * @param namespace the namespace
+         * @see <a href="https://www.w3.org/TR/2014/REC-html5-20141028/syntax.html#adjust-foreign-attributes">adjust foreign attributes</a>
+         */
+        public void setNamespace(final String namespace) {
+            this.namespace = namespace;
+        }
+        
         public void appendToValue(final char ch) {
             value.append(ch);
         }
@@ -49,6 +93,18 @@ public abstract class TagToken extends Token {
     
     private StringBuilder tagName;
     
+    /**
+     * The tag name as a string, or {@code null} if it has not been requested
+     * since the tag name last changed.
+     */
+    private String tagNameString;
+    
+    /**
+     * The {@link ElementKind} of the tag name, or {@code -1} if it has not
+     * been requested since the tag name last changed.
+     */
+    private int tagKind;
+    
     private boolean selfClosing;
     
     private final List<Attribute> attributes;
@@ -58,6 +114,8 @@ public abstract class TagToken extends Token {
     public TagToken() {
         super();
         this.tagName = new StringBuilder();
+        this.tagNameString = null;
+        this.tagKind = -1;
         this.selfClosing = false;
         this.attributes = new ArrayList<>();
         this.currentAttribute = null;
@@ -73,14 +131,39 @@ public abstract class TagToken extends Token {
     
     public void setTagName(final String tagName) {
         this.tagName = new StringBuilder(tagName);
+        this.tagNameString = null;
+        this.tagKind = -1;
     }
     
     public String getTagName() {
-        return tagName.toString();
+        if (tagNameString == null) {
+            tagNameString = tagName.toString();
+        }
+        return tagNameString;
     }
     
     public void appendToTagName(final char character) {
         tagName.append(character);
+        tagNameString = null;
+        tagKind = -1;
+    }
+    
+    /**
+     * Returns the {@link ElementKind} of the element with this tag name.
+     * The kind is looked up once and remembered, so that a token that is
+     * reprocessed by several insertion modes only hashes its tag name once.
+     * The insertion modes switch on this value instead of on the tag name.
+     * 
+     * @return the kind of the element with this tag name, or
+     *         {@link ElementKind#HTML_UNKNOWN} if the tag name is not one that
+     *         the parser treats specially
+     * @see ElementKind#tagKindOf(String)
+     */
+    public int getTagKind() {
+        if (tagKind == -1) {
+            tagKind = ElementKind.tagKindOf(getTagName());
+        }
+        return tagKind;
     }
     
     public Attribute createNewAttribute() {
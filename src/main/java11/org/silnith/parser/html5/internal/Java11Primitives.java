@@ -0,0 +1,60 @@
+package org.silnith.parser.html5.internal;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+
+/**
+ * The implementation of {@link Primitives} for Java 11.
+ * <p>
+ * Runs of ASCII bytes are found eight bytes at a time, using a {@code long}
+ * view of the byte array.
+ *
+ * @author <a href="mailto:silnith@gmail.com">Kent Rosenkoetter</a>
+ */
+/* package */class Java11Primitives extends Java7Primitives {
+    
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class,
+            ByteOrder.nativeOrder());
+    
+    /**
+     * The high bit of every byte in a {@code long}, which is set only for
+     * bytes that are not ASCII.
+     */
+    private static final long NON_ASCII = 0x8080808080808080L;
+    
+    /* package */Java11Primitives() {
+        super();
+    }
+    
+    @Override
+    public int decodeASCII(final byte[] src, final int srcOffset, final char[] dst, final int dstOffset,
+            final int length) {
+        final int count = countASCII(src, srcOffset, length);
+        for (int i = 0; i < count; i++ ) {
+            dst[dstOffset + i] = (char) src[srcOffset + i];
+        }
+        return count;
+    }
+    
+    /**
+     * Returns the length of the leading run of ASCII bytes.
+     * 
+     * @param src the bytes
+     * @param offset the index of the first byte
+     * @param length the most bytes to count
+     * @return the number of leading bytes that are ASCII
+     */
+    /* package */static int countASCII(final byte[] src, final int offset, final int length) {
+        int i = 0;
+        while (i + Long.BYTES <= length && ((long) LONGS.get(src, offset + i) & NON_ASCII) == 0) {
+            i += Long.BYTES;
+        }
+        while (i < length && src[offset + i] >= 0) {
+            i++ ;
+        }
+        return i;
+    }
+    
+}
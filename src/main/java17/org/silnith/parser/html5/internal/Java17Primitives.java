@@ -0,0 +1,40 @@
+package org.silnith.parser.html5.internal;
+
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * The implementation of {@link Primitives} for Java 17.
+ * <p>
+ * A string made from Latin-1 bytes keeps those bytes as they are, and copying
+ * its characters out inflates the bytes to characters using an intrinsic, so
+ * long runs of ASCII bytes are decoded by way of a string.
+ *
+ * @author <a href="mailto:silnith@gmail.com">Kent Rosenkoetter</a>
+ */
+/* package */class Java17Primitives extends Java11Primitives {
+    
+    /**
+     * The shortest run of ASCII bytes worth making a string for.
+     */
+    private static final int MIN_INFLATE_LENGTH = 32;
+    
+    /* package */Java17Primitives() {
+        super();
+    }
+    
+    @Override
+    public int decodeASCII(final byte[] src, final int srcOffset, final char[] dst, final int dstOffset,
+            final int length) {
+        final int count = countASCII(src, srcOffset, length);
+        if (count < MIN_INFLATE_LENGTH) {
+            for (int i = 0; i < count; i++ ) {
+                dst[dstOffset + i] = (char) src[srcOffset + i];
+            }
+        } else {
+            new String(src, srcOffset, count, StandardCharsets.ISO_8859_1).getChars(0, count, dst, dstOffset);
+        }
+        return count;
+    }
+    
+}
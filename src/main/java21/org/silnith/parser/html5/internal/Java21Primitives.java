@@ -0,0 +1,29 @@
+package org.silnith.parser.html5.internal;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+
+/**
+ * The implementation of {@link Primitives} for Java 21.
+ * <p>
+ * Helper tasks are run on virtual threads, which cost far less than platform
+ * threads while they are blocked reading input.
+ *
+ * @author <a href="mailto:silnith@gmail.com">Kent Rosenkoetter</a>
+ */
+/* package */class Java21Primitives extends Java17Primitives {
+    
+    private static final ExecutorService HELPER_EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+    
+    /* package */Java21Primitives() {
+        super();
+    }
+    
+    @Override
+    public Executor getHelperExecutor() {
+        return HELPER_EXECUTOR;
+    }
+    
+}
@@ -0,0 +1,237 @@
+package org.silnith.parser.html5;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.silnith.parser.html5.grammar.element.ElementKind;
+import org.silnith.parser.html5.lexical.token.StartTagToken;
+import org.silnith.parser.html5.lexical.token.TagToken.Attribute;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+
+public class ActiveFormattingElementsTest {
+    
+    private static final String HTML_NAMESPACE = "http://www.w3.org/1999/xhtml";
+    
+    private Document document;
+    
+    private ActiveFormattingElements activeFormattingElements;
+    
+    @Before
+    public void setUp() throws Exception {
+        final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        document = factory.newDocumentBuilder().newDocument();
+        activeFormattingElements = new ActiveFormattingElements();
+    }
+    
+    private StartTagToken startTag(final String tagName, final String... attributes) {
+        final StartTagToken startTagToken = new StartTagToken();
+        startTagToken.setTagName(tagName);
+        for (int i = 0; i < attributes.length; i += 2) {
+            final Attribute attribute = startTagToken.createNewAttribute();
+            for (final char ch : attributes[i].toCharArray()) {
+                attribute.appendToName(ch);
+            }
+            attribute.appendToValue(attributes[i + 1].toCharArray());
+        }
+        return startTagToken;
+    }
+    
+    private Element push(final String tagName, final String... attributes) {
+        final Element element = document.createElementNS(HTML_NAMESPACE, tagName);
+        activeFormattingElements.push(startTag(tagName, attributes), element);
+        return element;
+    }
+    
+    @Test
+    public void testEmpty() {
+        assertTrue(activeFormattingElements.isEmpty());
+        assertEquals(0, activeFormattingElements.size());
+        assertEquals(-1, activeFormattingElements.getLastMarkerIndex());
+    }
+    
+    @Test
+    public void testPush() {
+        final Element element = push("b");
+        
+        assertEquals(1, activeFormattingElements.size());
+        assertSame(element, activeFormattingElements.getElement(0));
+        assertEquals(ElementKind.B, activeFormattingElements.getKind(0));
+        assertTrue(activeFormattingElements.contains(element));
+    }
+    
+    @Test
+    public void testPushRemovesEarliestOfFourIdentical() {
+        final Element first = push("b", "class", "x");
+        final Element second = push("b", "class", "x");
+        push("b", "class", "x");
+        push("b", "class", "x");
+        
+        assertEquals(3, activeFormattingElements.size());
+        assertFalse(activeFormattingElements.contains(first));
+        assertSame(second, activeFormattingElements.getElement(0));
+    }
+    
+    @Test
+    public void testPushKeepsDifferentAttributes() {
+        push("b", "class", "x");
+        push("b", "class", "x");
+        push("b", "class", "x");
+        push("b", "class", "y");
+        
+        assertEquals(4, activeFormattingElements.size());
+    }
+    
+    @Test
+    public void testPushOnlyCountsAfterLastMarker() {
+        push("b");
+        push("b");
+        activeFormattingElements.addMarker();
+        push("b");
+        push("b");
+        
+        assertEquals(5, activeFormattingElements.size());
+        assertEquals(2, activeFormattingElements.getLastMarkerIndex());
+    }
+    
+    @Test
+    public void testAddMarker() {
+        push("b");
+        activeFormattingElements.addMarker();
+        
+        assertTrue(activeFormattingElements.isMarker(1));
+        assertNull(activeFormattingElements.get(1));
+        assertEquals(1, activeFormattingElements.getLastMarkerIndex());
+    }
+    
+    @Test
+    public void testLastIndexOfKindAfterLastMarker() {
+        push("a");
+        activeFormattingElements.addMarker();
+        push("b");
+        
+        assertEquals(-1, activeFormattingElements.lastIndexOfKindAfterLastMarker(ElementKind.A));
+        assertEquals(2, activeFormattingElements.lastIndexOfKindAfterLastMarker(ElementKind.B));
+    }
+    
+    @Test
+    public void testLastIndexOfTagNameAfterLastMarker() {
+        push("a");
+        push("i");
+        
+        assertEquals(0, activeFormattingElements.lastIndexOfTagNameAfterLastMarker("a"));
+        assertEquals(-1, activeFormattingElements.lastIndexOfTagNameAfterLastMarker("u"));
+    }
+    
+    @Test
+    public void testClearToLastMarker() {
+        push("a");
+        activeFormattingElements.addMarker();
+        push("b");
+        push("i");
+        activeFormattingElements.clearToLastMarker();
+        
+        assertEquals(1, activeFormattingElements.size());
+        assertEquals(-1, activeFormattingElements.getLastMarkerIndex());
+    }
+    
+    @Test
+    public void testClearToLastMarkerNested() {
+        activeFormattingElements.addMarker();
+        push("b");
+        activeFormattingElements.addMarker();
+        push("i");
+        activeFormattingElements.clearToLastMarker();
+        
+        assertEquals(2, activeFormattingElements.size());
+        assertEquals(0, activeFormattingElements.getLastMarkerIndex());
+    }
+    
+    @Test
+    public void testClearToLastMarkerWithoutMarker() {
+        push("b");
+        push("i");
+        activeFormattingElements.clearToLastMarker();
+        
+        assertTrue(activeFormattingElements.isEmpty());
+    }
+    
+    @Test
+    public void testClear() {
+        push("b");
+        activeFormattingElements.addMarker();
+        push("i");
+        activeFormattingElements.clear();
+        
+        assertTrue(activeFormattingElements.isEmpty());
+        assertEquals(-1, activeFormattingElements.getLastMarkerIndex());
+    }
+    
+    @Test
+    public void testRemoveMarker() {
+        activeFormattingElements.addMarker();
+        push("b");
+        activeFormattingElements.addMarker();
+        activeFormattingElements.remove(2);
+        
+        assertEquals(0, activeFormattingElements.getLastMarkerIndex());
+    }
+    
+    @Test
+    public void testInsert() {
+        activeFormattingElements.addMarker();
+        final Element element = document.createElementNS(HTML_NAMESPACE, "u");
+        activeFormattingElements.insert(0, startTag("u"), element);
+        
+        assertEquals(0, activeFormattingElements.indexOf(element));
+        assertEquals(1, activeFormattingElements.getLastMarkerIndex());
+    }
+    
+    @Test
+    public void testReplaceElement() {
+        push("b", "class", "x");
+        final Element replacement = document.createElementNS(HTML_NAMESPACE, "b");
+        activeFormattingElements.replaceElement(0, replacement);
+        
+        assertSame(replacement, activeFormattingElements.getElement(0));
+        assertEquals("x", activeFormattingElements.get(0).getKey().getAttributes().get(0).getValue());
+    }
+    
+    @Test
+    public void testIndexOfFrom() {
+        final Element first = push("b");
+        push("i");
+        
+        assertEquals(0, activeFormattingElements.indexOf(first, 0));
+        assertEquals(-1, activeFormattingElements.indexOf(first, 1));
+    }
+    
+    @Test
+    public void testReplaceFrom() {
+        final Element b = push("b");
+        activeFormattingElements.addMarker();
+        push("i");
+        push("u");
+        final Element s = document.createElementNS(HTML_NAMESPACE, "s");
+        final Parser.FormattingElement[] replacement = {
+            new Parser.FormattingElement(startTag("s"), s),
+        };
+        activeFormattingElements.replaceFrom(1, replacement, 1);
+        
+        assertEquals(2, activeFormattingElements.size());
+        assertSame(b, activeFormattingElements.getElement(0));
+        assertSame(s, activeFormattingElements.getElement(1));
+        assertEquals(ElementKind.S, activeFormattingElements.getKind(1));
+        assertEquals(-1, activeFormattingElements.getLastMarkerIndex());
+    }
+    
+}
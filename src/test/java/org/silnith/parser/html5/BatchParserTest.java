@@ -0,0 +1,186 @@
+package org.silnith.parser.html5;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.silnith.parser.html5.BatchParser.Result;
+import org.silnith.parser.html5.BatchParser.ResultHandler;
+import org.silnith.parser.html5.BatchParser.Source;
+import org.w3c.dom.DOMImplementation;
+import org.w3c.dom.bootstrap.DOMImplementationRegistry;
+
+
+public class BatchParserTest {
+    
+    private static DOMImplementationRegistry registry;
+    
+    private ExecutorService executor;
+    
+    private BatchParser batchParser;
+    
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        registry = DOMImplementationRegistry.newInstance();
+    }
+    
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception {
+        registry = null;
+    }
+    
+    @Before
+    public void setUp() throws Exception {
+        final DOMImplementation domImplementation = registry.getDOMImplementation("Core 2.0");
+        executor = Executors.newFixedThreadPool(4);
+        batchParser = new BatchParser(new ParserFactory(domImplementation, ParserConfiguration.DEFAULT), executor, 4);
+    }
+    
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+    
+    private static Source source(final String html) {
+        return new Source() {
+            
+            @Override
+            public Reader open() {
+                return new StringReader(html);
+            }
+        };
+    }
+    
+    private static List<Source> sources(final int count) {
+        final List<Source> sources = new ArrayList<>();
+        for (int i = 0; i < count; i++ ) {
+            final StringBuilder html = new StringBuilder("<title>").append(i).append("</title>");
+            for (int j = 0; j < (i % 7) * 50; j++ ) {
+                html.append("<p>x<b>y</b>");
+            }
+            sources.add(source(html.toString()));
+        }
+        return sources;
+    }
+    
+    private static final class Collector implements ResultHandler {
+        
+        private final List<Result> results = new ArrayList<>();
+        
+        @Override
+        public void handle(final Result result) {
+            results.add(result);
+        }
+        
+    }
+    
+    private static String getTitle(final Result result) {
+        return result.getDocument().getElementsByTagName("title").item(0).getTextContent();
+    }
+    
+    @Test
+    public void testParseAll() throws InterruptedException {
+        final Collector collector = new Collector();
+        batchParser.parseAll(sources(100), collector);
+        
+        assertEquals(100, collector.results.size());
+        final boolean[] seen = new boolean[100];
+        for (final Result result : collector.results) {
+            assertTrue(result.isSuccess());
+            assertEquals(String.valueOf(result.getIndex()), getTitle(result));
+            seen[result.getIndex()] = true;
+        }
+        for (final boolean b : seen) {
+            assertTrue(b);
+        }
+    }
+    
+    @Test
+    public void testParseAllOrdered() throws InterruptedException {
+        final Collector collector = new Collector();
+        batchParser.parseAllOrdered(sources(100), collector);
+        
+        assertEquals(100, collector.results.size());
+        for (int i = 0; i < 100; i++ ) {
+            assertEquals(i, collector.results.get(i).getIndex());
+            assertEquals(String.valueOf(i), getTitle(collector.results.get(i)));
+        }
+    }
+    
+    @Test
+    public void testEmptyBatch() throws InterruptedException {
+        final Collector collector = new Collector();
+        batchParser.parseAll(new ArrayList<Source>(), collector);
+        
+        assertTrue(collector.results.isEmpty());
+    }
+    
+    @Test
+    public void testFailuresIsolated() throws InterruptedException {
+        final IOException openFailure = new IOException("open");
+        final IOException readFailure = new IOException("read");
+        final List<Source> sources = new ArrayList<>();
+        sources.add(source("<p>a"));
+        sources.add(new Source() {
+            
+            @Override
+            public Reader open() throws IOException {
+                throw openFailure;
+            }
+        });
+        sources.add(new Source() {
+            
+            @Override
+            public Reader open() {
+                return new Reader() {
+                    
+                    @Override
+                    public int read(final char[] cbuf, final int off, final int len) throws IOException {
+                        throw readFailure;
+                    }
+                    
+                    @Override
+                    public void close() {
+                    }
+                };
+            }
+        });
+        sources.add(source("<p>d"));
+        final Collector collector = new Collector();
+        final ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        final PrintStream err = System.err;
+        System.setErr(new PrintStream(errors, true));
+        try {
+            batchParser.parseAllOrdered(sources, collector);
+        } finally {
+            System.setErr(err);
+        }
+        
+        assertEquals(0, errors.size());
+        assertEquals(4, collector.results.size());
+        assertTrue(collector.results.get(0).isSuccess());
+        assertFalse(collector.results.get(1).isSuccess());
+        assertEquals(openFailure, collector.results.get(1).getFailure());
+        assertNull(collector.results.get(1).getDocument());
+        assertEquals(readFailure, collector.results.get(2).getFailure());
+        assertTrue(collector.results.get(3).isSuccess());
+        assertEquals(4, collector.results.get(3).getLength());
+    }
+    
+}
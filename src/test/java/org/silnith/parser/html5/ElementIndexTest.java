@@ -0,0 +1,130 @@
+package org.silnith.parser.html5;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.util.List;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.silnith.parser.html5.grammar.element.ElementKind;
+import org.silnith.parser.html5.lexical.Tokenizer;
+import org.w3c.dom.DOMImplementation;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.bootstrap.DOMImplementationRegistry;
+
+
+public class ElementIndexTest {
+    
+    private static final String HTML_NAMESPACE = "http://www.w3.org/1999/xhtml";
+    
+    private static final String SVG_NAMESPACE = "http://www.w3.org/2000/svg";
+    
+    private static DOMImplementationRegistry registry;
+    
+    private DOMImplementation domImplementation;
+    
+    private Document document;
+    
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        registry = DOMImplementationRegistry.newInstance();
+    }
+    
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception {
+        registry = null;
+    }
+    
+    @Before
+    public void setUp() throws Exception {
+        domImplementation = registry.getDOMImplementation("Core 2.0");
+    }
+    
+    private ElementIndex parse(final String html) {
+        final Tokenizer tokenizer = new Tokenizer(new StringReader(html));
+        tokenizer.setAllowParseErrors(true);
+        final Parser parser = new Parser(tokenizer, domImplementation);
+        parser.setIndexElements(true);
+        document = parser.parse();
+        return parser.getElementIndex();
+    }
+    
+    @Test
+    public void testNotIndexedByDefault() {
+        final Parser parser = new Parser(new Tokenizer(new StringReader("<p>")), domImplementation);
+        
+        assertNull(parser.getElementIndex());
+    }
+    
+    @Test
+    public void testGetElementById() {
+        final ElementIndex index = parse("<div id=a><p id=b></p><p id=a></p></div>");
+        
+        assertEquals("div", index.getElementById("a").getNodeName());
+        assertEquals("p", index.getElementById("b").getNodeName());
+        assertNull(index.getElementById("c"));
+    }
+    
+    @Test
+    public void testGetElementsByClassName() {
+        final ElementIndex index = parse("<p class='x  y'>1</p><span class=\"y\ty x\">2</span><b class=z>3</b>");
+        final List<Element> x = index.getElementsByClassName("x");
+        final List<Element> y = index.getElementsByClassName("y");
+        
+        assertEquals(2, x.size());
+        assertEquals("p", x.get(0).getNodeName());
+        assertEquals("span", x.get(1).getNodeName());
+        assertEquals(2, y.size());
+        assertTrue(index.getElementsByClassName("w").isEmpty());
+    }
+    
+    @Test
+    public void testGetElementsByKind() {
+        final ElementIndex index = parse("<ul><li>1<li>2</ul><p>");
+        final List<Element> items = index.getElementsByKind(ElementKind.LI);
+        
+        assertEquals(2, items.size());
+        assertEquals("1", items.get(0).getTextContent());
+        assertEquals(1, index.getElementsByKind(ElementKind.HTML).size());
+        assertSame(document.getDocumentElement(), index.getElementsByKind(ElementKind.HTML).get(0));
+        assertEquals(1, index.getElementsByKind(ElementKind.BODY).size());
+    }
+    
+    @Test
+    public void testGetElementsByTagNameNS() {
+        final ElementIndex index = parse("<x-a></x-a><x-b></x-b><x-a></x-a><svg><rect/><title/></svg>");
+        
+        assertEquals(2, index.getElementsByTagNameNS(HTML_NAMESPACE, "x-a").size());
+        assertEquals(1, index.getElementsByTagNameNS(SVG_NAMESPACE, "rect").size());
+        assertEquals(1, index.getElementsByTagNameNS(SVG_NAMESPACE, "title").size());
+        assertTrue(index.getElementsByTagNameNS(HTML_NAMESPACE, "title").isEmpty());
+        assertTrue(index.getElementsByTagNameNS(HTML_NAMESPACE, "rect").isEmpty());
+    }
+    
+    @Test
+    public void testTemplateContentsNotIndexed() {
+        final ElementIndex index = parse("<template><p id=a class=b></p></template><p id=c>");
+        
+        assertNull(index.getElementById("a"));
+        assertTrue(index.getElementsByClassName("b").isEmpty());
+        assertEquals(1, index.getElementsByKind(ElementKind.TEMPLATE).size());
+        assertEquals(1, index.getElementsByKind(ElementKind.P).size());
+    }
+    
+    @Test
+    public void testBodyAttributesAdded() {
+        final ElementIndex index = parse("<body><p></p><body id=a class=b>");
+        final Element body = index.getElementsByKind(ElementKind.BODY).get(0);
+        
+        assertSame(body, index.getElementById("a"));
+        assertSame(body, index.getElementsByClassName("b").get(0));
+    }
+    
+}
@@ -0,0 +1,181 @@
+package org.silnith.parser.html5;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.silnith.parser.html5.lexical.Tokenizer;
+import org.w3c.dom.DOMImplementation;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.bootstrap.DOMImplementationRegistry;
+
+
+public class HTMLSerializerTest {
+    
+    private static DOMImplementationRegistry registry;
+    
+    private DOMImplementation domImplementation;
+    
+    private HTMLSerializer serializer;
+    
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        registry = DOMImplementationRegistry.newInstance();
+    }
+    
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception {
+        registry = null;
+    }
+    
+    @Before
+    public void setUp() throws Exception {
+        domImplementation = registry.getDOMImplementation("Core 2.0");
+        serializer = new HTMLSerializer();
+    }
+    
+    private Document parse(final String html) {
+        final Tokenizer tokenizer = new Tokenizer(new StringReader(html));
+        tokenizer.setAllowParseErrors(true);
+        final Parser parser = new Parser(tokenizer, domImplementation);
+        return parser.parse();
+    }
+    
+    private String serialize(final Node node) throws IOException {
+        final StringBuilder builder = new StringBuilder();
+        serializer.serialize(node, builder);
+        return builder.toString();
+    }
+    
+    private String serializeChildren(final Node node) throws IOException {
+        final StringBuilder builder = new StringBuilder();
+        serializer.serializeChildren(node, builder);
+        return builder.toString();
+    }
+    
+    private Element getElement(final Document document, final String tagName) {
+        return (Element) document.getElementsByTagName(tagName).item(0);
+    }
+    
+    @Test
+    public void testDocument() throws IOException {
+        final Document document = parse("<!DOCTYPE html><title>T</title><p>a<p>b");
+        
+        assertEquals("<html><head><title>T</title></head><body><p>a</p><p>b</p></body></html>", serialize(document));
+    }
+    
+    @Test
+    public void testEscapeText() throws IOException {
+        final Document document = parse("<p>a &amp; b &lt; c &gt; d&nbsp;e \"f\"</p>");
+        
+        assertEquals("a &amp; b &lt; c &gt; d&nbsp;e \"f\"", serializeChildren(getElement(document, "p")));
+    }
+    
+    @Test
+    public void testEscapeAttributeValue() throws IOException {
+        final Document document = parse("<p title='a &amp; \"b\" <c>&nbsp;'></p>");
+        
+        assertEquals("<p title=\"a &amp; &quot;b&quot; <c>&nbsp;\"></p>", serialize(getElement(document, "p")));
+    }
+    
+    @Test
+    public void testVoidElements() throws IOException {
+        final Document document = parse("<p>a<br>b<img src=x><input type=text></p>");
+        
+        assertEquals("<p>a<br>b<img src=\"x\"><input type=\"text\"></p>", serialize(getElement(document, "p")));
+        assertEquals("", serializeChildren(getElement(document, "br")));
+    }
+    
+    @Test
+    public void testRawText() throws IOException {
+        final Document document = parse("<style>a > b {}</style><script>if (a < b && c) {}</script>");
+        
+        assertEquals("<style>a > b {}</style>", serialize(getElement(document, "style")));
+        assertEquals("if (a < b && c) {}", serializeChildren(getElement(document, "script")));
+    }
+    
+    @Test
+    public void testNoscript() throws IOException {
+        final Document document = parse("");
+        final Element noscript = document.createElementNS("http://www.w3.org/1999/xhtml", "noscript");
+        noscript.appendChild(document.createTextNode("a<b"));
+        
+        assertEquals("a&lt;b", serializeChildren(noscript));
+        serializer.setScriptingEnabled(true);
+        assertEquals("a<b", serializeChildren(noscript));
+    }
+    
+    @Test
+    public void testLeadingNewline() throws IOException {
+        final Document document = parse("<pre>\n\nx</pre><textarea>\n\ny</textarea>");
+        
+        assertEquals("<pre>\n\nx</pre>", serialize(getElement(document, "pre")));
+        assertEquals("<textarea>\n\ny</textarea>", serialize(getElement(document, "textarea")));
+    }
+    
+    @Test
+    public void testForeignContent() throws IOException {
+        final Document document = parse("<svg viewBox='0 0 1 1'><foreignObject xlink:href='#a'><p>x</p></foreignObject></svg>");
+        
+        assertEquals("<svg viewBox=\"0 0 1 1\"><foreignObject xlink:href=\"#a\"><p>x</p></foreignObject></svg>",
+                serialize(getElement(document, "svg")));
+    }
+    
+    @Test
+    public void testComment() throws IOException {
+        final Document document = parse("<p><!-- a -->b</p>");
+        
+        assertEquals("<!-- a -->b", serializeChildren(getElement(document, "p")));
+    }
+    
+    @Test
+    public void testTemplateContents() throws IOException {
+        final Tokenizer tokenizer = new Tokenizer(new StringReader("<template><td>a</td></template>"));
+        tokenizer.setAllowParseErrors(true);
+        final Parser parser = new Parser(tokenizer, domImplementation);
+        parser.setDeferTemplateContents(true);
+        final Document document = parser.parse();
+        
+        assertEquals("<template><td>a</td></template>", serialize(getElement(document, "template")));
+    }
+    
+    @Test
+    public void testDeeplyNested() throws IOException {
+        final StringBuilder html = new StringBuilder();
+        for (int i = 0; i < 10000; i++ ) {
+            html.append("<span>");
+        }
+        final String serialized = serialize(parse(html.toString()));
+        
+        assertTrue(serialized.endsWith("</span></body></html>"));
+    }
+    
+    @Test
+    public void testWriter() throws IOException {
+        final Document document = parse("<p class=x>a &amp; b</p>");
+        final StringWriter writer = new StringWriter();
+        serializer.serialize(getElement(document, "p"), writer);
+        
+        assertEquals("<p class=\"x\">a &amp; b</p>", writer.toString());
+    }
+    
+    @Test
+    public void testRoundTrip() throws IOException {
+        final String html = "<html><head><title>a</title></head><body><div id=\"x\"><ul><li>1</li><li>2</li></ul>"
+                + "<table><tbody><tr><td>c</td></tr></tbody></table><pre>\n\ny</pre></div></body></html>";
+        final String serialized = serialize(parse(html));
+        
+        assertEquals(html, serialized);
+        assertTrue(parse(serialized).getDocumentElement().isEqualNode(parse(html).getDocumentElement()));
+    }
+    
+}
@@ -0,0 +1,160 @@
+package org.silnith.parser.html5;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.silnith.parser.html5.ParserFactory.PooledParser;
+import org.w3c.dom.DOMImplementation;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.bootstrap.DOMImplementationRegistry;
+
+
+public class ParserFactoryTest {
+    
+    private static DOMImplementationRegistry registry;
+    
+    private DOMImplementation domImplementation;
+    
+    private ParserFactory factory;
+    
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        registry = DOMImplementationRegistry.newInstance();
+    }
+    
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception {
+        registry = null;
+    }
+    
+    @Before
+    public void setUp() throws Exception {
+        domImplementation = registry.getDOMImplementation("Core 2.0");
+        factory = new ParserFactory(domImplementation, ParserConfiguration.DEFAULT);
+    }
+    
+    @Test
+    public void testDefaultConfiguration() {
+        final ParserConfiguration configuration = ParserConfiguration.DEFAULT;
+        
+        assertTrue(configuration.isAllowParseErrors());
+        assertFalse(configuration.isScriptingEnabled());
+        assertFalse(configuration.isWellFormedFastPath());
+        assertFalse(configuration.isDeferTemplateContents());
+        assertFalse(configuration.isIndexElements());
+        assertFalse(configuration.isRecordSourceRanges());
+    }
+    
+    @Test
+    public void testBuilderCopy() {
+        final ParserConfiguration original = new ParserConfiguration.Builder().setScriptingEnabled(true)
+                .setIndexElements(true).build();
+        final ParserConfiguration copy = new ParserConfiguration.Builder(original).setIndexElements(false).build();
+        
+        assertTrue(original.isIndexElements());
+        assertTrue(copy.isScriptingEnabled());
+        assertFalse(copy.isIndexElements());
+    }
+    
+    @Test
+    public void testConfigurationApplied() {
+        final ParserConfiguration configuration = new ParserConfiguration.Builder().setScriptingEnabled(true)
+                .setIndexElements(true).setRecordSourceRanges(true).build();
+        final Parser parser = new ParserFactory(domImplementation, configuration)
+                .newParser(new StringReader("<noscript><p id=a>x</p></noscript>"));
+        final Document document = parser.parse();
+        final Element noscript = (Element) document.getElementsByTagName("noscript").item(0);
+        
+        assertTrue(parser.isScriptingEnabled());
+        assertEquals("<p id=a>x</p>", noscript.getTextContent());
+        assertNull(parser.getElementIndex().getElementById("a"));
+        assertEquals("<noscript><p id=a>x</p></noscript>", parser.getSourceRanges().getOuterSource(noscript).toString());
+    }
+    
+    @Test
+    public void testAcquireReusesParser() {
+        final Parser first;
+        try (final PooledParser pooled = factory.acquire(new StringReader("<p>a"))) {
+            first = pooled.getParser();
+            assertEquals("a", pooled.parse().getElementsByTagName("p").item(0).getTextContent());
+        }
+        try (final PooledParser pooled = factory.acquire(new StringReader("<p>b"))) {
+            assertSame(first, pooled.getParser());
+            assertEquals("b", pooled.parse().getElementsByTagName("p").item(0).getTextContent());
+        }
+    }
+    
+    @Test
+    public void testAcquireRestoresOptions() {
+        try (final PooledParser pooled = factory.acquire(new StringReader("<p>a"))) {
+            pooled.getParser().setIndexElements(true);
+            pooled.parse();
+        }
+        try (final PooledParser pooled = factory.acquire(new StringReader("<p>b"))) {
+            assertNull(pooled.getParser().getElementIndex());
+        }
+    }
+    
+    @Test
+    public void testNestedAcquire() {
+        try (final PooledParser outer = factory.acquire(new StringReader("<p>a"))) {
+            try (final PooledParser inner = factory.acquire(new StringReader("<p>b"))) {
+                assertNotSame(outer.getParser(), inner.getParser());
+                assertEquals("b", inner.parse().getElementsByTagName("p").item(0).getTextContent());
+            }
+            assertEquals("a", outer.parse().getElementsByTagName("p").item(0).getTextContent());
+        }
+    }
+    
+    @Test(expected = IllegalStateException.class)
+    public void testClosed() {
+        final PooledParser pooled = factory.acquire(new StringReader("<p>a"));
+        pooled.close();
+        pooled.parse();
+    }
+    
+    @Test
+    public void testPerThread() throws InterruptedException {
+        final Parser parser;
+        try (final PooledParser pooled = factory.acquire(new StringReader(""))) {
+            parser = pooled.getParser();
+        }
+        final AtomicReference<Parser> other = new AtomicReference<>();
+        final Thread thread = new Thread(new Runnable() {
+            
+            @Override
+            public void run() {
+                try (final PooledParser pooled = factory.acquire(new StringReader("<p>c"))) {
+                    pooled.parse();
+                    other.set(pooled.getParser());
+                }
+            }
+        });
+        thread.start();
+        thread.join();
+        
+        assertNotNull(other.get());
+        assertNotSame(parser, other.get());
+    }
+    
+    @Test
+    public void testParse() {
+        final Document document = factory.parse(new StringReader("<title>t</title>"));
+        
+        assertEquals("t", document.getElementsByTagName("title").item(0).getTextContent());
+    }
+    
+}
@@ -0,0 +1,190 @@
+package org.silnith.parser.html5;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.silnith.parser.html5.lexical.Tokenizer;
+import org.w3c.dom.Attr;
+import org.w3c.dom.DOMImplementation;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.bootstrap.DOMImplementationRegistry;
+
+
+public class ParserStateTest {
+    
+    private static final String PREFIX = "<!DOCTYPE html><html lang=en><head><title>Site</title>"
+            + "<link rel=stylesheet href=s.css></head><body class=page><div id=nav><ul><li><a href=/>Home</a>"
+            + "</ul></div><!-- content --><main><b>";
+    
+    private static DOMImplementationRegistry registry;
+    
+    private DOMImplementation domImplementation;
+    
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        registry = DOMImplementationRegistry.newInstance();
+    }
+    
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception {
+        registry = null;
+    }
+    
+    @Before
+    public void setUp() throws Exception {
+        domImplementation = registry.getDOMImplementation("Core 2.0");
+    }
+    
+    private Parser parser(final String html) {
+        final Tokenizer tokenizer = new Tokenizer(new StringReader(html));
+        tokenizer.setAllowParseErrors(true);
+        return new Parser(tokenizer, domImplementation);
+    }
+    
+    private ParserState parsePrefix(final String prefix) throws IOException {
+        return parser(prefix).parsePrefix();
+    }
+    
+    private Document parseSuffix(final ParserState state, final String suffix) {
+        final Parser parser = parser("");
+        parser.restoreState(state, new StringReader(suffix));
+        return parser.parse();
+    }
+    
+    private static String serialize(final Node node) {
+        final StringBuilder out = new StringBuilder();
+        serialize(node, out);
+        return out.toString();
+    }
+    
+    private static void serialize(final Node node, final StringBuilder out) {
+        switch (node.getNodeType()) {
+        case Node.ELEMENT_NODE: {
+            final Element element = (Element) node;
+            out.append('<').append(element.getTagName());
+            final NamedNodeMap attributes = element.getAttributes();
+            for (int i = 0; i < attributes.getLength(); i++ ) {
+                final Attr attr = (Attr) attributes.item(i);
+                out.append(' ').append(attr.getName()).append("=\"").append(attr.getValue()).append('"');
+            }
+            out.append('>');
+            if (TemplateContents.isTemplateContentsCreated(element)) {
+                out.append('[');
+                serializeChildren(TemplateContents.getTemplateContents(element), out);
+                out.append(']');
+            }
+            serializeChildren(element, out);
+            out.append("</").append(element.getTagName()).append('>');
+        } break;
+        case Node.COMMENT_NODE: {
+            out.append("<!--").append(node.getNodeValue()).append("-->");
+        } break;
+        default: {
+            out.append(node.getNodeValue());
+        } break;
+        }
+    }
+    
+    private static void serializeChildren(final Node parent, final StringBuilder out) {
+        for (Node child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
+            serialize(child, out);
+        }
+    }
+    
+    private void assertFork(final String prefix, final String suffix) throws IOException {
+        final Document expected = parser(prefix + suffix).parse();
+        final Document actual = parseSuffix(parsePrefix(prefix), suffix);
+        
+        assertEquals(serialize(expected.getDocumentElement()), serialize(actual.getDocumentElement()));
+        assertEquals(expected.getChildNodes().getLength(), actual.getChildNodes().getLength());
+    }
+    
+    @Test
+    public void testSuffixes() throws IOException {
+        assertFork(PREFIX, "Hello</b> world</main></body></html>");
+        assertFork(PREFIX, "<p>one<i>two</b>three</i><p>four");
+        assertFork(PREFIX, "<table><tr><td>cell</table>after");
+        assertFork(PREFIX, "</b></main><form><input name=q></form><!-- end -->");
+        assertFork(PREFIX, "");
+    }
+    
+    @Test
+    public void testPrefixEndsInText() throws IOException {
+        assertFork("<p>lorem ", "ipsum</p>");
+        assertFork("<table><tr><td>cell", "more</td></tr></table>");
+    }
+    
+    @Test
+    public void testPrefixEndsInScript() throws IOException {
+        assertFork("<head><script>var a = '", "</p>';</script></head><p>x");
+        assertFork("<textarea>", "</b></textarea>");
+    }
+    
+    @Test
+    public void testPrefixEndsInTemplate() throws IOException {
+        assertFork("<template><table>", "<tr><td>x</table></template><p>y");
+        assertFork("<body><template><b>", "</template>z");
+    }
+    
+    @Test
+    public void testForksIndependent() throws IOException {
+        final ParserState state = parsePrefix(PREFIX);
+        final Document first = parseSuffix(state, "first");
+        final Document second = parseSuffix(state, "second");
+        
+        assertNotSame(first.getDocumentElement(), second.getDocumentElement());
+        assertEquals("SiteHomefirst", first.getDocumentElement().getTextContent());
+        assertEquals("SiteHomesecond", second.getDocumentElement().getTextContent());
+        final Element b = state.getStackOfOpenElements().get(state.getStackOfOpenElements().size() - 1);
+        assertEquals("b", b.getTagName());
+        assertEquals(0, b.getChildNodes().getLength());
+        assertSame(Parser.Mode.IN_BODY, state.getInsertionMode());
+        assertEquals(PREFIX.length(), state.getPosition());
+    }
+    
+    @Test
+    public void testPrefixParserUnaffected() throws IOException {
+        final Parser parser = parser(PREFIX);
+        final ParserState state = parser.parsePrefix();
+        final Document prefix = parser.getDocument();
+        prefix.getDocumentElement().removeChild(prefix.getDocumentElement().getLastChild());
+        
+        assertEquals("SiteHomex", parseSuffix(state, "x").getDocumentElement().getTextContent());
+    }
+    
+    @Test
+    public void testElementIndex() throws IOException {
+        final ParserConfiguration configuration =
+                new ParserConfiguration.Builder().setAllowParseErrors(true).setIndexElements(true).build();
+        final ParserFactory factory = new ParserFactory(domImplementation, configuration);
+        final ParserState state = factory.newParser(new StringReader(PREFIX)).parsePrefix();
+        final Parser parser = factory.newParser(state, new StringReader("<p id=text>x"));
+        final Document document = parser.parse();
+        
+        final Element nav = parser.getElementIndex().getElementById("nav");
+        assertNotNull(nav);
+        assertSame(document, nav.getOwnerDocument());
+        assertEquals("div", nav.getTagName());
+        assertEquals("x", parser.getElementIndex().getElementById("text").getTextContent());
+    }
+    
+    @Test(expected = IllegalStateException.class)
+    public void testFragmentParser() throws IOException {
+        final Document document = parser("").parse();
+        final Tokenizer tokenizer = new Tokenizer(new StringReader("<p>"));
+        new Parser(tokenizer, domImplementation, document.getDocumentElement()).parsePrefix();
+    }
+    
+}
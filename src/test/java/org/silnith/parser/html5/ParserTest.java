@@ -0,0 +1,410 @@
+package org.silnith.parser.html5;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.silnith.parser.html5.grammar.element.ElementKind;
+import org.silnith.parser.html5.lexical.Tokenizer;
+import org.w3c.dom.DOMImplementation;
+import org.w3c.dom.Document;
+import org.w3c.dom.DocumentFragment;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.bootstrap.DOMImplementationRegistry;
+
+
+public class ParserTest {
+    
+    private static final String HTML_NAMESPACE = "http://www.w3.org/1999/xhtml";
+    
+    private static final String MATHML_NAMESPACE = "http://www.w3.org/1998/Math/MathML";
+    
+    private static final String SVG_NAMESPACE = "http://www.w3.org/2000/svg";
+    
+    private static DOMImplementationRegistry registry;
+    
+    private DOMImplementation domImplementation;
+    
+    private Parser parser;
+    
+    private Document document;
+    
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        registry = DOMImplementationRegistry.newInstance();
+    }
+    
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception {
+        registry = null;
+    }
+    
+    @Before
+    public void setUp() throws Exception {
+        domImplementation = registry.getDOMImplementation("Core 2.0");
+        parser = new Parser(new Tokenizer(new StringReader("")), domImplementation);
+        document = parser.getDocument();
+    }
+    
+    @Test
+    public void testOpenElementFlagsHTML() {
+        parser.pushOpenElement(document.getDocumentElement());
+        
+        assertTrue((parser.getCurrentOpenElementFlags() & ElementKind.NAMESPACE_HTML) != 0);
+        assertTrue((parser.getCurrentOpenElementFlags() & ElementKind.SCOPE) != 0);
+    }
+    
+    @Test
+    public void testOpenElementFlagsMathMLText() {
+        parser.pushOpenElement(document.createElementNS(MATHML_NAMESPACE, "mi"));
+        
+        assertEquals(ElementKind.MATHML_TEXT_INTEGRATION_POINT,
+                parser.getCurrentOpenElementFlags() & ElementKind.MATHML_TEXT_INTEGRATION_POINT);
+    }
+    
+    @Test
+    public void testOpenElementFlagsSVGForeignObject() {
+        parser.pushOpenElement(document.createElementNS(SVG_NAMESPACE, "foreignObject"));
+        
+        assertTrue((parser.getCurrentOpenElementFlags() & ElementKind.HTML_INTEGRATION_POINT) != 0);
+    }
+    
+    @Test
+    public void testOpenElementFlagsAnnotationXMLTextHTML() {
+        final Element element = document.createElementNS(MATHML_NAMESPACE, "annotation-xml");
+        element.setAttribute("encoding", "Text/HTML");
+        parser.pushOpenElement(element);
+        
+        assertTrue((parser.getCurrentOpenElementFlags() & ElementKind.HTML_INTEGRATION_POINT) != 0);
+        assertTrue(parser.isHTMLIntegrationPoint(element));
+    }
+    
+    @Test
+    public void testOpenElementFlagsAnnotationXMLWithoutEncoding() {
+        final Element element = document.createElementNS(MATHML_NAMESPACE, "annotation-xml");
+        parser.pushOpenElement(element);
+        
+        assertFalse((parser.getCurrentOpenElementFlags() & ElementKind.HTML_INTEGRATION_POINT) != 0);
+        assertFalse(parser.isHTMLIntegrationPoint(element));
+    }
+    
+    @Test
+    public void testOpenElementFlagsFollowRemoval() {
+        parser.pushOpenElement(document.getDocumentElement());
+        final Element svg = document.createElementNS(SVG_NAMESPACE, "svg");
+        parser.pushOpenElement(svg);
+        parser.pushOpenElement(document.createElementNS(SVG_NAMESPACE, "desc"));
+        parser.removeOpenElement(svg);
+        
+        assertEquals(2, parser.getNumOpenElements());
+        assertTrue((parser.getOpenElementFlags(1) & ElementKind.HTML_INTEGRATION_POINT) != 0);
+        assertTrue((parser.getOpenElementFlags(0) & ElementKind.NAMESPACE_HTML) != 0);
+    }
+    
+    @Test
+    public void testOpenElementFlagsFollowInsertion() {
+        parser.pushOpenElement(document.getDocumentElement());
+        parser.insertOpenElement(0, document.createElementNS(MATHML_NAMESPACE, "mtext"));
+        
+        assertTrue((parser.getOpenElementFlags(0) & ElementKind.MATHML_TEXT_INTEGRATION_POINT) != 0);
+        assertTrue((parser.getOpenElementFlags(1) & ElementKind.NAMESPACE_HTML) != 0);
+    }
+    
+    private DocumentFragment parseFragment(final Element context, final String html) {
+        final Tokenizer tokenizer = new Tokenizer(new StringReader(html));
+        tokenizer.setAllowParseErrors(true);
+        final Parser fragmentParser = new Parser(tokenizer, domImplementation, context);
+        return fragmentParser.parseFragment();
+    }
+    
+    @Test
+    public void testIsHTMLFragmentParsingAlgorithm() {
+        assertFalse(parser.isHTMLFragmentParsingAlgorithm());
+        assertNull(parser.getContextElement());
+    }
+    
+    @Test(expected = IllegalStateException.class)
+    public void testParseFragmentWithoutContext() {
+        parser.parseFragment();
+    }
+    
+    @Test
+    public void testAdjustedCurrentNodeIsContext() {
+        final Element context = document.createElementNS(SVG_NAMESPACE, "svg");
+        final Parser fragmentParser = new Parser(new Tokenizer(new StringReader("")), domImplementation, context);
+        fragmentParser.pushOpenElement(fragmentParser.getDocument().getDocumentElement());
+        
+        assertTrue(fragmentParser.isHTMLFragmentParsingAlgorithm());
+        assertSame(context, fragmentParser.getAdjustedCurrentNode());
+        assertEquals(ElementKind.SVG_SVG, fragmentParser.getAdjustedCurrentNodeKind());
+        assertTrue((fragmentParser.getAdjustedCurrentNodeFlags() & ElementKind.NAMESPACE_SVG) != 0);
+    }
+    
+    @Test
+    public void testParseFragmentDiv() {
+        final DocumentFragment fragment = parseFragment(document.createElementNS(HTML_NAMESPACE, "div"), "a<b>b</b>");
+        
+        assertEquals(2, fragment.getChildNodes().getLength());
+        assertEquals(Node.TEXT_NODE, fragment.getFirstChild().getNodeType());
+        assertEquals("b", ((Element) fragment.getLastChild()).getTagName());
+    }
+    
+    @Test
+    public void testParseFragmentTextarea() {
+        final DocumentFragment fragment = parseFragment(document.createElementNS(HTML_NAMESPACE, "textarea"), "a<b>");
+        
+        assertEquals(1, fragment.getChildNodes().getLength());
+        assertEquals("a<b>", fragment.getFirstChild().getNodeValue());
+    }
+    
+    @Test
+    public void testParseFragmentTableRow() {
+        final DocumentFragment fragment = parseFragment(document.createElementNS(HTML_NAMESPACE, "tr"), "<td>1<td>2");
+        
+        assertEquals(2, fragment.getChildNodes().getLength());
+        assertEquals("td", ((Element) fragment.getFirstChild()).getTagName());
+        assertEquals("td", ((Element) fragment.getLastChild()).getTagName());
+    }
+    
+    @Test
+    public void testParseFragmentSetsFormElementPointer() {
+        final Element form = document.createElementNS(HTML_NAMESPACE, "form");
+        final Element div = document.createElementNS(HTML_NAMESPACE, "div");
+        form.appendChild(div);
+        final Parser fragmentParser = new Parser(new Tokenizer(new StringReader("")), domImplementation, div);
+        fragmentParser.parseFragment();
+        
+        assertSame(form, fragmentParser.getFormElementPointer());
+    }
+    
+    @Test
+    public void testLastOpenTableIndex() {
+        parser.pushOpenElement(document.getDocumentElement());
+        parser.pushOpenElement(document.createElementNS(HTML_NAMESPACE, "table"));
+        parser.pushOpenElement(document.createElementNS(HTML_NAMESPACE, "td"));
+        parser.pushOpenElement(document.createElementNS(HTML_NAMESPACE, "table"));
+        
+        assertEquals(3, parser.getIndexOfLastOpenTable());
+        assertEquals(-1, parser.getIndexOfLastOpenTemplate());
+        
+        parser.popOpenElement();
+        
+        assertEquals(1, parser.getIndexOfLastOpenTable());
+        
+        parser.popOpenElement();
+        parser.popOpenElement();
+        
+        assertEquals(-1, parser.getIndexOfLastOpenTable());
+    }
+    
+    @Test
+    public void testLastOpenTableIndexFollowsInsertion() {
+        parser.pushOpenElement(document.getDocumentElement());
+        parser.pushOpenElement(document.createElementNS(HTML_NAMESPACE, "table"));
+        parser.insertOpenElement(1, document.createElementNS(HTML_NAMESPACE, "template"));
+        
+        assertEquals(2, parser.getIndexOfLastOpenTable());
+        assertEquals(1, parser.getIndexOfLastOpenTemplate());
+    }
+    
+    @Test
+    public void testPendingTableCharacters() {
+        parser.clearPendingTableCharacters();
+        parser.appendToPendingTableCharacters(' ');
+        parser.appendToPendingTableCharacters('\n');
+        
+        assertEquals(" \n", parser.getPendingTableCharacters());
+        assertFalse(parser.isPendingTableCharactersContainNonSpace());
+        
+        parser.appendToPendingTableCharacters('x');
+        
+        assertTrue(parser.isPendingTableCharactersContainNonSpace());
+        
+        parser.clearPendingTableCharacters();
+        
+        assertEquals("", parser.getPendingTableCharacters());
+        assertFalse(parser.isPendingTableCharactersContainNonSpace());
+    }
+    
+    @Test
+    public void testFosterParentTableText() throws Exception {
+        final Tokenizer tokenizer = new Tokenizer(new StringReader("<div><table>a<b>b</b><tr><td>c</table></div>"));
+        tokenizer.setAllowParseErrors(true);
+        final Parser fosterParser = new Parser(tokenizer, domImplementation);
+        final Document result = fosterParser.parse();
+        final Element div = (Element) result.getElementsByTagNameNS(HTML_NAMESPACE, "div").item(0);
+        
+        assertEquals(3, div.getChildNodes().getLength());
+        assertEquals("a", div.getFirstChild().getNodeValue());
+        assertEquals("b", div.getFirstChild().getNextSibling().getNodeName());
+        assertEquals("table", div.getLastChild().getNodeName());
+    }
+    
+    @Test
+    public void testForeignContentAdjustments() throws Exception {
+        final Tokenizer tokenizer = new Tokenizer(new StringReader(
+                "<svg viewbox='0 0 1 1'><foreignobject></foreignobject><use xlink:href='#a'/></svg><math definitionurl='b'></math>"));
+        tokenizer.setAllowParseErrors(true);
+        final Document result = new Parser(tokenizer, domImplementation).parse();
+        final Element svg = (Element) result.getElementsByTagNameNS(SVG_NAMESPACE, "svg").item(0);
+        final Element foreignObject = (Element) result.getElementsByTagNameNS(SVG_NAMESPACE, "foreignObject").item(0);
+        final Element use = (Element) result.getElementsByTagNameNS(SVG_NAMESPACE, "use").item(0);
+        final Element math = (Element) result.getElementsByTagNameNS(MATHML_NAMESPACE, "math").item(0);
+        
+        assertEquals("0 0 1 1", svg.getAttribute("viewBox"));
+        assertSame(svg, foreignObject.getParentNode());
+        assertEquals("#a", use.getAttributeNS("http://www.w3.org/1999/xlink", "href"));
+        assertEquals("b", math.getAttribute("definitionURL"));
+    }
+    
+    @Test
+    public void testFormControls() throws Exception {
+        final Tokenizer tokenizer = new Tokenizer(new StringReader(
+                "<form><select name=s><option>a</select><input name=i value=v><textarea>t</textarea></form>"));
+        tokenizer.setAllowParseErrors(true);
+        final Document result = new Parser(tokenizer, domImplementation).parse();
+        final Element select = (Element) result.getElementsByTagNameNS(HTML_NAMESPACE, "select").item(0);
+        final Element input = (Element) result.getElementsByTagNameNS(HTML_NAMESPACE, "input").item(0);
+        
+        assertEquals("form", select.getParentNode().getNodeName());
+        assertEquals("option", select.getFirstChild().getNodeName());
+        assertEquals("v", input.getAttribute("value"));
+        assertEquals("t", result.getElementsByTagNameNS(HTML_NAMESPACE, "textarea").item(0).getTextContent());
+    }
+    
+    private Document parse(final String html, final boolean wellFormedFastPath) {
+        final Tokenizer tokenizer = new Tokenizer(new StringReader(html));
+        tokenizer.setAllowParseErrors(true);
+        final Parser parser = new Parser(tokenizer, domImplementation);
+        parser.setWellFormedFastPath(wellFormedFastPath);
+        return parser.parse();
+    }
+    
+    @Test
+    public void testWellFormedFastPath() {
+        final String[] documents = {
+            "<!DOCTYPE html><body><div class=a><p>x <b>y</b> <x-y>z</x-y></p><ul><li>1</li></ul><hr><br></div>",
+            "<p>a<b>b<i>c</b>d</i>e</p>",
+            "<div><p>a<div>b</div></p><h1>c<h2>d</h2></h1></div>",
+            "<b><p>a</b>b</p><a>c<a>d</a>",
+            "<table><tr><td><span>a</span><b>b</td></tr></table><i>c</i>",
+            "<b>a</b><!-- c --><b>d<i>e</i></b>",
+        };
+        for (final String html : documents) {
+            assertTrue(html, parse(html, false).isEqualNode(parse(html, true)));
+        }
+    }
+    
+    @Test
+    public void testReplaceOpenElements() {
+        final Element html = document.getDocumentElement();
+        final Element b = document.createElementNS(HTML_NAMESPACE, "b");
+        final Element i = document.createElementNS(HTML_NAMESPACE, "i");
+        final Element p = document.createElementNS(HTML_NAMESPACE, "p");
+        final Element table = document.createElementNS(HTML_NAMESPACE, "table");
+        final Element b2 = document.createElementNS(HTML_NAMESPACE, "b");
+        parser.pushOpenElement(html);
+        parser.pushOpenElement(b);
+        parser.pushOpenElement(i);
+        parser.pushOpenElement(p);
+        parser.pushOpenElement(table);
+        parser.replaceOpenElements(1, 4, new Element[] { p, b2 }, 2);
+        
+        assertEquals(4, parser.getNumOpenElements());
+        assertSame(p, parser.getOpenElement(1));
+        assertSame(b2, parser.getOpenElement(2));
+        assertEquals(ElementKind.B, parser.getOpenElementKind(2));
+        assertSame(table, parser.getOpenElement(3));
+        assertEquals(3, parser.getIndexOfLastOpenTable());
+    }
+    
+    @Test
+    public void testAdoptionAgency() throws Exception {
+        final Tokenizer tokenizer = new Tokenizer(new StringReader("<b>1<div>2<i>3<p>4</b>5"));
+        tokenizer.setAllowParseErrors(true);
+        final Document result = new Parser(tokenizer, domImplementation).parse();
+        final Element body = (Element) result.getElementsByTagNameNS(HTML_NAMESPACE, "body").item(0);
+        final Element div = (Element) body.getLastChild();
+        
+        assertEquals("div", div.getNodeName());
+        assertEquals("b", div.getFirstChild().getNodeName());
+        assertEquals("2", div.getFirstChild().getFirstChild().getNodeValue());
+        assertEquals("i", div.getLastChild().getNodeName());
+        final Element p = (Element) div.getLastChild().getFirstChild();
+        assertEquals("p", p.getNodeName());
+        assertEquals("b", p.getFirstChild().getNodeName());
+        assertEquals("5", p.getLastChild().getNodeValue());
+    }
+    
+    @Test
+    public void testReset() throws Exception {
+        final String[] documents = {
+            "<!DOCTYPE html><title>a</title><p>b<b>c<i>d</b>e",
+            "<table><tr><td>a<select><option>b</table><template><td>c</template>",
+            "<html><frameset><frame></frameset>",
+            "<svg><foreignObject><p>a</foreignObject></svg><textarea>\nb</textarea>",
+        };
+        final Tokenizer tokenizer = new Tokenizer(new StringReader("<table><tr><td><b><i>unfinished"));
+        tokenizer.setAllowParseErrors(true);
+        final Parser reused = new Parser(tokenizer, domImplementation);
+        Document previous = reused.parse();
+        for (final String html : documents) {
+            reused.reset(new StringReader(html));
+            final Document result = reused.parse();
+            
+            assertTrue(html, parse(html, false).getDocumentElement().isEqualNode(result.getDocumentElement()));
+            assertNotSame(previous, result);
+            assertSame(result, reused.getDocument());
+            previous = result;
+        }
+    }
+    
+    @Test
+    public void testResetFragment() {
+        final Element context = document.createElementNS(HTML_NAMESPACE, "tr");
+        final Tokenizer tokenizer = new Tokenizer(new StringReader("<td>a"));
+        tokenizer.setAllowParseErrors(true);
+        final Parser fragmentParser = new Parser(tokenizer, domImplementation, context);
+        final DocumentFragment first = fragmentParser.parseFragment();
+        fragmentParser.reset(new StringReader("<th>b<td>c"));
+        final DocumentFragment second = fragmentParser.parseFragment();
+        
+        assertEquals(1, first.getChildNodes().getLength());
+        assertEquals(2, second.getChildNodes().getLength());
+        assertEquals("th", second.getFirstChild().getNodeName());
+        assertEquals("td", second.getLastChild().getNodeName());
+    }
+    
+    @Test
+    public void testResetKeepsOptions() {
+        final Tokenizer tokenizer = new Tokenizer(new StringReader("<p id=a>x</p>"));
+        tokenizer.setAllowParseErrors(true);
+        final Parser reused = new Parser(tokenizer, domImplementation);
+        reused.setIndexElements(true);
+        reused.setRecordSourceRanges(true);
+        reused.parse();
+        final ElementIndex firstIndex = reused.getElementIndex();
+        final SourceRanges firstRanges = reused.getSourceRanges();
+        final Element firstP = firstIndex.getElementById("a");
+        reused.reset(new StringReader("<div id=b>yy</div>"));
+        reused.parse();
+        final Element div = reused.getElementIndex().getElementById("b");
+        
+        assertSame(firstP, firstIndex.getElementById("a"));
+        assertNull(firstIndex.getElementById("b"));
+        assertNull(reused.getElementIndex().getElementById("a"));
+        assertEquals("<p id=a>x</p>", firstRanges.getOuterSource(firstP).toString());
+        assertEquals("<div id=b>yy</div>", reused.getSourceRanges().getOuterSource(div).toString());
+    }
+    
+}
@@ -0,0 +1,160 @@
+package org.silnith.parser.html5;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.StringReader;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.silnith.parser.html5.lexical.Tokenizer;
+import org.w3c.dom.DOMImplementation;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.bootstrap.DOMImplementationRegistry;
+
+
+public class SourceRangesTest {
+    
+    private static DOMImplementationRegistry registry;
+    
+    private DOMImplementation domImplementation;
+    
+    private Document document;
+    
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        registry = DOMImplementationRegistry.newInstance();
+    }
+    
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception {
+        registry = null;
+    }
+    
+    @Before
+    public void setUp() throws Exception {
+        domImplementation = registry.getDOMImplementation("Core 2.0");
+    }
+    
+    private SourceRanges parse(final String html) {
+        final Tokenizer tokenizer = new Tokenizer(new StringReader(html));
+        tokenizer.setAllowParseErrors(true);
+        final Parser parser = new Parser(tokenizer, domImplementation);
+        parser.setRecordSourceRanges(true);
+        document = parser.parse();
+        return parser.getSourceRanges();
+    }
+    
+    private Element getElement(final String tagName, final int index) {
+        return (Element) document.getElementsByTagName(tagName).item(index);
+    }
+    
+    private static String toString(final CharSequence source) {
+        if (source == null) {
+            return null;
+        }
+        return source.toString();
+    }
+    
+    @Test
+    public void testNotRecordedByDefault() {
+        final Parser parser = new Parser(new Tokenizer(new StringReader("<p>")), domImplementation);
+        
+        assertNull(parser.getSourceRanges());
+    }
+    
+    @Test
+    public void testExplicitTags() {
+        final String html = "<!DOCTYPE html><html><head><title>T</title></head><body><p class=x>a <b>b</b></p></body></html>";
+        final SourceRanges ranges = parse(html);
+        final Element p = getElement("p", 0);
+        
+        assertEquals("<p class=x>a <b>b</b></p>", toString(ranges.getOuterSource(p)));
+        assertEquals("a <b>b</b>", toString(ranges.getInnerSource(p)));
+        assertEquals(html.indexOf("<p"), ranges.getStartTagStart(p));
+        assertEquals(html.indexOf("a <b>"), ranges.getStartTagEnd(p));
+        assertEquals(html.indexOf("</p>"), ranges.getEndTagStart(p));
+        assertEquals(html.indexOf("</body>"), ranges.getEndTagEnd(p));
+        assertEquals("<title>T</title>", toString(ranges.getOuterSource(getElement("title", 0))));
+        assertEquals("<head><title>T</title></head>", toString(ranges.getOuterSource(getElement("head", 0))));
+        assertEquals("<body><p class=x>a <b>b</b></p></body>",
+                toString(ranges.getOuterSource(getElement("body", 0))));
+        assertEquals(html.substring(html.indexOf("<html>")),
+                toString(ranges.getOuterSource(document.getDocumentElement())));
+    }
+    
+    @Test
+    public void testImpliedTags() {
+        final SourceRanges ranges = parse("<p>one<p>two<table><tr><td>x</table>");
+        final Element tbody = getElement("tbody", 0);
+        
+        assertEquals("<p>one", toString(ranges.getOuterSource(getElement("p", 0))));
+        assertEquals("<p>two<table><tr><td>x</table>", toString(ranges.getOuterSource(getElement("p", 1))));
+        assertEquals("<tr><td>x", toString(ranges.getOuterSource(tbody)));
+        assertEquals(ranges.getStartTagStart(tbody), ranges.getStartTagEnd(tbody));
+        assertEquals("", toString(ranges.getOuterSource(getElement("head", 0))));
+    }
+    
+    @Test
+    public void testVoidElements() {
+        final SourceRanges ranges = parse("<p>a<br/>b<img src=x>c");
+        
+        assertEquals("<br/>", toString(ranges.getOuterSource(getElement("br", 0))));
+        assertEquals("", toString(ranges.getInnerSource(getElement("br", 0))));
+        assertEquals("<img src=x>", toString(ranges.getOuterSource(getElement("img", 0))));
+    }
+    
+    @Test
+    public void testMisnestedFormatting() {
+        final SourceRanges ranges = parse("<b>1<i>2</b>3</i>");
+        
+        assertEquals("<b>1<i>2</b>", toString(ranges.getOuterSource(getElement("b", 0))));
+        assertEquals("<i>2", toString(ranges.getOuterSource(getElement("i", 0))));
+        assertEquals("3</i>", toString(ranges.getOuterSource(getElement("i", 1))));
+    }
+    
+    @Test
+    public void testRawText() {
+        final SourceRanges ranges = parse("<script>if (a < b) {}</script><textarea>x</b></textarea>");
+        
+        assertEquals("if (a < b) {}", toString(ranges.getInnerSource(getElement("script", 0))));
+        assertEquals("<textarea>x</b></textarea>", toString(ranges.getOuterSource(getElement("textarea", 0))));
+    }
+    
+    @Test
+    public void testForeignContent() {
+        final SourceRanges ranges = parse("<svg><foreignObject>x</foreignObject></svg>");
+        
+        assertEquals("<foreignObject>x</foreignObject>",
+                toString(ranges.getOuterSource(getElement("foreignObject", 0))));
+    }
+    
+    @Test
+    public void testPreprocessedOffsets() {
+        final SourceRanges ranges = parse("<pre>a\r\nb\rc</pre>");
+        
+        assertEquals("a\nb\nc", toString(ranges.getInnerSource(getElement("pre", 0))));
+    }
+    
+    @Test
+    public void testContentAfterBody() {
+        final SourceRanges ranges = parse("<p>a</body>b</html>c");
+        final Element body = getElement("body", 0);
+        
+        assertEquals("<p>a</body>b</html>c", toString(ranges.getInnerSource(body)));
+    }
+    
+    @Test
+    public void testNotAnElement() {
+        final SourceRanges ranges = parse("<p>a</p>");
+        
+        assertFalse(ranges.contains(document));
+        assertEquals(-1, ranges.getStartTagStart(document));
+        assertNull(ranges.getOuterSource(document));
+    }
+    
+}
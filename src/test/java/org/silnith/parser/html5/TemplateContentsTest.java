@@ -0,0 +1,205 @@
+package org.silnith.parser.html5;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.silnith.parser.html5.lexical.Tokenizer;
+import org.w3c.dom.DOMImplementation;
+import org.w3c.dom.Document;
+import org.w3c.dom.DocumentFragment;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.bootstrap.DOMImplementationRegistry;
+
+
+public class TemplateContentsTest {
+    
+    private static final String HTML_NAMESPACE = "http://www.w3.org/1999/xhtml";
+    
+    private static DOMImplementationRegistry registry;
+    
+    private DOMImplementation domImplementation;
+    
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        registry = DOMImplementationRegistry.newInstance();
+    }
+    
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception {
+        registry = null;
+    }
+    
+    @Before
+    public void setUp() throws Exception {
+        domImplementation = registry.getDOMImplementation("Core 2.0");
+    }
+    
+    private Document parse(final String html, final boolean deferTemplateContents) {
+        final Tokenizer tokenizer = new Tokenizer(new StringReader(html));
+        tokenizer.setAllowParseErrors(true);
+        final Parser parser = new Parser(tokenizer, domImplementation);
+        parser.setDeferTemplateContents(deferTemplateContents);
+        return parser.parse();
+    }
+    
+    private Element getTemplate(final Document document, final int index) {
+        return (Element) document.getElementsByTagNameNS(HTML_NAMESPACE, "template").item(index);
+    }
+    
+    /**
+     * Checks that two trees are the same, including the namespaces of the
+     * elements and the contents of {@code template} elements.
+     */
+    private static void assertSameTree(final Node expected, final Node actual) {
+        assertEquals(expected.getNodeType(), actual.getNodeType());
+        assertEquals(expected.getNamespaceURI(), actual.getNamespaceURI());
+        assertEquals(expected.getNodeName(), actual.getNodeName());
+        assertEquals(expected.getNodeValue(), actual.getNodeValue());
+        if (expected.getNodeType() == Node.ELEMENT_NODE) {
+            final NamedNodeMap expectedAttributes = expected.getAttributes();
+            final NamedNodeMap actualAttributes = actual.getAttributes();
+            assertEquals(expectedAttributes.getLength(), actualAttributes.getLength());
+            for (int i = 0; i < expectedAttributes.getLength(); i++ ) {
+                final Node attribute = expectedAttributes.item(i);
+                final Node other = actualAttributes.getNamedItem(attribute.getNodeName());
+                assertNotNull(attribute.getNodeName(), other);
+                assertEquals(attribute.getNodeValue(), other.getNodeValue());
+            }
+            final Element element = (Element) expected;
+            if (HTML_NAMESPACE.equals(element.getNamespaceURI()) && "template".equals(element.getLocalName())) {
+                assertSameTree(TemplateContents.getTemplateContents(element),
+                        TemplateContents.getTemplateContents((Element) actual));
+            }
+        }
+        Node actualChild = actual.getFirstChild();
+        for (Node child = expected.getFirstChild(); child != null; child = child.getNextSibling()) {
+            assertNotNull(child.getNodeName(), actualChild);
+            assertSameTree(child, actualChild);
+            actualChild = actualChild.getNextSibling();
+        }
+        assertEquals(null, actualChild);
+    }
+    
+    private void assertDeferredMatchesEager(final String html) {
+        assertSameTree(parse(html, false), parse(html, true));
+    }
+    
+    @Test
+    public void testTemplateContents() {
+        final Document document = parse("<template><p>a<b>b</template><p>c", false);
+        final Element template = getTemplate(document, 0);
+        
+        assertFalse(template.hasChildNodes());
+        assertTrue(TemplateContents.isTemplateContentsCreated(template));
+        
+        final DocumentFragment contents = TemplateContents.getTemplateContents(template);
+        
+        assertEquals(1, contents.getChildNodes().getLength());
+        assertEquals("p", contents.getFirstChild().getNodeName());
+        assertSame(document, contents.getOwnerDocument());
+    }
+    
+    @Test
+    public void testTemplateContentsInTable() {
+        final Document document = parse("<table><template><td>1</template></table>", false);
+        final Element template = getTemplate(document, 0);
+        
+        assertEquals("table", template.getParentNode().getNodeName());
+        
+        final DocumentFragment contents = TemplateContents.getTemplateContents(template);
+        
+        assertEquals("td", contents.getFirstChild().getNodeName());
+    }
+    
+    @Test
+    public void testEmptyTemplateContents() {
+        final Document document = parse("<template></template>", false);
+        final Element template = getTemplate(document, 0);
+        
+        assertFalse(TemplateContents.isTemplateContentsCreated(template));
+        assertFalse(TemplateContents.getTemplateContents(template).hasChildNodes());
+    }
+    
+    @Test
+    public void testDeferredTemplateContents() {
+        final Document document = parse("<template><p>a<b>b</template><p>c", true);
+        final Element template = getTemplate(document, 0);
+        
+        assertTrue(TemplateContents.isTemplateContentsDeferred(template));
+        assertEquals(1, document.getElementsByTagNameNS(HTML_NAMESPACE, "p").getLength());
+        
+        final DocumentFragment contents = TemplateContents.getTemplateContents(template);
+        
+        assertFalse(TemplateContents.isTemplateContentsDeferred(template));
+        assertEquals(1, contents.getChildNodes().getLength());
+        assertEquals("p", contents.getFirstChild().getNodeName());
+        assertEquals("b", contents.getFirstChild().getLastChild().getNodeName());
+        assertSame(document, contents.getOwnerDocument());
+        assertSame(contents, TemplateContents.getTemplateContents(template));
+    }
+    
+    @Test
+    public void testDeferredTemplateContentsNested() {
+        final Document document = parse("<template><template>x</template>y</template>z", true);
+        final Element template = getTemplate(document, 0);
+        
+        assertEquals("z", document.getElementsByTagNameNS(HTML_NAMESPACE, "body").item(0).getTextContent());
+        
+        final DocumentFragment contents = TemplateContents.getTemplateContents(template);
+        final Element nested = (Element) contents.getFirstChild();
+        
+        assertEquals("template", nested.getNodeName());
+        assertEquals("y", contents.getLastChild().getNodeValue());
+        assertTrue(TemplateContents.isTemplateContentsDeferred(nested));
+        assertEquals("x", TemplateContents.getTemplateContents(nested).getTextContent());
+    }
+    
+    @Test
+    public void testDeferredTemplateContentsMatchEager() {
+        assertDeferredMatchesEager("<template><p>a<b>b<i>c</b>d</i><table><td>x</table></template><p>c");
+        assertDeferredMatchesEager("<template><td>a</td><tr><td>b</template><template><col></template>");
+        assertDeferredMatchesEager("<template><template><li>x</template><frameset><body a=b></template>");
+        assertDeferredMatchesEager("<template><p><table><td>x</table></template>");
+        assertDeferredMatchesEager("<form><template><form><form>a</form></form><table><form></table></template>");
+        assertDeferredMatchesEager("<template><noscript><p>x</noscript><li>y</template><frameset>");
+        assertDeferredMatchesEager("<template><xmp></template></xmp><iframe></template></iframe></template>x");
+        assertDeferredMatchesEager("<template><div><plaintext></template><p>x");
+    }
+    
+    @Test
+    public void testDeferredTemplateContentsForeignContent() {
+        assertDeferredMatchesEager("<template><svg><p>x</p></svg></template>");
+        assertDeferredMatchesEager("<template><math><mi><b>x</b></mi><div>y</div></math>z</template>");
+        assertDeferredMatchesEager("<template><div><svg><g><font color=red>f</font><circle/></g></svg>"
+                + "<table><tr><td><math><ul><li>x</math></table></div></template>");
+        assertDeferredMatchesEager("<template><template><svg><br></svg></template><math><h1>h</h1></math>"
+                + "</template>");
+        assertDeferredMatchesEager("<template><svg><foreignObject><p>x<svg><span>y</svg></foreignObject></svg>"
+                + "<math><annotation-xml encoding=text/html><pre>p</pre></annotation-xml></math></template>");
+    }
+    
+    @Test
+    public void testDeferredTemplateContentsSkipsRawText() {
+        final Document document = parse("<template><script>'</template>'</script><!-- </template> --></template>z", true);
+        final Element template = getTemplate(document, 0);
+        
+        assertEquals("z", document.getElementsByTagNameNS(HTML_NAMESPACE, "body").item(0).getTextContent());
+        
+        final DocumentFragment contents = TemplateContents.getTemplateContents(template);
+        
+        assertEquals("script", contents.getFirstChild().getNodeName());
+        assertEquals("'</template>'", contents.getFirstChild().getTextContent());
+    }
+    
+}
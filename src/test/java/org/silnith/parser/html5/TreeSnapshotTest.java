@@ -0,0 +1,309 @@
+package org.silnith.parser.html5;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.silnith.parser.html5.TreeSnapshot.CharacterDataSnapshot;
+import org.silnith.parser.html5.TreeSnapshot.ElementSnapshot;
+import org.silnith.parser.html5.TreeSnapshot.NodeSnapshot;
+import org.silnith.parser.html5.lexical.Tokenizer;
+import org.w3c.dom.Attr;
+import org.w3c.dom.DOMImplementation;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.bootstrap.DOMImplementationRegistry;
+
+
+public class TreeSnapshotTest {
+    
+    private static DOMImplementationRegistry registry;
+    
+    private DOMImplementation domImplementation;
+    
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        registry = DOMImplementationRegistry.newInstance();
+    }
+    
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception {
+        registry = null;
+    }
+    
+    @Before
+    public void setUp() throws Exception {
+        domImplementation = registry.getDOMImplementation("Core 2.0");
+    }
+    
+    private Parser parser(final Reader in, final int snapshotInterval) {
+        final Tokenizer tokenizer = new Tokenizer(in);
+        tokenizer.setAllowParseErrors(true);
+        final Parser parser = new Parser(tokenizer, domImplementation);
+        parser.setSnapshotInterval(snapshotInterval);
+        return parser;
+    }
+    
+    private static void assertMatches(final Node expected, final List<NodeSnapshot> actual) {
+        int i = 0;
+        for (Node child = expected.getFirstChild(); child != null; child = child.getNextSibling()) {
+            assertMatches(child, actual.get(i++ ));
+        }
+        assertEquals(i, actual.size());
+    }
+    
+    private static void assertMatches(final Node expected, final NodeSnapshot actual) {
+        assertEquals(expected.getNodeType(), actual.getNodeType());
+        if (expected.getNodeType() == Node.ELEMENT_NODE) {
+            final Element element = (Element) expected;
+            final ElementSnapshot snapshot = (ElementSnapshot) actual;
+            assertEquals(element.getNamespaceURI(), snapshot.getNamespaceURI());
+            assertEquals(element.getTagName(), snapshot.getTagName());
+            final NamedNodeMap attributes = element.getAttributes();
+            assertEquals(attributes.getLength(), snapshot.getAttributes().size());
+            for (int j = 0; j < attributes.getLength(); j++ ) {
+                final Attr attr = (Attr) attributes.item(j);
+                assertEquals(attr.getValue(), snapshot.getAttribute(attr.getName()));
+            }
+            assertMatches(expected, snapshot.getChildren());
+        } else if (expected.getNodeType() != Node.DOCUMENT_TYPE_NODE) {
+            assertEquals(expected.getNodeValue(), ((CharacterDataSnapshot) actual).getData());
+        }
+    }
+    
+    private static void collectComplete(final List<NodeSnapshot> nodes, final Map<ElementSnapshot, Boolean> complete) {
+        for (final NodeSnapshot node : nodes) {
+            if (node.getNodeType() == Node.ELEMENT_NODE) {
+                final ElementSnapshot element = (ElementSnapshot) node;
+                if (element.isComplete()) {
+                    complete.put(element, Boolean.TRUE);
+                }
+                collectComplete(element.getChildren(), complete);
+            }
+        }
+    }
+    
+    @Test
+    public void testNoSnapshots() {
+        final Parser parser = parser(new StringReader("<p>a"), 0);
+        parser.parse();
+        
+        assertNull(parser.getSnapshot());
+    }
+    
+    @Test
+    public void testFinalSnapshot() {
+        final Parser parser = parser(new StringReader("<!DOCTYPE html><title>t</title><!-- c -->"
+                + "<p class=a id=b>x<b>1<i>2</b>3</i><table>y<tr><td>z</table><svg><path d=M0/></svg>"
+                + "<template><li>t</template>"), 3);
+        final Document document = parser.parse();
+        final TreeSnapshot snapshot = parser.getSnapshot();
+        
+        assertTrue(snapshot.isComplete());
+        assertMatches(document, snapshot.getChildren());
+        assertEquals("html", snapshot.getDocumentElement().getTagName());
+        final ElementSnapshot body = (ElementSnapshot) snapshot.getDocumentElement().getChildren().get(1);
+        final ElementSnapshot template = (ElementSnapshot) body.getChildren().get(body.getChildren().size() - 1);
+        assertEquals("t", ((ElementSnapshot) template.getTemplateContents().get(0)).getTextContent());
+    }
+    
+    private void assertFinalSnapshotMatches(final String html) {
+        for (int interval = 1; interval <= 3; interval++ ) {
+            final Parser parser = parser(new StringReader(html), interval);
+            final Document document = parser.parse();
+            
+            assertMatches(document, parser.getSnapshot().getChildren());
+        }
+    }
+    
+    @Test
+    public void testElementRemovedFromStackWithOpenDescendants() {
+        assertFinalSnapshotMatches("<a>x<table><a><tbody>");
+        assertFinalSnapshotMatches("<a><table viewbox=1><a class=\"c4\" id=x1>txt58 txt59 ");
+    }
+    
+    /**
+     * Parses the input with every snapshot interval from 1 to 3, and checks
+     * that every element a snapshot reports as complete is shared by the
+     * final snapshot, which matches the document.
+     */
+    private void assertCompleteElementsFinal(final String html) {
+        for (int interval = 1; interval <= 3; interval++ ) {
+            final AtomicReference<Parser> parser = new AtomicReference<>();
+            final List<TreeSnapshot> snapshots = new ArrayList<>();
+            final Reader in = new StringReader(html) {
+                
+                @Override
+                public int read() throws IOException {
+                    final TreeSnapshot snapshot = parser.get().getSnapshot();
+                    if (snapshot != null
+                            && (snapshots.isEmpty() || snapshots.get(snapshots.size() - 1) != snapshot)) {
+                        snapshots.add(snapshot);
+                    }
+                    return super.read();
+                }
+            };
+            parser.set(parser(in, interval));
+            final Document document = parser.get().parse();
+            final TreeSnapshot last = parser.get().getSnapshot();
+            final Map<ElementSnapshot, Boolean> finalComplete = new IdentityHashMap<>();
+            collectComplete(last.getChildren(), finalComplete);
+            
+            assertMatches(document, last.getChildren());
+            assertFalse(snapshots.isEmpty());
+            for (final TreeSnapshot snapshot : snapshots) {
+                final Map<ElementSnapshot, Boolean> complete = new IdentityHashMap<>();
+                collectComplete(snapshot.getChildren(), complete);
+                for (final ElementSnapshot element : complete.keySet()) {
+                    assertTrue(html + " " + element, finalComplete.containsKey(element));
+                }
+            }
+        }
+    }
+    
+    @Test
+    public void testRootNotCompleteBeforeOpened() {
+        assertCompleteElementsFinal("</p><p>x");
+        assertCompleteElementsFinal("<!-- c --><!DOCTYPE html><p>x");
+    }
+    
+    @Test
+    public void testHeadNotCompleteBeforeBody() {
+        assertCompleteElementsFinal("<head></head><meta charset=x><body>x");
+        assertCompleteElementsFinal("<head><title>t</title></head> <link rel=a><!-- c --><meta name=a><p>x");
+        assertCompleteElementsFinal("<head></head><template><p>t</template><base href=x><frameset></frameset>");
+    }
+    
+    @Test
+    public void testCompleteElementsFinal() {
+        assertCompleteElementsFinal("<a>x<table><a><tbody>");
+        assertCompleteElementsFinal("<p><b>1<i>2</b>3</i><table>y<tr><td>z</table><ul><li>a<li>b</ul>");
+        assertCompleteElementsFinal("<div><svg><path/><foreignObject><p>x</foreignObject></svg></div><select>"
+                + "<option>o</select>");
+    }
+    
+    @Test
+    public void testNotCompleteWithOpenDescendants() {
+        final Parser parser = parser(new StringReader("<a>x<table><a><tbody>"), 1);
+        parser.parse();
+        final ElementSnapshot body = (ElementSnapshot) parser.getSnapshot().getDocumentElement().getChildren().get(1);
+        final ElementSnapshot a = (ElementSnapshot) body.getChildren().get(0);
+        
+        assertEquals("a", a.getTagName());
+        assertFalse(a.isComplete());
+        assertTrue(((ElementSnapshot) a.getChildren().get(1)).isComplete());
+        final ElementSnapshot table = (ElementSnapshot) a.getChildren().get(2);
+        assertEquals("table", table.getTagName());
+        assertFalse(table.isComplete());
+    }
+    
+    @Test
+    public void testCompleteElementsShared() {
+        final StringBuilder html = new StringBuilder("<head><title>t</title></head><body>");
+        for (int i = 0; i < 200; i++ ) {
+            html.append("<div id=").append(i).append("><p>").append(i).append("<b>b</b></p></div>");
+        }
+        final AtomicReference<Parser> parser = new AtomicReference<>();
+        final List<TreeSnapshot> snapshots = new ArrayList<>();
+        final Reader in = new StringReader(html.toString()) {
+            
+            @Override
+            public int read() throws IOException {
+                final TreeSnapshot snapshot = parser.get().getSnapshot();
+                if (snapshot != null && (snapshots.isEmpty() || snapshots.get(snapshots.size() - 1) != snapshot)) {
+                    snapshots.add(snapshot);
+                }
+                return super.read();
+            }
+        };
+        parser.set(parser(in, 7));
+        final Document document = parser.get().parse();
+        final TreeSnapshot last = parser.get().getSnapshot();
+        final Map<ElementSnapshot, Boolean> finalComplete = new IdentityHashMap<>();
+        collectComplete(last.getChildren(), finalComplete);
+        
+        assertTrue(snapshots.size() > 100);
+        long sequenceNumber = -1;
+        for (final TreeSnapshot snapshot : snapshots) {
+            assertTrue(snapshot.getSequenceNumber() > sequenceNumber);
+            sequenceNumber = snapshot.getSequenceNumber();
+            assertFalse(snapshot.isComplete());
+            final Map<ElementSnapshot, Boolean> complete = new IdentityHashMap<>();
+            collectComplete(snapshot.getChildren(), complete);
+            for (final ElementSnapshot element : complete.keySet()) {
+                assertTrue(element.toString(), finalComplete.containsKey(element));
+            }
+        }
+        assertMatches(document, last.getChildren());
+    }
+    
+    @Test
+    public void testConcurrentReader() throws InterruptedException {
+        final StringBuilder html = new StringBuilder();
+        for (int i = 0; i < 5000; i++ ) {
+            html.append("<p>").append(i).append("<a href=x>l</a><em>e");
+        }
+        final Parser parser = parser(new StringReader(html.toString()), 50);
+        final AtomicReference<Document> document = new AtomicReference<>();
+        final Thread thread = new Thread(new Runnable() {
+            
+            @Override
+            public void run() {
+                document.set(parser.parse());
+            }
+        });
+        thread.start();
+        TreeSnapshot snapshot = parser.getSnapshot();
+        while (snapshot == null || !snapshot.isComplete()) {
+            if (snapshot != null) {
+                snapshot.getDocumentElement().getTextContent();
+            }
+            snapshot = parser.getSnapshot();
+        }
+        thread.join();
+        
+        assertMatches(document.get(), snapshot.getChildren());
+    }
+    
+    @Test
+    public void testReset() {
+        final Parser parser = parser(new StringReader("<p>a"), 1);
+        parser.parse();
+        final TreeSnapshot first = parser.getSnapshot();
+        parser.reset(new StringReader("<p>b"));
+        
+        assertNull(parser.getSnapshot());
+        parser.parse();
+        assertEquals("b", parser.getSnapshot().getDocumentElement().getTextContent());
+        assertEquals("a", first.getDocumentElement().getTextContent());
+    }
+    
+    @Test
+    public void testConfiguration() {
+        final ParserConfiguration configuration = new ParserConfiguration.Builder().setSnapshotInterval(10).build();
+        final Parser parser = new ParserFactory(domImplementation, configuration).newParser(new StringReader("<p>a"));
+        parser.parse();
+        
+        assertEquals(10, parser.getSnapshotInterval());
+        assertSame(parser.getSnapshot(), parser.getSnapshot());
+        assertTrue(parser.getSnapshot().isComplete());
+    }
+    
+}
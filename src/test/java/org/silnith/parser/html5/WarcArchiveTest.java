@@ -0,0 +1,449 @@
+package org.silnith.parser.html5;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.silnith.parser.html5.BatchParser.Result;
+import org.silnith.parser.html5.BatchParser.ResultHandler;
+import org.silnith.parser.html5.WarcArchive.Record;
+import org.w3c.dom.DOMImplementation;
+import org.w3c.dom.bootstrap.DOMImplementationRegistry;
+
+
+public class WarcArchiveTest {
+    
+    private static final Charset LATIN_1 = StandardCharsets.ISO_8859_1;
+    
+    private static DOMImplementationRegistry registry;
+    
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+    
+    private ExecutorService executor;
+    
+    private BatchParser batchParser;
+    
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        registry = DOMImplementationRegistry.newInstance();
+    }
+    
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception {
+        registry = null;
+    }
+    
+    @Before
+    public void setUp() throws Exception {
+        final DOMImplementation domImplementation = registry.getDOMImplementation("Core 2.0");
+        final ParserConfiguration configuration = new ParserConfiguration.Builder().setAllowParseErrors(true).build();
+        executor = Executors.newFixedThreadPool(4);
+        batchParser = new BatchParser(new ParserFactory(domImplementation, configuration), executor, 4);
+    }
+    
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+    
+    private static byte[] concat(final byte[]... parts) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (final byte[] part : parts) {
+            out.write(part);
+        }
+        return out.toByteArray();
+    }
+    
+    private static byte[] record(final String type, final String id, final String uri, final String contentType,
+            final byte[] content) throws IOException {
+        final StringBuilder headers = new StringBuilder("WARC/1.0\r\n");
+        headers.append("WARC-Type: ").append(type).append("\r\n");
+        headers.append("WARC-Record-ID: <urn:uuid:").append(id).append(">\r\n");
+        if (uri != null) {
+            headers.append("WARC-Target-URI: ").append(uri).append("\r\n");
+        }
+        headers.append("Content-Type: ").append(contentType).append("\r\n");
+        headers.append("Content-Length: ").append(content.length).append("\r\n\r\n");
+        return concat(headers.toString().getBytes(LATIN_1), content, "\r\n\r\n".getBytes(LATIN_1));
+    }
+    
+    private static byte[] response(final String id, final String uri, final String httpHeaders, final byte[] body)
+            throws IOException {
+        final byte[] http = concat(("HTTP/1.1 200 OK\r\n" + httpHeaders + "\r\n").getBytes(LATIN_1), body);
+        return record("response", id, uri, "application/http; msgtype=response", http);
+    }
+    
+    private static byte[] gzip(final byte[] bytes) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (final GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        }
+        return out.toByteArray();
+    }
+    
+    private static byte[] chunked(final byte[] bytes, final int chunkSize) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < bytes.length; i += chunkSize) {
+            final int length = Math.min(chunkSize, bytes.length - i);
+            out.write((Integer.toHexString(length) + ";ext=1\r\n").getBytes(LATIN_1));
+            out.write(bytes, i, length);
+            out.write("\r\n".getBytes(LATIN_1));
+        }
+        out.write("0\r\nTrailer: x\r\n\r\n".getBytes(LATIN_1));
+        return out.toByteArray();
+    }
+    
+    private Path write(final byte[]... records) throws IOException {
+        final Path path = folder.newFile().toPath();
+        Files.write(path, concat(records));
+        return path;
+    }
+    
+    private Path sampleArchive() throws IOException {
+        return write(sampleRecords());
+    }
+    
+    /**
+     * Returns the sample archive with each record in a separate gzip member.
+     */
+    private Path compressedSampleArchive() throws IOException {
+        final byte[][] records = sampleRecords();
+        for (int i = 0; i < records.length; i++ ) {
+            records[i] = gzip(records[i]);
+        }
+        return write(records);
+    }
+    
+    private static byte[][] sampleRecords() throws IOException {
+        return new byte[][] { record("warcinfo", "0", null, "application/warc-fields", "software: test\r\n".getBytes(LATIN_1)),
+                record("request", "1", "http://example.com/", "application/http; msgtype=request",
+                        "GET / HTTP/1.1\r\nHost: example.com\r\n\r\n".getBytes(LATIN_1)),
+                response("2", "http://example.com/", "Content-Type: text/html; charset=UTF-8\r\n",
+                        "<title>caf\u00e9</title><p>one".getBytes(StandardCharsets.UTF_8)),
+                response("3", "http://example.com/logo.png", "Content-Type: image/png\r\n", new byte[] {
+                        (byte) 0x89, 'P', 'N', 'G' }),
+                response("4", "http://example.com/gz", "Content-Type: text/html\r\nContent-Encoding: gzip\r\n"
+                        + "Transfer-Encoding: chunked\r\n",
+                        chunked(gzip("<title>gz</title><p>two".getBytes(LATIN_1)), 7)),
+                record("resource", "5", "file:///index.html", "text/html",
+                        "<title>resource</title>".getBytes(LATIN_1)),
+                response("6", "http://example.com/utf16", "Content-Type: text/html; charset=\"ISO-8859-1\"\r\n",
+                        concat(new byte[] { (byte) 0xFF, (byte) 0xFE }, "<title>bom</title>"
+                                .getBytes(StandardCharsets.UTF_16LE))),
+                response("7", "http://example.com/latin", "Content-Type: text/html;charset=latin1\r\n",
+                        concat("<title>".getBytes(LATIN_1), new byte[] { (byte) 0x93, 'q', (byte) 0x94 },
+                                "</title>".getBytes(LATIN_1))) };
+    }
+    
+    private static String read(final Reader reader) throws IOException {
+        final StringBuilder text = new StringBuilder();
+        try (final Reader in = reader) {
+            final char[] buffer = new char[64];
+            int count = in.read(buffer);
+            while (count != -1) {
+                text.append(buffer, 0, count);
+                count = in.read(buffer);
+            }
+        }
+        return text.toString();
+    }
+    
+    private static String getTitle(final Result result) {
+        return result.getDocument().getElementsByTagName("title").item(0).getTextContent();
+    }
+    
+    @Test
+    public void testRecords() throws IOException {
+        try (final WarcArchive archive = new WarcArchive(sampleArchive())) {
+            assertEquals(8, archive.size());
+            final List<Record> records = new ArrayList<>();
+            for (final Record record : archive.getRecords()) {
+                records.add(record);
+            }
+            
+            assertEquals(8, records.size());
+            assertEquals(0, records.get(0).getOffset());
+            assertEquals("warcinfo", records.get(0).getType());
+            assertFalse(records.get(0).isHTML());
+            assertEquals(-1, records.get(0).getPayloadLength());
+            assertEquals("request", records.get(1).getType());
+            assertFalse(records.get(1).isHTML());
+            assertEquals("<urn:uuid:2>", records.get(2).getRecordId());
+            assertEquals("http://example.com/", records.get(2).getTargetURI());
+            assertEquals("application/http; msgtype=response", records.get(2).getHeader("content-type"));
+            assertEquals(200, records.get(2).getStatusCode());
+            assertEquals("text/html", records.get(2).getMediaType());
+            assertEquals(StandardCharsets.UTF_8, records.get(2).getCharset());
+            assertTrue(records.get(2).isHTML());
+            assertEquals("image/png", records.get(3).getMediaType());
+            assertFalse(records.get(3).isHTML());
+            assertEquals(-1, records.get(5).getStatusCode());
+            assertNull(records.get(5).getHttpHeaders());
+            assertTrue(records.get(5).isHTML());
+            assertEquals(Charset.forName("windows-1252"), records.get(7).getCharset());
+            for (final Record record : records) {
+                assertEquals(record.getOffset(), archive.getRecord(records.indexOf(record)).getOffset());
+            }
+        }
+    }
+    
+    @Test
+    public void testPayloads() throws IOException {
+        try (final WarcArchive archive = new WarcArchive(sampleArchive())) {
+            assertEquals("<title>caf\u00e9</title><p>one", read(archive.getRecord(2).open()));
+            assertEquals("<title>gz</title><p>two", read(archive.getRecord(4).open()));
+            assertEquals("<title>resource</title>", read(archive.getRecord(5).open()));
+            assertEquals("<title>bom</title>", read(archive.getRecord(6).open()));
+            assertEquals("<title>\u201cq\u201d</title>", read(archive.getRecord(7).open()));
+            // A record may be opened again.
+            assertEquals("<title>gz</title><p>two", read(archive.getRecord(4).open()));
+        }
+    }
+    
+    @Test
+    public void testUTF8ByteOrderMark() throws IOException, InterruptedException {
+        final byte[] bom = new byte[] { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF };
+        final byte[][] records = {
+                response("1", "http://example.com/bom", "Content-Type: text/html; charset=ISO-8859-1\r\n",
+                        concat(bom, "<title>caf\u00e9</title><p>x".getBytes(StandardCharsets.UTF_8))),
+                record("resource", "2", "file:///bom.html", "text/html",
+                        concat(bom, "<title>r\u00e9sum\u00e9</title>".getBytes(StandardCharsets.UTF_8))) };
+        final byte[][] compressed = new byte[records.length][];
+        for (int i = 0; i < records.length; i++ ) {
+            compressed[i] = gzip(records[i]);
+        }
+        for (final Path path : new Path[] { write(records), write(compressed) }) {
+            try (final WarcArchive archive = new WarcArchive(path)) {
+                assertEquals("<title>caf\u00e9</title><p>x", read(archive.getRecord(0).open()));
+                assertEquals("<title>r\u00e9sum\u00e9</title>", read(archive.getRecord(1).open()));
+                final List<Result> results = new ArrayList<>();
+                batchParser.parseAllOrdered(archive.getHTMLRecords(), new ResultHandler() {
+                    
+                    @Override
+                    public void handle(final Result result) {
+                        results.add(result);
+                    }
+                });
+                
+                assertEquals(2, results.size());
+                assertEquals("caf\u00e9", getTitle(results.get(0)));
+                assertEquals("r\u00e9sum\u00e9", getTitle(results.get(1)));
+                for (final Result result : results) {
+                    final String text = result.getDocument().getDocumentElement().getTextContent();
+                    assertEquals(-1, text.indexOf('\ufeff'));
+                }
+            }
+        }
+    }
+    
+    @Test(expected = IOException.class)
+    public void testNoPayload() throws IOException {
+        try (final WarcArchive archive = new WarcArchive(sampleArchive())) {
+            archive.getRecord(1).open();
+        }
+    }
+    
+    @Test
+    public void testParseAll() throws IOException, InterruptedException {
+        try (final WarcArchive archive = new WarcArchive(sampleArchive())) {
+            final Map<String, Result> results = new HashMap<>();
+            archive.parseAll(batchParser, new ResultHandler() {
+                
+                @Override
+                public void handle(final Result result) {
+                    results.put(((Record) result.getSource()).getRecordId(), result);
+                }
+            });
+            
+            assertEquals(5, results.size());
+            for (final Result result : results.values()) {
+                assertTrue(result.isSuccess());
+                assertTrue(result.getParseTime() >= 0);
+            }
+            assertEquals("caf\u00e9", getTitle(results.get("<urn:uuid:2>")));
+            assertEquals("gz", getTitle(results.get("<urn:uuid:4>")));
+            assertEquals("resource", getTitle(results.get("<urn:uuid:5>")));
+            assertEquals("bom", getTitle(results.get("<urn:uuid:6>")));
+            assertEquals("\u201cq\u201d", getTitle(results.get("<urn:uuid:7>")));
+        }
+    }
+    
+    @Test
+    public void testManyRecords() throws IOException, InterruptedException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < 500; i++ ) {
+            out.write(response(String.valueOf(i), "http://example.com/" + i, "Content-Type: text/html\r\n",
+                    ("<title>" + i + "</title><p>x<b>y</b>").getBytes(LATIN_1)));
+        }
+        try (final WarcArchive archive = new WarcArchive(write(out.toByteArray()))) {
+            final List<Result> results = new ArrayList<>();
+            batchParser.parseAllOrdered(archive.getHTMLRecords(), new ResultHandler() {
+                
+                @Override
+                public void handle(final Result result) {
+                    results.add(result);
+                }
+            });
+            
+            assertEquals(500, results.size());
+            for (int i = 0; i < 500; i++ ) {
+                assertTrue(results.get(i).isSuccess());
+                assertEquals(String.valueOf(i), getTitle(results.get(i)));
+                assertEquals("http://example.com/" + i, ((Record) results.get(i).getSource()).getTargetURI());
+            }
+        }
+    }
+    
+    @Test
+    public void testFailureIsolated() throws IOException, InterruptedException {
+        final Path path = write(response("1", "http://example.com/bad", "Content-Type: text/html\r\n"
+                + "Content-Encoding: br\r\n", "<p>x".getBytes(LATIN_1)), response("2", "http://example.com/good",
+                "Content-Type: text/html\r\n", "<p>x".getBytes(LATIN_1)));
+        try (final WarcArchive archive = new WarcArchive(path)) {
+            final List<Result> results = new ArrayList<>();
+            batchParser.parseAllOrdered(archive.getHTMLRecords(), new ResultHandler() {
+                
+                @Override
+                public void handle(final Result result) {
+                    results.add(result);
+                }
+            });
+            
+            assertEquals(2, results.size());
+            assertFalse(results.get(0).isSuccess());
+            assertTrue(results.get(0).getFailure() instanceof IOException);
+            assertTrue(results.get(1).isSuccess());
+        }
+    }
+    
+    @Test(expected = IOException.class)
+    public void testNotWarc() throws IOException {
+        new WarcArchive(write("<!DOCTYPE html><p>x\r\n\r\n".getBytes(LATIN_1))).close();
+    }
+    
+    @Test
+    public void testCompressed() throws IOException {
+        try (final WarcArchive archive = new WarcArchive(write(gzip(record("resource", "1", null, "text/html",
+                "<p>x".getBytes(LATIN_1)))))) {
+            assertEquals(1, archive.size());
+            assertEquals("<p>x", read(archive.getRecord(0).open()));
+        }
+    }
+    
+    @Test
+    public void testCompressedRecords() throws IOException {
+        try (final WarcArchive plain = new WarcArchive(sampleArchive());
+                final WarcArchive archive = new WarcArchive(compressedSampleArchive())) {
+            assertEquals(plain.size(), archive.size());
+            long offset = 0;
+            for (int i = 0; i < plain.size(); i++ ) {
+                final Record expected = plain.getRecord(i);
+                final Record actual = archive.getRecord(i);
+                assertEquals(offset, actual.getOffset());
+                offset += gzip(sampleRecords()[i]).length;
+                assertEquals(expected.getHeaders(), actual.getHeaders());
+                assertEquals(expected.getHttpHeaders(), actual.getHttpHeaders());
+                assertEquals(expected.getStatusCode(), actual.getStatusCode());
+                assertEquals(expected.getCharset(), actual.getCharset());
+                assertEquals(expected.isHTML(), actual.isHTML());
+                assertEquals(expected.getPayloadLength(), actual.getPayloadLength());
+            }
+            assertEquals("<title>caf\u00e9</title><p>one", read(archive.getRecord(2).open()));
+            assertEquals("<title>gz</title><p>two", read(archive.getRecord(4).open()));
+            assertEquals("<title>bom</title>", read(archive.getRecord(6).open()));
+            assertEquals("<title>\u201cq\u201d</title>", read(archive.getRecord(7).open()));
+        }
+    }
+    
+    @Test
+    public void testCompressedParseAll() throws IOException, InterruptedException {
+        try (final WarcArchive archive = new WarcArchive(compressedSampleArchive())) {
+            final Map<String, Result> results = new HashMap<>();
+            archive.parseAll(batchParser, new ResultHandler() {
+                
+                @Override
+                public void handle(final Result result) {
+                    results.put(((Record) result.getSource()).getRecordId(), result);
+                }
+            });
+            
+            assertEquals(5, results.size());
+            for (final Result result : results.values()) {
+                assertTrue(result.isSuccess());
+            }
+            assertEquals("caf\u00e9", getTitle(results.get("<urn:uuid:2>")));
+            assertEquals("gz", getTitle(results.get("<urn:uuid:4>")));
+            assertEquals("resource", getTitle(results.get("<urn:uuid:5>")));
+        }
+    }
+    
+    @Test
+    public void testCompressedLargeRecords() throws IOException {
+        final StringBuilder httpHeaders = new StringBuilder("Content-Type: text/html\r\n");
+        for (int i = 0; i < 1000; i++ ) {
+            httpHeaders.append("X-Header-").append(i).append(": value\r\n");
+        }
+        final StringBuilder body = new StringBuilder("<title>large</title>");
+        for (int i = 0; i < 20000; i++ ) {
+            body.append("<p>").append(i);
+        }
+        try (final WarcArchive archive = new WarcArchive(write(gzip(response("1", "http://example.com/headers",
+                httpHeaders.toString(), "<title>headers</title>".getBytes(LATIN_1))), gzip(response("2",
+                "http://example.com/body", "Content-Type: text/html\r\n", body.toString().getBytes(LATIN_1)))))) {
+            assertEquals(2, archive.size());
+            assertEquals("value", archive.getRecord(0).getHttpHeaders().get("X-Header-999"));
+            assertTrue(archive.getRecord(0).isHTML());
+            assertEquals("<title>headers</title>", read(archive.getRecord(0).open()));
+            assertEquals(body.length(), archive.getRecord(1).getPayloadLength());
+            assertEquals(body.toString(), read(archive.getRecord(1).open()));
+        }
+    }
+    
+    @Test(expected = IOException.class)
+    public void testCompressedMemberWithSeveralRecords() throws IOException {
+        new WarcArchive(write(gzip(concat(record("resource", "1", null, "text/html", "<p>x".getBytes(LATIN_1)),
+                record("resource", "2", null, "text/html", "<p>y".getBytes(LATIN_1)))))).close();
+    }
+    
+    @Test(expected = IOException.class)
+    public void testCompressedTruncated() throws IOException {
+        final byte[] member = gzip(record("resource", "1", null, "text/html", "<p>x".getBytes(LATIN_1)));
+        final byte[] truncated = new byte[member.length - 3];
+        System.arraycopy(member, 0, truncated, 0, truncated.length);
+        new WarcArchive(write(gzip(record("resource", "0", null, "text/html", "<p>w".getBytes(LATIN_1))), truncated))
+                .close();
+    }
+    
+    @Test(expected = IOException.class)
+    public void testTruncated() throws IOException {
+        final byte[] record = record("resource", "1", null, "text/html", "<p>x".getBytes(LATIN_1));
+        final byte[] truncated = new byte[record.length - 6];
+        System.arraycopy(record, 0, truncated, 0, truncated.length);
+        new WarcArchive(write(truncated)).close();
+    }
+    
+}
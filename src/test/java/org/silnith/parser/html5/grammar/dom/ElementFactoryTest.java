@@ -0,0 +1,135 @@
+package org.silnith.parser.html5.grammar.dom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.silnith.parser.html5.grammar.element.ElementKind;
+import org.silnith.parser.html5.lexical.token.TagToken;
+import org.w3c.dom.DOMException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.bootstrap.DOMImplementationRegistry;
+
+
+public class ElementFactoryTest {
+    
+    private static final String HTML_NAMESPACE = "http://www.w3.org/1999/xhtml";
+    
+    private static final String SVG_NAMESPACE = "http://www.w3.org/2000/svg";
+    
+    private static DOMImplementationRegistry registry;
+    
+    private Document document;
+    
+    private ElementFactory elementFactory;
+    
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        registry = DOMImplementationRegistry.newInstance();
+    }
+    
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception {
+        registry = null;
+    }
+    
+    @Before
+    public void setUp() throws Exception {
+        document = registry.getDOMImplementation("Core 2.0").createDocument(HTML_NAMESPACE, "html", null);
+        elementFactory = new ElementFactory(document);
+    }
+    
+    private TagToken.Attribute attribute(final String name, final String value) {
+        final TagToken.Attribute attribute = new TagToken.Attribute();
+        for (final char ch : name.toCharArray()) {
+            attribute.appendToName(ch);
+        }
+        for (final char ch : value.toCharArray()) {
+            attribute.appendToValue(ch);
+        }
+        return attribute;
+    }
+    
+    @Test
+    public void testGetPrototype() {
+        final ElementFactory.Prototype prototype = elementFactory.getPrototype(HTML_NAMESPACE, "select");
+        
+        assertSame(prototype, elementFactory.getPrototype(HTML_NAMESPACE, "select"));
+        assertEquals(ElementKind.SELECT, prototype.getKind());
+        assertTrue(prototype.isA(ElementKind.RESETTABLE));
+        assertTrue(prototype.isA(ElementKind.FORM_ASSOCIATED));
+    }
+    
+    @Test
+    public void testGetPrototypeNamespaces() {
+        final ElementFactory.Prototype html = elementFactory.getPrototype(HTML_NAMESPACE, "title");
+        final ElementFactory.Prototype svg = elementFactory.getPrototype(SVG_NAMESPACE, "title");
+        
+        assertNotSame(html, svg);
+        assertEquals(ElementKind.TITLE, html.getKind());
+        assertEquals(ElementKind.SVG_TITLE, svg.getKind());
+        assertFalse(svg.isA(ElementKind.RESETTABLE));
+    }
+    
+    @Test
+    public void testNewElement() {
+        final ElementFactory.Prototype prototype = elementFactory.getPrototype(SVG_NAMESPACE, "foreignObject");
+        final Element first = prototype.newElement();
+        final Element second = prototype.newElement();
+        
+        assertNotSame(first, second);
+        assertEquals(SVG_NAMESPACE, first.getNamespaceURI());
+        assertEquals("foreignObject", first.getLocalName());
+        assertSame(document, first.getOwnerDocument());
+        assertFalse(first.hasAttributes());
+    }
+    
+    @Test
+    public void testCreateElement() {
+        final List<TagToken.Attribute> attributes = new ArrayList<>();
+        attributes.add(attribute("id", "a"));
+        attributes.add(attribute("class", "b"));
+        
+        final Element first = elementFactory.createElement(HTML_NAMESPACE, "p", attributes);
+        final Element second = elementFactory.createElement(HTML_NAMESPACE, "p", attributes);
+        
+        assertEquals("a", first.getAttribute("id"));
+        assertEquals("b", first.getAttribute("class"));
+        assertEquals(2, second.getAttributes().getLength());
+        assertEquals("a", second.getAttribute("id"));
+        assertEquals("b", second.getAttribute("class"));
+        assertTrue(document.getStrictErrorChecking());
+    }
+    
+    @Test
+    public void testCreateElementNamespacedAttribute() {
+        final TagToken.Attribute href = attribute("xlink:href", "#a");
+        href.setNamespace("http://www.w3.org/1999/xlink");
+        final List<TagToken.Attribute> attributes = new ArrayList<>();
+        attributes.add(href);
+        
+        elementFactory.createElement(SVG_NAMESPACE, "use", attributes);
+        final Element element = elementFactory.createElement(SVG_NAMESPACE, "use", attributes);
+        
+        assertEquals("#a", element.getAttributeNS("http://www.w3.org/1999/xlink", "href"));
+    }
+    
+    @Test(expected = DOMException.class)
+    public void testCreateElementInvalidAttributeName() {
+        final List<TagToken.Attribute> attributes = new ArrayList<>();
+        attributes.add(attribute("a\"b", "c"));
+        
+        elementFactory.createElement(HTML_NAMESPACE, "p", attributes);
+    }
+    
+}
@@ -0,0 +1,143 @@
+package org.silnith.parser.html5.grammar.element;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+
+public class ElementKindTest {
+    
+    private static final String HTML_NAMESPACE = "http://www.w3.org/1999/xhtml";
+    
+    private static final String MATHML_NAMESPACE = "http://www.w3.org/1998/Math/MathML";
+    
+    private static final String SVG_NAMESPACE = "http://www.w3.org/2000/svg";
+    
+    @Test
+    public void testHtmlKindOf() {
+        assertEquals(ElementKind.TABLE, ElementKind.htmlKindOf("table"));
+    }
+    
+    @Test
+    public void testHtmlKindOfUnknown() {
+        assertEquals(ElementKind.HTML_UNKNOWN, ElementKind.htmlKindOf("custom-element"));
+    }
+    
+    @Test
+    public void testTagKindOf() {
+        assertEquals(ElementKind.TD, ElementKind.tagKindOf("td"));
+        assertEquals(ElementKind.MATHML_MATH, ElementKind.tagKindOf("math"));
+        assertEquals(ElementKind.SVG_SVG, ElementKind.tagKindOf("svg"));
+        assertEquals(ElementKind.HTML_UNKNOWN, ElementKind.tagKindOf("mi"));
+    }
+    
+    @Test
+    public void testKindOfHTML() {
+        assertEquals(ElementKind.TITLE, ElementKind.kindOf(HTML_NAMESPACE, "title"));
+    }
+    
+    @Test
+    public void testKindOfSVG() {
+        assertEquals(ElementKind.SVG_TITLE, ElementKind.kindOf(SVG_NAMESPACE, "title"));
+    }
+    
+    @Test
+    public void testKindOfSVGUnknown() {
+        assertEquals(ElementKind.SVG_UNKNOWN, ElementKind.kindOf(SVG_NAMESPACE, "table"));
+    }
+    
+    @Test
+    public void testKindOfMathML() {
+        assertEquals(ElementKind.MATHML_MI, ElementKind.kindOf(MATHML_NAMESPACE, "mi"));
+    }
+    
+    @Test
+    public void testKindOfOtherNamespace() {
+        assertEquals(ElementKind.OTHER, ElementKind.kindOf("urn:example", "table"));
+    }
+    
+    @Test
+    public void testIsKnown() {
+        assertTrue(ElementKind.isKnown(ElementKind.P));
+        assertFalse(ElementKind.isKnown(ElementKind.HTML_UNKNOWN));
+    }
+    
+    @Test
+    public void testGetLocalName() {
+        assertEquals("foreignObject", ElementKind.getLocalName(ElementKind.SVG_FOREIGN_OBJECT));
+    }
+    
+    @Test
+    public void testSpecial() {
+        assertTrue(ElementKind.isA(ElementKind.ADDRESS, ElementKind.SPECIAL));
+        assertTrue(ElementKind.isA(ElementKind.MATHML_MTEXT, ElementKind.SPECIAL));
+        assertFalse(ElementKind.isA(ElementKind.SPAN, ElementKind.SPECIAL));
+        assertFalse(ElementKind.isA(ElementKind.HTML_UNKNOWN, ElementKind.SPECIAL));
+    }
+    
+    @Test
+    public void testFormatting() {
+        assertTrue(ElementKind.isA(ElementKind.NOBR, ElementKind.FORMATTING));
+        assertFalse(ElementKind.isA(ElementKind.SPAN, ElementKind.FORMATTING));
+    }
+    
+    @Test
+    public void testButtonScope() {
+        final int buttonScope = ElementKind.SCOPE | ElementKind.BUTTON_SCOPE;
+        
+        assertTrue(ElementKind.isA(ElementKind.BUTTON, buttonScope));
+        assertTrue(ElementKind.isA(ElementKind.TD, buttonScope));
+        assertFalse(ElementKind.isA(ElementKind.BUTTON, ElementKind.SCOPE));
+    }
+    
+    @Test
+    public void testListItemScope() {
+        final int listItemScope = ElementKind.SCOPE | ElementKind.LIST_ITEM_SCOPE;
+        
+        assertTrue(ElementKind.isA(ElementKind.UL, listItemScope));
+        assertFalse(ElementKind.isA(ElementKind.UL, ElementKind.SCOPE));
+    }
+    
+    @Test
+    public void testTableScope() {
+        assertTrue(ElementKind.isA(ElementKind.TEMPLATE, ElementKind.TABLE_SCOPE));
+        assertFalse(ElementKind.isA(ElementKind.TD, ElementKind.TABLE_SCOPE));
+    }
+    
+    @Test
+    public void testNamespaceFlags() {
+        assertTrue(ElementKind.isA(ElementKind.DIV, ElementKind.NAMESPACE_HTML));
+        assertTrue(ElementKind.isA(ElementKind.SVG_UNKNOWN, ElementKind.NAMESPACE_SVG));
+        assertTrue(ElementKind.isA(ElementKind.MATHML_MATH, ElementKind.NAMESPACE_MATHML));
+        assertEquals(0, ElementKind.getFlags(ElementKind.OTHER));
+    }
+    
+    @Test
+    public void testIntegrationPoints() {
+        assertTrue(ElementKind.isA(ElementKind.MATHML_MO, ElementKind.MATHML_TEXT_INTEGRATION_POINT));
+        assertTrue(ElementKind.isA(ElementKind.SVG_DESC, ElementKind.HTML_INTEGRATION_POINT));
+        assertFalse(ElementKind.isA(ElementKind.MATHML_ANNOTATION_XML, ElementKind.HTML_INTEGRATION_POINT));
+    }
+        @Test
+    public void testFormCategories() {
+        assertTrue(ElementKind.isA(ElementKind.SELECT, ElementKind.RESETTABLE));
+        assertTrue(ElementKind.isA(ElementKind.IMG, ElementKind.FORM_ASSOCIATED));
+        assertFalse(ElementKind.isA(ElementKind.IMG, ElementKind.REASSOCIATEABLE));
+        assertFalse(ElementKind.isA(ElementKind.BUTTON, ElementKind.RESETTABLE));
+        assertFalse(ElementKind.isA(ElementKind.HTML_UNKNOWN, ElementKind.FORM_ASSOCIATED));
+    }
+    
+    @Test
+    public void testSerializationCategories() {
+        assertTrue(ElementKind.isA(ElementKind.BR, ElementKind.VOID));
+        assertTrue(ElementKind.isA(ElementKind.INPUT, ElementKind.VOID));
+        assertFalse(ElementKind.isA(ElementKind.SVG_UNKNOWN, ElementKind.VOID));
+        assertTrue(ElementKind.isA(ElementKind.SCRIPT, ElementKind.RAW_TEXT));
+        assertFalse(ElementKind.isA(ElementKind.TEXTAREA, ElementKind.RAW_TEXT));
+        assertFalse(ElementKind.isA(ElementKind.NOSCRIPT, ElementKind.RAW_TEXT));
+        assertTrue(ElementKind.isA(ElementKind.TEXTAREA, ElementKind.LEADING_NEWLINE));
+    }
+    
+}
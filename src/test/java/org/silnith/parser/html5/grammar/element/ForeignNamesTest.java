@@ -0,0 +1,47 @@
+package org.silnith.parser.html5.grammar.element;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+
+public class ForeignNamesTest {
+    
+    @Test
+    public void testAdjustSVGTagName() {
+        assertEquals("foreignObject", ForeignNames.adjustSVGTagName("foreignobject"));
+        assertEquals("feGaussianBlur", ForeignNames.adjustSVGTagName("fegaussianblur"));
+    }
+    
+    @Test
+    public void testAdjustSVGTagNameUnchanged() {
+        assertNull(ForeignNames.adjustSVGTagName("path"));
+    }
+    
+    @Test
+    public void testAdjustSVGAttributeName() {
+        assertEquals("viewBox", ForeignNames.adjustSVGAttributeName("viewbox"));
+        assertEquals("preserveAspectRatio", ForeignNames.adjustSVGAttributeName("preserveaspectratio"));
+    }
+    
+    @Test
+    public void testAdjustSVGAttributeNameUnchanged() {
+        assertNull(ForeignNames.adjustSVGAttributeName("fill"));
+    }
+    
+    @Test
+    public void testAdjustMathMLAttributeName() {
+        assertEquals("definitionURL", ForeignNames.adjustMathMLAttributeName("definitionurl"));
+        assertNull(ForeignNames.adjustMathMLAttributeName("mathvariant"));
+    }
+    
+    @Test
+    public void testGetForeignAttributeNamespace() {
+        assertEquals("http://www.w3.org/1999/xlink", ForeignNames.getForeignAttributeNamespace("xlink:href"));
+        assertEquals("http://www.w3.org/XML/1998/namespace", ForeignNames.getForeignAttributeNamespace("xml:lang"));
+        assertEquals("http://www.w3.org/2000/xmlns/", ForeignNames.getForeignAttributeNamespace("xmlns"));
+        assertNull(ForeignNames.getForeignAttributeNamespace("href"));
+    }
+    
+}
@@ -0,0 +1,102 @@
+package org.silnith.parser.html5.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.CharBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+
+public class PrimitivesTest {
+    
+    private static final Primitives[] IMPLEMENTATIONS = { new Java7Primitives(), Primitives.INSTANCE };
+    
+    @Test
+    public void testInstance() {
+        assertNotNull(Primitives.INSTANCE);
+        assertSame(Primitives.INSTANCE, Primitives.INSTANCE);
+    }
+    
+    @Test
+    public void testIndexOf() {
+        for (final Primitives primitives : IMPLEMENTATIONS) {
+            for (final CharSequence text : new CharSequence[] { "ab\rcd\r", new StringBuilder("ab\rcd\r"),
+                    CharBuffer.wrap("ab\rcd\r") }) {
+                assertEquals(2, primitives.indexOf(text, '\r', 0));
+                assertEquals(2, primitives.indexOf(text, '\r', -1));
+                assertEquals(5, primitives.indexOf(text, '\r', 3));
+                assertEquals( -1, primitives.indexOf(text, '\r', 6));
+                assertEquals( -1, primitives.indexOf(text, '\n', 0));
+            }
+            assertEquals(1, primitives.indexOf(new StringBuilder("\u4e2d\r"), '\r', 0));
+        }
+    }
+    
+    @Test
+    public void testRegionMatchesIgnoreCase() {
+        for (final Primitives primitives : IMPLEMENTATIONS) {
+            final StringBuilder text = new StringBuilder("x</ScRiPt");
+            assertTrue(primitives.regionMatchesIgnoreCase(text, 1, "</script"));
+            assertFalse(primitives.regionMatchesIgnoreCase(text, 0, "</script"));
+            assertFalse(primitives.regionMatchesIgnoreCase(text, 2, "</script"));
+            assertFalse(primitives.regionMatchesIgnoreCase(text, -1, "</script"));
+            assertTrue(primitives.regionMatchesIgnoreCase("-->", 0, "-->"));
+            // Only ASCII letters are folded.
+            assertFalse(primitives.regionMatchesIgnoreCase("\u212a", 0, "k"));
+            assertFalse(primitives.regionMatchesIgnoreCase("\u0130", 0, "i"));
+        }
+    }
+    
+    @Test
+    public void testDecodeASCII() {
+        final byte[] src = new byte[200];
+        for (int i = 0; i < src.length; i++ ) {
+            src[i] = (byte) ('a' + i % 26);
+        }
+        src[150] = (byte) 0xC3;
+        for (final Primitives primitives : IMPLEMENTATIONS) {
+            for (int offset = 0; offset < 12; offset++ ) {
+                final char[] dst = new char[210];
+                final int count = primitives.decodeASCII(src, offset, dst, 3, src.length - offset);
+                assertEquals(150 - offset, count);
+                for (int i = 0; i < count; i++ ) {
+                    assertEquals((char) src[offset + i], dst[3 + i]);
+                }
+                assertEquals(0, dst[3 + count]);
+            }
+            final char[] dst = new char[10];
+            assertEquals(5, primitives.decodeASCII(src, 0, dst, 0, 5));
+            assertEquals(0, primitives.decodeASCII(src, 150, dst, 0, 10));
+            assertEquals(0, primitives.decodeASCII(src, 0, dst, 0, 0));
+        }
+    }
+    
+    @Test
+    public void testHelperExecutor() throws InterruptedException {
+        for (final Primitives primitives : IMPLEMENTATIONS) {
+            final CountDownLatch done = new CountDownLatch(2);
+            final Runnable task = new Runnable() {
+                
+                @Override
+                public void run() {
+                    done.countDown();
+                    try {
+                        done.await();
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            };
+            primitives.getHelperExecutor().execute(task);
+            primitives.getHelperExecutor().execute(task);
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+        }
+    }
+    
+}
@@ -0,0 +1,191 @@
+package org.silnith.parser.html5.lexical;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.silnith.parser.html5.lexical.DecodingReader.Compression;
+import org.silnith.parser.html5.lexical.token.Token;
+
+
+public class DecodingReaderTest {
+    
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    
+    private static final String TEXT;
+    
+    static {
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 2000; i++ ) {
+            text.append("<p title=\"\u00e9\u4e2d\">caf\u00e9 \u2209 \ud83d\ude00 ").append(i).append("</p>\r\n");
+        }
+        TEXT = text.toString();
+    }
+    
+    private ExecutorService executor;
+    
+    @Before
+    public void setUp() throws Exception {
+        executor = Executors.newCachedThreadPool();
+    }
+    
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+    
+    private static String readAll(final Reader reader) throws IOException {
+        final StringBuilder text = new StringBuilder();
+        final char[] buf = new char[1000];
+        int count = reader.read(buf);
+        while (count != -1) {
+            text.append(buf, 0, count);
+            count = reader.read(buf);
+        }
+        return text.toString();
+    }
+    
+    private static byte[] gzip(final byte[] bytes) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (final GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        }
+        return out.toByteArray();
+    }
+    
+    private static byte[] deflate(final byte[] bytes, final boolean nowrap) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (final DeflaterOutputStream deflate = new DeflaterOutputStream(out, new Deflater(Deflater.DEFAULT_COMPRESSION,
+                nowrap))) {
+            deflate.write(bytes);
+        }
+        return out.toByteArray();
+    }
+    
+    private DecodingReader reader(final byte[] bytes, final Compression compression) {
+        return new DecodingReader(new ByteArrayInputStream(bytes), UTF_8, compression, executor, 100, 2);
+    }
+    
+    @Test
+    public void testNone() throws IOException {
+        try (final DecodingReader reader = reader(TEXT.getBytes(UTF_8), Compression.NONE)) {
+            assertEquals(TEXT, readAll(reader));
+        }
+    }
+    
+    @Test
+    public void testGZIP() throws IOException {
+        try (final DecodingReader reader = reader(gzip(TEXT.getBytes(UTF_8)), Compression.GZIP)) {
+            assertEquals(TEXT, readAll(reader));
+        }
+    }
+    
+    @Test
+    public void testDeflate() throws IOException {
+        try (final DecodingReader reader = reader(deflate(TEXT.getBytes(UTF_8), false), Compression.DEFLATE)) {
+            assertEquals(TEXT, readAll(reader));
+        }
+    }
+    
+    @Test
+    public void testRawDeflate() throws IOException {
+        try (final DecodingReader reader = reader(deflate(TEXT.getBytes(UTF_8), true), Compression.DEFLATE)) {
+            assertEquals(TEXT, readAll(reader));
+        }
+    }
+    
+    @Test
+    public void testEmpty() throws IOException {
+        try (final DecodingReader reader = reader(new byte[0], Compression.NONE)) {
+            assertEquals( -1, reader.read());
+            assertEquals( -1, reader.read());
+        }
+    }
+    
+    @Test
+    public void testMalformed() throws IOException {
+        final byte[] bytes = new byte[] { 'a', (byte) 0xC3, 'b', (byte) 0xE2, (byte) 0x88 };
+        try (final DecodingReader reader = reader(bytes, Compression.NONE)) {
+            assertEquals("a\ufffdb\ufffd", readAll(reader));
+        }
+    }
+    
+    @Test
+    public void testFailure() throws IOException {
+        final IOException failure = new IOException("failure");
+        final InputStream in = new InputStream() {
+            
+            private int count = 0;
+            
+            @Override
+            public int read() throws IOException {
+                if (count++ < 500) {
+                    return 'a';
+                }
+                throw failure;
+            }
+        };
+        try (final DecodingReader reader = new DecodingReader(in, UTF_8, Compression.NONE, executor, 100, 2)) {
+            readAll(reader);
+        } catch (final IOException e) {
+            assertSame(failure, e);
+            return;
+        }
+        throw new AssertionError("Expected an exception.");
+    }
+    
+    private void readOneAndDrop(final InputStream in) throws IOException {
+        final DecodingReader reader = new DecodingReader(in, UTF_8, Compression.NONE, executor, 100, 2);
+        assertEquals(TEXT.charAt(0), reader.read());
+    }
+    
+    @Test
+    public void testDroppedReaderStopsHelper() throws IOException, InterruptedException {
+        final CountDownLatch inputClosed = new CountDownLatch(1);
+        readOneAndDrop(new ByteArrayInputStream(TEXT.getBytes(UTF_8)) {
+            
+            @Override
+            public void close() {
+                inputClosed.countDown();
+            }
+        });
+        
+        boolean stopped = false;
+        for (int i = 0; i < 100 && !stopped; i++ ) {
+            System.gc();
+            stopped = inputClosed.await(100, TimeUnit.MILLISECONDS);
+        }
+        assertTrue(stopped);
+    }
+    
+    @Test
+    public void testTokenize() throws IOException {
+        final Tokenizer expected = new Tokenizer(new StringReader(TEXT));
+        final Tokenizer actual = new Tokenizer(reader(gzip(TEXT.getBytes(UTF_8)), Compression.GZIP));
+        Token token;
+        do {
+            token = expected.getNextToken();
+            assertEquals(token.toString(), actual.getNextToken().toString());
+        } while (token.getType() != Token.Type.EOF);
+        assertEquals(expected.getPosition(), actual.getPosition());
+    }
+    
+}
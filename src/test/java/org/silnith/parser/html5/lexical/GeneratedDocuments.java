@@ -0,0 +1,30 @@
+package org.silnith.parser.html5.lexical;
+
+/**
+ * Builds large documents for the tokenizer tests by repeating a section of
+ * markup.
+ */
+final class GeneratedDocuments {
+    
+    private GeneratedDocuments() {
+        super();
+    }
+    
+    /**
+     * Returns a full document whose body is the section repeated the given
+     * number of times, with every {@code #} in the section replaced by the
+     * number of the repetition.
+     * 
+     * @param section the markup to repeat
+     * @param count the number of repetitions
+     * @return the document
+     */
+    static String generate(final String section, final int count) {
+        final StringBuilder html = new StringBuilder("<!DOCTYPE html><html><head><title>t</title></head><body>\r\n");
+        for (int i = 0; i < count; i++ ) {
+            html.append(section.replace("#", String.valueOf(i)));
+        }
+        return html.append("</body></html>").toString();
+    }
+    
+}
@@ -0,0 +1,196 @@
+package org.silnith.parser.html5.lexical;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.silnith.parser.html5.lexical.GeneratedDocuments.generate;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.silnith.parser.ParseErrorException;
+import org.silnith.parser.html5.Parser;
+import org.silnith.parser.html5.ParserConfiguration;
+import org.silnith.parser.html5.lexical.token.Token;
+import org.w3c.dom.DOMImplementation;
+import org.w3c.dom.Document;
+import org.w3c.dom.bootstrap.DOMImplementationRegistry;
+
+
+public class PipelinedTokenizerTest {
+    
+    private static DOMImplementationRegistry registry;
+    
+    private DOMImplementation domImplementation;
+    
+    private ExecutorService executor;
+    
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        registry = DOMImplementationRegistry.newInstance();
+    }
+    
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception {
+        registry = null;
+    }
+    
+    @Before
+    public void setUp() throws Exception {
+        domImplementation = registry.getDOMImplementation("Core 2.0");
+        executor = Executors.newCachedThreadPool();
+    }
+    
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+    
+    private Document parseSequentially(final String html) {
+        return new Parser(new Tokenizer(new StringReader(html)), domImplementation).parse();
+    }
+    
+    private Document parsePipelined(final PipelinedTokenizer tokenizer) {
+        return new Parser(tokenizer, domImplementation).parse();
+    }
+    
+    @Test
+    public void testDocument() {
+        final String html = generate("<div id=d#><p class=\"x\">Paragraph # &amp; more\r\n<b>bold</b><br/></p>"
+                + "<textarea><b>not a tag</b></textarea><script>if (a<b) {}</script></div>\n", 2000);
+        final PipelinedTokenizer tokenizer = new PipelinedTokenizer(new StringReader(html), executor, 16);
+        final Document document = parsePipelined(tokenizer);
+        
+        assertTrue(parseSequentially(html).isEqualNode(document));
+        assertEquals(0, tokenizer.getRollbackCount());
+        assertEquals(html.replace("\r\n", "\n").length(), tokenizer.getPosition());
+    }
+    
+    @Test
+    public void testHelperExecutor() {
+        final String html = generate("<p class=x>Paragraph #<b>bold</b></p>\n", 1000);
+        final PipelinedTokenizer tokenizer = new PipelinedTokenizer(new StringReader(html));
+        
+        assertTrue(parseSequentially(html).isEqualNode(parsePipelined(tokenizer)));
+        assertEquals(html.replace("\r\n", "\n").length(), tokenizer.getPosition());
+    }
+    
+    @Test
+    public void testMispredictedForeignContent() {
+        final String html = generate("<svg><title><b>#</b></title></svg><p>text</p>\n", 500);
+        final PipelinedTokenizer tokenizer = new PipelinedTokenizer(new StringReader(html), executor);
+        
+        assertTrue(parseSequentially(html).isEqualNode(parsePipelined(tokenizer)));
+        assertEquals(500, tokenizer.getRollbackCount());
+    }
+    
+    @Test(expected = ParseErrorException.class)
+    public void testParseError() {
+        final PipelinedTokenizer tokenizer = new PipelinedTokenizer(new StringReader("<p>a</p x>b"), executor);
+        tokenizer.setAllowParseErrors(false);
+        parsePipelined(tokenizer);
+    }
+    
+    @Test
+    public void testClose() throws Exception {
+        final String html = generate("<p>#\n", 10000);
+        final PipelinedTokenizer tokenizer = new PipelinedTokenizer(new StringReader(html), executor, 4);
+        
+        assertEquals(Token.Type.DOCTYPE, tokenizer.getNextToken().getType());
+        tokenizer.close();
+        assertEquals(Token.Type.START_TAG, tokenizer.getNextToken().getType());
+    }
+    
+    @Test
+    public void testTreeConstructionFailureStopsProducer() throws InterruptedException {
+        final AtomicInteger running = new AtomicInteger();
+        final Executor counting = new Executor() {
+            
+            @Override
+            public void execute(final Runnable command) {
+                running.incrementAndGet();
+                executor.execute(new Runnable() {
+                    
+                    @Override
+                    public void run() {
+                        try {
+                            command.run();
+                        } finally {
+                            running.decrementAndGet();
+                        }
+                    }
+                });
+            }
+        };
+        final StringBuilder html = new StringBuilder("<!DOCTYPE html><p>a</b>");
+        for (int i = 0; i < 2000; i++ ) {
+            html.append("<p>").append(i).append('\n');
+        }
+        final ParserConfiguration configuration =
+                new ParserConfiguration.Builder().setAllowParseErrors(false).build();
+        for (int i = 0; i < 20; i++ ) {
+            final PipelinedTokenizer tokenizer =
+                    new PipelinedTokenizer(new StringReader(html.toString()), counting, 4);
+            try {
+                new Parser(tokenizer, domImplementation, null, configuration).parse();
+                fail();
+            } catch (final ParseErrorException e) {
+                // expected
+            }
+        }
+        
+        for (int i = 0; i < 100 && running.get() > 0; i++ ) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, running.get());
+    }
+    
+    private static int countTokens(final Tokenizer tokenizer) throws IOException {
+        int count = 0;
+        while (tokenizer.getNextToken().getType() != Token.Type.EOF) {
+            count++ ;
+        }
+        return count;
+    }
+    
+    @Test
+    public void testInterruptedProducer() throws Exception {
+        final StringBuilder input = new StringBuilder("<!DOCTYPE html>");
+        for (int i = 0; i < 10000; i++ ) {
+            input.append("<p>").append(i).append('\n');
+        }
+        final String html = input.toString();
+        final PipelinedTokenizer tokenizer = new PipelinedTokenizer(new StringReader(html), executor, 4);
+        
+        assertEquals(Token.Type.DOCTYPE, tokenizer.getNextToken().getType());
+        executor.shutdownNow();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(countTokens(new Tokenizer(new StringReader(html))) - 1, countTokens(tokenizer));
+    }
+    
+    @Test
+    public void testReset() {
+        final PipelinedTokenizer tokenizer = new PipelinedTokenizer(new StringReader("<p>a"), executor);
+        final Parser parser = new Parser(tokenizer, domImplementation);
+        parser.parse();
+        parser.reset(new StringReader("<p>b"));
+        
+        assertEquals("b", parser.parse().getElementsByTagName("p").item(0).getTextContent());
+    }
+    
+    @Test(expected = UnsupportedOperationException.class)
+    public void testRetainInput() {
+        new PipelinedTokenizer(new StringReader("<p>"), executor).setRetainInput(true);
+    }
+    
+}
@@ -0,0 +1,69 @@
+package org.silnith.parser.html5.lexical;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+
+public class RingBufferTest {
+    
+    @Test
+    public void testEmpty() {
+        final RingBuffer<String> ring = new RingBuffer<>(4);
+        
+        assertNull(ring.poll());
+    }
+    
+    @Test
+    public void testFull() {
+        final RingBuffer<Integer> ring = new RingBuffer<>(3);
+        for (int i = 0; i < 4; i++ ) {
+            assertTrue(ring.offer(i));
+        }
+        
+        assertFalse(ring.offer(4));
+        assertEquals(Integer.valueOf(0), ring.poll());
+        assertTrue(ring.offer(4));
+    }
+    
+    @Test
+    public void testWrapAround() {
+        final RingBuffer<Integer> ring = new RingBuffer<>(2);
+        for (int i = 0; i < 10; i++ ) {
+            assertTrue(ring.offer(i));
+            assertEquals(Integer.valueOf(i), ring.poll());
+        }
+        
+        assertNull(ring.poll());
+    }
+    
+    @Test
+    public void testTwoThreads() throws InterruptedException {
+        final RingBuffer<Integer> ring = new RingBuffer<>(8);
+        final Thread producer = new Thread(new Runnable() {
+            
+            @Override
+            public void run() {
+                for (int i = 0; i < 100000; i++ ) {
+                    while ( !ring.offer(i)) {
+                        Thread.yield();
+                    }
+                }
+            }
+        });
+        producer.start();
+        for (int i = 0; i < 100000; i++ ) {
+            Integer element = ring.poll();
+            while (element == null) {
+                Thread.yield();
+                element = ring.poll();
+            }
+            assertEquals(Integer.valueOf(i), element);
+        }
+        producer.join();
+    }
+    
+}
@@ -0,0 +1,122 @@
+package org.silnith.parser.html5.lexical;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.silnith.parser.html5.lexical.GeneratedDocuments.generate;
+
+import java.io.StringReader;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.silnith.parser.html5.Parser;
+import org.w3c.dom.DOMImplementation;
+import org.w3c.dom.Document;
+import org.w3c.dom.bootstrap.DOMImplementationRegistry;
+
+
+public class SpeculativeTokenizerTest {
+    
+    private static DOMImplementationRegistry registry;
+    
+    private DOMImplementation domImplementation;
+    
+    private ExecutorService executor;
+    
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        registry = DOMImplementationRegistry.newInstance();
+    }
+    
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception {
+        registry = null;
+    }
+    
+    @Before
+    public void setUp() throws Exception {
+        domImplementation = registry.getDOMImplementation("Core 2.0");
+        executor = Executors.newFixedThreadPool(4);
+    }
+    
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+    
+    private Document parseSequentially(final String html) {
+        return new Parser(new Tokenizer(new StringReader(html)), domImplementation).parse();
+    }
+    
+    private Document parseSpeculatively(final SpeculativeTokenizer tokenizer) {
+        return new Parser(tokenizer, domImplementation).parse();
+    }
+    
+    @Test
+    public void testSmallDocument() {
+        final String html = "<p>a<b>b</b>";
+        final SpeculativeTokenizer tokenizer = new SpeculativeTokenizer(html, executor, 4);
+        
+        assertEquals(0, tokenizer.getChunkCount());
+        assertTrue(parseSequentially(html).isEqualNode(parseSpeculatively(tokenizer)));
+    }
+    
+    @Test
+    public void testLargeDocument() {
+        final String html = generate("<div id=d#><p class=\"x\">Paragraph # &amp; more\r\n<b>bold</b><br/></p></div>\n",
+                5000);
+        final SpeculativeTokenizer tokenizer = new SpeculativeTokenizer(html, executor, 4);
+        final Document document = parseSpeculatively(tokenizer);
+        
+        assertTrue(tokenizer.getChunkCount() > 1);
+        assertEquals(0, tokenizer.getMispredictedChunkCount());
+        assertTrue(parseSequentially(html).isEqualNode(document));
+        assertEquals(html.replace("\r\n", "\n").length(), tokenizer.getPosition());
+    }
+    
+    @Test
+    public void testRawTextElements() {
+        final String html = generate("<p>#<textarea><b>not a tag</b></textarea><script>if (a<b) {}</script>"
+                + "<style>p{}</style><title>x<y</title>\n", 3000);
+        final SpeculativeTokenizer tokenizer = new SpeculativeTokenizer(html, executor, 4);
+        
+        assertTrue(tokenizer.getChunkCount() > 1);
+        assertTrue(parseSequentially(html).isEqualNode(parseSpeculatively(tokenizer)));
+    }
+    
+    @Test
+    public void testMispredictedForeignContent() {
+        final String html = generate("<svg><title><b>#</b></title></svg><p>text</p>\n", 5000);
+        final SpeculativeTokenizer tokenizer = new SpeculativeTokenizer(html, executor, 4);
+        
+        assertTrue(parseSequentially(html).isEqualNode(parseSpeculatively(tokenizer)));
+        assertTrue(tokenizer.getMispredictedChunkCount() > 0);
+    }
+    
+    @Test
+    public void testBoundaryInsideElement() {
+        final StringBuilder html = new StringBuilder("<textarea>");
+        for (int i = 0; i < 20000; i++ ) {
+            html.append("<p>").append(i).append("</p>");
+        }
+        html.append("</textarea><script>");
+        for (int i = 0; i < 20000; i++ ) {
+            html.append("<b>").append(i);
+        }
+        html.append("</script><!-- <p>comment --><p>after");
+        final SpeculativeTokenizer tokenizer = new SpeculativeTokenizer(html, executor, 4);
+        
+        assertTrue(tokenizer.getChunkCount() > 1);
+        assertTrue(parseSequentially(html.toString()).isEqualNode(parseSpeculatively(tokenizer)));
+    }
+    
+    @Test(expected = UnsupportedOperationException.class)
+    public void testRetainInput() {
+        new SpeculativeTokenizer("<p>", executor, 4).setRetainInput(true);
+    }
+    
+}
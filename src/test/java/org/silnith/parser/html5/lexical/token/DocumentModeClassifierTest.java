@@ -0,0 +1,97 @@
+package org.silnith.parser.html5.lexical.token;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+
+public class DocumentModeClassifierTest {
+    
+    @Test
+    public void testHTML5() {
+        assertEquals(DocumentMode.NO_QUIRKS, DocumentModeClassifier.classify("html", null, null, false));
+    }
+    
+    @Test
+    public void testLegacyCompat() {
+        assertEquals(DocumentMode.NO_QUIRKS, DocumentModeClassifier.classify("html", null, "about:legacy-compat", false));
+    }
+    
+    @Test
+    public void testForceQuirks() {
+        assertEquals(DocumentMode.QUIRKS, DocumentModeClassifier.classify("html", null, null, true));
+    }
+    
+    @Test
+    public void testNameNotHTML() {
+        assertEquals(DocumentMode.QUIRKS, DocumentModeClassifier.classify("svg", null, null, false));
+    }
+    
+    @Test
+    public void testNameMissing() {
+        assertEquals(DocumentMode.QUIRKS, DocumentModeClassifier.classify(null, null, null, false));
+    }
+    
+    @Test
+    public void testQuirksPrefix() {
+        assertEquals(DocumentMode.QUIRKS,
+                DocumentModeClassifier.classify("html", "-//W3C//DTD HTML 4.0 Transitional//EN", null, false));
+    }
+    
+    @Test
+    public void testQuirksPrefixIgnoresCase() {
+        assertEquals(DocumentMode.QUIRKS,
+                DocumentModeClassifier.classify("html", "-//ietf//dtd html//en", null, false));
+    }
+    
+    @Test
+    public void testQuirksExact() {
+        assertEquals(DocumentMode.QUIRKS, DocumentModeClassifier.classify("html", "html", null, false));
+    }
+    
+    @Test
+    public void testQuirksExactOnlyMatchesWholeIdentifier() {
+        assertEquals(DocumentMode.NO_QUIRKS, DocumentModeClassifier.classify("html", "HTML5", null, false));
+    }
+    
+    @Test
+    public void testQuirksSystemIdentifier() {
+        assertEquals(DocumentMode.QUIRKS, DocumentModeClassifier.classify("html", null,
+                "HTTP://www.ibm.com/data/dtd/v11/ibmxhtml1-transitional.dtd", false));
+    }
+    
+    @Test
+    public void testLimitedQuirksPrefix() {
+        assertEquals(DocumentMode.LIMITED_QUIRKS, DocumentModeClassifier.classify("html",
+                "-//W3C//DTD XHTML 1.0 Transitional//EN", "http://www.w3.org/TR/xhtml1/DTD/xhtml1-transitional.dtd",
+                false));
+    }
+    
+    @Test
+    public void testHTML401TransitionalWithoutSystemIdentifier() {
+        assertEquals(DocumentMode.QUIRKS,
+                DocumentModeClassifier.classify("html", "-//W3C//DTD HTML 4.01 Transitional//EN", null, false));
+    }
+    
+    @Test
+    public void testHTML401TransitionalWithSystemIdentifier() {
+        assertEquals(DocumentMode.LIMITED_QUIRKS, DocumentModeClassifier.classify("html",
+                "-//W3C//DTD HTML 4.01 Transitional//EN", "http://www.w3.org/TR/html4/loose.dtd", false));
+    }
+    
+    @Test
+    public void testHTML401Strict() {
+        assertEquals(DocumentMode.NO_QUIRKS, DocumentModeClassifier.classify("html", "-//W3C//DTD HTML 4.01//EN",
+                "http://www.w3.org/TR/html4/strict.dtd", false));
+    }
+    
+    @Test
+    public void testDOCTYPETokenDocumentMode() {
+        final DOCTYPEToken token = new DOCTYPEToken();
+        token.setName("html");
+        token.setPublicIdentifier("-//W3O//DTD W3 HTML Strict 3.0//EN//");
+        
+        assertEquals(DocumentMode.QUIRKS, token.getDocumentMode());
+    }
+    
+}
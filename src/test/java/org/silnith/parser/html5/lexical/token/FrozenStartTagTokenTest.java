@@ -0,0 +1,91 @@
+package org.silnith.parser.html5.lexical.token;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.silnith.parser.html5.lexical.token.TagToken.Attribute;
+
+
+public class FrozenStartTagTokenTest {
+    
+    private static StartTagToken startTag(final String tagName, final String... attributes) {
+        final StartTagToken startTagToken = new StartTagToken();
+        startTagToken.setTagName(tagName);
+        for (int i = 0; i < attributes.length; i += 2) {
+            final Attribute attribute = startTagToken.createNewAttribute();
+            for (final char ch : attributes[i].toCharArray()) {
+                attribute.appendToName(ch);
+            }
+            attribute.appendToValue(attributes[i + 1].toCharArray());
+        }
+        return startTagToken;
+    }
+    
+    @Test
+    public void testFreeze() {
+        final FrozenStartTagToken frozen = startTag("b", "class", "x").freeze();
+        
+        assertEquals("b", frozen.getTagName());
+        assertEquals(1, frozen.getAttributeCount());
+        assertEquals("class", frozen.getAttributeName(0));
+        assertEquals("x", frozen.getAttributeValue(0));
+        assertEquals("x", frozen.getAttributeValue("class"));
+        assertEquals(1, frozen.getAttributes().size());
+    }
+    
+    @Test
+    public void testFreezeFrozen() {
+        final FrozenStartTagToken frozen = startTag("b").freeze();
+        
+        assertSame(frozen, frozen.freeze());
+    }
+    
+    @Test
+    public void testGetType() {
+        assertEquals(Token.Type.START_TAG, startTag("b").freeze().getType());
+    }
+    
+    @Test
+    public void testHasSameTagNameAndAttributesOrderInsensitive() {
+        final FrozenStartTagToken first = startTag("font", "color", "red", "size", "2").freeze();
+        final FrozenStartTagToken second = startTag("font", "size", "2", "color", "red").freeze();
+        
+        assertEquals(first.getFingerprint(), second.getFingerprint());
+        assertTrue(first.hasSameTagNameAndAttributes(second));
+    }
+    
+    @Test
+    public void testHasSameTagNameAndAttributesDifferentValue() {
+        final FrozenStartTagToken first = startTag("font", "color", "red").freeze();
+        final FrozenStartTagToken second = startTag("font", "color", "blue").freeze();
+        
+        assertFalse(first.hasSameTagNameAndAttributes(second));
+    }
+    
+    @Test
+    public void testHasSameTagNameAndAttributesDifferentTagName() {
+        final FrozenStartTagToken first = startTag("b").freeze();
+        final FrozenStartTagToken second = startTag("i").freeze();
+        
+        assertFalse(first.hasSameTagNameAndAttributes(second));
+    }
+    
+    @Test(expected = UnsupportedOperationException.class)
+    public void testSetTagName() {
+        startTag("b").freeze().setTagName("i");
+    }
+    
+    @Test(expected = UnsupportedOperationException.class)
+    public void testCreateNewAttribute() {
+        startTag("b").freeze().createNewAttribute();
+    }
+    
+    @Test(expected = UnsupportedOperationException.class)
+    public void testGetAttributesUnmodifiable() {
+        startTag("b").freeze().getAttributes().add(new Attribute());
+    }
+    
+}
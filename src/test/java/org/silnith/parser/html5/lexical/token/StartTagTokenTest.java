@@ -0,0 +1,70 @@
+package org.silnith.parser.html5.lexical.token;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.silnith.parser.html5.grammar.element.ElementKind;
+
+
+public class StartTagTokenTest {
+    
+    private StartTagToken startTagToken;
+    
+    @Test
+    public void testGetType() {
+        startTagToken = new StartTagToken();
+        
+        assertEquals(Token.Type.START_TAG, startTagToken.getType());
+    }
+    
+    @Test
+    public void testGetTagKind() {
+        startTagToken = new StartTagToken();
+        startTagToken.setTagName("table");
+        
+        assertEquals(ElementKind.TABLE, startTagToken.getTagKind());
+    }
+    
+    @Test
+    public void testGetTagKindUnknown() {
+        startTagToken = new StartTagToken();
+        startTagToken.setTagName("custom-element");
+        
+        assertEquals(ElementKind.HTML_UNKNOWN, startTagToken.getTagKind());
+    }
+    
+    @Test
+    public void testGetTagKindSVG() {
+        startTagToken = new StartTagToken();
+        startTagToken.setTagName("svg");
+        
+        assertEquals(ElementKind.SVG_SVG, startTagToken.getTagKind());
+    }
+    
+    @Test
+    public void testGetTagKindAfterAppend() {
+        startTagToken = new StartTagToken();
+        startTagToken.appendToTagName('t');
+        startTagToken.appendToTagName('d');
+        
+        assertEquals(ElementKind.TD, startTagToken.getTagKind());
+        
+        startTagToken.appendToTagName('x');
+        
+        assertEquals("tdx", startTagToken.getTagName());
+        assertEquals(ElementKind.HTML_UNKNOWN, startTagToken.getTagKind());
+    }
+    
+    @Test
+    public void testGetTagKindAfterSetTagName() {
+        startTagToken = new StartTagToken();
+        startTagToken.setTagName("tr");
+        
+        assertEquals(ElementKind.TR, startTagToken.getTagKind());
+        
+        startTagToken.setTagName("th");
+        
+        assertEquals(ElementKind.TH, startTagToken.getTagKind());
+    }
+    
+}